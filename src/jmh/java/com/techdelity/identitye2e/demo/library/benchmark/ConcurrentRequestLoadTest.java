@@ -0,0 +1,151 @@
+package com.techdelity.identitye2e.demo.library.benchmark;
+
+import com.techdelity.identitye2e.demo.library.LibraryApplication;
+import com.techdelity.identitye2e.demo.library.service.BookImportService;
+import com.techdelity.identitye2e.demo.library.service.ImportFormat;
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Load test comparing how many concurrent requests the library can serve on platform threads
+ * against virtual threads. Each request is an author lookup for a random author.
+ * <p>
+ * The application is started once per threading mode with the same Tomcat thread limit and
+ * connection pool. A fixed number of clients then each send a run of requests to random books,
+ * all starting together, and the throughput and latency percentiles are printed. On platform
+ * threads concurrency is capped by the Tomcat thread limit; on virtual threads it is capped by
+ * the connection pool. Virtual threads need Java 21, on older JVMs only the platform run is made.
+ * <p>
+ * Run with {@code mvn -Pbenchmark test-compile exec:exec@load-test}, tuned with the system
+ * properties load.clients, load.requests, load.tomcatThreads, load.poolSize and load.books.
+ */
+public final class ConcurrentRequestLoadTest {
+
+  private static final int CLIENTS = Integer.getInteger("load.clients", 400);
+  private static final int REQUESTS_PER_CLIENT = Integer.getInteger("load.requests", 50);
+  private static final int TOMCAT_THREADS = Integer.getInteger("load.tomcatThreads", 50);
+  private static final int POOL_SIZE = Integer.getInteger("load.poolSize", 50);
+  private static final int BOOKS = Integer.getInteger("load.books", 10_000);
+
+  private ConcurrentRequestLoadTest() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    System.out.printf("%d clients x %d requests, tomcat threads %d, pool size %d%n", CLIENTS,
+        REQUESTS_PER_CLIENT, TOMCAT_THREADS, POOL_SIZE);
+    System.out.printf("%-10s %12s %10s %10s %10s %8s%n", "mode", "requests/s", "p50 ms",
+        "p99 ms", "max ms", "errors");
+    for (boolean virtual : List.of(false, true)) {
+      if (virtual && Runtime.version().feature() < 21) {
+        System.out.printf("%-10s skipped, needs Java 21 (running %d)%n", "virtual",
+            Runtime.version().feature());
+        continue;
+      }
+      run(virtual);
+    }
+  }
+
+  private static void run(boolean virtual) throws Exception {
+    try (ConfigurableApplicationContext context = new SpringApplicationBuilder(
+        LibraryApplication.class)
+        .properties("spring.main.banner-mode=off", "logging.level.root=WARN")
+        // Arguments rather than default properties, so they override application.properties
+        .run("--server.port=0",
+            "--spring.threads.virtual.enabled=" + virtual,
+            "--server.tomcat.threads.max=" + TOMCAT_THREADS,
+            "--spring.datasource.hikari.maximum-pool-size=" + POOL_SIZE,
+            "--library.rate-limit.enabled=false",
+            "--library.load-shedding.enabled=false")) {
+      seed(context.getBean(BookImportService.class));
+      int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+      HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+          .connectTimeout(Duration.ofSeconds(10))
+          .build();
+
+      ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+      CountDownLatch start = new CountDownLatch(1);
+      List<Future<long[]>> results = new ArrayList<>();
+      for (int i = 0; i < CLIENTS; i++) {
+        results.add(clients.submit(() -> {
+          start.await();
+          long[] latencies = new long[REQUESTS_PER_CLIENT];
+          for (int r = 0; r < REQUESTS_PER_CLIENT; r++) {
+            latencies[r] = send(client, port);
+          }
+          return latencies;
+        }));
+      }
+      long begin = System.nanoTime();
+      start.countDown();
+      long[] latencies = new long[CLIENTS * REQUESTS_PER_CLIENT];
+      int index = 0;
+      for (Future<long[]> result : results) {
+        for (long latency : result.get()) {
+          latencies[index++] = latency;
+        }
+      }
+      double seconds = (System.nanoTime() - begin) / 1e9;
+      clients.shutdown();
+      report(virtual ? "virtual" : "platform", latencies, seconds);
+    }
+  }
+
+  /**
+   * @return the latency in nanoseconds, or -1 if the request failed
+   */
+  private static long send(HttpClient client, int port) {
+    int author = ThreadLocalRandom.current().nextInt(BOOKS / LibraryState.BOOKS_PER_AUTHOR);
+    HttpRequest request = HttpRequest.newBuilder(
+        URI.create("http://localhost:" + port + "/api/book/findByAuthor/Author%20" + author))
+        .timeout(Duration.ofSeconds(30)).build();
+    long begin = System.nanoTime();
+    try {
+      HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+      return response.statusCode() < 500 ? System.nanoTime() - begin : -1;
+    } catch (Exception ex) {
+      return -1;
+    }
+  }
+
+  private static void seed(BookImportService importService) throws Exception {
+    StringBuilder feed = new StringBuilder("isbn,title,author,publicationYear,copiesAvailable\n");
+    for (int i = 0; i < BOOKS; i++) {
+      feed.append(LibraryState.isbn(i)).append(",Title ").append(i).append(',')
+          .append(LibraryState.author(i)).append(",2000,10\n");
+    }
+    importService.importBooks(
+        new ByteArrayInputStream(feed.toString().getBytes(StandardCharsets.UTF_8)),
+        ImportFormat.CSV);
+  }
+
+  private static void report(String mode, long[] latencies, double seconds) {
+    long errors = Arrays.stream(latencies).filter(latency -> latency < 0).count();
+    long[] ok = Arrays.stream(latencies).filter(latency -> latency >= 0).sorted().toArray();
+    System.out.printf("%-10s %12.0f %10.1f %10.1f %10.1f %8d%n", mode, ok.length / seconds,
+        percentile(ok, 0.50), percentile(ok, 0.99), percentile(ok, 1.0), errors);
+  }
+
+  private static double percentile(long[] sorted, double percentile) {
+    if (sorted.length == 0) {
+      return 0;
+    }
+    int index = (int) Math.ceil(percentile * sorted.length) - 1;
+    return sorted[Math.max(0, index)] / 1e6;
+  }
+}
@@ -0,0 +1,82 @@
+package com.techdelity.identitye2e.demo.library.benchmark;
+
+import com.techdelity.identitye2e.demo.library.model.Book;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the {@link com.techdelity.identitye2e.demo.library.service.LibraryService} hot
+ * paths. Hot benchmarks all use the same isbn, cold ones pick a random isbn from the catalogue.
+ * Contended benchmarks run on 8 threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class LibraryServiceBenchmark {
+
+  private static final AtomicLong NEXT_NEW_ISBN = new AtomicLong();
+
+  @Benchmark
+  public Optional<Book> findBookByIsbn_hot(LibraryState state) {
+    return state.libraryService.findBookByISBN(LibraryState.HOT_ISBN);
+  }
+
+  @Benchmark
+  public Optional<Book> findBookByIsbn_cold(LibraryState state) {
+    return state.libraryService.findBookByISBN(state.randomIsbn());
+  }
+
+  @Benchmark
+  public List<Book> findBookByAuthor(LibraryState state) {
+    return state.libraryService.findBookByAuthor(state.randomAuthor());
+  }
+
+  @Benchmark
+  @Threads(1)
+  public Optional<Book> borrowAndReturn_hot_singleThread(LibraryState state) {
+    return borrowAndReturn(state, LibraryState.HOT_ISBN);
+  }
+
+  @Benchmark
+  @Threads(8)
+  public Optional<Book> borrowAndReturn_hot_contended(LibraryState state) {
+    return borrowAndReturn(state, LibraryState.HOT_ISBN);
+  }
+
+  @Benchmark
+  @Threads(1)
+  public Optional<Book> borrowAndReturn_cold_singleThread(LibraryState state) {
+    return borrowAndReturn(state, state.randomIsbn());
+  }
+
+  @Benchmark
+  @Threads(8)
+  public Optional<Book> borrowAndReturn_cold_contended(LibraryState state) {
+    return borrowAndReturn(state, state.randomIsbn());
+  }
+
+  @Benchmark
+  public Book addBook(LibraryState state) {
+    // The catalogue has 978 isbns, so new books never collide with it
+    String isbn = LibraryState.isbn(979, NEXT_NEW_ISBN.incrementAndGet());
+    return state.libraryService.addBook(new Book(isbn, "New Title", "New Author", 2024, 1));
+  }
+
+  private static Optional<Book> borrowAndReturn(LibraryState state, String isbn) {
+    Optional<Book> book = state.libraryService.borrowBook(isbn);
+    state.libraryService.returnBook(isbn);
+    return book;
+  }
+}
@@ -0,0 +1,108 @@
+package com.techdelity.identitye2e.demo.library.benchmark;
+
+import com.techdelity.identitye2e.demo.library.LibraryApplication;
+import com.techdelity.identitye2e.demo.library.model.Book;
+import com.techdelity.identitye2e.demo.library.service.BookImportService;
+import com.techdelity.identitye2e.demo.library.service.ImportFormat;
+import com.techdelity.identitye2e.demo.library.service.LibraryService;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * A running library seeded with a catalogue of books, shared by all benchmark threads.
+ * <p>
+ * Each author has {@link #BOOKS_PER_AUTHOR} books, and every book has plenty of copies, so borrow
+ * and return benchmarks never run out of stock.
+ */
+@State(Scope.Benchmark)
+public class LibraryState {
+
+  static final int BOOKS_PER_AUTHOR = 10;
+  static final String HOT_ISBN = isbn(0);
+
+  @Param({"1000", "10000", "100000"})
+  public int catalogueSize;
+
+  /**
+   * The storage implementation behind the library, passed as library.store
+   */
+  @Param({"jpa", "memory"})
+  public String store;
+
+  LibraryService libraryService;
+  private ConfigurableApplicationContext context;
+
+  @Setup(Level.Trial)
+  public void start() throws IOException {
+    context = new SpringApplicationBuilder(LibraryApplication.class)
+        .web(WebApplicationType.NONE)
+        .properties("spring.main.banner-mode=off", "logging.level.root=WARN")
+        .run("--library.store=" + store);
+    libraryService = context.getBean(LibraryService.class);
+    seed();
+  }
+
+  @TearDown(Level.Trial)
+  public void stop() {
+    context.close();
+  }
+
+  String randomIsbn() {
+    return isbn(ThreadLocalRandom.current().nextInt(catalogueSize));
+  }
+
+  String randomAuthor() {
+    return author(ThreadLocalRandom.current().nextInt(catalogueSize));
+  }
+
+  private void seed() throws IOException {
+    BookImportService importService = context.getBeanProvider(BookImportService.class)
+        .getIfAvailable();
+    if (importService == null) {
+      // Bulk import is only available with the jpa store
+      for (int i = 0; i < catalogueSize; i++) {
+        libraryService.addBook(new Book(isbn(i), "Title " + i, author(i), 2000, 1000000));
+      }
+      return;
+    }
+    StringBuilder feed = new StringBuilder("isbn,title,author,publicationYear,copiesAvailable\n");
+    for (int i = 0; i < catalogueSize; i++) {
+      feed.append(isbn(i)).append(",Title ").append(i).append(',').append(author(i))
+          .append(",2000,1000000\n");
+    }
+    importService.importBooks(
+        new ByteArrayInputStream(feed.toString().getBytes(StandardCharsets.UTF_8)),
+        ImportFormat.CSV);
+  }
+
+  static String isbn(int i) {
+    return isbn(978, i);
+  }
+
+  /**
+   * @return a valid isbn, the prefix followed by the number and its check digit
+   */
+  static String isbn(int prefix, long number) {
+    String body = String.format("%03d%09d", prefix, number);
+    int sum = 0;
+    for (int i = 0; i < body.length(); i++) {
+      sum += (body.charAt(i) - '0') * (i % 2 == 0 ? 1 : 3);
+    }
+    return body + (10 - sum % 10) % 10;
+  }
+
+  static String author(int i) {
+    return "Author " + (i / BOOKS_PER_AUTHOR);
+  }
+}
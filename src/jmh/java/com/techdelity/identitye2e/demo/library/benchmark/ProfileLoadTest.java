@@ -0,0 +1,171 @@
+package com.techdelity.identitye2e.demo.library.benchmark;
+
+import com.techdelity.identitye2e.demo.library.LibraryApplication;
+import com.techdelity.identitye2e.demo.library.service.BookImportService;
+import com.techdelity.identitye2e.demo.library.service.ImportFormat;
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Load test comparing the default configuration with the prod profile, see
+ * application-prod.properties.
+ * <p>
+ * The application is started once per profile with the same pool size and seeded with the same
+ * catalogue. A fixed number of clients then each send a run of requests, all starting together,
+ * and the throughput and latency percentiles are printed. Requests are a read heavy mix of author
+ * lookups, ISBN lookups and, for {@code load.writePercent} of them, a borrow or return, so the
+ * second-level cache is measured along with the invalidations that writes cause. Each profile gets
+ * a warm up run before the measured one.
+ * <p>
+ * Run with {@code mvn -Pbenchmark test-compile exec:exec@profile-load-test}, tuned with the system
+ * properties load.clients, load.requests, load.poolSize, load.books and load.writePercent.
+ */
+public final class ProfileLoadTest {
+
+  private static final int CLIENTS = Integer.getInteger("load.clients", 100);
+  private static final int REQUESTS_PER_CLIENT = Integer.getInteger("load.requests", 200);
+  private static final int POOL_SIZE = Integer.getInteger("load.poolSize", 20);
+  private static final int BOOKS = Integer.getInteger("load.books", 10_000);
+  private static final int WRITE_PERCENT = Integer.getInteger("load.writePercent", 5);
+
+  private ProfileLoadTest() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    System.out.printf("%d clients x %d requests, pool size %d, %d books, %d%% writes%n", CLIENTS,
+        REQUESTS_PER_CLIENT, POOL_SIZE, BOOKS, WRITE_PERCENT);
+    System.out.printf("%-10s %12s %10s %10s %10s %8s%n", "profile", "requests/s", "p50 ms",
+        "p99 ms", "max ms", "errors");
+    for (String profile : List.of("default", "prod")) {
+      run(profile);
+    }
+  }
+
+  private static void run(String profile) throws Exception {
+    try (ConfigurableApplicationContext context = new SpringApplicationBuilder(
+        LibraryApplication.class)
+        .properties("spring.main.banner-mode=off", "logging.level.root=WARN")
+        // Arguments rather than default properties, so they override the profile's properties
+        .run("--server.port=0",
+            "--spring.profiles.active=" + profile,
+            "--spring.datasource.hikari.maximum-pool-size=" + POOL_SIZE,
+            "--spring.datasource.hikari.minimum-idle=" + POOL_SIZE,
+            "--library.rate-limit.enabled=false",
+            "--library.load-shedding.enabled=false",
+            // Measure the database and the second-level cache, not the service's own book cache
+            "--library.cache.books.maximum-size=0")) {
+      seed(context.getBean(BookImportService.class));
+      int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+      HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+          .connectTimeout(Duration.ofSeconds(10))
+          .build();
+      measure(client, port, new long[CLIENTS * REQUESTS_PER_CLIENT]);
+      long[] latencies = new long[CLIENTS * REQUESTS_PER_CLIENT];
+      double seconds = measure(client, port, latencies);
+      report(profile, latencies, seconds);
+    }
+  }
+
+  /**
+   * @return the seconds taken to send every request
+   */
+  private static double measure(HttpClient client, int port, long[] latencies)
+      throws Exception {
+    ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<long[]>> results = new ArrayList<>();
+    for (int i = 0; i < CLIENTS; i++) {
+      results.add(clients.submit(() -> {
+        start.await();
+        long[] clientLatencies = new long[REQUESTS_PER_CLIENT];
+        for (int r = 0; r < REQUESTS_PER_CLIENT; r++) {
+          clientLatencies[r] = send(client, port);
+        }
+        return clientLatencies;
+      }));
+    }
+    long begin = System.nanoTime();
+    start.countDown();
+    int index = 0;
+    for (Future<long[]> result : results) {
+      for (long latency : result.get()) {
+        latencies[index++] = latency;
+      }
+    }
+    double seconds = (System.nanoTime() - begin) / 1e9;
+    clients.shutdown();
+    return seconds;
+  }
+
+  /**
+   * @return the latency in nanoseconds, or -1 if the request failed
+   */
+  private static long send(HttpClient client, int port) {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int book = random.nextInt(BOOKS);
+    int kind = random.nextInt(100);
+    String base = "http://localhost:" + port + "/api/book/";
+    HttpRequest.Builder request;
+    if (kind < WRITE_PERCENT) {
+      String action = random.nextBoolean() ? "borrow/" : "return/";
+      request = HttpRequest.newBuilder(URI.create(base + action + LibraryState.isbn(book)))
+          .POST(HttpRequest.BodyPublishers.noBody());
+    } else if (kind % 2 == 0) {
+      request = HttpRequest.newBuilder(URI.create(
+          base + "findByAuthor/" + LibraryState.author(book).replace(" ", "%20")));
+    } else {
+      request = HttpRequest.newBuilder(URI.create(
+          base + "findByISBN/" + LibraryState.isbn(book)));
+    }
+    long begin = System.nanoTime();
+    try {
+      HttpResponse<Void> response = client.send(request.timeout(Duration.ofSeconds(30)).build(),
+          HttpResponse.BodyHandlers.discarding());
+      return response.statusCode() < 500 ? System.nanoTime() - begin : -1;
+    } catch (Exception ex) {
+      return -1;
+    }
+  }
+
+  private static void seed(BookImportService importService) throws Exception {
+    StringBuilder feed = new StringBuilder("isbn,title,author,publicationYear,copiesAvailable\n");
+    for (int i = 0; i < BOOKS; i++) {
+      feed.append(LibraryState.isbn(i)).append(",Title ").append(i).append(',')
+          .append(LibraryState.author(i)).append(",2000,1000000\n");
+    }
+    importService.importBooks(
+        new ByteArrayInputStream(feed.toString().getBytes(StandardCharsets.UTF_8)),
+        ImportFormat.CSV);
+  }
+
+  private static void report(String profile, long[] latencies, double seconds) {
+    long errors = Arrays.stream(latencies).filter(latency -> latency < 0).count();
+    long[] ok = Arrays.stream(latencies).filter(latency -> latency >= 0).sorted().toArray();
+    System.out.printf("%-10s %12.0f %10.1f %10.1f %10.1f %8d%n", profile, ok.length / seconds,
+        percentile(ok, 0.50), percentile(ok, 0.99), percentile(ok, 1.0), errors);
+  }
+
+  private static double percentile(long[] sorted, double percentile) {
+    if (sorted.length == 0) {
+      return 0;
+    }
+    int index = (int) Math.ceil(percentile * sorted.length) - 1;
+    return sorted[Math.max(0, index)] / 1e6;
+  }
+}
@@ -3,9 +3,11 @@ package com.techdelity.identitye2e.demo.library;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.core.Ordered;
 
 @SpringBootApplication
-@EnableCaching
+// Caching wraps the transaction so that evictions happen after commit
+@EnableCaching(order = Ordered.HIGHEST_PRECEDENCE)
 public class LibraryApplication {
 
 	public static void main(String[] args) {
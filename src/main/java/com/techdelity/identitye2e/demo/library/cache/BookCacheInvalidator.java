@@ -0,0 +1,122 @@
+package com.techdelity.identitye2e.demo.library.cache;
+
+import static com.techdelity.identitye2e.demo.library.config.CacheConfig.BOOKS_CACHE;
+import static com.techdelity.identitye2e.demo.library.config.CacheConfig.BOOK_JSON_CACHE;
+import static com.techdelity.identitye2e.demo.library.config.CacheConfig.BOOK_VERSIONS_CACHE;
+
+import com.techdelity.identitye2e.demo.library.service.BookChangedEvent;
+import com.techdelity.identitye2e.demo.library.model.Book;
+import com.techdelity.identitye2e.demo.library.model.Isbn;
+import com.techdelity.identitye2e.demo.library.repository.BookRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import java.util.List;
+import java.util.stream.Stream;
+import org.hibernate.SessionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Keeps the book caches of every node coherent with the database.
+ * <p>
+ * Each committed change to a book is sent to every node as an invalidation stamped with the
+ * version the book moved to, and each node drops cached copies older than that version, its own
+ * included. Reads on any node are then served from its cache while borrows and returns always go
+ * to the database, so scaling out reads never serves a stale copy count for longer than an
+ * invalidation takes to arrive. The book is also dropped from the Hibernate second-level cache, as
+ * Hibernate only sees the changes made on its own node, and doesn't track the native stock updates
+ * even there. Borrows and returns don't change which books an author has, so the cached
+ * {@code findByAuthor} results are only dropped when a book is added or removed. An add is sent as
+ * an invalidation of the author results alone, so the new book's caches aren't fenced.
+ */
+@Component
+public class BookCacheInvalidator {
+
+  private static final Logger LOG = LoggerFactory.getLogger(BookCacheInvalidator.class);
+
+  private final InvalidationTransport transport;
+  private final List<VersionedCaffeineCache> caches;
+  private final ObjectProvider<EntityManagerFactory> entityManagerFactory;
+  private final Counter received;
+  private final Counter dropped;
+
+  @Autowired
+  public BookCacheInvalidator(CacheManager cacheManager, InvalidationTransport transport,
+      ObjectProvider<EntityManagerFactory> entityManagerFactory, MeterRegistry meterRegistry) {
+    this.transport = transport;
+    this.entityManagerFactory = entityManagerFactory;
+    this.caches = Stream.of(BOOKS_CACHE, BOOK_VERSIONS_CACHE, BOOK_JSON_CACHE)
+        .map(cacheManager::getCache)
+        .filter(VersionedCaffeineCache.class::isInstance)
+        .map(VersionedCaffeineCache.class::cast)
+        .toList();
+    this.received = Counter.builder("library.cache.invalidations")
+        .description("Book invalidations received from any node")
+        .register(meterRegistry);
+    this.dropped = Counter.builder("library.cache.invalidated")
+        .description("Cached books and versions dropped by invalidations")
+        .register(meterRegistry);
+    transport.subscribe(this::apply);
+  }
+
+  @TransactionalEventListener(fallbackExecution = true)
+  public void onBookChanged(BookChangedEvent event) {
+    BookInvalidation invalidation;
+    if (event.type() == BookChangedEvent.Type.ADDED) {
+      // Missing books aren't cached, only author lookups without the book
+      invalidation = BookInvalidation.added(event.isbn());
+      evictAuthorResults();
+    } else {
+      int version = event.type() == BookChangedEvent.Type.REMOVED
+          || event.version() == BookChangedEvent.UNKNOWN_VERSION
+          ? BookInvalidation.ALL_VERSIONS : event.version();
+      invalidation = new BookInvalidation(event.isbn(), version);
+      // The invalidation may only come back to this node after a poll of the transport
+      evictSecondLevel(event.isbn(), version);
+    }
+    try {
+      transport.publish(invalidation);
+    } catch (RuntimeException ex) {
+      // The change has been made, other nodes serve their copy until it expires
+      LOG.warn("Failed to send the invalidation of book {}", event.isbn(), ex);
+    }
+  }
+
+  /**
+   * Drop cached copies of a book older than an invalidation, or the cached author lookups
+   */
+  public void apply(BookInvalidation invalidation) {
+    received.increment();
+    if (invalidation.scope() == BookInvalidation.Scope.AUTHOR_RESULTS) {
+      evictAuthorResults();
+      return;
+    }
+    for (VersionedCaffeineCache cache : caches) {
+      if (cache.invalidate(Isbn.pack(invalidation.isbn()), invalidation.version())) {
+        dropped.increment();
+      }
+    }
+    evictSecondLevel(invalidation.isbn(), invalidation.version());
+  }
+
+  private void evictSecondLevel(String isbn, int version) {
+    entityManagerFactory.ifAvailable(factory -> {
+      // No-ops unless the second-level cache is switched on
+      factory.getCache().evict(Book.class, isbn);
+    });
+    if (version == BookInvalidation.ALL_VERSIONS) {
+      evictAuthorResults();
+    }
+  }
+
+  private void evictAuthorResults() {
+    entityManagerFactory.ifAvailable(factory -> factory.unwrap(SessionFactory.class).getCache()
+        .evictQueryRegion(BookRepository.BY_AUTHOR_CACHE_REGION));
+  }
+}
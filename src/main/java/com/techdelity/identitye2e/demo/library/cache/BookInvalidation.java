@@ -0,0 +1,45 @@
+package com.techdelity.identitye2e.demo.library.cache;
+
+/**
+ * Tells every node that a book has changed, so cached copies older than the change are dropped.
+ * An invalidation of the {@link Scope#AUTHOR_RESULTS} scope instead tells them a book was added,
+ * so cached author lookups, which are missing it, are dropped, and leaves the book's own caches
+ * alone.
+ *
+ * @param isbn    the isbn of the book that changed
+ * @param version the version the book moved to, {@link #ALL_VERSIONS} if the book was removed or the
+ *                version isn't known. Unused for author results.
+ * @param scope   what the invalidation drops
+ */
+public record BookInvalidation(String isbn, int version, Scope scope) {
+
+  /**
+   * Higher than any version, so every cached copy of the book is dropped
+   */
+  public static final int ALL_VERSIONS = Integer.MAX_VALUE;
+
+  /**
+   * Drop the cached copies of a book older than a version
+   */
+  public BookInvalidation(String isbn, int version) {
+    this(isbn, version, Scope.BOOK);
+  }
+
+  /**
+   * Drop the cached author lookups, which don't have a book that was just added
+   */
+  public static BookInvalidation added(String isbn) {
+    return new BookInvalidation(isbn, 0, Scope.AUTHOR_RESULTS);
+  }
+
+  public enum Scope {
+    /**
+     * The cached copies and versions of the book
+     */
+    BOOK,
+    /**
+     * The cached results of author lookups
+     */
+    AUTHOR_RESULTS
+  }
+}
@@ -0,0 +1,19 @@
+package com.techdelity.identitye2e.demo.library.cache;
+
+import com.fasterxml.jackson.core.io.SerializedString;
+
+/**
+ * The JSON of a book as the API writes it, cached so an unchanged book is not serialized again.
+ *
+ * @param version the version of the book the JSON was written from
+ * @param json    the JSON, which keeps its UTF-8 bytes once they have been encoded
+ */
+public record BookJson(int version, SerializedString json) {
+
+  /**
+   * @return the UTF-8 bytes of the JSON, shared so not to be changed
+   */
+  public byte[] bytes() {
+    return json.asUnquotedUTF8();
+  }
+}
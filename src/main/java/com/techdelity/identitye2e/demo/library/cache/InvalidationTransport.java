@@ -0,0 +1,21 @@
+package com.techdelity.identitye2e.demo.library.cache;
+
+import java.util.function.Consumer;
+
+/**
+ * Carries cache invalidations between the nodes of the service. Delivery is at least once and may
+ * be out of order, which receivers allow for by applying invalidations idempotently. A node also
+ * receives the invalidations it sends.
+ */
+public interface InvalidationTransport {
+
+  /**
+   * Send an invalidation to every node
+   */
+  void publish(BookInvalidation invalidation);
+
+  /**
+   * Receive the invalidations sent by every node
+   */
+  void subscribe(Consumer<BookInvalidation> listener);
+}
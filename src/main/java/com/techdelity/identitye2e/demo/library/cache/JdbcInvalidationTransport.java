@@ -0,0 +1,138 @@
+package com.techdelity.identitye2e.demo.library.cache;
+
+import com.techdelity.identitye2e.demo.library.config.ConditionalOnJpaStore;
+import com.techdelity.identitye2e.demo.library.model.Isbn;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Sends invalidations between nodes through a table in the shared database, used when
+ * {@code library.cache.invalidation.transport=jdbc}.
+ * <p>
+ * Each invalidation is inserted as a row, and every node reads the rows added since its last read
+ * each {@code poll-interval}. Ids are handed out before rows commit, so a row may commit after
+ * one with a higher id has been read. Each read starts {@value #REREAD} ids back to pick such rows
+ * up, skipping the rows it has already delivered. Rows older than {@code retention} are
+ * deleted.
+ */
+@Component
+@ConditionalOnJpaStore
+@ConditionalOnProperty(name = "library.cache.invalidation.transport", havingValue = "jdbc")
+public class JdbcInvalidationTransport implements InvalidationTransport, DisposableBean {
+
+  private static final Logger LOG = LoggerFactory.getLogger(JdbcInvalidationTransport.class);
+  private static final int REREAD = 256;
+  private static final String CREATE_TABLE = """
+      create table if not exists book_invalidation (
+        id bigint generated by default as identity primary key,
+        isbn bigint not null,
+        version integer not null,
+        created_at timestamp not null)""";
+  /**
+   * Added after the table, which may have been created without it
+   */
+  private static final String ADD_SCOPE = "alter table book_invalidation add column if not exists "
+      + "scope varchar(16) default 'BOOK' not null";
+  private static final String INSERT =
+      "insert into book_invalidation (isbn, version, scope, created_at) values (?, ?, ?, ?)";
+  private static final String SELECT =
+      "select id, isbn, version, scope from book_invalidation where id > ? order by id";
+  private static final String DELETE = "delete from book_invalidation where created_at < ?";
+
+  private final JdbcTemplate jdbcTemplate;
+  private final Duration retention;
+  private final List<Consumer<BookInvalidation>> listeners = new CopyOnWriteArrayList<>();
+  private final ScheduledExecutorService poller;
+  /**
+   * Ids delivered within {@link #REREAD} of the highest, so a row read again isn't delivered twice.
+   * Only used by the poller thread, like the fields after it.
+   */
+  private final NavigableSet<Long> delivered = new TreeSet<>();
+  private long lastId;
+  private Instant nextPurge = Instant.now();
+
+  @Autowired
+  public JdbcInvalidationTransport(JdbcTemplate jdbcTemplate,
+      @Value("${library.cache.invalidation.poll-interval:100ms}") Duration pollInterval,
+      @Value("${library.cache.invalidation.retention:1m}") Duration retention) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.retention = retention;
+    jdbcTemplate.execute(CREATE_TABLE);
+    jdbcTemplate.execute(ADD_SCOPE);
+    // Caches start empty, so older invalidations have nothing to drop
+    Long maxId = jdbcTemplate.queryForObject(
+        "select coalesce(max(id), 0) from book_invalidation", Long.class);
+    this.lastId = maxId == null ? 0 : maxId;
+    this.poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "cache-invalidation");
+      thread.setDaemon(true);
+      return thread;
+    });
+    poller.scheduleWithFixedDelay(this::pollQuietly, pollInterval.toMillis(),
+        pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public void publish(BookInvalidation invalidation) {
+    jdbcTemplate.update(INSERT, Isbn.pack(invalidation.isbn()), invalidation.version(),
+        invalidation.scope().name(), Timestamp.from(Instant.now()));
+  }
+
+  @Override
+  public void subscribe(Consumer<BookInvalidation> listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * Deliver the invalidations added since the last poll
+   */
+  void poll() {
+    jdbcTemplate.query(SELECT, rs -> {
+      long id = rs.getLong(1);
+      if (id <= lastId - REREAD || !delivered.add(id)) {
+        return;
+      }
+      BookInvalidation invalidation = new BookInvalidation(Isbn.unpack(rs.getLong(2)),
+          rs.getInt(3), BookInvalidation.Scope.valueOf(rs.getString(4)));
+      listeners.forEach(listener -> listener.accept(invalidation));
+      lastId = Math.max(lastId, id);
+    }, Math.max(0, lastId - REREAD));
+    delivered.headSet(lastId - REREAD, true).clear();
+
+    Instant now = Instant.now();
+    if (now.isAfter(nextPurge)) {
+      jdbcTemplate.update(DELETE, Timestamp.from(now.minus(retention)));
+      nextPurge = now.plus(retention);
+    }
+  }
+
+  @Override
+  public void destroy() {
+    poller.shutdownNow();
+  }
+
+  private void pollQuietly() {
+    try {
+      poll();
+    } catch (RuntimeException ex) {
+      LOG.warn("Failed to read cache invalidations, will retry", ex);
+    }
+  }
+}
@@ -0,0 +1,24 @@
+package com.techdelity.identitye2e.demo.library.cache;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Delivers invalidations to the subscribers in this process as they are published. Used when a
+ * single node is run, and by tests to stand in for the network between several.
+ */
+public class LocalInvalidationTransport implements InvalidationTransport {
+
+  private final List<Consumer<BookInvalidation>> listeners = new CopyOnWriteArrayList<>();
+
+  @Override
+  public void publish(BookInvalidation invalidation) {
+    listeners.forEach(listener -> listener.accept(invalidation));
+  }
+
+  @Override
+  public void subscribe(Consumer<BookInvalidation> listener) {
+    listeners.add(listener);
+  }
+}
@@ -0,0 +1,71 @@
+package com.techdelity.identitye2e.demo.library.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.time.Duration;
+import java.util.function.ToIntFunction;
+import org.springframework.cache.caffeine.CaffeineCache;
+
+/**
+ * A Caffeine backed cache of versioned values that can be invalidated up to a version.
+ * <p>
+ * Invalidating a key drops its value if it is older than the version, and fences the key at that
+ * version for {@code fenceTtl}. While fenced, older values are not cached, so a load that read the
+ * book before the change can't put it back after the invalidation. Applying an invalidation twice,
+ * or an older one after a newer one, changes nothing.
+ */
+public class VersionedCaffeineCache extends CaffeineCache {
+
+  private final ToIntFunction<Object> versionOf;
+  private final Cache<Object, Integer> fences;
+
+  /**
+   * @param versionOf       the version of a cached value
+   * @param fenceTtl        how long a key stays fenced, longer than any load of a value can take
+   * @param allowNullValues whether to accept and convert null values for this cache
+   */
+  public VersionedCaffeineCache(String name, Cache<Object, Object> cache,
+      ToIntFunction<Object> versionOf, Duration fenceTtl, boolean allowNullValues) {
+    super(name, cache, allowNullValues);
+    this.versionOf = versionOf;
+    this.fences = Caffeine.newBuilder().expireAfterWrite(fenceTtl).build();
+  }
+
+  /**
+   * Drop the value of a key if it is older than a version, and keep older values out for a while
+   *
+   * @return true if a value was dropped
+   */
+  public boolean invalidate(Object key, int version) {
+    fences.asMap().merge(key, version, Math::max);
+    boolean[] dropped = new boolean[1];
+    getNativeCache().asMap().computeIfPresent(key, (k, value) -> {
+      if (versionOf.applyAsInt(value) < version) {
+        dropped[0] = true;
+        return null;
+      }
+      return value;
+    });
+    return dropped[0];
+  }
+
+  @Override
+  public void put(Object key, Object value) {
+    if (!isFenced(key, value)) {
+      super.put(key, value);
+    }
+  }
+
+  @Override
+  public ValueWrapper putIfAbsent(Object key, Object value) {
+    if (isFenced(key, value)) {
+      return get(key);
+    }
+    return super.putIfAbsent(key, value);
+  }
+
+  private boolean isFenced(Object key, Object value) {
+    Integer fence = fences.getIfPresent(key);
+    return fence != null && value != null && versionOf.applyAsInt(value) < fence;
+  }
+}
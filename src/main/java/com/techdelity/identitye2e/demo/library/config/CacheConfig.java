@@ -0,0 +1,90 @@
+package com.techdelity.identitye2e.demo.library.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.techdelity.identitye2e.demo.library.cache.BookJson;
+import com.techdelity.identitye2e.demo.library.cache.InvalidationTransport;
+import com.techdelity.identitye2e.demo.library.cache.LocalInvalidationTransport;
+import com.techdelity.identitye2e.demo.library.cache.VersionedCaffeineCache;
+import com.techdelity.identitye2e.demo.library.model.Book;
+import java.time.Duration;
+import java.util.List;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Cache configuration for the library.
+ * <p>
+ * Books are cached by their packed ISBN, a {@code Long} rather than a string, in a size and TTL
+ * bounded Caffeine cache. Their versions are cached on their own, with the same bounds, so a
+ * conditional request for an unchanged book is answered without loading it, and so is their JSON,
+ * so a lookup of an unchanged book is answered without serializing it. Statistics are recorded so
+ * the hit, miss and eviction counts can be reported.
+ * <p>
+ * All three caches are near caches kept coherent across nodes by
+ * {@link com.techdelity.identitye2e.demo.library.cache.BookCacheInvalidator}, over the transport
+ * named by {@code library.cache.invalidation.transport}: local for a single node, or jdbc to
+ * share invalidations through the database.
+ */
+@Configuration
+public class CacheConfig {
+
+  public static final String BOOKS_CACHE = "books";
+  public static final String BOOK_VERSIONS_CACHE = "book-versions";
+  public static final String BOOK_JSON_CACHE = "book-json";
+  /**
+   * The key of a book in the caches, for methods with an {@code isbn} parameter, see
+   * {@link com.techdelity.identitye2e.demo.library.model.Isbn#pack}
+   */
+  public static final String ISBN_KEY =
+      "T(com.techdelity.identitye2e.demo.library.model.Isbn).pack(#isbn)";
+  /**
+   * The key of a book in the caches, for methods with a {@code book} parameter
+   */
+  public static final String BOOK_ISBN_KEY =
+      "T(com.techdelity.identitye2e.demo.library.model.Isbn).pack(#book.isbn)";
+
+  @Bean
+  public CacheManager cacheManager(
+      @Value("${library.cache.books.maximum-size:10000}") long maximumSize,
+      @Value("${library.cache.books.expire-after-write:10m}") Duration expireAfterWrite,
+      @Value("${library.cache.invalidation.fence-ttl:10s}") Duration fenceTtl) {
+    CaffeineCacheManager cacheManager = new CaffeineCacheManager() {
+      @Override
+      protected Cache adaptCaffeineCache(String name,
+          com.github.benmanes.caffeine.cache.Cache<Object, Object> cache) {
+        return new VersionedCaffeineCache(name, cache, CacheConfig::versionOf, fenceTtl,
+            isAllowNullValues());
+      }
+    };
+    cacheManager.setCaffeine(Caffeine.newBuilder()
+        .maximumSize(maximumSize)
+        .expireAfterWrite(expireAfterWrite)
+        .recordStats());
+    // Missing books are not cached so that a later add is visible straight away
+    cacheManager.setAllowNullValues(false);
+    cacheManager.setCacheNames(List.of(BOOKS_CACHE, BOOK_VERSIONS_CACHE, BOOK_JSON_CACHE));
+    return cacheManager;
+  }
+
+  @Bean
+  @ConditionalOnProperty(name = "library.cache.invalidation.transport", havingValue = "local",
+      matchIfMissing = true)
+  public InvalidationTransport localInvalidationTransport() {
+    return new LocalInvalidationTransport();
+  }
+
+  /**
+   * The version of a cached book, of its cached JSON, or of a cached version
+   */
+  static int versionOf(Object value) {
+    if (value instanceof Book book) {
+      return book.getVersion();
+    }
+    return value instanceof BookJson json ? json.version() : (Integer) value;
+  }
+}
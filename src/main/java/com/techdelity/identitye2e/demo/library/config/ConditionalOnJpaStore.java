@@ -0,0 +1,21 @@
+package com.techdelity.identitye2e.demo.library.config;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+
+/**
+ * Only create the bean when books are stored with JPA, the default {@code library.store}. Features
+ * that query the book table directly, such as bulk import and full text search, are only available
+ * with this store.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Documented
+@ConditionalOnProperty(name = "library.store", havingValue = "jpa", matchIfMissing = true)
+public @interface ConditionalOnJpaStore {
+
+}
@@ -0,0 +1,48 @@
+package com.techdelity.identitye2e.demo.library.config;
+
+import java.util.Map;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Per client rate limits of the book API. A client is identified by its address, so a client
+ * can't get a fresh bucket by making up a new key for each request. Each client has a separate
+ * bucket for each endpoint.
+ * <p>
+ * Behind a proxy or gateway, set {@code clientHeader} to the header it puts the client's address or
+ * authenticated identity in. Only do so when it replaces any value of that header sent by the
+ * client, as the header then also picks the client's entry in {@code clients}.
+ *
+ * @param enabled      whether requests are rate limited
+ * @param clientHeader the request header holding the client key, set by a trusted proxy. Null to
+ *                     identify clients by their address
+ * @param maxBuckets   the maximum number of client and endpoint buckets kept, the least recently
+ *                     used are dropped first
+ * @param defaultLimit the limit of endpoints without their own
+ * @param endpoints    limits by endpoint name, see
+ *                     {@link com.techdelity.identitye2e.demo.library.ratelimit.RateLimited}
+ * @param clients      limits by client key, which replace the endpoint limits for that client
+ */
+@ConfigurationProperties("library.rate-limit")
+public record RateLimitProperties(
+    @DefaultValue("true") boolean enabled,
+    String clientHeader,
+    @DefaultValue("100000") int maxBuckets,
+    @DefaultValue Limit defaultLimit,
+    Map<String, Limit> endpoints,
+    Map<String, Limit> clients) {
+
+  public RateLimitProperties {
+    endpoints = endpoints == null ? Map.of() : Map.copyOf(endpoints);
+    clients = clients == null ? Map.of() : Map.copyOf(clients);
+  }
+
+  /**
+   * @param requestsPerSecond the sustained rate allowed
+   * @param burst             the number of requests allowed at once after a quiet period
+   */
+  public record Limit(@DefaultValue("100") double requestsPerSecond,
+                      @DefaultValue("200") int burst) {
+
+  }
+}
@@ -0,0 +1,50 @@
+package com.techdelity.identitye2e.demo.library.config;
+
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+
+/**
+ * R2DBC database access for the reactive profile.
+ * <p>
+ * The connection pool is deliberately not a bean. Spring Boot stops configuring the JDBC
+ * DataSource when a ConnectionFactory bean exists, and JPA is still needed for the schema and the
+ * rest of the library, so only the {@link DatabaseClient} is exposed.
+ */
+@Configuration
+@Profile("reactive")
+public class ReactiveDatabaseConfig implements DisposableBean {
+
+  private final ConnectionPool connectionPool;
+
+  public ReactiveDatabaseConfig(@Value("${library.reactive.r2dbc-url}") String url,
+      @Value("${spring.datasource.username:sa}") String username,
+      @Value("${spring.datasource.password:}") String password,
+      @Value("${library.reactive.pool-size:10}") int poolSize) {
+    ConnectionFactoryOptions options = ConnectionFactoryOptions.parse(url).mutate()
+        .option(ConnectionFactoryOptions.USER, username)
+        .option(ConnectionFactoryOptions.PASSWORD, password)
+        .build();
+    this.connectionPool = new ConnectionPool(
+        ConnectionPoolConfiguration.builder(ConnectionFactories.get(options))
+            .maxSize(poolSize)
+            .build());
+  }
+
+  @Bean
+  public DatabaseClient databaseClient() {
+    return DatabaseClient.create(connectionPool);
+  }
+
+  @Override
+  public void destroy() {
+    connectionPool.dispose();
+  }
+}
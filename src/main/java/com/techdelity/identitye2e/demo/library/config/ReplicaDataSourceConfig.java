@@ -0,0 +1,105 @@
+package com.techdelity.identitye2e.demo.library.config;
+
+import com.techdelity.identitye2e.demo.library.replica.ReplicaLagMonitor;
+import com.techdelity.identitye2e.demo.library.replica.ReplicaRoutingDataSource;
+import com.techdelity.identitye2e.demo.library.replica.SimulatedReplication;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import javax.sql.DataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+/**
+ * Reads from a replica of the database when {@code library.datasource.replica.url} is set.
+ * <p>
+ * The primary keeps the {@code spring.datasource} settings and the replica gets a pool of its own,
+ * configured under {@code library.datasource.replica.hikari}. Book lookups are sent to the replica
+ * while it trails the primary by no more than {@code library.datasource.replica.max-lag}, and
+ * everything else, including all changes, to the primary. Setting
+ * {@code library.datasource.replica.simulated-lag} keeps an H2 replica in step with an H2 primary
+ * that far behind, to try this out locally.
+ * <p>
+ * Requires {@code spring.jpa.open-in-view=false}: with it, a request holds the connection of its
+ * first query until it ends, so its lookups couldn't move between the primary and the replica.
+ */
+@Configuration
+@ConditionalOnJpaStore
+@Profile("!reactive")
+@ConditionalOnProperty(name = "library.datasource.replica.url")
+public class ReplicaDataSourceConfig {
+
+  @Bean
+  @ConfigurationProperties("spring.datasource.hikari")
+  public HikariDataSource primaryDataSource(DataSourceProperties properties,
+      @Value("${spring.jpa.open-in-view:true}") boolean openInView) {
+    if (openInView) {
+      throw new IllegalStateException(
+          "Replica reads need spring.jpa.open-in-view=false, see ReplicaDataSourceConfig");
+    }
+    HikariDataSource dataSource = properties.initializeDataSourceBuilder()
+        .type(HikariDataSource.class)
+        .build();
+    dataSource.setPoolName("primary");
+    return dataSource;
+  }
+
+  @Bean
+  @ConfigurationProperties("library.datasource.replica.hikari")
+  public HikariDataSource replicaDataSource(DataSourceProperties properties,
+      @Value("${library.datasource.replica.url}") String url,
+      @Value("${library.datasource.replica.username:}") String username,
+      @Value("${library.datasource.replica.password:}") String password) {
+    HikariDataSource dataSource = DataSourceBuilder.create()
+        .type(HikariDataSource.class)
+        .url(url)
+        .username(username.isEmpty() ? properties.determineUsername() : username)
+        .password(password.isEmpty() ? properties.determinePassword() : password)
+        .build();
+    dataSource.setPoolName("replica");
+    dataSource.setReadOnly(true);
+    return dataSource;
+  }
+
+  @Bean
+  public ReplicaLagMonitor replicaLagMonitor(
+      @Qualifier("primaryDataSource") DataSource primary,
+      @Qualifier("replicaDataSource") DataSource replica,
+      @Value("${library.datasource.replica.max-lag:1s}") Duration maxLag,
+      @Value("${library.datasource.replica.heartbeat-interval:100ms}") Duration heartbeatInterval,
+      MeterRegistry meterRegistry) {
+    return new ReplicaLagMonitor(primary, replica, maxLag, heartbeatInterval, meterRegistry);
+  }
+
+  @Bean
+  @ConditionalOnProperty(name = "library.datasource.replica.simulated-lag")
+  public SimulatedReplication simulatedReplication(
+      @Qualifier("primaryDataSource") DataSource primary,
+      @Qualifier("replicaDataSource") DataSource replica,
+      @Value("${library.datasource.replica.simulated-lag}") Duration lag,
+      @Value("${library.datasource.replica.heartbeat-interval:100ms}") Duration interval) {
+    return new SimulatedReplication(primary, replica, lag, interval);
+  }
+
+  /**
+   * The data source used by JPA and everything else. Connections are only taken from a pool when
+   * first used, by when the transaction and whether it reads from the replica are known.
+   */
+  @Bean
+  @Primary
+  public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primary,
+      @Qualifier("replicaDataSource") DataSource replica, ReplicaLagMonitor lagMonitor,
+      MeterRegistry meterRegistry) {
+    return new LazyConnectionDataSourceProxy(
+        new ReplicaRoutingDataSource(primary, replica, lagMonitor, meterRegistry));
+  }
+}
@@ -0,0 +1,57 @@
+package com.techdelity.identitye2e.demo.library.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.sql.DataSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.info.Info;
+import org.springframework.boot.actuate.info.InfoContributor;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+/**
+ * Adds the request threading mode and connection pool size to /actuator/info, so it is possible
+ * to check whether virtual threads are actually in use and how many can reach the database at once.
+ */
+@Component
+public class ThreadingInfoContributor implements InfoContributor {
+
+  private final Environment environment;
+  private final DataSource dataSource;
+
+  @Autowired
+  public ThreadingInfoContributor(Environment environment, DataSource dataSource) {
+    this.environment = environment;
+    this.dataSource = dataSource;
+  }
+
+  @Override
+  public void contribute(Info.Builder builder) {
+    Map<String, Object> threading = new LinkedHashMap<>();
+    threading.put("virtualThreads", Threading.VIRTUAL.isActive(environment));
+    threading.put("javaVersion", Runtime.version().feature());
+    threading.put("tomcatMaxThreads", environment.getProperty("server.tomcat.threads.max"));
+    threading.put("pinnedTracing", System.getProperty("jdk.tracePinnedThreads", "off"));
+    HikariDataSource hikari = hikari();
+    if (hikari != null) {
+      threading.put("connectionPoolSize", hikari.getMaximumPoolSize());
+      threading.put("connectionTimeoutMs", hikari.getConnectionTimeout());
+    }
+    builder.withDetail("threading", threading);
+  }
+
+  /**
+   * @return the pool behind the data source, the primary's when reads go to a replica
+   */
+  private HikariDataSource hikari() {
+    try {
+      return dataSource.isWrapperFor(HikariDataSource.class)
+          ? dataSource.unwrap(HikariDataSource.class) : null;
+    } catch (SQLException ex) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,79 @@
+package com.techdelity.identitye2e.demo.library.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reports virtual threads that are pinned to their carrier thread while blocked, for example by
+ * blocking inside a synchronized block. Pinned threads hold a carrier, so enough of them stop
+ * every other virtual thread from running.
+ * <p>
+ * Pinning is read from the JFR jdk.VirtualThreadPinned event. Each pin is recorded in the
+ * library.virtual.pinned timer and logged with the frame that blocked. Only active when virtual
+ * threads are enabled.
+ */
+@Component
+@ConditionalOnThreading(Threading.VIRTUAL)
+public class VirtualThreadPinningMonitor implements SmartLifecycle {
+
+  private static final Logger LOG = LoggerFactory.getLogger(VirtualThreadPinningMonitor.class);
+  private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+  private final Timer pinned;
+  private final Duration threshold;
+  private RecordingStream recording;
+
+  @Autowired
+  public VirtualThreadPinningMonitor(MeterRegistry meterRegistry,
+      @Value("${library.threads.pinned-threshold:20ms}") Duration threshold) {
+    this.pinned = Timer.builder("library.virtual.pinned")
+        .description("Time virtual threads spent pinned to their carrier thread")
+        .register(meterRegistry);
+    this.threshold = threshold;
+  }
+
+  @Override
+  public synchronized void start() {
+    recording = new RecordingStream();
+    recording.enable(PINNED_EVENT).withThreshold(threshold).withStackTrace();
+    recording.onEvent(PINNED_EVENT, this::onPinned);
+    recording.startAsync();
+  }
+
+  @Override
+  public synchronized void stop() {
+    if (recording != null) {
+      recording.close();
+      recording = null;
+    }
+  }
+
+  @Override
+  public synchronized boolean isRunning() {
+    return recording != null;
+  }
+
+  private void onPinned(RecordedEvent event) {
+    pinned.record(event.getDuration());
+    String frame = event.getStackTrace() == null || event.getStackTrace().getFrames().isEmpty()
+        ? "unknown" : describe(event.getStackTrace().getFrames().get(0));
+    LOG.warn("Virtual thread pinned for {} ms at {}", event.getDuration().toMillis(), frame);
+  }
+
+  private static String describe(RecordedFrame frame) {
+    return frame.getMethod().getType().getName() + "." + frame.getMethod().getName() + ":"
+        + frame.getLineNumber();
+  }
+}
@@ -0,0 +1,38 @@
+package com.techdelity.identitye2e.demo.library.config;
+
+import com.techdelity.identitye2e.demo.library.ratelimit.RateLimitInterceptor;
+import com.techdelity.identitye2e.demo.library.replica.ReadYourWritesInterceptor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Servlet web configuration, rate limits and load sheds the book API, and lets clients read their
+ * own writes when reads are served by a replica
+ */
+@Configuration
+@Profile("!reactive")
+@EnableConfigurationProperties(RateLimitProperties.class)
+public class WebConfig implements WebMvcConfigurer {
+
+  private final RateLimitInterceptor rateLimitInterceptor;
+  private final ObjectProvider<ReadYourWritesInterceptor> readYourWritesInterceptor;
+
+  @Autowired
+  public WebConfig(RateLimitInterceptor rateLimitInterceptor,
+      ObjectProvider<ReadYourWritesInterceptor> readYourWritesInterceptor) {
+    this.rateLimitInterceptor = rateLimitInterceptor;
+    this.readYourWritesInterceptor = readYourWritesInterceptor;
+  }
+
+  @Override
+  public void addInterceptors(InterceptorRegistry registry) {
+    registry.addInterceptor(rateLimitInterceptor).addPathPatterns("/api/**");
+    readYourWritesInterceptor.ifAvailable(
+        interceptor -> registry.addInterceptor(interceptor).addPathPatterns("/api/**"));
+  }
+}
@@ -0,0 +1,60 @@
+package com.techdelity.identitye2e.demo.library.controller;
+
+import com.techdelity.identitye2e.demo.library.config.ConditionalOnJpaStore;
+import com.techdelity.identitye2e.demo.library.model.StockBatch;
+import com.techdelity.identitye2e.demo.library.model.StockBatchReport;
+import com.techdelity.identitye2e.demo.library.ratelimit.RateLimited;
+import com.techdelity.identitye2e.demo.library.service.BatchStockService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@ConditionalOnJpaStore
+@ConditionalOnProperty(name = "library.stock.mode", havingValue = "database", matchIfMissing = true)
+@RequestMapping("api/book")
+@Profile("!reactive")
+public class BatchStockController {
+
+  private final BatchStockService batchStockService;
+
+  @Autowired
+  public BatchStockController(BatchStockService batchStockService) {
+    this.batchStockService = batchStockService;
+  }
+
+  @Operation(summary = "Borrow several books", description = """
+      Borrow copies of several books in one transaction. In ALL_OR_NOTHING mode (the default)
+      nothing is borrowed if any item can't be, in BEST_EFFORT mode the items that can be borrowed
+      are. The report has the result of every item.
+      """)
+  @ApiResponses(value = {
+      @ApiResponse(responseCode = "200", description = "Report with the result of every item"),
+      @ApiResponse(responseCode = "400", description = "Empty or oversized batch")})
+  @RateLimited(value = "batch", latencySignal = false)
+  @PostMapping("/borrow")
+  public ResponseEntity<StockBatchReport> borrowBooks(@RequestBody StockBatch batch) {
+    return ResponseEntity.ok(batchStockService.borrowBooks(batch));
+  }
+
+  @Operation(summary = "Return several books", description = """
+      Return copies of several books in one transaction, in ALL_OR_NOTHING or BEST_EFFORT mode.
+      The report has the result of every item.
+      """)
+  @ApiResponses(value = {
+      @ApiResponse(responseCode = "200", description = "Report with the result of every item"),
+      @ApiResponse(responseCode = "400", description = "Empty or oversized batch")})
+  @RateLimited(value = "batch", latencySignal = false)
+  @PostMapping("/return")
+  public ResponseEntity<StockBatchReport> returnBooks(@RequestBody StockBatch batch) {
+    return ResponseEntity.ok(batchStockService.returnBooks(batch));
+  }
+}
@@ -0,0 +1,75 @@
+package com.techdelity.identitye2e.demo.library.controller;
+
+import com.techdelity.identitye2e.demo.library.exception.BookVersionConflictException;
+import com.techdelity.identitye2e.demo.library.model.Book;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.OptionalInt;
+import org.springframework.util.DigestUtils;
+
+/**
+ * Strong entity tags for book responses.
+ * <p>
+ * Every change to a book moves it on a version, so the isbn and version identify the exact
+ * representation of a book and a tag only has to be compared, never built from the response body.
+ */
+final class BookETags {
+
+  private BookETags() {
+  }
+
+  /**
+   * @return the entity tag of a single book, the encoded isbn and the version
+   */
+  static String of(String isbn, int version) {
+    return "\"" + URLEncoder.encode(isbn, StandardCharsets.UTF_8) + ":" + version + "\"";
+  }
+
+  /**
+   * Read the version a conditional change expects from an If-Match header. Weak tags never match,
+   * and if the header holds more than one tag of the book the first is used.
+   *
+   * @param isbn    the isbn of the book being changed
+   * @param ifMatch the If-Match header, null if there is none
+   * @return the expected version, empty if the change is unconditional
+   * @throws BookVersionConflictException if the header has no tag of the book
+   */
+  static OptionalInt expectedVersion(String isbn, String ifMatch) {
+    if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+      return OptionalInt.empty();
+    }
+    String prefix = "\"" + URLEncoder.encode(isbn, StandardCharsets.UTF_8) + ":";
+    for (String tag : ifMatch.split(",")) {
+      tag = tag.trim();
+      if (tag.startsWith(prefix) && tag.endsWith("\"") && tag.length() > prefix.length() + 1) {
+        try {
+          return OptionalInt.of(
+              Integer.parseInt(tag.substring(prefix.length(), tag.length() - 1)));
+        } catch (NumberFormatException ex) {
+          // Not one of our tags, keep looking
+        }
+      }
+    }
+    throw new BookVersionConflictException();
+  }
+
+  /**
+   * @return the entity tag of a book
+   */
+  static String of(Book book) {
+    return of(book.getIsbn(), book.getVersion());
+  }
+
+  /**
+   * @return the entity tag of a list of books, a digest of the isbn and version of each in order
+   */
+  static String of(List<Book> books) {
+    StringBuilder versions = new StringBuilder(books.size() * 24);
+    for (Book book : books) {
+      versions.append(book.getIsbn()).append('\n').append(book.getVersion()).append('\n');
+    }
+    byte[] bytes = versions.toString().getBytes(StandardCharsets.UTF_8);
+    return "\"" + DigestUtils.md5DigestAsHex(bytes) + "\"";
+  }
+}
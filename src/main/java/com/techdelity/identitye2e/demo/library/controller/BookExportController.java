@@ -0,0 +1,92 @@
+package com.techdelity.identitye2e.demo.library.controller;
+
+import com.techdelity.identitye2e.demo.library.config.ConditionalOnJpaStore;
+import com.techdelity.identitye2e.demo.library.exception.InvalidRequestException;
+import com.techdelity.identitye2e.demo.library.model.Isbn;
+import com.techdelity.identitye2e.demo.library.ratelimit.RateLimited;
+import com.techdelity.identitye2e.demo.library.service.BookExportService;
+import com.techdelity.identitye2e.demo.library.service.ImportFormat;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+@RestController
+@ConditionalOnJpaStore
+@RequestMapping("api/book")
+@Profile("!reactive")
+public class BookExportController {
+
+  private final BookExportService bookExportService;
+
+  @Autowired
+  public BookExportController(BookExportService bookExportService) {
+    this.bookExportService = bookExportService;
+  }
+
+  @Operation(summary = "Export the catalogue", description = """
+      Stream every book in ISBN order as NDJSON (one book object per line) or as CSV with a header
+      row, in the formats read by the import. Pass the last ISBN received as after to carry on from
+      where an export stopped, and limit to export at most that many books. The response is gzip
+      compressed if the request accepts it.
+      """)
+  @ApiResponses(value = {
+      @ApiResponse(responseCode = "200", description = "The books, streamed"),
+      @ApiResponse(responseCode = "400", description = "Unknown format, negative limit or invalid ISBN")})
+  @RateLimited("export")
+  @GetMapping(value = "/export", produces = {"application/x-ndjson", "text/csv"})
+  public ResponseEntity<StreamingResponseBody> exportBooks(
+      @RequestParam(defaultValue = "ndjson") String format,
+      @RequestParam(required = false) String after,
+      @RequestParam(defaultValue = "0") int limit,
+      @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+    ImportFormat exportFormat = parseFormat(format);
+    if (limit < 0) {
+      throw new InvalidRequestException("Limit must not be negative");
+    }
+    String afterIsbn = after == null || after.isEmpty() ? after : Isbn.normalize(after);
+    boolean gzip = acceptEncoding != null
+        && acceptEncoding.toLowerCase(Locale.ROOT).contains("gzip");
+
+    StreamingResponseBody body = out -> {
+      if (gzip) {
+        GZIPOutputStream compressed = new GZIPOutputStream(out, 8192);
+        bookExportService.exportBooks(compressed, exportFormat, afterIsbn, limit);
+        compressed.finish();
+      } else {
+        bookExportService.exportBooks(out, exportFormat, afterIsbn, limit);
+      }
+    };
+    ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+        .contentType(exportFormat.getMediaType())
+        .cacheControl(CacheControl.noStore())
+        .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+        .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+            .filename("books." + exportFormat.name().toLowerCase(Locale.ROOT)).build().toString());
+    if (gzip) {
+      response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+    }
+    return response.body(body);
+  }
+
+  private static ImportFormat parseFormat(String format) {
+    try {
+      return ImportFormat.valueOf(format.toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException ex) {
+      throw new InvalidRequestException("Unknown export format " + format);
+    }
+  }
+}
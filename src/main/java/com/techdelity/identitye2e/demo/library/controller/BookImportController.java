@@ -0,0 +1,50 @@
+package com.techdelity.identitye2e.demo.library.controller;
+
+import com.techdelity.identitye2e.demo.library.config.ConditionalOnJpaStore;
+import com.techdelity.identitye2e.demo.library.model.ImportReport;
+import com.techdelity.identitye2e.demo.library.ratelimit.RateLimited;
+import com.techdelity.identitye2e.demo.library.service.BookImportService;
+import com.techdelity.identitye2e.demo.library.service.ImportFormat;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import java.io.IOException;
+import java.io.InputStream;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@ConditionalOnJpaStore
+@RequestMapping("api/book")
+@Profile("!reactive")
+public class BookImportController {
+
+  private final BookImportService bookImportService;
+
+  @Autowired
+  public BookImportController(BookImportService bookImportService) {
+    this.bookImportService = bookImportService;
+  }
+
+  @Operation(summary = "Bulk import books", description = """
+      Import books from an NDJSON feed (one book object per line) or a CSV feed with a header row
+      of isbn,title,author,publicationYear,copiesAvailable. The feed is streamed and saved in batches.
+      """)
+  @ApiResponses(value = {
+      @ApiResponse(responseCode = "200", description = "Import report with the result of every row"),
+      @ApiResponse(responseCode = "415", description = "Unsupported feed format")})
+  @RateLimited(value = "import", latencySignal = false)
+  @PostMapping(value = "/import", consumes = {"application/x-ndjson", "text/csv"})
+  public ResponseEntity<ImportReport> importBooks(
+      @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType, InputStream feed)
+      throws IOException {
+    return ResponseEntity.ok(
+        bookImportService.importBooks(feed, ImportFormat.fromContentType(contentType)));
+  }
+}
@@ -0,0 +1,103 @@
+package com.techdelity.identitye2e.demo.library.controller;
+
+import static com.techdelity.identitye2e.demo.library.config.CacheConfig.BOOK_JSON_CACHE;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.techdelity.identitye2e.demo.library.cache.BookJson;
+import com.techdelity.identitye2e.demo.library.model.Book;
+import com.techdelity.identitye2e.demo.library.model.Isbn;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Optional;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+/**
+ * Book responses serialized once and written as bytes.
+ * <p>
+ * The JSON of a book is cached by packed isbn, with the version it was written from, in a cache
+ * evicted with the book cache on every change. Lookups of an unchanged book then skip both the
+ * library and Jackson. Lists of books are streamed through a generator one book at a time, taking
+ * the cached JSON of any book still at the same version. The books themselves are still passed in
+ * as a list, built before anything is written, since the response's status and ETag depend on all
+ * of them.
+ */
+@Component
+@Profile("!reactive")
+public class BookJsonCache {
+
+  private final Cache cache;
+  private final ObjectWriter bookWriter;
+  private final JsonFactory jsonFactory;
+
+  @Autowired
+  public BookJsonCache(CacheManager cacheManager, ObjectMapper objectMapper) {
+    this.cache = cacheManager.getCache(BOOK_JSON_CACHE);
+    this.bookWriter = objectMapper.writerFor(Book.class);
+    this.jsonFactory = objectMapper.getFactory();
+  }
+
+  /**
+   * @return the cached JSON of a book, empty if it isn't cached
+   */
+  public Optional<BookJson> find(String isbn) {
+    return Optional.ofNullable(cache.get(Isbn.pack(isbn), BookJson.class));
+  }
+
+  /**
+   * Serialize a book and cache its JSON
+   *
+   * @param book the book, as loaded by the library
+   * @return the JSON of the book
+   */
+  public BookJson put(Book book) {
+    BookJson json = serialize(book);
+    cache.put(Isbn.pack(book.getIsbn()), json);
+    return json;
+  }
+
+  /**
+   * Write books as a JSON array. Only the JSON is streamed, so the response isn't built in memory
+   * as one string.
+   *
+   * @param books the books
+   * @param out   where to write them, left open
+   */
+  public void writeAll(List<Book> books, OutputStream out) throws IOException {
+    try (JsonGenerator generator = jsonFactory.createGenerator(out)
+        .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+      generator.writeStartArray();
+      for (Book book : books) {
+        BookJson cached = cache.get(Isbn.pack(book.getIsbn()), BookJson.class);
+        if (cached != null && cached.version() == book.getVersion()) {
+          generator.writeRawValue(cached.json());
+        } else {
+          // Not cached, a book in a list may have been read before a change that has been evicted
+          generator.writeObject(book);
+        }
+      }
+      generator.writeEndArray();
+    }
+  }
+
+  private BookJson serialize(Book book) {
+    try {
+      SerializedString json = new SerializedString(bookWriter.writeValueAsString(book));
+      // Encoded once here rather than by the first response that writes it
+      json.asUnquotedUTF8();
+      return new BookJson(book.getVersion(), json);
+    } catch (JsonProcessingException ex) {
+      throw new UncheckedIOException("Cannot serialize book " + book.getIsbn(), ex);
+    }
+  }
+}
@@ -0,0 +1,46 @@
+package com.techdelity.identitye2e.demo.library.controller;
+
+import com.techdelity.identitye2e.demo.library.config.ConditionalOnJpaStore;
+import com.techdelity.identitye2e.demo.library.model.Book;
+import com.techdelity.identitye2e.demo.library.ratelimit.RateLimited;
+import com.techdelity.identitye2e.demo.library.search.BookSearchService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import java.util.List;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@ConditionalOnJpaStore
+@RequestMapping("api/book")
+@Profile("!reactive")
+public class BookSearchController {
+
+  private final BookSearchService bookSearchService;
+
+  @Autowired
+  public BookSearchController(BookSearchService bookSearchService) {
+    this.bookSearchService = bookSearchService;
+  }
+
+  @Operation(summary = "Search books", description = "Full text search of book titles and authors, best match first")
+  @ApiResponses(value = {
+      @ApiResponse(responseCode = "200", description = "Matching books"),
+      @ApiResponse(responseCode = "204", description = "No matching books"),
+      @ApiResponse(responseCode = "400", description = "Query has no words to search for")})
+  @RateLimited("search")
+  @GetMapping("/search")
+  public ResponseEntity<List<Book>> search(@RequestParam("q") String query,
+      @RequestParam(defaultValue = "20") int limit) {
+    List<Book> results = bookSearchService.search(query, limit);
+    return ResponseEntity.status(results.isEmpty() ? HttpStatus.NO_CONTENT : HttpStatus.OK)
+        .body(results);
+  }
+}
@@ -0,0 +1,47 @@
+package com.techdelity.identitye2e.demo.library.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import java.util.Map;
+import java.util.TreeMap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("api/cache")
+public class CacheStatsController {
+
+  private final CacheManager cacheManager;
+
+  @Autowired
+  public CacheStatsController(CacheManager cacheManager) {
+    this.cacheManager = cacheManager;
+  }
+
+  @Operation(summary = "Cache statistics", description = "Hit, miss and eviction counters for each cache")
+  @GetMapping("/stats")
+  public ResponseEntity<Map<String, CacheStatistics>> getCacheStats() {
+    Map<String, CacheStatistics> stats = new TreeMap<>();
+    for (String name : cacheManager.getCacheNames()) {
+      if (cacheManager.getCache(name) instanceof CaffeineCache cache) {
+        var nativeCache = cache.getNativeCache();
+        var cacheStats = nativeCache.stats();
+        stats.put(name, new CacheStatistics(nativeCache.estimatedSize(), cacheStats.hitCount(),
+            cacheStats.missCount(), cacheStats.evictionCount(), cacheStats.hitRate()));
+      }
+    }
+    return ResponseEntity.ok(stats);
+  }
+
+  /**
+   * Point in time statistics for a single cache
+   */
+  public record CacheStatistics(long size, long hits, long misses, long evictions, double hitRate) {
+
+  }
+
+}
@@ -0,0 +1,152 @@
+package com.techdelity.identitye2e.demo.library.controller;
+
+import com.techdelity.identitye2e.demo.library.feed.ChangeFeed;
+import com.techdelity.identitye2e.demo.library.model.ChangeBatch;
+import com.techdelity.identitye2e.demo.library.ratelimit.RateLimited;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+@RestController
+@RequestMapping("api/book")
+@Profile("!reactive")
+public class ChangeFeedController {
+
+  private final ChangeFeed changeFeed;
+  private final int maxBatch;
+  private final Duration maxWait;
+  private final Executor executor;
+
+  @Autowired
+  public ChangeFeedController(ChangeFeed changeFeed,
+      @Qualifier("applicationTaskExecutor") Executor executor,
+      @Value("${library.changes.max-batch:500}") int maxBatch,
+      @Value("${library.changes.max-wait:30s}") Duration maxWait) {
+    this.changeFeed = changeFeed;
+    this.maxBatch = maxBatch;
+    this.maxWait = maxWait;
+    this.executor = executor;
+  }
+
+  @Operation(summary = "Read book changes", description = """
+      Long poll for the changes to books after an offset, oldest first. Returns at once if there
+      are changes, otherwise waits up to wait seconds for one. Pass the nextOffset of the response
+      as after to read on. If truncated is true some changes were missed and books kept by the
+      client should be reloaded.
+      """)
+  @ApiResponses(value = {
+      @ApiResponse(responseCode = "200", description = "The changes, which may be none")})
+  @RateLimited("changes")
+  @GetMapping("/changes")
+  public DeferredResult<ChangeBatch> readChanges(
+      @RequestParam(defaultValue = "" + ChangeFeed.OLDEST) long after,
+      @RequestParam(defaultValue = "500") int limit,
+      @RequestParam(defaultValue = "30") long wait) {
+    int max = batchSize(limit);
+    long waitMillis = Math.min(wait, maxWait.toSeconds()) * 1000;
+    if (waitMillis <= 0) {
+      DeferredResult<ChangeBatch> result = new DeferredResult<>();
+      result.setResult(changeFeed.read(after, max));
+      return result;
+    }
+    DeferredResult<ChangeBatch> result = new DeferredResult<>(waitMillis);
+    CompletableFuture<ChangeBatch> changes = changeFeed.poll(after, max);
+    result.onTimeout(() -> {
+      changes.cancel(false);
+      result.setResult(changeFeed.read(after, max));
+    });
+    changes.thenAccept(result::setResult);
+    return result;
+  }
+
+  @Operation(summary = "Stream book changes", description = """
+      Server-Sent Events stream of the changes to books. Each event holds a batch of changes and
+      has the offset of the last one as its id, so a client that reconnects with Last-Event-ID
+      carries on where it stopped.
+      """)
+  @RateLimited("changes")
+  @GetMapping(value = "/changes/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public SseEmitter streamChanges(
+      @RequestParam(required = false) Long after,
+      @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId,
+      @RequestParam(defaultValue = "500") int limit) {
+    SseEmitter emitter = new SseEmitter();
+    Subscription subscription = new Subscription(emitter, batchSize(limit));
+    emitter.onCompletion(subscription::close);
+    emitter.onTimeout(subscription::close);
+    emitter.onError(error -> subscription.close());
+    subscription.sendAfter(
+        lastEventId != null ? lastEventId : after != null ? after : ChangeFeed.OLDEST);
+    return emitter;
+  }
+
+  private int batchSize(int limit) {
+    return Math.max(1, Math.min(limit, maxBatch));
+  }
+
+  /**
+   * Sends each batch of changes to a stream once there is one, then waits for the next. Batches
+   * are sent on the executor, so a stream catching up doesn't recurse on the request thread.
+   */
+  private final class Subscription {
+
+    private final SseEmitter emitter;
+    private final int max;
+    private final AtomicReference<CompletableFuture<ChangeBatch>> waiting =
+        new AtomicReference<>();
+    private volatile boolean closed;
+
+    Subscription(SseEmitter emitter, int max) {
+      this.emitter = emitter;
+      this.max = max;
+    }
+
+    void sendAfter(long after) {
+      CompletableFuture<ChangeBatch> changes = changeFeed.poll(after, max);
+      waiting.set(changes);
+      if (closed) {
+        changes.cancel(false);
+        return;
+      }
+      changes.thenAcceptAsync(this::send, executor);
+    }
+
+    void close() {
+      closed = true;
+      CompletableFuture<ChangeBatch> changes = waiting.get();
+      if (changes != null) {
+        changes.cancel(false);
+      }
+    }
+
+    private void send(ChangeBatch batch) {
+      try {
+        emitter.send(SseEmitter.event()
+            .id(Long.toString(batch.nextOffset()))
+            .name("changes")
+            .data(batch, MediaType.APPLICATION_JSON));
+      } catch (IOException ex) {
+        // The client has gone, the emitter completes itself
+        return;
+      }
+      sendAfter(batch.nextOffset());
+    }
+  }
+}
@@ -1,105 +1,302 @@
 package com.techdelity.identitye2e.demo.library.controller;
 
+import com.techdelity.identitye2e.demo.library.cache.BookJson;
+import com.techdelity.identitye2e.demo.library.exception.InvalidRequestException;
+import com.techdelity.identitye2e.demo.library.exception.NoBookCopiesRemainingToBorrowException;
 import com.techdelity.identitye2e.demo.library.model.Book;
+import com.techdelity.identitye2e.demo.library.model.BookLookup;
+import com.techdelity.identitye2e.demo.library.model.BookLookup.Result;
+import com.techdelity.identitye2e.demo.library.model.BookLookup.Status;
+import com.techdelity.identitye2e.demo.library.model.BookPage;
+import com.techdelity.identitye2e.demo.library.model.Isbn;
+import com.techdelity.identitye2e.demo.library.ratelimit.RateLimited;
+import com.techdelity.identitye2e.demo.library.reservation.ReservationQueue;
 import com.techdelity.identitye2e.demo.library.service.LibraryService;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.stream.Collectors;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.WebRequest;
 
 @RestController
 @RequestMapping("api/book")
+@Profile("!reactive")
 public class LibraryController {
 
   private final LibraryService libraryService;
+  private final BookJsonCache bookJsonCache;
+  private final ReservationQueue reservationQueue;
+  private final CacheControl bookCacheControl;
+  private final int maxLookupIsbns;
 
   @Autowired
-  public LibraryController(LibraryService libraryService) {
+  public LibraryController(LibraryService libraryService, BookJsonCache bookJsonCache,
+      ReservationQueue reservationQueue,
+      @Value("${library.http.book-max-age:0s}") Duration bookMaxAge,
+      @Value("${library.lookup.max-isbns:200}") int maxLookupIsbns) {
     this.libraryService = libraryService;
+    this.bookJsonCache = bookJsonCache;
+    this.reservationQueue = reservationQueue;
+    this.bookCacheControl = CacheControl.maxAge(bookMaxAge).mustRevalidate();
+    this.maxLookupIsbns = maxLookupIsbns;
   }
 
-  @Operation(summary = "Add a new book", description = "Add a new book to the library")
+  @Operation(summary = "Add a new book", description = """
+      Add a new book to the library. Here and in every other request the ISBN may be an ISBN-13 or
+      an ISBN-10, with or without hyphens, books are always returned with the ISBN-13 digits.
+      """)
   @ApiResponses(value = {
       @ApiResponse(responseCode = "201", description = "Successfully created new book"),
-      @ApiResponse(responseCode = "400", description = "Error creating new book")})
+      @ApiResponse(responseCode = "400", description = "Error creating new book, or invalid ISBN")})
   @PostMapping
   public ResponseEntity<String> addBook(@RequestBody Book book) {
+    book.setIsbn(Isbn.normalize(book.getIsbn()));
     libraryService.addBook(book);
     return ResponseEntity.status(HttpStatus.CREATED).body("Book successfully saved");
   }
 
-  @Operation(summary = "Delete book", description = "Remove a book from the library")
+  @Operation(summary = "Delete book", description = """
+      Remove a book from the library. With an If-Match header of the book's ETag the book is only
+      removed if it has not changed since.
+      """)
   @ApiResponses(value = {
       @ApiResponse(responseCode = "201", description = "Successfully deleted book"),
-      @ApiResponse(responseCode = "400", description = "Book not found")})
+      @ApiResponse(responseCode = "400", description = "Book not found"),
+      @ApiResponse(responseCode = "412", description = "Book has changed since the If-Match ETag")})
   @DeleteMapping("/{isbn}")
-  public ResponseEntity<String> removeBook(@PathVariable String isbn) {
-    libraryService.removeBook(isbn);
+  public ResponseEntity<String> removeBook(@PathVariable String isbn,
+      @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+    isbn = Isbn.normalize(isbn);
+    OptionalInt expectedVersion = BookETags.expectedVersion(isbn, ifMatch);
+    if (expectedVersion.isPresent()) {
+      libraryService.removeBook(isbn, expectedVersion.getAsInt());
+    } else {
+      libraryService.removeBook(isbn);
+    }
     return ResponseEntity.status(HttpStatus.OK).body("Book successfully saved");
   }
 
-  @Operation(summary = "Get a book by the ISBN", description = "Find a book in the library by the ISBN")
+  @Operation(summary = "Get a book by the ISBN", description = """
+      Find a book in the library by the ISBN. The response has an ETag of the book's version, send
+      it back in If-None-Match to get 304 Not Modified while the book is unchanged.
+      """)
+  @ApiResponses(value = {
+      @ApiResponse(responseCode = "200", description = "The book",
+          content = @Content(schema = @Schema(implementation = Book.class))),
+      @ApiResponse(responseCode = "304", description = "The book has not changed"),
+      @ApiResponse(responseCode = "404", description = "Book not found")})
   @GetMapping("/findByISBN/{isbn}")
-  public ResponseEntity<Book> getBookByIsbn(@PathVariable String isbn) {
-    return ResponseEntity.of(libraryService.findBookByISBN(isbn));
+  public ResponseEntity<byte[]> getBookByIsbn(@PathVariable String isbn, WebRequest request) {
+    isbn = Isbn.normalize(isbn);
+    Optional<BookJson> cached = bookJsonCache.find(isbn);
+    if (request.getHeader(HttpHeaders.IF_NONE_MATCH) != null) {
+      // Checked against the cached version, so an unchanged book is never loaded
+      Optional<Integer> version = cached.isPresent() ? cached.map(BookJson::version)
+          : libraryService.findBookVersion(isbn);
+      if (version.isPresent()) {
+        String eTag = BookETags.of(isbn, version.get());
+        if (request.checkNotModified(eTag)) {
+          return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag)
+              .cacheControl(bookCacheControl).build();
+        }
+      }
+    }
+    BookJson json = cached.orElse(null);
+    if (json == null) {
+      Optional<Book> book = libraryService.findBookByISBN(isbn);
+      if (book.isEmpty()) {
+        return ResponseEntity.notFound().build();
+      }
+      json = bookJsonCache.put(book.get());
+    }
+    // The cached bytes are copied straight to the response, the book isn't serialized again
+    return ResponseEntity.ok().eTag(BookETags.of(isbn, json.version()))
+        .cacheControl(bookCacheControl).contentType(MediaType.APPLICATION_JSON).body(json.bytes());
+  }
+
+  @Operation(summary = "Get several books by ISBN", description = """
+      Find several books in one request, such as the books on a page of the catalogue. Books are
+      taken from the cache where they can be and the rest are read with one query. There is a
+      result for every ISBN in request order, as it was given, with a NOT_FOUND status for books
+      that don't exist and for ISBNs that aren't valid.
+      """)
+  @ApiResponses(value = {
+      @ApiResponse(responseCode = "200", description = "The result of every ISBN"),
+      @ApiResponse(responseCode = "400", description = "No ISBNs or too many ISBNs")})
+  @RateLimited("find-by-isbns")
+  @GetMapping("/findByISBNs")
+  public ResponseEntity<BookLookup> getBooksByIsbn(@RequestParam("isbn") List<String> isbns) {
+    if (isbns.isEmpty()) {
+      throw new InvalidRequestException("At least one isbn is required");
+    }
+    if (isbns.size() > maxLookupIsbns) {
+      throw new InvalidRequestException(
+          "Cannot look up more than " + maxLookupIsbns + " isbns at once");
+    }
+    // Each isbn as requested and its normalized form, or null if it is not an isbn at all
+    Map<String, String> normalized = new LinkedHashMap<>();
+    isbns.forEach(isbn -> normalized.computeIfAbsent(isbn, LibraryController::normalizeOrNull));
+    Map<String, Book> books = libraryService.findBooksByISBN(
+        normalized.values().stream().filter(Objects::nonNull)
+            .collect(Collectors.toCollection(LinkedHashSet::new)));
+    List<Result> results = isbns.stream()
+        .map(isbn -> {
+          String key = normalized.get(isbn);
+          Book book = key == null ? null : books.get(key);
+          return book != null ? new Result(isbn, Status.FOUND, book)
+              : new Result(isbn, Status.NOT_FOUND, null);
+        })
+        .toList();
+    int found = (int) results.stream().filter(result -> result.status() == Status.FOUND).count();
+    return ResponseEntity.ok(new BookLookup(found, results.size() - found, results));
   }
 
   @Operation(summary = "Get a book by the ISBN", description = "Find a book in the library by the ISBN")
+  @ApiResponses(value = {
+      @ApiResponse(responseCode = "200", description = "The books by the author",
+          content = @Content(array = @ArraySchema(schema = @Schema(implementation = Book.class)))),
+      @ApiResponse(responseCode = "204", description = "No books by the author")})
+  @RateLimited("find-by-author")
   @GetMapping("/findByAuthor/{author}")
-  public ResponseEntity<List<Book>> getBookByAuthor(@PathVariable String author) {
+  public void getBookByAuthor(@PathVariable String author, ServletWebRequest request,
+      HttpServletResponse response) throws IOException {
+    // Still read as a whole list: the 204 and the tag over every version must be known before the
+    // first byte is written, and the list usually comes from the query cache without a query.
+    // Only the serializing is streamed.
     List<Book> results = libraryService.findBookByAuthor(author);
-    return ResponseEntity.status(results.isEmpty() ? HttpStatus.NO_CONTENT : HttpStatus.OK)
-        .body(results);
+    if (results.isEmpty()) {
+      response.setStatus(HttpStatus.NO_CONTENT.value());
+      return;
+    }
+    response.setHeader(HttpHeaders.CACHE_CONTROL, bookCacheControl.getHeaderValue());
+    // A matching If-None-Match gets 304 from the tag, without writing the books
+    if (request.checkNotModified(BookETags.of(results))) {
+      return;
+    }
+    // Written here rather than as a StreamingResponseBody, which would hand these short lists to
+    // another thread
+    response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+    bookJsonCache.writeAll(results, response.getOutputStream());
+  }
 
+  @Operation(summary = "Search books by author", description = """
+      Find books whose author starts with the given prefix, ignoring case, accents and punctuation.
+      Results are ordered by author then ISBN. Pass the nextCursor of a page to get the next page.
+      """)
+  @ApiResponses(value = {
+      @ApiResponse(responseCode = "200", description = "A page of matching books"),
+      @ApiResponse(responseCode = "204", description = "No more matching books"),
+      @ApiResponse(responseCode = "400", description = "Invalid prefix or cursor")})
+  @RateLimited("search-by-author")
+  @GetMapping("/searchByAuthor")
+  public ResponseEntity<BookPage> searchBooksByAuthor(@RequestParam String prefix,
+      @RequestParam(required = false) String cursor,
+      @RequestParam(defaultValue = "20") int limit) {
+    BookPage page = libraryService.findBooksByAuthorPrefix(prefix, cursor, limit);
+    return ResponseEntity.status(page.books().isEmpty() ? HttpStatus.NO_CONTENT : HttpStatus.OK)
+        .body(page);
   }
 
-  @Operation(summary = "Borrow a book by the ISBN", description = "Borrow a book")
+  @Operation(summary = "Borrow a book by the ISBN", description = """
+      Borrow a book. With an If-Match header of the book's ETag the book is only borrowed if it
+      has not changed since. The response has the ETag of the borrowed book. While reservations
+      of the book are waiting its copies are held for them and the borrow is refused.
+      """)
+  @ApiResponses(value = {
+      @ApiResponse(responseCode = "200", description = "The borrowed book"),
+      @ApiResponse(responseCode = "404", description = "Book not found"),
+      @ApiResponse(responseCode = "412", description = "Book has changed since the If-Match ETag")})
   @PostMapping("/borrow/{isbn}")
-  public ResponseEntity<Book> borrowBook(@PathVariable String isbn) {
-    return ResponseEntity.of(libraryService.borrowBook(isbn));
-
+  public ResponseEntity<Book> borrowBook(@PathVariable String isbn,
+      @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+    isbn = Isbn.normalize(isbn);
+    if (reservationQueue.isHeld(isbn)) {
+      // Any copy is held for the reservations waiting, the client should join them
+      throw new NoBookCopiesRemainingToBorrowException();
+    }
+    OptionalInt expectedVersion = BookETags.expectedVersion(isbn, ifMatch);
+    Optional<Book> book = expectedVersion.isPresent()
+        ? libraryService.borrowBook(isbn, expectedVersion.getAsInt())
+        : libraryService.borrowBook(isbn);
+    return book.map(borrowed -> ResponseEntity.ok().eTag(BookETags.of(borrowed)).body(borrowed))
+        .orElseGet(() -> ResponseEntity.notFound().build());
   }
 
-  @Operation(summary = "Return a book", description = "Return a borrowed a book")
+  @Operation(summary = "Return a book", description = """
+      Return a borrowed a book. With an If-Match header of the book's ETag the book is only
+      returned if it has not changed since.
+      """)
+  @ApiResponses(value = {
+      @ApiResponse(responseCode = "200", description = "Book returned"),
+      @ApiResponse(responseCode = "404", description = "Book not found"),
+      @ApiResponse(responseCode = "412", description = "Book has changed since the If-Match ETag")})
   @PostMapping("/return/{isbn}")
-  public ResponseEntity<String> returnBook(@PathVariable String isbn) {
-    libraryService.returnBook(isbn);
+  public ResponseEntity<String> returnBook(@PathVariable String isbn,
+      @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+    isbn = Isbn.normalize(isbn);
+    OptionalInt expectedVersion = BookETags.expectedVersion(isbn, ifMatch);
+    if (expectedVersion.isPresent()) {
+      libraryService.returnBook(isbn, expectedVersion.getAsInt());
+    } else {
+      libraryService.returnBook(isbn);
+    }
     return ResponseEntity.ok("Book returned");
-
   }
 
   @Operation(summary = "DEBUG Seed some books", description = """
       | ISBN               | Title                                        | Author                         | Publication Year | Copies |
       |--------------------|----------------------------------------------|--------------------------------|-------------------|--------|
-      | 978-1-61729-008-1  | Cracking the Coding Interview                 | Gayle Laakmann McDowell       | 2021              | 5      |
-      | 978-0-321-54573-0  | Elements of Programming Interviews            | Adnan Aziz                    | 2012              | 3      |
-      | 978-0-9961281-0-3  | System Design Interview – An Insider's Guide  | Alex Xu                       | 2020              | 4      |
+      | 978-1-61729-008-4  | Cracking the Coding Interview                 | Gayle Laakmann McDowell       | 2021              | 5      |
+      | 978-0-321-54573-2  | Elements of Programming Interviews            | Adnan Aziz                    | 2012              | 3      |
+      | 978-0-9961281-0-0  | System Design Interview – An Insider's Guide  | Alex Xu                       | 2020              | 4      |
       | 978-1-59327-000-1  | The Geek's Guide to Interviews                | T. D. Pankaj                  | 2021              | 5      |
       """)
   @PostMapping("/seed")
   public ResponseEntity<String> seedBooks() {
-    libraryService.addBook(
-        new Book("978-1-61729-008-1", "Cracking the Coding Interview", "Gayle Laakmann McDowell",
-            2021, 5));
-    libraryService.addBook(
-        new Book("978-0-321-54573-0", "Elements of Programming Interviews", "Adnan Aziz", 2012, 3));
-    libraryService.addBook(
-        new Book("978-0-9961281-0-3", "System Design Interview – An Insider's Guide", "Alex Xu",
-            2020, 4));
+    SeedBooks.books().forEach(libraryService::addBook);
 
     return ResponseEntity.ok("Books seeded");
 
   }
 
+  private static String normalizeOrNull(String isbn) {
+    try {
+      return Isbn.normalize(isbn);
+    } catch (IllegalArgumentException ex) {
+      return null;
+    }
+  }
+
 
 }
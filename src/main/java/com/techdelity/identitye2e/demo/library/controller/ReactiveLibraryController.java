@@ -0,0 +1,117 @@
+package com.techdelity.identitye2e.demo.library.controller;
+
+import com.techdelity.identitye2e.demo.library.model.Book;
+import com.techdelity.identitye2e.demo.library.model.Isbn;
+import com.techdelity.identitye2e.demo.library.service.ReactiveLibraryService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import java.time.Duration;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * The book API for the reactive profile, with the same endpoints and responses as
+ * {@link LibraryController}. Author results are streamed as they are read from the database, the
+ * status being sent once the first book has been read, so an author with no books gets 204.
+ */
+@RestController
+@RequestMapping("api/book")
+@Profile("reactive")
+public class ReactiveLibraryController {
+
+  private final ReactiveLibraryService libraryService;
+  private final CacheControl bookCacheControl;
+
+  @Autowired
+  public ReactiveLibraryController(ReactiveLibraryService libraryService,
+      @Value("${library.http.book-max-age:0s}") Duration bookMaxAge) {
+    this.libraryService = libraryService;
+    this.bookCacheControl = CacheControl.maxAge(bookMaxAge).mustRevalidate();
+  }
+
+  @Operation(summary = "Add a new book", description = "Add a new book to the library")
+  @ApiResponses(value = {
+      @ApiResponse(responseCode = "201", description = "Successfully created new book"),
+      @ApiResponse(responseCode = "400", description = "Error creating new book")})
+  @PostMapping
+  public Mono<ResponseEntity<String>> addBook(@RequestBody Book book) {
+    book.setIsbn(Isbn.normalize(book.getIsbn()));
+    return libraryService.addBook(book)
+        .thenReturn(ResponseEntity.status(HttpStatus.CREATED).body("Book successfully saved"));
+  }
+
+  @Operation(summary = "Delete book", description = "Remove a book from the library")
+  @ApiResponses(value = {
+      @ApiResponse(responseCode = "201", description = "Successfully deleted book"),
+      @ApiResponse(responseCode = "400", description = "Book not found")})
+  @DeleteMapping("/{isbn}")
+  public Mono<ResponseEntity<String>> removeBook(@PathVariable String isbn) {
+    isbn = Isbn.normalize(isbn);
+    return libraryService.removeBook(isbn)
+        .thenReturn(ResponseEntity.status(HttpStatus.OK).body("Book successfully saved"));
+  }
+
+  @Operation(summary = "Get a book by the ISBN", description = "Find a book in the library by the ISBN")
+  @GetMapping("/findByISBN/{isbn}")
+  public Mono<ResponseEntity<Book>> getBookByIsbn(@PathVariable String isbn) {
+    isbn = Isbn.normalize(isbn);
+    // A matching If-None-Match gets 304 from the tag, without writing the book
+    return libraryService.findBookByISBN(isbn)
+        .map(book -> ResponseEntity.ok().eTag(BookETags.of(book)).cacheControl(bookCacheControl)
+            .body(book))
+        .defaultIfEmpty(ResponseEntity.notFound().build());
+  }
+
+  @Operation(summary = "Get books by the author", description = "Stream the books in the library by the author")
+  @GetMapping("/findByAuthor/{author}")
+  public Mono<ResponseEntity<Flux<Book>>> getBookByAuthor(@PathVariable String author) {
+    // The books are left running once the status is known, to be streamed as the body
+    return libraryService.findBookByAuthor(author)
+        .switchOnFirst((first, books) -> {
+          if (first.isOnError()) {
+            return Mono.error(first.getThrowable());
+          }
+          return Mono.just(first.hasValue()
+              ? ResponseEntity.ok(books) : ResponseEntity.noContent().<Flux<Book>>build());
+        }, false)
+        .singleOrEmpty();
+  }
+
+  @Operation(summary = "Borrow a book by the ISBN", description = "Borrow a book")
+  @PostMapping("/borrow/{isbn}")
+  public Mono<ResponseEntity<Book>> borrowBook(@PathVariable String isbn) {
+    isbn = Isbn.normalize(isbn);
+    return libraryService.borrowBook(isbn)
+        .map(ResponseEntity::ok)
+        .defaultIfEmpty(ResponseEntity.notFound().build());
+  }
+
+  @Operation(summary = "Return a book", description = "Return a borrowed a book")
+  @PostMapping("/return/{isbn}")
+  public Mono<ResponseEntity<String>> returnBook(@PathVariable String isbn) {
+    isbn = Isbn.normalize(isbn);
+    return libraryService.returnBook(isbn).thenReturn(ResponseEntity.ok("Book returned"));
+  }
+
+  @Operation(summary = "DEBUG Seed some books", description = "Add the seed books to the library")
+  @PostMapping("/seed")
+  public Mono<ResponseEntity<String>> seedBooks() {
+    return Flux.fromIterable(SeedBooks.books())
+        .concatMap(libraryService::addBook)
+        .then(Mono.just(ResponseEntity.ok("Books seeded")));
+  }
+}
@@ -0,0 +1,75 @@
+package com.techdelity.identitye2e.demo.library.controller;
+
+import com.techdelity.identitye2e.demo.library.model.Book;
+import com.techdelity.identitye2e.demo.library.model.Isbn;
+import com.techdelity.identitye2e.demo.library.ratelimit.RateLimited;
+import com.techdelity.identitye2e.demo.library.reservation.ReservationQueue;
+import com.techdelity.identitye2e.demo.library.reservation.ReservationQueue.Reservation;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import java.time.Duration;
+import java.util.Optional;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+
+@RestController
+@RequestMapping("api/book")
+@Profile("!reactive")
+public class ReservationController {
+
+  private final ReservationQueue reservationQueue;
+  private final Duration maxWait;
+
+  @Autowired
+  public ReservationController(ReservationQueue reservationQueue,
+      @Value("${library.reservations.max-wait:5m}") Duration maxWait) {
+    this.reservationQueue = reservationQueue;
+    this.maxWait = maxWait;
+  }
+
+  @Operation(summary = "Reserve a book", description = """
+      Borrow a book, waiting for a copy if none are left instead of retrying. Reservations of a
+      book are granted in the order they were made, each as soon as a copy is returned. Waits up
+      to wait seconds, a reservation that has not been granted by then is dropped. A granted
+      reservation has the borrowed book and its ETag, as a borrow does.
+      """)
+  @ApiResponses(value = {
+      @ApiResponse(responseCode = "200", description = "The borrowed book"),
+      @ApiResponse(responseCode = "204", description = "No copy was free before the wait ran out"),
+      @ApiResponse(responseCode = "404", description = "Book not found"),
+      @ApiResponse(responseCode = "409", description = "No copies left and the queue is full")})
+  @RateLimited("reserve")
+  @PostMapping("/reserve/{isbn}")
+  public DeferredResult<ResponseEntity<Book>> reserveBook(@PathVariable String isbn,
+      @RequestParam(defaultValue = "60") long wait) {
+    isbn = Isbn.normalize(isbn);
+    long waitMillis = Math.min(wait, maxWait.toSeconds()) * 1000;
+    Reservation reservation = reservationQueue.reserve(isbn);
+    if (waitMillis <= 0 && reservationQueue.cancel(reservation)) {
+      DeferredResult<ResponseEntity<Book>> result = new DeferredResult<>();
+      result.setResult(ResponseEntity.noContent().build());
+      return result;
+    }
+    DeferredResult<ResponseEntity<Book>> result = new DeferredResult<>(Math.max(1, waitMillis));
+    result.onTimeout(() -> result.setResult(reservationQueue.cancel(reservation)
+        ? ResponseEntity.noContent().build()
+        // Granted as the wait ran out, the outcome is already complete
+        : toResponse(reservation.outcome().join())));
+    reservation.outcome().thenAccept(book -> result.setResult(toResponse(book)));
+    return result;
+  }
+
+  private static ResponseEntity<Book> toResponse(Optional<Book> book) {
+    return book.map(borrowed -> ResponseEntity.ok().eTag(BookETags.of(borrowed)).body(borrowed))
+        .orElseGet(() -> ResponseEntity.notFound().build());
+  }
+}
@@ -0,0 +1,22 @@
+package com.techdelity.identitye2e.demo.library.controller;
+
+import com.techdelity.identitye2e.demo.library.model.Book;
+import java.util.List;
+
+/**
+ * Books added by the DEBUG seed endpoint, with their isbns in normalized form
+ */
+final class SeedBooks {
+
+  private SeedBooks() {
+  }
+
+  static List<Book> books() {
+    return List.of(
+        new Book("9781617290084", "Cracking the Coding Interview", "Gayle Laakmann McDowell",
+            2021, 5),
+        new Book("9780321545732", "Elements of Programming Interviews", "Adnan Aziz", 2012, 3),
+        new Book("9780996128100", "System Design Interview – An Insider's Guide", "Alex Xu",
+            2020, 4));
+  }
+}
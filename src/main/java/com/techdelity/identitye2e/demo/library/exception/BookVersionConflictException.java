@@ -0,0 +1,11 @@
+package com.techdelity.identitye2e.demo.library.exception;
+
+/**
+ * Thrown when a conditional change is made to a book that is no longer at the expected version
+ */
+public class BookVersionConflictException extends RuntimeException {
+
+  public BookVersionConflictException() {
+    super("Book has been changed");
+  }
+}
@@ -0,0 +1,12 @@
+package com.techdelity.identitye2e.demo.library.exception;
+
+/**
+ * A request the client got wrong, such as an invalid isbn or cursor. Answered with 400 and the
+ * message, so the message must be fit for the client.
+ */
+public class InvalidRequestException extends IllegalArgumentException {
+
+  public InvalidRequestException(String message) {
+    super(message);
+  }
+}
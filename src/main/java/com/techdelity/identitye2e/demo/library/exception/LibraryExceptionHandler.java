@@ -1,5 +1,8 @@
 package com.techdelity.identitye2e.demo.library.exception;
 
+import java.time.Duration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -9,6 +12,7 @@ import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.servlet.mvc.method.annotation.ResponseEntityExceptionHandler;
 
 @ControllerAdvice
+@Profile("!reactive")
 public class LibraryExceptionHandler extends ResponseEntityExceptionHandler {
 
 @ExceptionHandler(value = AlreadyExistsException.class)
@@ -23,6 +27,49 @@ protected ResponseEntity<Object> resourceAlreadyExists(RuntimeException ex, WebR
         HttpStatus.NOT_FOUND, request);
   }
 
-}
+  @ExceptionHandler(value = BookVersionConflictException.class)
+  protected ResponseEntity<Object> preconditionFailed(RuntimeException ex, WebRequest request) {
+    return handleExceptionInternal(ex, "Book has been changed", new HttpHeaders(),
+        HttpStatus.PRECONDITION_FAILED, request);
+  }
+
+  @ExceptionHandler(value = NoBookCopiesRemainingToBorrowException.class)
+  protected ResponseEntity<Object> noCopiesLeft(RuntimeException ex, WebRequest request) {
+    return handleExceptionInternal(ex, "No copies of the book are left", new HttpHeaders(),
+        HttpStatus.CONFLICT, request);
+  }
 
+  @ExceptionHandler(value = OptimisticLockingFailureException.class)
+  protected ResponseEntity<Object> conflict(RuntimeException ex, WebRequest request) {
+    return handleExceptionInternal(ex, "Book was changed at the same time, try again",
+        new HttpHeaders(), HttpStatus.CONFLICT, request);
+  }
+
+  @ExceptionHandler(value = RateLimitExceededException.class)
+  protected ResponseEntity<Object> tooManyRequests(RateLimitExceededException ex,
+      WebRequest request) {
+    return handleExceptionInternal(ex, "Too many requests", retryAfter(ex.getRetryAfter()),
+        HttpStatus.TOO_MANY_REQUESTS, request);
+  }
 
+  @ExceptionHandler(value = ServiceOverloadedException.class)
+  protected ResponseEntity<Object> overloaded(ServiceOverloadedException ex, WebRequest request) {
+    return handleExceptionInternal(ex, "Service overloaded, try again later",
+        retryAfter(ex.getRetryAfter()), HttpStatus.SERVICE_UNAVAILABLE, request);
+  }
+
+  @ExceptionHandler(value = InvalidRequestException.class)
+  protected ResponseEntity<Object> badRequest(RuntimeException ex, WebRequest request) {
+    return handleExceptionInternal(ex, ex.getMessage(), new HttpHeaders(),
+        HttpStatus.BAD_REQUEST, request);
+  }
+
+  private static HttpHeaders retryAfter(Duration retryAfter) {
+    HttpHeaders headers = new HttpHeaders();
+    // Retry-After is in whole seconds, round up so a client retrying on time is let in
+    long seconds = retryAfter.plusNanos(999_999_999L).getSeconds();
+    headers.set(HttpHeaders.RETRY_AFTER, Long.toString(Math.max(1, seconds)));
+    return headers;
+  }
+
+}
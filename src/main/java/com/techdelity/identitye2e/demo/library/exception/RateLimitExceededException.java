@@ -0,0 +1,16 @@
+package com.techdelity.identitye2e.demo.library.exception;
+
+import java.time.Duration;
+
+public class RateLimitExceededException extends RuntimeException {
+
+  private final Duration retryAfter;
+
+  public RateLimitExceededException(Duration retryAfter) {
+    this.retryAfter = retryAfter;
+  }
+
+  public Duration getRetryAfter() {
+    return retryAfter;
+  }
+}
@@ -0,0 +1,47 @@
+package com.techdelity.identitye2e.demo.library.exception;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.reactive.result.method.annotation.ResponseEntityExceptionHandler;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/**
+ * The WebFlux equivalent of {@link LibraryExceptionHandler} for the reactive profile
+ */
+@ControllerAdvice
+@Profile("reactive")
+public class ReactiveLibraryExceptionHandler extends ResponseEntityExceptionHandler {
+
+  @ExceptionHandler(value = AlreadyExistsException.class)
+  protected Mono<ResponseEntity<Object>> resourceAlreadyExists(RuntimeException ex,
+      ServerWebExchange exchange) {
+    return handleExceptionInternal(ex, "Book already exists", new HttpHeaders(),
+        HttpStatus.BAD_REQUEST, exchange);
+  }
+
+  @ExceptionHandler(value = BookNotFoundException.class)
+  protected Mono<ResponseEntity<Object>> notFound(RuntimeException ex,
+      ServerWebExchange exchange) {
+    return handleExceptionInternal(ex, "Cannot find book", new HttpHeaders(),
+        HttpStatus.NOT_FOUND, exchange);
+  }
+
+  @ExceptionHandler(value = NoBookCopiesRemainingToBorrowException.class)
+  protected Mono<ResponseEntity<Object>> noCopiesLeft(RuntimeException ex,
+      ServerWebExchange exchange) {
+    return handleExceptionInternal(ex, "No copies of the book are left", new HttpHeaders(),
+        HttpStatus.CONFLICT, exchange);
+  }
+
+  @ExceptionHandler(value = InvalidRequestException.class)
+  protected Mono<ResponseEntity<Object>> badRequest(RuntimeException ex,
+      ServerWebExchange exchange) {
+    return handleExceptionInternal(ex, ex.getMessage(), new HttpHeaders(),
+        HttpStatus.BAD_REQUEST, exchange);
+  }
+}
@@ -0,0 +1,170 @@
+package com.techdelity.identitye2e.demo.library.feed;
+
+import com.techdelity.identitye2e.demo.library.model.ChangeBatch;
+import com.techdelity.identitye2e.demo.library.model.ChangeBatch.Change;
+import com.techdelity.identitye2e.demo.library.service.BookChangedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * An ordered feed of the committed changes to books, so clients can follow stock changes instead
+ * of polling for each book.
+ * <p>
+ * The latest {@code library.changes.capacity} changes are held in a ring buffer, each at the
+ * next offset. A client reads the changes after the last offset it has seen, so it can resume
+ * where it stopped, and is told when some of them have been overwritten. Offsets start from the
+ * time the feed started in microseconds, so they keep growing across restarts and a client resuming
+ * from before one is told it may have missed changes. Each change carries the version and copies
+ * available the book was left with, so a client can update the books it keeps without reloading
+ * them. Readers waiting for a change are woken on {@code executor}, never on the thread that made
+ * the change, and a reader that stops waiting is forgotten at once.
+ */
+@Component
+@Profile("!reactive")
+public class ChangeFeed {
+
+  /**
+   * Read from the oldest change held
+   */
+  public static final long OLDEST = -1;
+
+  private final Change[] ring;
+  private final long firstOffset;
+  private final Executor executor;
+  private final Counter published;
+  /**
+   * Offset of the latest change, guarded by this
+   */
+  private long lastOffset;
+  /**
+   * Readers waiting for the next change, guarded by this
+   */
+  private final Set<Waiter> waiters = new LinkedHashSet<>();
+
+  @Autowired
+  public ChangeFeed(MeterRegistry meterRegistry,
+      @Qualifier("applicationTaskExecutor") Executor executor,
+      @Value("${library.changes.capacity:65536}") int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Change feed capacity must be at least 1");
+    }
+    this.ring = new Change[capacity];
+    this.executor = executor;
+    this.firstOffset = System.currentTimeMillis() * 1000 + 1;
+    this.lastOffset = firstOffset - 1;
+    this.published = Counter.builder("library.changes.published")
+        .description("Book changes appended to the change feed")
+        .register(meterRegistry);
+    Gauge.builder("library.changes.offset", this, ChangeFeed::lastOffset)
+        .description("Offset of the latest change in the change feed")
+        .register(meterRegistry);
+    Gauge.builder("library.changes.waiting", this, ChangeFeed::waiting)
+        .description("Readers waiting for the next change in the change feed")
+        .register(meterRegistry);
+  }
+
+  @TransactionalEventListener(fallbackExecution = true)
+  public void onBookChanged(BookChangedEvent event) {
+    append(event);
+  }
+
+  /**
+   * Read the changes held after an offset, without waiting
+   *
+   * @param after the offset of the last change seen, {@link #OLDEST} to start from the oldest held
+   * @param max   the maximum number of changes to read
+   * @return the changes
+   */
+  public synchronized ChangeBatch read(long after, int max) {
+    long oldest = Math.max(firstOffset, lastOffset - ring.length + 1);
+    boolean truncated = after != OLDEST && (after < oldest - 1 || after > lastOffset);
+    long from = after == OLDEST || truncated ? oldest : after + 1;
+    long to = Math.min(lastOffset, from + max - 1);
+    List<Change> changes = new ArrayList<>((int) Math.max(0, to - from + 1));
+    for (long offset = from; offset <= to; offset++) {
+      changes.add(ring[(int) (offset % ring.length)]);
+    }
+    return new ChangeBatch(changes, changes.isEmpty() ? from - 1 : to, truncated);
+  }
+
+  /**
+   * Read the changes after an offset, waiting for the next change if there are none
+   *
+   * @param after the offset of the last change seen, {@link #OLDEST} to start from the oldest held
+   * @param max   the maximum number of changes to read
+   * @return the changes, completed on the executor if it had to wait. Cancel it to stop waiting.
+   */
+  public synchronized CompletableFuture<ChangeBatch> poll(long after, int max) {
+    ChangeBatch batch = read(after, max);
+    if (!batch.changes().isEmpty() || batch.truncated()) {
+      return CompletableFuture.completedFuture(batch);
+    }
+    Waiter waiter = new Waiter(after, max, new CompletableFuture<>());
+    waiters.add(waiter);
+    waiter.changes().whenComplete((changes, ex) -> {
+      if (ex != null) {
+        forget(waiter);
+      }
+    });
+    return waiter.changes();
+  }
+
+  /**
+   * @return the offset of the latest change
+   */
+  public synchronized long lastOffset() {
+    return lastOffset;
+  }
+
+  /**
+   * @return the number of readers waiting for the next change
+   */
+  synchronized int waiting() {
+    return waiters.size();
+  }
+
+  void append(BookChangedEvent event) {
+    List<Waiter> woken;
+    synchronized (this) {
+      lastOffset++;
+      ring[(int) (lastOffset % ring.length)] = new Change(lastOffset, event.type(), event.isbn(),
+          known(event.version(), BookChangedEvent.UNKNOWN_VERSION),
+          known(event.copiesAvailable(), BookChangedEvent.UNKNOWN_COPIES), Instant.now());
+      woken = List.copyOf(waiters);
+      waiters.clear();
+    }
+    published.increment();
+    woken.forEach(waiter -> executor.execute(
+        () -> waiter.changes().complete(read(waiter.after(), waiter.max()))));
+  }
+
+  private synchronized void forget(Waiter waiter) {
+    waiters.remove(waiter);
+  }
+
+  private static Integer known(int value, int unknown) {
+    return value == unknown ? null : value;
+  }
+
+  /**
+   * A reader waiting for the changes after an offset. Each has a future of its own, so two readers
+   * waiting for the same changes are never equal.
+   */
+  private record Waiter(long after, int max, CompletableFuture<ChangeBatch> changes) {
+
+  }
+}
@@ -1,32 +1,66 @@
 package com.techdelity.identitye2e.demo.library.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.techdelity.identitye2e.demo.library.search.TextNormalizer;
+import jakarta.persistence.Cacheable;
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
-import org.springframework.data.annotation.Version;
+import jakarta.persistence.Index;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
+import jakarta.persistence.Table;
+import jakarta.persistence.Version;
 
 import lombok.Data;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.Type;
 
 import java.util.Objects;
 import lombok.NoArgsConstructor;
 
 /**
- * Book record
+ * Book record. Held in the {@value #CACHE_REGION} second-level cache region when the second-level
+ * cache is switched on, as it is by the prod profile.
  */
 @Data
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = Book.CACHE_REGION)
 @NoArgsConstructor
+@Table(indexes = {
+    @Index(name = "idx_book_author", columnList = "author"),
+    @Index(name = "idx_book_author_normalized", columnList = "author_normalized, isbn")})
 public final class Book {
 
+  public static final String CACHE_REGION = "book";
+
+  /**
+   * Held in its normalized form, see {@link Isbn}, and stored packed into a number
+   */
   @Id
+  @Type(IsbnType.class)
   private String isbn;
   private String title;
   private String author;
   private int publicationYear;
   private int copiesAvailable;
 
+  /**
+   * Checked and moved on by Hibernate whenever the entity is updated. The bulk copy count updates
+   * move it on themselves.
+   */
   @Version
   private int version;
 
+  /**
+   * The author in search form, see {@link #normalizeAuthor(String)}
+   */
+  @JsonIgnore
+  @Column(name = "author_normalized")
+  private String authorNormalized;
+
   public Book(String isbn, String title, String author, int publicationYear, int copiesAvailable) {
     this.isbn = isbn;
     this.title = title;
@@ -35,6 +69,23 @@ public final class Book {
     this.copiesAvailable = copiesAvailable;
   }
 
+  @PrePersist
+  @PreUpdate
+  void updateAuthorNormalized() {
+    authorNormalized = normalizeAuthor(author);
+  }
+
+  /**
+   * Normalize an author name for searching
+   *
+   * @param author the author name
+   * @return the normalized name, null if the author is null
+   * @see TextNormalizer#normalize(String)
+   */
+  public static String normalizeAuthor(String author) {
+    return TextNormalizer.normalize(author);
+  }
+
   @Override
   public boolean equals(Object obj) {
       if (obj == this) {
@@ -0,0 +1,29 @@
+package com.techdelity.identitye2e.demo.library.model;
+
+import java.util.List;
+
+/**
+ * The outcome of looking up several books by isbn, with a result for every isbn asked for
+ *
+ * @param found   the number of isbns that were found
+ * @param missing the number of isbns that were not found
+ * @param results the result of each isbn in request order
+ */
+public record BookLookup(int found, int missing, List<Result> results) {
+
+  /**
+   * The result of a single isbn
+   *
+   * @param isbn   the isbn asked for
+   * @param status whether the book was found
+   * @param book   the book, null if it was not found
+   */
+  public record Result(String isbn, Status status, Book book) {
+
+  }
+
+  public enum Status {
+    FOUND,
+    NOT_FOUND
+  }
+}
@@ -0,0 +1,13 @@
+package com.techdelity.identitye2e.demo.library.model;
+
+import java.util.List;
+
+/**
+ * A page of books from a paginated search
+ *
+ * @param books      the books in this page
+ * @param nextCursor the cursor to request the next page with, null if this is the last page
+ */
+public record BookPage(List<Book> books, String nextCursor) {
+
+}
@@ -0,0 +1,34 @@
+package com.techdelity.identitye2e.demo.library.model;
+
+import com.techdelity.identitye2e.demo.library.service.BookChangedEvent;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Changes read from the change feed
+ *
+ * @param changes    the changes in offset order
+ * @param nextOffset the offset to read on from, the offset of the last change in the batch, or the
+ *                   offset asked for if there are none
+ * @param truncated  true if some changes after the offset asked for are no longer held, so a client
+ *                   should reload any books it keeps before carrying on from this batch
+ */
+public record ChangeBatch(List<Change> changes, long nextOffset, boolean truncated) {
+
+  /**
+   * A change to one book
+   *
+   * @param offset          the position of the change in the feed
+   * @param type            the kind of change
+   * @param isbn            the isbn of the book that changed
+   * @param version         the version of the book after the change, null for removals or if it
+   *                        isn't known
+   * @param copiesAvailable the copies available after the change, null for removals or if it
+   *                        isn't known
+   * @param at              when the change was committed
+   */
+  public record Change(long offset, BookChangedEvent.Type type, String isbn, Integer version,
+                       Integer copiesAvailable, Instant at) {
+
+  }
+}
@@ -0,0 +1,30 @@
+package com.techdelity.identitye2e.demo.library.model;
+
+import java.util.List;
+
+/**
+ * The outcome of a bulk import, with a result for every row in the feed
+ *
+ * @param accepted the number of books saved
+ * @param rejected the number of rows that were not saved
+ * @param rows     the result of each row in feed order
+ */
+public record ImportReport(int accepted, int rejected, List<RowResult> rows) {
+
+  /**
+   * The result of a single row
+   *
+   * @param row    the 1 based row number in the feed, excluding any header
+   * @param isbn   the isbn of the row, if one could be read
+   * @param status whether the row was saved
+   * @param reason why the row was rejected, null if it was accepted
+   */
+  public record RowResult(long row, String isbn, Status status, String reason) {
+
+  }
+
+  public enum Status {
+    ACCEPTED,
+    REJECTED
+  }
+}
@@ -0,0 +1,130 @@
+package com.techdelity.identitye2e.demo.library.model;
+
+import com.techdelity.identitye2e.demo.library.exception.InvalidRequestException;
+
+/**
+ * Parses, checks and normalizes ISBNs.
+ * <p>
+ * An ISBN may be given as an ISBN-13 or an ISBN-10, with or without hyphens or spaces between its
+ * groups. Every form of one book normalizes to the same 13 digits of its ISBN-13, and packs into
+ * the same long, which is the ISBN-13 read as a number. Packed ISBNs key books in the database and
+ * the in-memory store, and sort in the same order as the normalized form. ISBN-13s start with 978
+ * or 979, so no packed ISBN is 0.
+ */
+public final class Isbn {
+
+  private static final long MIN = 978_000_000_000_0L;
+  private static final long MAX = 979_999_999_999_9L;
+
+  private Isbn() {
+  }
+
+  /**
+   * Normalize an ISBN
+   *
+   * @param text the ISBN in any of its forms
+   * @return the 13 digits of the ISBN-13
+   * @throws InvalidRequestException if the text is not a valid ISBN
+   */
+  public static String normalize(String text) {
+    return unpack(pack(text));
+  }
+
+  /**
+   * Pack an ISBN into a long
+   *
+   * @param text the ISBN in any of its forms
+   * @return the ISBN-13 as a number
+   * @throws InvalidRequestException if the text is not a valid ISBN
+   */
+  public static long pack(CharSequence text) {
+    if (text == null) {
+      throw new InvalidRequestException("Missing isbn");
+    }
+    // The digits before the check digit, which is kept apart as it may be X in an ISBN-10
+    long body = 0;
+    int check = -1;
+    int count = 0;
+    boolean separated = true;
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if ((c == '-' || c == ' ') && !separated) {
+        // A single separator between groups
+        separated = true;
+        continue;
+      }
+      if (count == 13 || check == 10) {
+        throw invalid(text);
+      }
+      if (check >= 0) {
+        body = body * 10 + check;
+      }
+      if (c >= '0' && c <= '9') {
+        check = c - '0';
+      } else if ((c == 'X' || c == 'x') && count == 9) {
+        check = 10;
+      } else {
+        throw invalid(text);
+      }
+      count++;
+      separated = false;
+    }
+    if (separated) {
+      throw invalid(text);
+    }
+    if (count == 10) {
+      if ((checkSum10(body) + check) % 11 != 0) {
+        throw invalid(text);
+      }
+      body += 978_000_000_000L;
+    } else if (count != 13 || body < MIN / 10 || body > MAX / 10 || check != checkDigit13(body)) {
+      throw invalid(text);
+    }
+    return body * 10 + checkDigit13(body);
+  }
+
+  /**
+   * Turn a packed ISBN back into its normalized form
+   *
+   * @param isbn the packed ISBN
+   * @return the 13 digits of the ISBN-13
+   */
+  public static String unpack(long isbn) {
+    if (isbn < MIN || isbn > MAX) {
+      throw new IllegalArgumentException("Not a packed isbn: " + isbn);
+    }
+    return Long.toString(isbn);
+  }
+
+  /**
+   * @param body the first 12 digits of an ISBN-13
+   * @return the check digit that follows them
+   */
+  private static int checkDigit13(long body) {
+    int sum = 0;
+    // Weighted 1, 3, 1, 3... from the first digit, which is 3, 1, 3, 1... from the last of twelve
+    for (int i = 0; i < 12; i++) {
+      sum += (int) (body % 10) * (i % 2 == 0 ? 3 : 1);
+      body /= 10;
+    }
+    return (10 - sum % 10) % 10;
+  }
+
+  /**
+   * @param body the first 9 digits of an ISBN-10
+   * @return their sum weighted 10, 9, 8... from the first, to which the check digit adds to
+   * make a multiple of 11
+   */
+  private static int checkSum10(long body) {
+    int sum = 0;
+    for (int weight = 2; weight <= 10; weight++) {
+      sum += (int) (body % 10) * weight;
+      body /= 10;
+    }
+    return sum;
+  }
+
+  private static InvalidRequestException invalid(CharSequence text) {
+    return new InvalidRequestException("Invalid isbn: " + text);
+  }
+}
@@ -0,0 +1,76 @@
+package com.techdelity.identitye2e.demo.library.model;
+
+import java.io.Serializable;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Objects;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.usertype.UserType;
+
+/**
+ * Stores an isbn as its packed form, see {@link Isbn#pack(CharSequence)}, so books are keyed on a
+ * BIGINT rather than a string, and every form of an isbn finds the same row. A Hibernate type
+ * rather than a JPA converter, as converters are not applied to ids. The empty isbn, which the
+ * keyset queries take to mean before the first book, is bound as 0.
+ */
+public class IsbnType implements UserType<String> {
+
+  @Override
+  public int getSqlType() {
+    return Types.BIGINT;
+  }
+
+  @Override
+  public Class<String> returnedClass() {
+    return String.class;
+  }
+
+  @Override
+  public boolean equals(String x, String y) {
+    return Objects.equals(x, y);
+  }
+
+  @Override
+  public int hashCode(String isbn) {
+    return Objects.hashCode(isbn);
+  }
+
+  @Override
+  public String nullSafeGet(ResultSet rs, int position, SharedSessionContractImplementor session,
+      Object owner) throws SQLException {
+    long isbn = rs.getLong(position);
+    return rs.wasNull() ? null : Isbn.unpack(isbn);
+  }
+
+  @Override
+  public void nullSafeSet(PreparedStatement st, String isbn, int index,
+      SharedSessionContractImplementor session) throws SQLException {
+    if (isbn == null) {
+      st.setNull(index, Types.BIGINT);
+    } else {
+      st.setLong(index, isbn.isEmpty() ? 0 : Isbn.pack(isbn));
+    }
+  }
+
+  @Override
+  public String deepCopy(String isbn) {
+    return isbn;
+  }
+
+  @Override
+  public boolean isMutable() {
+    return false;
+  }
+
+  @Override
+  public Serializable disassemble(String isbn) {
+    return isbn;
+  }
+
+  @Override
+  public String assemble(Serializable cached, Object owner) {
+    return (String) cached;
+  }
+}
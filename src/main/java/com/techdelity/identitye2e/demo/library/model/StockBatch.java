@@ -0,0 +1,36 @@
+package com.techdelity.identitye2e.demo.library.model;
+
+import java.util.List;
+
+/**
+ * A batch of books to borrow or return in one go, such as a front desk checkout
+ *
+ * @param mode  how to handle items that can't be applied, defaults to all or nothing
+ * @param items the books and number of copies of each
+ */
+public record StockBatch(Mode mode, List<Item> items) {
+
+  /**
+   * A book in the batch
+   *
+   * @param isbn     the isbn of the book
+   * @param quantity the number of copies, defaults to 1
+   */
+  public record Item(String isbn, Integer quantity) {
+
+    public int copies() {
+      return quantity == null ? 1 : quantity;
+    }
+  }
+
+  public enum Mode {
+    /**
+     * Apply every item or none of them
+     */
+    ALL_OR_NOTHING,
+    /**
+     * Apply the items that can be applied and reject the rest
+     */
+    BEST_EFFORT
+  }
+}
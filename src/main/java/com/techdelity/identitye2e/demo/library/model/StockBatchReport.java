@@ -0,0 +1,38 @@
+package com.techdelity.identitye2e.demo.library.model;
+
+import java.util.List;
+
+/**
+ * The outcome of a batch borrow or return, with a result for every item in the batch
+ *
+ * @param applied  the number of items applied
+ * @param rejected the number of items that were not applied
+ * @param items    the result of each item in batch order
+ */
+public record StockBatchReport(int applied, int rejected, List<ItemResult> items) {
+
+  /**
+   * The result of a single item
+   *
+   * @param isbn     the isbn of the item
+   * @param quantity the number of copies requested
+   * @param status   whether the item was applied
+   * @param reason   why the item was not applied, null if it was applied
+   */
+  public record ItemResult(String isbn, int quantity, Status status, String reason) {
+
+  }
+
+  public enum Status {
+    APPLIED,
+    /**
+     * The item could not be applied
+     */
+    REJECTED,
+    /**
+     * The item could have been applied but was not, as another item in an all or nothing batch
+     * was rejected
+     */
+    SKIPPED
+  }
+}
@@ -0,0 +1,144 @@
+package com.techdelity.identitye2e.demo.library.ratelimit;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+/**
+ * Turns requests away early when the library is overloaded, rather than letting them queue for
+ * threads and database connections until they time out.
+ * <p>
+ * Every sample interval the mean latency of the requests admitted, and the mean wait for a
+ * connection from the Hikari pool, over that interval are compared with their thresholds. A mean
+ * only counts once it is taken over at least {@code min-samples} requests or connections, so a
+ * handful of slow requests in a quiet interval doesn't shed load. While either is over, the
+ * fraction of requests shed rises by a tenth per interval, up to 90%. Once both are back under it
+ * falls by a twentieth per interval, so load is let back in gradually.
+ */
+@Component
+@Profile("!reactive")
+public class LoadShedder {
+
+  private static final double MAX_SHED_FRACTION = 0.9;
+  private static final double SHED_STEP_UP = 0.1;
+  private static final double SHED_STEP_DOWN = 0.05;
+
+  private final MeterRegistry meterRegistry;
+  private final boolean enabled;
+  private final long latencyThresholdNanos;
+  private final long poolWaitThresholdNanos;
+  private final long sampleIntervalNanos;
+  private final long minSamples;
+
+  private final LongAdder latencyNanos = new LongAdder();
+  private final LongAdder requests = new LongAdder();
+  private final ReentrantLock sampleLock = new ReentrantLock();
+  private volatile long nextSampleAt;
+  private volatile double shedFraction;
+
+  // Guarded by sampleLock
+  private long sampledLatencyNanos;
+  private long sampledRequests;
+  private double sampledPoolWaitNanos;
+  private long sampledPoolAcquires;
+
+  @Autowired
+  public LoadShedder(MeterRegistry meterRegistry,
+      @Value("${library.load-shedding.enabled:true}") boolean enabled,
+      @Value("${library.load-shedding.latency-threshold:1s}") Duration latencyThreshold,
+      @Value("${library.load-shedding.pool-wait-threshold:200ms}") Duration poolWaitThreshold,
+      @Value("${library.load-shedding.sample-interval:250ms}") Duration sampleInterval,
+      @Value("${library.load-shedding.min-samples:20}") long minSamples) {
+    this.meterRegistry = meterRegistry;
+    this.enabled = enabled;
+    this.latencyThresholdNanos = latencyThreshold.toNanos();
+    this.poolWaitThresholdNanos = poolWaitThreshold.toNanos();
+    this.sampleIntervalNanos = sampleInterval.toNanos();
+    this.minSamples = minSamples;
+    this.nextSampleAt = System.nanoTime() + sampleIntervalNanos;
+    Gauge.builder("library.load-shedding.fraction", this, LoadShedder::shedFraction)
+        .description("Fraction of requests being shed because the library is overloaded")
+        .register(meterRegistry);
+  }
+
+  /**
+   * @return true if the request should be turned away
+   */
+  public boolean shouldShed() {
+    return shouldShed(System.nanoTime());
+  }
+
+  boolean shouldShed(long now) {
+    if (!enabled) {
+      return false;
+    }
+    if (now - nextSampleAt >= 0 && sampleLock.tryLock()) {
+      try {
+        sample(now);
+      } finally {
+        sampleLock.unlock();
+      }
+    }
+    double fraction = shedFraction;
+    return fraction > 0 && ThreadLocalRandom.current().nextDouble() < fraction;
+  }
+
+  /**
+   * Record how long an admitted request took
+   *
+   * @param nanos the request latency
+   */
+  public void recordLatency(long nanos) {
+    latencyNanos.add(nanos);
+    requests.increment();
+  }
+
+  /**
+   * @return the fraction of requests currently shed
+   */
+  public double shedFraction() {
+    return shedFraction;
+  }
+
+  private void sample(long now) {
+    long totalLatency = latencyNanos.sum();
+    long totalRequests = requests.sum();
+    long meanLatency = mean(totalLatency - sampledLatencyNanos, totalRequests - sampledRequests);
+    sampledLatencyNanos = totalLatency;
+    sampledRequests = totalRequests;
+
+    double totalPoolWait = 0;
+    long totalPoolAcquires = 0;
+    for (Timer timer : meterRegistry.find("hikaricp.connections.acquire").timers()) {
+      totalPoolWait += timer.totalTime(TimeUnit.NANOSECONDS);
+      totalPoolAcquires += timer.count();
+    }
+    long meanPoolWait = mean((long) (totalPoolWait - sampledPoolWaitNanos),
+        totalPoolAcquires - sampledPoolAcquires);
+    sampledPoolWaitNanos = totalPoolWait;
+    sampledPoolAcquires = totalPoolAcquires;
+
+    boolean overloaded = meanLatency > latencyThresholdNanos
+        || meanPoolWait > poolWaitThresholdNanos;
+    shedFraction = overloaded
+        ? Math.min(MAX_SHED_FRACTION, shedFraction + SHED_STEP_UP)
+        : Math.max(0, shedFraction - SHED_STEP_DOWN);
+    nextSampleAt = now + sampleIntervalNanos;
+  }
+
+  /**
+   * @return the mean, or 0 if taken over too few samples to go by
+   */
+  private long mean(long total, long count) {
+    return count <= 0 || count < minSamples ? 0 : total / count;
+  }
+}
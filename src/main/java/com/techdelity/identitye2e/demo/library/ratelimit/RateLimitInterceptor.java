@@ -0,0 +1,100 @@
+package com.techdelity.identitye2e.demo.library.ratelimit;
+
+import com.techdelity.identitye2e.demo.library.config.RateLimitProperties;
+import com.techdelity.identitye2e.demo.library.exception.RateLimitExceededException;
+import com.techdelity.identitye2e.demo.library.exception.ServiceOverloadedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.time.Duration;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+/**
+ * Applies the rate limits and load shedding to API requests before they reach a controller. A
+ * refused request is turned into a 429 or 503 response by the exception handler.
+ * <p>
+ * A request is only checked on its first dispatch. Requests that carry on asynchronously, such as
+ * a streamed export, and those to endpoints marked {@link RateLimited#latencySignal()} false, such
+ * as imports and batches, are left out of the latency the load shedder sees, as they are long by
+ * design.
+ */
+@Component
+@Profile("!reactive")
+public class RateLimitInterceptor implements AsyncHandlerInterceptor {
+
+  private static final String STARTED_AT = RateLimitInterceptor.class.getName() + ".startedAt";
+  private static final Duration OVERLOADED_RETRY_AFTER = Duration.ofSeconds(1);
+
+  private final RateLimiter rateLimiter;
+  private final LoadShedder loadShedder;
+  private final String clientHeader;
+  private final Counter rateLimited;
+  private final Counter shed;
+
+  @Autowired
+  public RateLimitInterceptor(RateLimiter rateLimiter, LoadShedder loadShedder,
+      RateLimitProperties properties, MeterRegistry meterRegistry) {
+    this.rateLimiter = rateLimiter;
+    this.loadShedder = loadShedder;
+    this.clientHeader = properties.clientHeader() == null || properties.clientHeader().isBlank()
+        ? null : properties.clientHeader();
+    this.rateLimited = Counter.builder("library.requests.rejected")
+        .description("Requests turned away before reaching a controller")
+        .tag("reason", "rate-limit")
+        .register(meterRegistry);
+    this.shed = Counter.builder("library.requests.rejected")
+        .description("Requests turned away before reaching a controller")
+        .tag("reason", "overload")
+        .register(meterRegistry);
+  }
+
+  @Override
+  public boolean preHandle(HttpServletRequest request, HttpServletResponse response,
+      Object handler) {
+    if (request.getDispatcherType() == DispatcherType.ASYNC
+        || !(handler instanceof HandlerMethod handlerMethod)) {
+      return true;
+    }
+    RateLimited limit = handlerMethod.getMethodAnnotation(RateLimited.class);
+    String endpoint = limit == null ? RateLimiter.DEFAULT_ENDPOINT : limit.value();
+    // Only a header set by a trusted proxy, see RateLimitProperties
+    String client = clientHeader == null ? null : request.getHeader(clientHeader);
+    if (client == null || client.isBlank()) {
+      client = request.getRemoteAddr();
+    }
+
+    Duration retryAfter = rateLimiter.tryAcquire(endpoint, client);
+    if (!retryAfter.isZero()) {
+      rateLimited.increment();
+      throw new RateLimitExceededException(retryAfter);
+    }
+    if (loadShedder.shouldShed()) {
+      shed.increment();
+      throw new ServiceOverloadedException(OVERLOADED_RETRY_AFTER);
+    }
+    if (limit == null || limit.latencySignal()) {
+      request.setAttribute(STARTED_AT, System.nanoTime());
+    }
+    return true;
+  }
+
+  @Override
+  public void afterConcurrentHandlingStarted(HttpServletRequest request,
+      HttpServletResponse response, Object handler) {
+    request.removeAttribute(STARTED_AT);
+  }
+
+  @Override
+  public void afterCompletion(HttpServletRequest request, HttpServletResponse response,
+      Object handler, Exception ex) {
+    if (request.getAttribute(STARTED_AT) instanceof Long startedAt) {
+      loadShedder.recordLatency(System.nanoTime() - startedAt);
+    }
+  }
+}
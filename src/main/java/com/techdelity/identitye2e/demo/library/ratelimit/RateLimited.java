@@ -0,0 +1,29 @@
+package com.techdelity.identitye2e.demo.library.ratelimit;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Names the rate limit of an endpoint, configured as
+ * {@code library.rate-limit.endpoints.<name>.*}. Endpoints without it share the default limit.
+ * Endpoints whose requests are slow by design, such as bulk imports, are kept out of the latency
+ * the {@link LoadShedder} watches with {@link #latencySignal()}.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+@Documented
+public @interface RateLimited {
+
+  /**
+   * @return the name of the endpoint's limit
+   */
+  String value();
+
+  /**
+   * @return false to leave the endpoint's requests out of the latency the load shedder watches
+   */
+  boolean latencySignal() default true;
+}
@@ -0,0 +1,73 @@
+package com.techdelity.identitye2e.demo.library.ratelimit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.techdelity.identitye2e.demo.library.config.RateLimitProperties;
+import com.techdelity.identitye2e.demo.library.config.RateLimitProperties.Limit;
+import java.time.Duration;
+import java.util.stream.Stream;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+/**
+ * Per client, per endpoint rate limiter.
+ * <p>
+ * Buckets are created on a client's first request to an endpoint and kept in a size bounded
+ * Caffeine cache, so memory stays bounded however many clients there are. A bucket that has been
+ * idle long enough to refill completely is dropped, as a new one would behave the same.
+ */
+@Component
+@Profile("!reactive")
+public class RateLimiter {
+
+  public static final String DEFAULT_ENDPOINT = "default";
+
+  private final RateLimitProperties properties;
+  private final Cache<BucketKey, TokenBucket> buckets;
+
+  @Autowired
+  public RateLimiter(RateLimitProperties properties) {
+    this.properties = properties;
+    double longestRefillSeconds = Stream.of(Stream.of(properties.defaultLimit()),
+            properties.endpoints().values().stream(), properties.clients().values().stream())
+        .flatMap(limits -> limits)
+        .mapToDouble(limit -> limit.burst() / limit.requestsPerSecond())
+        .max()
+        .orElse(1);
+    this.buckets = Caffeine.newBuilder()
+        .maximumSize(properties.maxBuckets())
+        .expireAfterAccess(Duration.ofMillis((long) Math.ceil(longestRefillSeconds * 1000)))
+        .build();
+  }
+
+  /**
+   * Take a token for a request
+   *
+   * @param endpoint the name of the endpoint's limit
+   * @param client   the client key
+   * @return 0 if the request is allowed, otherwise how long until the client can try again
+   */
+  public Duration tryAcquire(String endpoint, String client) {
+    if (!properties.enabled()) {
+      return Duration.ZERO;
+    }
+    TokenBucket bucket = buckets.get(new BucketKey(endpoint, client), key -> {
+      Limit limit = limitOf(key);
+      return new TokenBucket(limit.requestsPerSecond(), limit.burst());
+    });
+    return Duration.ofNanos(bucket.tryAcquire(System.nanoTime()));
+  }
+
+  private Limit limitOf(BucketKey key) {
+    Limit limit = properties.clients().get(key.client());
+    if (limit == null) {
+      limit = properties.endpoints().getOrDefault(key.endpoint(), properties.defaultLimit());
+    }
+    return limit;
+  }
+
+  private record BucketKey(String endpoint, String client) {
+
+  }
+}
@@ -0,0 +1,51 @@
+package com.techdelity.identitye2e.demo.library.ratelimit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket.
+ * <p>
+ * Rather than a token count and a refill time, the bucket keeps a single time: when it would next
+ * be full if no more requests arrived (the generic cell rate algorithm). Each request pushes that
+ * time forward by one token's worth, and is refused if that would push it more than the burst
+ * ahead of now. The state is one long updated by compare and set, so concurrent requests never
+ * block each other.
+ */
+public final class TokenBucket {
+
+  private final long nanosPerToken;
+  private final long burstNanos;
+  private final AtomicLong fullAt = new AtomicLong(Long.MIN_VALUE);
+
+  /**
+   * @param requestsPerSecond the rate tokens are added at
+   * @param burst             the number of tokens the bucket holds
+   */
+  public TokenBucket(double requestsPerSecond, int burst) {
+    if (requestsPerSecond <= 0 || burst < 1) {
+      throw new IllegalArgumentException("Rate and burst must be positive");
+    }
+    this.nanosPerToken = (long) (1_000_000_000L / requestsPerSecond);
+    this.burstNanos = nanosPerToken * burst;
+  }
+
+  /**
+   * Take a token if one is available
+   *
+   * @param now the current time from {@link System#nanoTime()}
+   * @return 0 if a token was taken, otherwise how many nanoseconds until one will be available
+   */
+  public long tryAcquire(long now) {
+    while (true) {
+      long current = fullAt.get();
+      long next = Math.max(current, now) + nanosPerToken;
+      long wait = next - now - burstNanos;
+      if (wait > 0) {
+        return wait;
+      }
+      if (fullAt.compareAndSet(current, next)) {
+        return 0;
+      }
+    }
+  }
+}
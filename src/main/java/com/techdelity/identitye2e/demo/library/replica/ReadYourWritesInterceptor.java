@@ -0,0 +1,129 @@
+package com.techdelity.identitye2e.demo.library.replica;
+
+import com.techdelity.identitye2e.demo.library.config.ConditionalOnJpaStore;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.time.Duration;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseCookie;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+import org.springframework.web.util.WebUtils;
+
+/**
+ * Lets a client read its own writes when reads are served by the replica, whichever node serves
+ * its next request.
+ * <p>
+ * When a request that changes the library, such as a borrow or return, succeeds, the time is
+ * returned to the client in the {@value #LAST_WRITE_COOKIE} cookie, set as its response body is
+ * written, after the change committed. Until the replica is known to have caught up with that
+ * time, requests carrying the cookie read the primary. A replica within {@code max-lag} has caught
+ * up by {@code max-lag} and a heartbeat later, and a replica further behind isn't read from, so
+ * the cookie only lasts that long. Nodes compare the time with their own heartbeats, so their
+ * clocks should agree to within a heartbeat interval, and a time in the future is taken as now.
+ */
+@ControllerAdvice
+@ConditionalOnJpaStore
+@ConditionalOnProperty(name = "library.datasource.replica.url")
+@Profile("!reactive")
+public class ReadYourWritesInterceptor implements AsyncHandlerInterceptor,
+    ResponseBodyAdvice<Object> {
+
+  static final String LAST_WRITE_COOKIE = "library-last-write";
+
+  private final ReplicaLagMonitor lagMonitor;
+  private final Duration tracked;
+
+  @Autowired
+  public ReadYourWritesInterceptor(ReplicaLagMonitor lagMonitor,
+      @Value("${library.datasource.replica.max-lag:1s}") Duration maxLag,
+      @Value("${library.datasource.replica.heartbeat-interval:100ms}") Duration heartbeatInterval) {
+    this.lagMonitor = lagMonitor;
+    this.tracked = maxLag.plus(heartbeatInterval);
+  }
+
+  @Override
+  public boolean preHandle(HttpServletRequest request, HttpServletResponse response,
+      Object handler) {
+    if (request.getDispatcherType() == DispatcherType.ASYNC) {
+      return true;
+    }
+    long lastWrite = lastWrite(request);
+    if (lastWrite > 0 && !lagMonitor.hasReplicated(
+        Math.min(lastWrite, System.currentTimeMillis()))) {
+      ReplicaReads.pinToPrimary();
+    }
+    return true;
+  }
+
+  @Override
+  public void afterConcurrentHandlingStarted(HttpServletRequest request,
+      HttpServletResponse response, Object handler) {
+    ReplicaReads.unpin();
+  }
+
+  @Override
+  public void afterCompletion(HttpServletRequest request, HttpServletResponse response,
+      Object handler, Exception ex) {
+    ReplicaReads.unpin();
+  }
+
+  @Override
+  public boolean supports(MethodParameter returnType,
+      Class<? extends HttpMessageConverter<?>> converterType) {
+    return true;
+  }
+
+  @Override
+  public Object beforeBodyWrite(Object body, MethodParameter returnType,
+      MediaType selectedContentType, Class<? extends HttpMessageConverter<?>> selectedConverterType,
+      ServerHttpRequest request, ServerHttpResponse response) {
+    if (!isRead(request.getMethod()) && response instanceof ServletServerHttpResponse servlet
+        && servlet.getServletResponse().getStatus() < 400) {
+      // Taken after the change committed, so a heartbeat newer than this follows it
+      response.getHeaders().add(HttpHeaders.SET_COOKIE, ResponseCookie
+          .from(LAST_WRITE_COOKIE, Long.toString(System.currentTimeMillis()))
+          .path("/")
+          .maxAge(Duration.ofSeconds(tracked.toSeconds() + 1))
+          .httpOnly(true)
+          .sameSite("Lax")
+          .build()
+          .toString());
+    }
+    return body;
+  }
+
+  /**
+   * @return when the client last changed the library, in epoch milliseconds, 0 if unknown
+   */
+  private static long lastWrite(HttpServletRequest request) {
+    Cookie cookie = WebUtils.getCookie(request, LAST_WRITE_COOKIE);
+    if (cookie == null) {
+      return 0;
+    }
+    try {
+      return Long.parseLong(cookie.getValue());
+    } catch (NumberFormatException ex) {
+      return 0;
+    }
+  }
+
+  private static boolean isRead(HttpMethod method) {
+    return HttpMethod.GET.equals(method) || HttpMethod.HEAD.equals(method)
+        || HttpMethod.OPTIONS.equals(method);
+  }
+}
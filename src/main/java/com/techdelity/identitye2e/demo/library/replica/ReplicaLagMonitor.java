@@ -0,0 +1,119 @@
+package com.techdelity.identitye2e.demo.library.replica;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Measures how far the read replica trails the primary.
+ * <p>
+ * Each {@code heartbeat-interval} every node writes the time into its own row of a heartbeat table
+ * on the primary, and reads its row back from the replica. Replication applies changes in commit
+ * order, so the replica holds every change committed before the heartbeat it has, and its lag is
+ * how old that heartbeat is. The measure can trail by up to one interval, so {@code max-lag}
+ * should be a few intervals. Until the replica has a heartbeat its lag is unknown and treated as
+ * too long.
+ */
+public class ReplicaLagMonitor implements DisposableBean {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ReplicaLagMonitor.class);
+  private static final String CREATE_TABLE = """
+      create table if not exists replica_heartbeat (
+        node varchar(36) primary key,
+        beat bigint not null)""";
+  private static final String UPDATE = "update replica_heartbeat set beat = ? where node = ?";
+  private static final String SELECT = "select beat from replica_heartbeat where node = ?";
+
+  private final JdbcTemplate primary;
+  private final JdbcTemplate replica;
+  private final long maxLagMillis;
+  private final String node = UUID.randomUUID().toString();
+  private final ScheduledExecutorService heartbeat;
+  /**
+   * The newest heartbeat of this node seen on the replica, -1 until one has been seen
+   */
+  private volatile long replicatedUpTo = -1;
+
+  public ReplicaLagMonitor(DataSource primary, DataSource replica, Duration maxLag,
+      Duration heartbeatInterval, MeterRegistry meterRegistry) {
+    this.primary = new JdbcTemplate(primary);
+    this.replica = new JdbcTemplate(replica);
+    this.maxLagMillis = maxLag.toMillis();
+    this.primary.execute(CREATE_TABLE);
+    this.primary.update("insert into replica_heartbeat (node, beat) values (?, ?)", node,
+        System.currentTimeMillis());
+    Gauge.builder("library.replica.lag", this, ReplicaLagMonitor::lagSeconds)
+        .description("How far the read replica trails the primary, NaN until it is known")
+        .baseUnit("seconds")
+        .register(meterRegistry);
+    this.heartbeat = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "replica-heartbeat");
+      thread.setDaemon(true);
+      return thread;
+    });
+    heartbeat.scheduleWithFixedDelay(this::beatQuietly, heartbeatInterval.toMillis(),
+        heartbeatInterval.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * @return whether the replica is known to trail the primary by no more than {@code max-lag}
+   */
+  public boolean isWithinMaxLag() {
+    long upTo = replicatedUpTo;
+    return upTo >= 0 && System.currentTimeMillis() - upTo <= maxLagMillis;
+  }
+
+  /**
+   * @param committedAt when a change was committed, in epoch milliseconds
+   * @return whether the replica is known to have the change
+   */
+  public boolean hasReplicated(long committedAt) {
+    // A heartbeat in the same millisecond may have been written before the change committed
+    return replicatedUpTo > committedAt;
+  }
+
+  /**
+   * Write a heartbeat to the primary and read the newest one the replica has
+   */
+  void beat() {
+    primary.update(UPDATE, System.currentTimeMillis(), node);
+    List<Long> seen = replica.queryForList(SELECT, Long.class, node);
+    if (!seen.isEmpty()) {
+      replicatedUpTo = Math.max(replicatedUpTo, seen.get(0));
+    }
+  }
+
+  @Override
+  public void destroy() {
+    heartbeat.shutdownNow();
+    try {
+      primary.update("delete from replica_heartbeat where node = ?", node);
+    } catch (RuntimeException ex) {
+      LOG.debug("Failed to remove the replica heartbeat of this node", ex);
+    }
+  }
+
+  private double lagSeconds() {
+    long upTo = replicatedUpTo;
+    return upTo < 0 ? Double.NaN : (System.currentTimeMillis() - upTo) / 1000.0;
+  }
+
+  private void beatQuietly() {
+    try {
+      beat();
+    } catch (RuntimeException ex) {
+      // The lag keeps growing from the last heartbeat seen, so reads move to the primary
+      LOG.warn("Failed to check the replica lag, will retry", ex);
+    }
+  }
+}
@@ -0,0 +1,21 @@
+package com.techdelity.identitye2e.demo.library.replica;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a read that may be served by the read replica, when one is configured with
+ * {@code library.datasource.replica.url}. The connections the method opens go to the replica
+ * unless it is lagging or the client has to read its own writes, see
+ * {@link ReplicaRoutingDataSource}. A method run inside a read-write transaction always reads the
+ * primary.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+@Documented
+public @interface ReplicaRead {
+
+}
@@ -0,0 +1,30 @@
+package com.techdelity.identitye2e.demo.library.replica;
+
+import com.techdelity.identitye2e.demo.library.config.ConditionalOnJpaStore;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Marks the thread as reading while a {@link ReplicaRead} method runs
+ */
+@Aspect
+@Component
+@ConditionalOnJpaStore
+@ConditionalOnProperty(name = "library.datasource.replica.url")
+public class ReplicaReadAspect {
+
+  @Around("@annotation(com.techdelity.identitye2e.demo.library.replica.ReplicaRead)")
+  public Object readFromReplica(ProceedingJoinPoint joinPoint) throws Throwable {
+    boolean outermost = ReplicaReads.startReading();
+    try {
+      return joinPoint.proceed();
+    } finally {
+      if (outermost) {
+        ReplicaReads.stopReading();
+      }
+    }
+  }
+}
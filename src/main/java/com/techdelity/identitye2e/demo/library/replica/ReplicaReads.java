@@ -0,0 +1,48 @@
+package com.techdelity.identitye2e.demo.library.replica;
+
+/**
+ * What the current thread may read from the replica, for {@link ReplicaRoutingDataSource}. A
+ * thread is reading while a {@link ReplicaRead} method runs, and is pinned to the primary while it
+ * serves a client that has to read its own writes.
+ */
+public final class ReplicaReads {
+
+  private static final ThreadLocal<Boolean> READING = new ThreadLocal<>();
+  private static final ThreadLocal<Boolean> PINNED = new ThreadLocal<>();
+
+  private ReplicaReads() {
+  }
+
+  /**
+   * Mark the thread as running a replica read
+   *
+   * @return false if it already was, in which case the outer read clears the mark
+   */
+  static boolean startReading() {
+    if (READING.get() != null) {
+      return false;
+    }
+    READING.set(Boolean.TRUE);
+    return true;
+  }
+
+  static void stopReading() {
+    READING.remove();
+  }
+
+  static boolean isReading() {
+    return READING.get() != null;
+  }
+
+  static void pinToPrimary() {
+    PINNED.set(Boolean.TRUE);
+  }
+
+  static void unpin() {
+    PINNED.remove();
+  }
+
+  static boolean isPinnedToPrimary() {
+    return PINNED.get() != null;
+  }
+}
@@ -0,0 +1,68 @@
+package com.techdelity.identitye2e.demo.library.replica;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.Map;
+import javax.sql.DataSource;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Sends the connections of {@link ReplicaRead} methods to the read replica and every other
+ * connection to the primary.
+ * <p>
+ * A read falls back to the primary when the replica trails it by more than {@code max-lag}, when
+ * the client has made a change the replica doesn't have yet, see
+ * {@link ReadYourWritesInterceptor}, and when it runs in a read-write transaction. The choice is
+ * made when a connection is first used, so this must sit behind a
+ * {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}: transactions take
+ * their connection before they are marked read-only.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+  private static final String PRIMARY = "primary";
+  private static final String REPLICA = "replica";
+
+  private final ReplicaLagMonitor lagMonitor;
+  private final Counter replicaReads;
+  private final Counter pinnedReads;
+  private final Counter laggingReads;
+
+  public ReplicaRoutingDataSource(DataSource primary, DataSource replica,
+      ReplicaLagMonitor lagMonitor, MeterRegistry meterRegistry) {
+    this.lagMonitor = lagMonitor;
+    setTargetDataSources(Map.of(PRIMARY, primary, REPLICA, replica));
+    setDefaultTargetDataSource(primary);
+    afterPropertiesSet();
+    this.replicaReads = readCounter(meterRegistry, REPLICA, "replica");
+    this.pinnedReads = readCounter(meterRegistry, PRIMARY, "read-your-writes");
+    this.laggingReads = readCounter(meterRegistry, PRIMARY, "lag");
+  }
+
+  @Override
+  protected Object determineCurrentLookupKey() {
+    if (!ReplicaReads.isReading()
+        || TransactionSynchronizationManager.isActualTransactionActive()
+        && !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+      return PRIMARY;
+    }
+    if (ReplicaReads.isPinnedToPrimary()) {
+      pinnedReads.increment();
+      return PRIMARY;
+    }
+    if (!lagMonitor.isWithinMaxLag()) {
+      laggingReads.increment();
+      return PRIMARY;
+    }
+    replicaReads.increment();
+    return REPLICA;
+  }
+
+  private static Counter readCounter(MeterRegistry meterRegistry, String target, String reason) {
+    return Counter.builder("library.replica.reads")
+        .description("Connections opened by replica reads, by where they were sent and why")
+        .tag("target", target)
+        .tag("reason", reason)
+        .register(meterRegistry);
+  }
+}
@@ -0,0 +1,130 @@
+package com.techdelity.identitye2e.demo.library.replica;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Replicates an H2 primary into an H2 replica with a fixed lag, to run and test replica reads
+ * locally.
+ * <p>
+ * Each {@code heartbeat-interval} the primary is captured with {@code SCRIPT}, and the newest
+ * capture at least {@code simulated-lag} old replaces the replica's contents in one transaction,
+ * so readers see the replica jump from one consistent point in time to the next, like a real
+ * replica applying its log. The schema is only recreated when it has changed.
+ */
+public class SimulatedReplication implements DisposableBean {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SimulatedReplication.class);
+  /**
+   * Identity columns are scripted with their next value, which isn't a schema change
+   */
+  private static final Pattern RESTART = Pattern.compile(" RESTART WITH \\d+");
+
+  private final JdbcTemplate primary;
+  private final JdbcTemplate replica;
+  private final TransactionTemplate replicaTransaction;
+  private final long lagMillis;
+  private final Deque<Snapshot> captured = new ArrayDeque<>();
+  private final ScheduledExecutorService replication;
+  private List<String> replicaSchema = List.of();
+
+  public SimulatedReplication(DataSource primary, DataSource replica, Duration lag,
+      Duration interval) {
+    this.primary = new JdbcTemplate(primary);
+    this.replica = new JdbcTemplate(replica);
+    this.replicaTransaction = new TransactionTemplate(new DataSourceTransactionManager(replica));
+    this.lagMillis = lag.toMillis();
+    this.replication = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "simulated-replication");
+      thread.setDaemon(true);
+      return thread;
+    });
+    replication.scheduleWithFixedDelay(this::replicateQuietly, interval.toMillis(),
+        interval.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Capture the primary, and apply the newest capture that is at least the lag old
+   */
+  synchronized void replicateLagged() {
+    long now = System.currentTimeMillis();
+    captured.addLast(capture(now));
+    Snapshot due = null;
+    while (!captured.isEmpty() && now - captured.peekFirst().takenAt() >= lagMillis) {
+      due = captured.pollFirst();
+    }
+    if (due != null) {
+      apply(due);
+    }
+  }
+
+  /**
+   * Bring the replica up to date with the primary straight away
+   */
+  synchronized void replicate() {
+    captured.clear();
+    apply(capture(System.currentTimeMillis()));
+  }
+
+  @Override
+  public void destroy() {
+    replication.shutdownNow();
+  }
+
+  private Snapshot capture(long takenAt) {
+    List<String> schema = new ArrayList<>();
+    List<String> rows = new ArrayList<>();
+    primary.query("SCRIPT", resultSet -> {
+      String statement = resultSet.getString(1);
+      if (statement.startsWith("INSERT INTO")) {
+        rows.add(statement);
+      } else if (!statement.startsWith("--")) {
+        schema.add(statement);
+      }
+    });
+    return new Snapshot(takenAt, schema, rows);
+  }
+
+  private void apply(Snapshot snapshot) {
+    List<String> schema = snapshot.schema().stream()
+        .map(statement -> RESTART.matcher(statement).replaceAll(""))
+        .toList();
+    if (!schema.equals(replicaSchema)) {
+      replica.execute("DROP ALL OBJECTS");
+      schema.forEach(replica::execute);
+      replicaSchema = schema;
+    }
+    replicaTransaction.executeWithoutResult(status -> {
+      replica.queryForList("select table_name from information_schema.tables "
+              + "where table_schema = 'PUBLIC' and table_type = 'BASE TABLE'", String.class)
+          .forEach(table -> replica.execute("DELETE FROM \"PUBLIC\".\"" + table + "\""));
+      snapshot.rows().forEach(replica::execute);
+    });
+  }
+
+  private void replicateQuietly() {
+    try {
+      replicateLagged();
+    } catch (RuntimeException ex) {
+      LOG.warn("Failed to replicate to the simulated replica, will retry", ex);
+    }
+  }
+
+  private record Snapshot(long takenAt, List<String> schema, List<String> rows) {
+
+  }
+}
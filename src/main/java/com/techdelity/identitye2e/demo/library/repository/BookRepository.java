@@ -1,11 +1,218 @@
 package com.techdelity.identitye2e.demo.library.repository;
 
 import com.techdelity.identitye2e.demo.library.model.Book;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 public interface BookRepository extends JpaRepository<Book, String> {
 
+  /**
+   * Region of the second-level query cache holding the results of {@link #findByAuthor(String)}
+   */
+  String BY_AUTHOR_CACHE_REGION = "books-by-author";
+
+  /**
+   * Query space of the native stock updates and deletes below. Hibernate would otherwise treat
+   * each of them as a change to the whole book table, and drop every book from the second-level
+   * cache with every cached query result. Nothing else is in this space, so Hibernate drops
+   * nothing, and the one book changed is dropped by id instead, by the stock engine and by
+   * {@link com.techdelity.identitye2e.demo.library.cache.BookCacheInvalidator}.
+   */
+  String STOCK_QUERY_SPACE = "book_stock";
+
+  @QueryHints({@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+      @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = BY_AUTHOR_CACHE_REGION)})
   List<Book> findByAuthor(String author);
 
+  /**
+   * Read only the version of a book
+   *
+   * @param isbn the isbn of the book
+   * @return the version, empty if the book does not exist
+   */
+  @Query("select b.version from Book b where b.isbn = :isbn")
+  Optional<Integer> findVersionByIsbn(@Param("isbn") String isbn);
+
+  /**
+   * Read a book from the database rather than the second-level cache, which only sees the bulk
+   * updates of a transaction once it commits
+   *
+   * @param isbn the isbn of the book
+   * @return the book, empty if it does not exist
+   */
+  @Query("select b from Book b where b.isbn = :isbn")
+  Optional<Book> findFreshByIsbn(@Param("isbn") String isbn);
+
+  /**
+   * Find books whose normalized author starts with a prefix, ordered by normalized author then
+   * isbn, starting after the given position. Served from the (author_normalized, isbn) index.
+   *
+   * @param prefix      the normalized author prefix
+   * @param afterAuthor the normalized author of the last book already seen, empty for the first page
+   * @param afterIsbn   the isbn of the last book already seen, empty for the first page
+   * @param limit       the maximum number of books to return
+   * @return the matching books
+   */
+  @Query("""
+      select b from Book b
+      where b.authorNormalized like concat(:prefix, '%')
+        and (b.authorNormalized > :afterAuthor
+          or (b.authorNormalized = :afterAuthor and b.isbn > :afterIsbn))
+      order by b.authorNormalized, b.isbn
+      """)
+  List<Book> findByAuthorPrefix(@Param("prefix") String prefix,
+      @Param("afterAuthor") String afterAuthor, @Param("afterIsbn") String afterIsbn,
+      Limit limit);
+
+  /**
+   * Read books in isbn order, a batch at a time
+   *
+   * @param isbn  the isbn of the last book already read, empty for the first batch
+   * @param limit the maximum number of books to return
+   * @return the next books after the given isbn
+   */
+  List<Book> findByIsbnGreaterThanOrderByIsbn(String isbn, Limit limit);
+
+  /**
+   * Stream books in isbn order, fetching rows from the database a batch at a time. Must be read
+   * in a transaction, and the stream closed once done.
+   *
+   * @param isbn  the isbn of the last book already read, empty to start from the first book
+   * @param limit the maximum number of books to return
+   * @return the books after the given isbn
+   */
+  @QueryHints({
+      @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+      @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")})
+  Stream<Book> streamByIsbnGreaterThanOrderByIsbn(String isbn, Limit limit);
+
+  /**
+   * Find which of the given isbns are already in the library
+   *
+   * @param isbns the isbns to check
+   * @return the subset of isbns that already exist
+   */
+  @Query("select b.isbn from Book b where b.isbn in :isbns")
+  Set<String> findExistingIsbns(@Param("isbns") Collection<String> isbns);
+
+  /**
+   * Load books and lock their rows until the end of the transaction. Rows are locked in isbn order
+   * so that two batches with overlapping books can't deadlock.
+   *
+   * @param isbns the isbns of the books to load
+   * @return the books that exist, in isbn order
+   */
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  @Query("select b from Book b where b.isbn in :isbns order by b.isbn")
+  List<Book> findAllByIsbnForUpdate(@Param("isbns") Collection<String> isbns);
+
+  /**
+   * Read only the copies available of a book
+   *
+   * @param isbn the isbn of the book
+   * @return the copies available, empty if the book does not exist
+   */
+  @Query("select b.copiesAvailable from Book b where b.isbn = :isbn")
+  Optional<Integer> findCopiesAvailableByIsbn(@Param("isbn") String isbn);
+
+  /**
+   * Atomically take one copy of a book if any remain
+   *
+   * @param isbn the isbn of the book
+   * @return the number of rows updated, 0 if the book does not exist or has no copies remaining
+   */
+  @Transactional
+  @Modifying(flushAutomatically = true, clearAutomatically = true)
+  @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = STOCK_QUERY_SPACE))
+  @Query(nativeQuery = true, value = """
+      update book set copies_available = copies_available - 1, version = version + 1
+      where isbn = :isbn and copies_available > 0""")
+  int decrementCopiesAvailable(@Param("isbn") long isbn);
+
+  /**
+   * Atomically take several copies of a book if enough remain, moving the version on once for
+   * each copy
+   *
+   * @param isbn   the isbn of the book
+   * @param copies the number of copies to take
+   * @return the number of rows updated, 0 if the book does not exist or has too few copies
+   */
+  @Transactional
+  @Modifying(flushAutomatically = true, clearAutomatically = true)
+  @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = STOCK_QUERY_SPACE))
+  @Query(nativeQuery = true, value = """
+      update book set copies_available = copies_available - :copies, version = version + :copies
+      where isbn = :isbn and copies_available >= :copies""")
+  int takeCopies(@Param("isbn") long isbn, @Param("copies") int copies);
+
+  /**
+   * Atomically put one copy of a book back
+   *
+   * @param isbn the isbn of the book
+   * @return the number of rows updated, 0 if the book does not exist
+   */
+  @Modifying(flushAutomatically = true, clearAutomatically = true)
+  @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = STOCK_QUERY_SPACE))
+  @Query(nativeQuery = true, value = """
+      update book set copies_available = copies_available + 1, version = version + 1
+      where isbn = :isbn""")
+  int incrementCopiesAvailable(@Param("isbn") long isbn);
+
+  /**
+   * Atomically take one copy of a book if any remain and the book is at the expected version
+   *
+   * @param isbn    the isbn of the book
+   * @param version the expected version
+   * @return the number of rows updated, 0 if the book does not exist, is at another version or has
+   * no copies remaining
+   */
+  @Modifying(flushAutomatically = true, clearAutomatically = true)
+  @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = STOCK_QUERY_SPACE))
+  @Query(nativeQuery = true, value = """
+      update book set copies_available = copies_available - 1, version = version + 1
+      where isbn = :isbn and version = :version and copies_available > 0""")
+  int decrementCopiesAvailable(@Param("isbn") long isbn, @Param("version") int version);
+
+  /**
+   * Atomically put one copy of a book back if the book is at the expected version
+   *
+   * @param isbn    the isbn of the book
+   * @param version the expected version
+   * @return the number of rows updated, 0 if the book does not exist or is at another version
+   */
+  @Modifying(flushAutomatically = true, clearAutomatically = true)
+  @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = STOCK_QUERY_SPACE))
+  @Query(nativeQuery = true, value = """
+      update book set copies_available = copies_available + 1, version = version + 1
+      where isbn = :isbn and version = :version""")
+  int incrementCopiesAvailable(@Param("isbn") long isbn, @Param("version") int version);
+
+  /**
+   * Delete a book if it is at the expected version. The caller drops the book from the
+   * second-level cache, with the cached {@link #findByAuthor(String)} results.
+   *
+   * @param isbn    the isbn of the book
+   * @param version the expected version
+   * @return the number of rows deleted, 0 if the book does not exist or is at another version
+   */
+  @Modifying(flushAutomatically = true, clearAutomatically = true)
+  @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = STOCK_QUERY_SPACE))
+  @Query(nativeQuery = true, value = """
+      delete from book where isbn = :isbn and version = :version""")
+  int deleteByIsbnAndVersion(@Param("isbn") long isbn, @Param("version") int version);
+
 }
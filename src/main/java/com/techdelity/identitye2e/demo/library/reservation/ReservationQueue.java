@@ -0,0 +1,279 @@
+package com.techdelity.identitye2e.demo.library.reservation;
+
+import com.techdelity.identitye2e.demo.library.cache.BookInvalidation;
+import com.techdelity.identitye2e.demo.library.cache.InvalidationTransport;
+import com.techdelity.identitye2e.demo.library.exception.NoBookCopiesRemainingToBorrowException;
+import com.techdelity.identitye2e.demo.library.model.Book;
+import com.techdelity.identitye2e.demo.library.model.Isbn;
+import com.techdelity.identitye2e.demo.library.service.BookChangedEvent;
+import com.techdelity.identitye2e.demo.library.service.LibraryService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Queues borrowers of books with no copies left, so a returned copy goes to the borrower who has
+ * waited longest rather than to whoever happens to retry first.
+ * <p>
+ * Each book has a FIFO queue of at most {@code library.reservations.max-waiters} reservations. A
+ * reservation joins the back of its queue, then copies are borrowed for the reservations at the
+ * front for as long as there are copies to borrow. This is done again on {@code executor} each
+ * time a return of the book commits, so the returned copy is handed straight to the next waiter
+ * and the returning request doesn't wait for it. A reservation is granted with the borrowed book,
+ * or with nothing if the book does not exist or is removed. Queues are kept by packed isbn and
+ * dropped once empty.
+ * <p>
+ * While a book has reservations waiting its copies are held for them: borrows and batch borrows of
+ * it on this node are refused, see {@link #isHeld(String)}, so a returned copy can't be taken by
+ * another borrower before it is handed over. Queues are kept per node. A return on another node
+ * reaches this one as an invalidation of the book, which hands its copies over in the same way,
+ * but borrowers on that node may take the copy first.
+ */
+@Component
+@Profile("!reactive")
+public class ReservationQueue {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ReservationQueue.class);
+
+  private final LibraryService libraryService;
+  private final Executor executor;
+  private final int maxWaiters;
+  private final Map<Long, Waitlist> waitlists = new ConcurrentHashMap<>();
+  private final AtomicInteger waiting = new AtomicInteger();
+  private final Counter granted;
+  private final Counter cancelled;
+
+  @Autowired
+  public ReservationQueue(LibraryService libraryService,
+      @Qualifier("applicationTaskExecutor") Executor executor, InvalidationTransport transport,
+      MeterRegistry meterRegistry,
+      @Value("${library.reservations.max-waiters:1000}") int maxWaiters) {
+    this.libraryService = libraryService;
+    this.executor = executor;
+    this.maxWaiters = maxWaiters;
+    this.granted = Counter.builder("library.reservations.granted")
+        .description("Reservations granted a copy of their book")
+        .register(meterRegistry);
+    this.cancelled = Counter.builder("library.reservations.cancelled")
+        .description("Reservations dropped before a copy was free, such as when the wait ran out")
+        .register(meterRegistry);
+    Gauge.builder("library.reservations.waiting", waiting, AtomicInteger::get)
+        .description("Reservations waiting for a copy")
+        .register(meterRegistry);
+    // Invalidations don't say what changed, so any change of a book with reservations is tried
+    transport.subscribe(invalidation -> {
+      if (invalidation.scope() == BookInvalidation.Scope.BOOK) {
+        handOverLater(invalidation.isbn());
+      }
+    });
+  }
+
+  /**
+   * Reserve a copy of a book, borrowing one at once if it is free and nobody is waiting for it
+   *
+   * @param isbn the isbn of the book
+   * @return the reservation, which may already be granted
+   * @throws NoBookCopiesRemainingToBorrowException if no copies are left and the queue is full
+   */
+  public Reservation reserve(String isbn) {
+    Reservation reservation = new Reservation(isbn);
+    long key = Isbn.pack(isbn);
+    Waitlist waitlist = lock(key);
+    try {
+      if (waitlist.queue.size() >= maxWaiters) {
+        throw new NoBookCopiesRemainingToBorrowException();
+      }
+      waitlist.queue.add(reservation);
+      waiting.incrementAndGet();
+      try {
+        handOver(isbn, waitlist);
+      } catch (RuntimeException ex) {
+        if (waitlist.queue.remove(reservation)) {
+          waiting.decrementAndGet();
+        }
+        throw ex;
+      }
+      return reservation;
+    } finally {
+      unlock(key, waitlist);
+    }
+  }
+
+  /**
+   * Take a reservation out of its queue, such as when its client stops waiting
+   *
+   * @param reservation the reservation
+   * @return true if it was taken out, false if it had already been granted
+   */
+  public boolean cancel(Reservation reservation) {
+    long key = Isbn.pack(reservation.isbn());
+    Waitlist waitlist = waitlists.get(key);
+    if (waitlist == null) {
+      return false;
+    }
+    waitlist.lock.lock();
+    try {
+      if (!waitlist.queue.remove(reservation)) {
+        return false;
+      }
+      waiting.decrementAndGet();
+      cancelled.increment();
+      return true;
+    } finally {
+      unlock(key, waitlist);
+    }
+  }
+
+  /**
+   * @param isbn the isbn of a book
+   * @return true if reservations of the book are waiting on this node, in which case its copies
+   * are held for them and other borrows of it should be refused
+   */
+  public boolean isHeld(String isbn) {
+    return waitlists.containsKey(Isbn.pack(isbn));
+  }
+
+  /**
+   * Hand the copies of a returned book to its reservations, and let them go if it was removed
+   */
+  @TransactionalEventListener(fallbackExecution = true)
+  public void onBookChanged(BookChangedEvent event) {
+    if (event.type() == BookChangedEvent.Type.RETURNED
+        || event.type() == BookChangedEvent.Type.REMOVED) {
+      handOverLater(event.isbn());
+    }
+  }
+
+  int waiting() {
+    return waiting.get();
+  }
+
+  private void handOverLater(String isbn) {
+    if (waitlists.containsKey(Isbn.pack(isbn))) {
+      executor.execute(() -> handOverQuietly(isbn));
+    }
+  }
+
+  private void handOverQuietly(String isbn) {
+    long key = Isbn.pack(isbn);
+    Waitlist waitlist = waitlists.get(key);
+    if (waitlist == null) {
+      return;
+    }
+    waitlist.lock.lock();
+    try {
+      handOver(isbn, waitlist);
+    } catch (RuntimeException ex) {
+      LOG.warn("Failed to hand returned copies of {} to its reservations", isbn, ex);
+    } finally {
+      unlock(key, waitlist);
+    }
+  }
+
+  /**
+   * Borrow copies for the reservations at the front of a queue while there are copies left.
+   * Called with the lock of the queue held.
+   */
+  private void handOver(String isbn, Waitlist waitlist) {
+    Reservation next;
+    while ((next = waitlist.queue.peek()) != null) {
+      Optional<Book> book;
+      try {
+        book = libraryService.borrowBook(isbn);
+      } catch (NoBookCopiesRemainingToBorrowException ex) {
+        return;
+      }
+      if (book.isEmpty()) {
+        // The book does not exist, so none of its reservations can be granted
+        while ((next = waitlist.queue.poll()) != null) {
+          waiting.decrementAndGet();
+          next.outcome.complete(Optional.empty());
+        }
+        return;
+      }
+      waitlist.queue.poll();
+      waiting.decrementAndGet();
+      granted.increment();
+      next.outcome.complete(book);
+    }
+  }
+
+  private Waitlist lock(long key) {
+    while (true) {
+      Waitlist waitlist = waitlists.computeIfAbsent(key, k -> new Waitlist());
+      waitlist.lock.lock();
+      if (!waitlist.retired) {
+        return waitlist;
+      }
+      // Dropped while this thread waited for it, a new one takes its place
+      waitlist.lock.unlock();
+    }
+  }
+
+  /**
+   * Unlock a queue, dropping it if it is empty so books nobody is waiting for hold nothing
+   */
+  private void unlock(long key, Waitlist waitlist) {
+    try {
+      if (waitlist.queue.isEmpty()) {
+        waitlist.retired = true;
+        waitlists.remove(key, waitlist);
+      }
+    } finally {
+      waitlist.lock.unlock();
+    }
+  }
+
+  /**
+   * A borrower waiting for a copy of a book
+   */
+  public static final class Reservation {
+
+    private final String isbn;
+    private final CompletableFuture<Optional<Book>> outcome = new CompletableFuture<>();
+
+    Reservation(String isbn) {
+      this.isbn = isbn;
+    }
+
+    public String isbn() {
+      return isbn;
+    }
+
+    /**
+     * @return completed with the book borrowed for the reservation, or empty if the book does not
+     * exist. Never completed if the reservation is cancelled.
+     */
+    public CompletableFuture<Optional<Book>> outcome() {
+      return outcome;
+    }
+  }
+
+  /**
+   * The reservations of one book. Reservations are granted and cancelled under the lock, so one
+   * is never both.
+   */
+  private static final class Waitlist {
+
+    final ReentrantLock lock = new ReentrantLock();
+    final Queue<Reservation> queue = new ArrayDeque<>();
+    boolean retired;
+  }
+}
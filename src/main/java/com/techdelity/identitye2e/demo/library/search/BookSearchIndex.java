@@ -0,0 +1,183 @@
+package com.techdelity.identitye2e.demo.library.search;
+
+import com.techdelity.identitye2e.demo.library.config.ConditionalOnJpaStore;
+import com.techdelity.identitye2e.demo.library.model.Book;
+import com.techdelity.identitye2e.demo.library.repository.BookRepository;
+import com.techdelity.identitye2e.demo.library.service.BookChangedEvent;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * In memory inverted index over book titles and authors.
+ * <p>
+ * Each word maps to the isbns of the books containing it, with a weight of how often it occurs,
+ * boosted for title matches. Results are ranked by the sum of the word weights multiplied by the
+ * inverse document frequency of each word, so rare words count for more than common ones. The
+ * index is rebuilt from the repository at startup and kept up to date from
+ * {@link BookChangedEvent}s after they commit.
+ */
+@Component
+@ConditionalOnJpaStore
+public class BookSearchIndex {
+
+  private static final float TITLE_BOOST = 2.0f;
+  private static final float AUTHOR_BOOST = 1.0f;
+
+  private static final Comparator<Entry<String, Float>> BY_SCORE =
+      Entry.<String, Float>comparingByValue()
+          .thenComparing(Entry.<String, Float>comparingByKey().reversed());
+
+  private final Map<String, Map<String, Float>> postings = new HashMap<>();
+  private final Map<String, Set<String>> documentTerms = new HashMap<>();
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  private final BookRepository bookRepository;
+  private final int rebuildBatchSize;
+
+  @Autowired
+  public BookSearchIndex(BookRepository bookRepository,
+      @Value("${library.search.rebuild-batch-size:1000}") int rebuildBatchSize) {
+    this.bookRepository = bookRepository;
+    this.rebuildBatchSize = rebuildBatchSize;
+  }
+
+  /**
+   * Add a book to the index, replacing any previous entry for its isbn
+   *
+   * @param book the book to index
+   */
+  public void index(Book book) {
+    Map<String, Float> weights = new HashMap<>();
+    TextNormalizer.tokenize(book.getTitle()).forEach(t -> weights.merge(t, TITLE_BOOST, Float::sum));
+    TextNormalizer.tokenize(book.getAuthor()).forEach(t -> weights.merge(t, AUTHOR_BOOST, Float::sum));
+
+    lock.writeLock().lock();
+    try {
+      removeTerms(book.getIsbn());
+      weights.forEach((term, weight) ->
+          postings.computeIfAbsent(term, t -> new HashMap<>()).put(book.getIsbn(), weight));
+      documentTerms.put(book.getIsbn(), weights.keySet());
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Remove a book from the index
+   *
+   * @param isbn the isbn of the book to remove
+   */
+  public void remove(String isbn) {
+    lock.writeLock().lock();
+    try {
+      removeTerms(isbn);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Find the books best matching a query
+   *
+   * @param query the words to search for in titles and authors
+   * @param limit the maximum number of results
+   * @return isbns of the matching books, best match first
+   */
+  public List<String> search(String query, int limit) {
+    Set<String> terms = new LinkedHashSet<>(TextNormalizer.tokenize(query));
+    Map<String, Float> scores = new HashMap<>();
+
+    lock.readLock().lock();
+    try {
+      int documentCount = documentTerms.size();
+      for (String term : terms) {
+        Map<String, Float> matches = postings.get(term);
+        if (matches == null) {
+          continue;
+        }
+        float idf = (float) Math.log(1 + (double) documentCount / matches.size());
+        matches.forEach((isbn, weight) -> scores.merge(isbn, weight * idf, Float::sum));
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+
+    // Keep the top results in a min heap rather than sorting every match
+    PriorityQueue<Entry<String, Float>> top = new PriorityQueue<>(BY_SCORE);
+    for (Entry<String, Float> score : scores.entrySet()) {
+      top.offer(score);
+      if (top.size() > limit) {
+        top.poll();
+      }
+    }
+    return top.stream().sorted(BY_SCORE.reversed()).map(Entry::getKey).toList();
+  }
+
+  /**
+   * @return the number of books in the index
+   */
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return documentTerms.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @TransactionalEventListener(fallbackExecution = true)
+  public void onBookChanged(BookChangedEvent event) {
+    switch (event.type()) {
+      case ADDED -> index(event.book());
+      case REMOVED -> remove(event.isbn());
+      case BORROWED, RETURNED -> {
+        // Copy counts aren't indexed
+      }
+    }
+  }
+
+  /**
+   * Index every book in the repository, reading it in isbn order a batch at a time
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  public void rebuild() {
+    String after = "";
+    List<Book> batch;
+    do {
+      batch = bookRepository.findByIsbnGreaterThanOrderByIsbn(after, Limit.of(rebuildBatchSize));
+      batch.forEach(this::index);
+      if (!batch.isEmpty()) {
+        after = batch.get(batch.size() - 1).getIsbn();
+      }
+    } while (batch.size() == rebuildBatchSize);
+  }
+
+  private void removeTerms(String isbn) {
+    Set<String> terms = documentTerms.remove(isbn);
+    if (terms == null) {
+      return;
+    }
+    for (String term : terms) {
+      Map<String, Float> matches = postings.get(term);
+      matches.remove(isbn);
+      if (matches.isEmpty()) {
+        postings.remove(term);
+      }
+    }
+  }
+}
@@ -0,0 +1,55 @@
+package com.techdelity.identitye2e.demo.library.search;
+
+import com.techdelity.identitye2e.demo.library.config.ConditionalOnJpaStore;
+import com.techdelity.identitye2e.demo.library.exception.InvalidRequestException;
+import com.techdelity.identitye2e.demo.library.model.Book;
+import com.techdelity.identitye2e.demo.library.repository.BookRepository;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Full text search over book titles and authors. Matching and ranking is done by the
+ * {@link BookSearchIndex}, then the matching books are loaded by primary key in one query.
+ */
+@Service
+@ConditionalOnJpaStore
+public class BookSearchService {
+
+  private final BookSearchIndex bookSearchIndex;
+  private final BookRepository bookRepository;
+  private final int maxResults;
+
+  @Autowired
+  public BookSearchService(BookSearchIndex bookSearchIndex, BookRepository bookRepository,
+      @Value("${library.search.max-results:100}") int maxResults) {
+    this.bookSearchIndex = bookSearchIndex;
+    this.bookRepository = bookRepository;
+    this.maxResults = maxResults;
+  }
+
+  /**
+   * Search for books by words in their title or author
+   *
+   * @param query the words to search for
+   * @param limit the maximum number of books to return, capped by the library
+   * @return the matching books, best match first
+   */
+  public List<Book> search(String query, int limit) {
+    if (TextNormalizer.tokenize(query).isEmpty()) {
+      throw new InvalidRequestException("Search query must contain a letter or digit");
+    }
+    List<String> isbns = bookSearchIndex.search(query, Math.max(1, Math.min(limit, maxResults)));
+    if (isbns.isEmpty()) {
+      return List.of();
+    }
+    Map<String, Book> books = bookRepository.findAllById(isbns).stream()
+        .collect(Collectors.toMap(Book::getIsbn, Function.identity()));
+    return isbns.stream().map(books::get).filter(Objects::nonNull).toList();
+  }
+}
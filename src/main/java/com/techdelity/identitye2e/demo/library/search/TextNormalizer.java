@@ -0,0 +1,54 @@
+package com.techdelity.identitye2e.demo.library.search;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Normalizes free text for searching. Case, accents and punctuation are removed so that
+ * "Gayle Laakmann McDowell", "gayle laakmann-mcdowell" and "GAYLE LAAKMANN McDOWELL" all match.
+ * Letters and digits of every script are kept, so "Słowacki", "Фёдор Достоевский" and "村上春樹"
+ * normalize to "słowacki", "федор достоевский" and "村上春樹".
+ */
+public final class TextNormalizer {
+
+  private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+  private static final Pattern NON_ALPHANUMERIC = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+  private TextNormalizer() {
+  }
+
+  /**
+   * Normalize text to lower case words separated by single spaces
+   *
+   * @param text the text to normalize
+   * @return the normalized text, null if the text is null
+   */
+  public static String normalize(String text) {
+    if (text == null) {
+      return null;
+    }
+    // Composed again so that letters made of parts that aren't accents, such as Hangul, stay whole
+    String withoutAccents = Normalizer.normalize(
+        DIACRITICS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll(""),
+        Normalizer.Form.NFC);
+    return NON_ALPHANUMERIC.matcher(withoutAccents.toLowerCase(Locale.ROOT)).replaceAll(" ")
+        .trim();
+  }
+
+  /**
+   * Split text into normalized words
+   *
+   * @param text the text to split
+   * @return the words, empty if the text is null or has no letters or digits
+   */
+  public static List<String> tokenize(String text) {
+    String normalized = normalize(text);
+    if (normalized == null || normalized.isEmpty()) {
+      return List.of();
+    }
+    return Arrays.asList(normalized.split(" "));
+  }
+}
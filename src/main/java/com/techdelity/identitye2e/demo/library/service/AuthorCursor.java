@@ -0,0 +1,50 @@
+package com.techdelity.identitye2e.demo.library.service;
+
+import com.techdelity.identitye2e.demo.library.exception.InvalidRequestException;
+import com.techdelity.identitye2e.demo.library.model.Isbn;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * The opaque cursor of the author prefix search, the position of the last book on a page
+ */
+final class AuthorCursor {
+
+  private AuthorCursor() {
+  }
+
+  static String encode(String author, String isbn) {
+    return Base64.getUrlEncoder().withoutPadding()
+        .encodeToString((author + '\0' + isbn).getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * @param cursor the cursor to decode, null for the first page
+   * @return the normalized author and isbn of the last book seen, both empty for the first page
+   */
+  static String[] decode(String cursor) {
+    if (cursor == null) {
+      return new String[]{"", ""};
+    }
+    byte[] decoded;
+    try {
+      decoded = Base64.getUrlDecoder().decode(cursor);
+    } catch (IllegalArgumentException ex) {
+      throw new InvalidRequestException("Invalid cursor");
+    }
+    String[] position = new String(decoded, StandardCharsets.UTF_8).split("\0", 2);
+    if (position.length != 2 || !position[1].isEmpty() && !isIsbn(position[1])) {
+      throw new InvalidRequestException("Invalid cursor");
+    }
+    return position;
+  }
+
+  private static boolean isIsbn(String isbn) {
+    try {
+      Isbn.pack(isbn);
+      return true;
+    } catch (IllegalArgumentException ex) {
+      return false;
+    }
+  }
+}
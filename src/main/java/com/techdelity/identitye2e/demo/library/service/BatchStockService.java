@@ -0,0 +1,226 @@
+package com.techdelity.identitye2e.demo.library.service;
+
+import static com.techdelity.identitye2e.demo.library.config.CacheConfig.BOOKS_CACHE;
+import static com.techdelity.identitye2e.demo.library.config.CacheConfig.BOOK_JSON_CACHE;
+import static com.techdelity.identitye2e.demo.library.config.CacheConfig.BOOK_VERSIONS_CACHE;
+
+import com.techdelity.identitye2e.demo.library.config.ConditionalOnJpaStore;
+import com.techdelity.identitye2e.demo.library.exception.InvalidRequestException;
+import com.techdelity.identitye2e.demo.library.model.Book;
+import com.techdelity.identitye2e.demo.library.model.Isbn;
+import com.techdelity.identitye2e.demo.library.model.StockBatch;
+import com.techdelity.identitye2e.demo.library.model.StockBatch.Item;
+import com.techdelity.identitye2e.demo.library.model.StockBatch.Mode;
+import com.techdelity.identitye2e.demo.library.model.StockBatchReport;
+import com.techdelity.identitye2e.demo.library.model.StockBatchReport.ItemResult;
+import com.techdelity.identitye2e.demo.library.model.StockBatchReport.Status;
+import com.techdelity.identitye2e.demo.library.repository.BookRepository;
+import com.techdelity.identitye2e.demo.library.reservation.ReservationQueue;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Borrows or returns several books in a single transaction.
+ * <p>
+ * All the books in a batch are loaded and row locked with one query, in isbn order so that
+ * overlapping batches can't deadlock. The new copy counts are worked out in memory and written
+ * back together when the transaction commits, as one JDBC batch of updates. The locks are only
+ * held for that one load and write, rather than for a transaction per book. Copies of books held for
+ * reservations aren't borrowed, see {@link ReservationQueue}.
+ */
+@Service
+@ConditionalOnJpaStore
+@ConditionalOnProperty(name = "library.stock.mode", havingValue = "database", matchIfMissing = true)
+@Timed(value = "library.service", histogram = true)
+public class BatchStockService {
+
+  private final BookRepository bookRepository;
+  private final TransactionTemplate transactionTemplate;
+  private final CacheManager cacheManager;
+  private final ApplicationEventPublisher eventPublisher;
+  private final ObjectProvider<ReservationQueue> reservationQueue;
+  private final Counter borrowRejections;
+  private final int maxItems;
+
+  @Autowired
+  public BatchStockService(BookRepository bookRepository, TransactionTemplate transactionTemplate,
+      CacheManager cacheManager, ApplicationEventPublisher eventPublisher,
+      ObjectProvider<ReservationQueue> reservationQueue, MeterRegistry meterRegistry,
+      @Value("${library.batch.max-items:500}") int maxItems) {
+    this.bookRepository = bookRepository;
+    this.transactionTemplate = transactionTemplate;
+    this.cacheManager = cacheManager;
+    this.eventPublisher = eventPublisher;
+    this.reservationQueue = reservationQueue;
+    this.borrowRejections = Counter.builder("library.borrow.rejected")
+        .description("Borrows rejected because no copies were remaining")
+        .register(meterRegistry);
+    this.maxItems = maxItems;
+  }
+
+  /**
+   * Borrow copies of several books
+   *
+   * @param batch the books to borrow
+   * @return a report with the result of every item
+   */
+  public StockBatchReport borrowBooks(StockBatch batch) {
+    return apply(batch, -1);
+  }
+
+  /**
+   * Return copies of several books
+   *
+   * @param batch the books to return
+   * @return a report with the result of every item
+   */
+  public StockBatchReport returnBooks(StockBatch batch) {
+    return apply(batch, 1);
+  }
+
+  private StockBatchReport apply(StockBatch batch, int direction) {
+    if (batch == null || batch.items() == null || batch.items().isEmpty()) {
+      throw new InvalidRequestException("Batch must contain at least one item");
+    }
+    if (batch.items().size() > maxItems) {
+      throw new InvalidRequestException("Batch cannot contain more than " + maxItems + " items");
+    }
+    Mode mode = batch.mode() == null ? Mode.ALL_OR_NOTHING : batch.mode();
+
+    Map<String, BookChangedEvent> events = new HashMap<>();
+    List<ItemResult> results = Objects.requireNonNull(transactionTemplate.execute(
+        status -> applyLocked(batch.items(), mode, direction, events)));
+
+    // Evict and publish once the transaction has committed, so a concurrent read can't cache the
+    // old count and listeners only hear of committed changes
+    List<String> changed = results.stream()
+        .filter(result -> result.status() == Status.APPLIED)
+        .map(ItemResult::isbn)
+        .distinct()
+        .toList();
+    for (String cacheName : List.of(BOOKS_CACHE, BOOK_VERSIONS_CACHE, BOOK_JSON_CACHE)) {
+      Cache cache = cacheManager.getCache(cacheName);
+      if (cache != null) {
+        changed.forEach(isbn -> cache.evict(Isbn.pack(isbn)));
+      }
+    }
+    changed.forEach(isbn -> eventPublisher.publishEvent(events.get(isbn)));
+    int applied = (int) results.stream().filter(r -> r.status() == Status.APPLIED).count();
+    return new StockBatchReport(applied, results.size() - applied, results);
+  }
+
+  /**
+   * @param events filled with the change to each book, with the version and copies it will have
+   *               once the batch commits
+   */
+  private List<ItemResult> applyLocked(List<Item> items, Mode mode, int direction,
+      Map<String, BookChangedEvent> events) {
+    // The isbn of each item in normalized form, null if it is missing or invalid
+    List<String> keys = items.stream().map(item -> normalizeOrNull(item.isbn())).toList();
+    Set<String> isbns = keys.stream()
+        .filter(Objects::nonNull)
+        .collect(Collectors.toSet());
+    Map<String, Book> books = bookRepository.findAllByIsbnForUpdate(isbns).stream()
+        .collect(Collectors.toMap(Book::getIsbn, Function.identity()));
+
+    // Copies left of each book after the items accepted so far, so repeated isbns add up
+    Map<String, Integer> remaining = new HashMap<>();
+    List<ItemResult> results = new ArrayList<>(items.size());
+    boolean anyRejected = false;
+    for (int i = 0; i < items.size(); i++) {
+      Item item = items.get(i);
+      String isbn = keys.get(i);
+      String reason = check(item, isbn, books, remaining, direction);
+      if (reason == null) {
+        remaining.merge(isbn, direction * item.copies(), Integer::sum);
+        results.add(new ItemResult(isbn, item.copies(), Status.APPLIED, null));
+      } else {
+        anyRejected = true;
+        results.add(new ItemResult(isbn == null ? item.isbn() : isbn, item.copies(),
+            Status.REJECTED, reason));
+      }
+    }
+
+    if (mode == Mode.ALL_OR_NOTHING && anyRejected) {
+      return results.stream()
+          .map(result -> result.status() == Status.APPLIED
+              ? new ItemResult(result.isbn(), result.quantity(), Status.SKIPPED,
+              "Another item in the batch was rejected")
+              : result)
+          .toList();
+    }
+    // The changed books are flushed as one batch of versioned updates on commit
+    remaining.forEach((isbn, change) -> {
+      Book book = books.get(isbn);
+      book.setCopiesAvailable(book.getCopiesAvailable() + change);
+      events.put(isbn, direction < 0
+          ? BookChangedEvent.borrowed(isbn, book.getVersion() + 1, book.getCopiesAvailable())
+          : BookChangedEvent.returned(isbn, book.getVersion() + 1, book.getCopiesAvailable()));
+    });
+    return results;
+  }
+
+  /**
+   * @param isbn the normalized isbn of the item, null if it is missing or invalid
+   */
+  private String check(Item item, String isbn, Map<String, Book> books,
+      Map<String, Integer> remaining, int direction) {
+    if (item.isbn() == null || item.isbn().isBlank()) {
+      return "Missing isbn";
+    }
+    if (isbn == null) {
+      return "Invalid isbn";
+    }
+    if (item.copies() < 1) {
+      return "Quantity must be at least 1";
+    }
+    Book book = books.get(isbn);
+    if (book == null) {
+      return "Cannot find book";
+    }
+    if (direction < 0 && isHeld(isbn)) {
+      borrowRejections.increment();
+      return "Copies are held for reservations";
+    }
+    if (direction < 0 && book.getCopiesAvailable() + remaining.getOrDefault(isbn, 0)
+        < item.copies()) {
+      borrowRejections.increment();
+      return "Not enough copies remaining";
+    }
+    return null;
+  }
+
+  private boolean isHeld(String isbn) {
+    ReservationQueue reservations = reservationQueue.getIfAvailable();
+    return reservations != null && reservations.isHeld(isbn);
+  }
+
+  private static String normalizeOrNull(String isbn) {
+    if (isbn == null || isbn.isBlank()) {
+      return null;
+    }
+    try {
+      return Isbn.normalize(isbn);
+    } catch (IllegalArgumentException ex) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,64 @@
+package com.techdelity.identitye2e.demo.library.service;
+
+import com.techdelity.identitye2e.demo.library.model.Book;
+
+/**
+ * Published by the library when a book is added or removed, or a copy of it is borrowed or
+ * returned. Listeners that keep derived state, such as the search index, should use a
+ * transactional event listener so they only see changes that have been committed.
+ *
+ * @param type    the kind of change
+ * @param isbn    the isbn of the book that changed
+ * @param book    the book as added, null for other changes
+ * @param version         the version of the book after the change, at least the version the
+ *                        change moved it to, {@link #UNKNOWN_VERSION} for removals or if it isn't
+ *                        known
+ * @param copiesAvailable the copies available after the change, {@link #UNKNOWN_COPIES} for
+ *                        removals or if it isn't known
+ */
+public record BookChangedEvent(Type type, String isbn, Book book, int version,
+                               int copiesAvailable) {
+
+  public static final int UNKNOWN_VERSION = -1;
+  public static final int UNKNOWN_COPIES = -1;
+
+  public enum Type {
+    ADDED,
+    REMOVED,
+    BORROWED,
+    RETURNED
+  }
+
+  public static BookChangedEvent added(Book book) {
+    return new BookChangedEvent(Type.ADDED, book.getIsbn(), book, book.getVersion(),
+        book.getCopiesAvailable());
+  }
+
+  public static BookChangedEvent removed(String isbn) {
+    return new BookChangedEvent(Type.REMOVED, isbn, null, UNKNOWN_VERSION, UNKNOWN_COPIES);
+  }
+
+  public static BookChangedEvent borrowed(String isbn, int version, int copiesAvailable) {
+    return new BookChangedEvent(Type.BORROWED, isbn, null, version, copiesAvailable);
+  }
+
+  /**
+   * @param changed the book as the borrow left it, null if it isn't known
+   */
+  public static BookChangedEvent borrowed(String isbn, Book changed) {
+    return changed == null ? borrowed(isbn, UNKNOWN_VERSION, UNKNOWN_COPIES)
+        : borrowed(isbn, changed.getVersion(), changed.getCopiesAvailable());
+  }
+
+  public static BookChangedEvent returned(String isbn, int version, int copiesAvailable) {
+    return new BookChangedEvent(Type.RETURNED, isbn, null, version, copiesAvailable);
+  }
+
+  /**
+   * @param changed the book as the return left it, null if it isn't known
+   */
+  public static BookChangedEvent returned(String isbn, Book changed) {
+    return changed == null ? returned(isbn, UNKNOWN_VERSION, UNKNOWN_COPIES)
+        : returned(isbn, changed.getVersion(), changed.getCopiesAvailable());
+  }
+}
@@ -0,0 +1,146 @@
+package com.techdelity.identitye2e.demo.library.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.techdelity.identitye2e.demo.library.config.ConditionalOnJpaStore;
+import com.techdelity.identitye2e.demo.library.model.Book;
+import com.techdelity.identitye2e.demo.library.repository.BookRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManager;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.stream.Stream;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Writes the whole catalogue, or a part of it, as NDJSON or CSV in the formats read by
+ * {@link BookImportService}.
+ * <p>
+ * Books are streamed from a read only cursor in isbn order, fetched a batch at a time and detached
+ * as soon as they are written, so memory use doesn't grow with the size of the table. The export
+ * can be picked up where it stopped by passing the last isbn received as {@code afterIsbn}.
+ */
+@Service
+@ConditionalOnJpaStore
+public class BookExportService {
+
+  static final String CSV_HEADER = "isbn,title,author,publicationYear,copiesAvailable";
+
+  private final BookRepository bookRepository;
+  private final StockEngine stockEngine;
+  private final EntityManager entityManager;
+  private final TransactionTemplate transactionTemplate;
+  private final ObjectWriter bookWriter;
+  private final Counter exportedBooks;
+
+  @Autowired
+  public BookExportService(BookRepository bookRepository, StockEngine stockEngine,
+      EntityManager entityManager,
+      PlatformTransactionManager transactionManager, ObjectMapper objectMapper,
+      MeterRegistry meterRegistry) {
+    this.bookRepository = bookRepository;
+    this.stockEngine = stockEngine;
+    this.entityManager = entityManager;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    transactionTemplate.setReadOnly(true);
+    this.bookWriter = objectMapper.writerFor(Book.class)
+        .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    this.exportedBooks = Counter.builder("library.export.books")
+        .description("Books written by catalogue exports")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Write books in isbn order
+   *
+   * @param out       the stream to write to, left open
+   * @param format    the format to write
+   * @param afterIsbn the isbn of the last book already exported, null or empty to start from the
+   *                  first book
+   * @param limit     the maximum number of books to write, 0 for no limit
+   * @return the number of books written
+   * @throws IOException if the output can't be written
+   */
+  public long exportBooks(OutputStream out, ImportFormat format, String afterIsbn, int limit)
+      throws IOException {
+    Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    if (format == ImportFormat.CSV) {
+      writer.write(CSV_HEADER);
+      writer.write('\n');
+    }
+    Long written;
+    try {
+      written = transactionTemplate.execute(status -> {
+        try (Stream<Book> books = bookRepository.streamByIsbnGreaterThanOrderByIsbn(
+            afterIsbn == null ? "" : afterIsbn, limit > 0 ? Limit.of(limit) : Limit.unlimited())) {
+          return write(books.iterator(), writer, format);
+        }
+      });
+    } catch (UncheckedIOException ex) {
+      throw ex.getCause();
+    }
+    writer.flush();
+    return written == null ? 0 : written;
+  }
+
+  private long write(Iterator<Book> books, Writer writer, ImportFormat format) {
+    long written = 0;
+    try {
+      while (books.hasNext()) {
+        Book stored = books.next();
+        Book book = stockEngine.withPendingChanges(stored);
+        if (format == ImportFormat.CSV) {
+          writeCsv(book, writer);
+        } else {
+          bookWriter.writeValue(writer, book);
+        }
+        writer.write('\n');
+        entityManager.detach(stored);
+        written++;
+      }
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    } finally {
+      exportedBooks.increment(written);
+    }
+    return written;
+  }
+
+  private static void writeCsv(Book book, Writer writer) throws IOException {
+    writer.write(csvField(book.getIsbn()));
+    writer.write(',');
+    writer.write(csvField(book.getTitle()));
+    writer.write(',');
+    writer.write(csvField(book.getAuthor()));
+    writer.write(',');
+    writer.write(Integer.toString(book.getPublicationYear()));
+    writer.write(',');
+    writer.write(Integer.toString(book.getCopiesAvailable()));
+  }
+
+  /**
+   * Quote a field if it needs it, doubling any quotes, as read by {@link CsvBookParser}
+   */
+  static String csvField(String value) {
+    if (value == null) {
+      return "";
+    }
+    if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0
+        && value.indexOf('\r') < 0) {
+      return value;
+    }
+    return '"' + value.replace("\"", "\"\"") + '"';
+  }
+}
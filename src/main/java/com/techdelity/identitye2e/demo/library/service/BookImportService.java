@@ -0,0 +1,188 @@
+package com.techdelity.identitye2e.demo.library.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.techdelity.identitye2e.demo.library.config.ConditionalOnJpaStore;
+import com.techdelity.identitye2e.demo.library.model.Book;
+import com.techdelity.identitye2e.demo.library.model.ImportReport;
+import com.techdelity.identitye2e.demo.library.model.ImportReport.RowResult;
+import com.techdelity.identitye2e.demo.library.model.ImportReport.Status;
+import com.techdelity.identitye2e.demo.library.model.Isbn;
+import com.techdelity.identitye2e.demo.library.repository.BookRepository;
+import jakarta.persistence.EntityManager;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Loads books into the library in bulk from an NDJSON or CSV feed.
+ * <p>
+ * The feed is read a line at a time and saved in batches, so only one batch of books is held in
+ * memory. The isbns seen so far and the result of every row are kept for the whole feed, to find
+ * isbns repeated in it and to build the report. Each batch is checked against the existing isbns
+ * with a single query and inserted in its own transaction with JDBC batching. A batch that fails
+ * to insert is saved again a row at a time, so only the rows that fail are rejected. Newly added isbns can't be in the book cache, as missing books
+ * are never cached, so there is nothing to evict. A {@link BookChangedEvent} is published for every
+ * book saved.
+ */
+@Service
+@ConditionalOnJpaStore
+public class BookImportService {
+
+  private final BookRepository bookRepository;
+  private final EntityManager entityManager;
+  private final TransactionTemplate transactionTemplate;
+  private final ObjectMapper objectMapper;
+  private final ApplicationEventPublisher eventPublisher;
+  private final int batchSize;
+
+  @Autowired
+  public BookImportService(BookRepository bookRepository, EntityManager entityManager,
+      TransactionTemplate transactionTemplate, ObjectMapper objectMapper,
+      ApplicationEventPublisher eventPublisher,
+      @Value("${library.import.batch-size:500}") int batchSize) {
+    this.bookRepository = bookRepository;
+    this.entityManager = entityManager;
+    this.transactionTemplate = transactionTemplate;
+    this.objectMapper = objectMapper;
+    this.eventPublisher = eventPublisher;
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Import books from a feed
+   *
+   * @param feed   the feed to read, one book per line
+   * @param format the format of the feed
+   * @return a report with the result of every row
+   * @throws IOException if the feed can't be read
+   */
+  public ImportReport importBooks(InputStream feed, ImportFormat format) throws IOException {
+    BufferedReader reader = new BufferedReader(
+        new InputStreamReader(feed, StandardCharsets.UTF_8));
+    CsvBookParser csvParser = format == ImportFormat.CSV ? readCsvHeader(reader) : null;
+
+    List<RowResult> results = new ArrayList<>();
+    List<PendingRow> batch = new ArrayList<>(batchSize);
+    Set<String> seenIsbns = new HashSet<>();
+    long row = 0;
+    String line;
+    while ((line = reader.readLine()) != null) {
+      if (line.isBlank()) {
+        continue;
+      }
+      row++;
+      Book book;
+      try {
+        book = csvParser != null ? csvParser.parse(line) : objectMapper.readValue(line, Book.class);
+      } catch (JsonProcessingException | IllegalArgumentException ex) {
+        results.add(new RowResult(row, null, Status.REJECTED, "Malformed row"));
+        continue;
+      }
+      String invalidReason = validate(book);
+      if (invalidReason != null) {
+        results.add(new RowResult(row, book.getIsbn(), Status.REJECTED, invalidReason));
+      } else if (!seenIsbns.add(book.getIsbn())) {
+        results.add(new RowResult(row, book.getIsbn(), Status.REJECTED, "Duplicate isbn in feed"));
+      } else {
+        batch.add(new PendingRow(row, book));
+        if (batch.size() >= batchSize) {
+          saveBatch(batch, results);
+          batch.clear();
+        }
+      }
+    }
+    saveBatch(batch, results);
+
+    results.sort((a, b) -> Long.compare(a.row(), b.row()));
+    int accepted = (int) results.stream().filter(r -> r.status() == Status.ACCEPTED).count();
+    return new ImportReport(accepted, results.size() - accepted, results);
+  }
+
+  private CsvBookParser readCsvHeader(BufferedReader reader) throws IOException {
+    String header;
+    do {
+      header = reader.readLine();
+    } while (header != null && header.isBlank());
+    return header == null ? null : new CsvBookParser(header);
+  }
+
+  /**
+   * Check a row, normalizing its isbn so every form of an isbn is seen as the same book
+   *
+   * @return why the row is rejected, null if it is valid
+   */
+  private static String validate(Book book) {
+    if (book.getIsbn() == null || book.getIsbn().isBlank()) {
+      return "Missing isbn";
+    }
+    try {
+      book.setIsbn(Isbn.normalize(book.getIsbn()));
+    } catch (IllegalArgumentException ex) {
+      return "Invalid isbn";
+    }
+    if (book.getTitle() == null || book.getTitle().isBlank()) {
+      return "Missing title";
+    }
+    if (book.getCopiesAvailable() < 0) {
+      return "Copies available cannot be negative";
+    }
+    return null;
+  }
+
+  private void saveBatch(List<PendingRow> batch, List<RowResult> results) {
+    if (batch.isEmpty()) {
+      return;
+    }
+    try {
+      results.addAll(save(batch));
+    } catch (RuntimeException ex) {
+      // A row the database refuses, or a book added by another request since the check, fails the
+      // whole batch insert. Each row is checked again on its own, so only those rows are rejected.
+      for (PendingRow pending : batch) {
+        try {
+          results.addAll(save(List.of(pending)));
+        } catch (RuntimeException rowEx) {
+          results.add(new RowResult(pending.row(), pending.book().getIsbn(), Status.REJECTED,
+              "Failed to save"));
+        }
+      }
+    }
+  }
+
+  private List<RowResult> save(List<PendingRow> rows) {
+    return transactionTemplate.execute(status -> {
+      Set<String> existing = bookRepository.findExistingIsbns(
+          rows.stream().map(pending -> pending.book().getIsbn()).toList());
+      List<RowResult> outcome = new ArrayList<>(rows.size());
+      for (PendingRow pending : rows) {
+        String isbn = pending.book().getIsbn();
+        if (existing.contains(isbn)) {
+          outcome.add(new RowResult(pending.row(), isbn, Status.REJECTED, "Book already exists"));
+        } else {
+          entityManager.persist(pending.book());
+          eventPublisher.publishEvent(BookChangedEvent.added(pending.book()));
+          outcome.add(new RowResult(pending.row(), isbn, Status.ACCEPTED, null));
+        }
+      }
+      entityManager.flush();
+      entityManager.clear();
+      return outcome;
+    });
+  }
+
+  private record PendingRow(long row, Book book) {
+
+  }
+}
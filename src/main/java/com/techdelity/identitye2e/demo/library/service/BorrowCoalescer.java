@@ -0,0 +1,129 @@
+package com.techdelity.identitye2e.demo.library.service;
+
+import com.techdelity.identitye2e.demo.library.model.Isbn;
+import com.techdelity.identitye2e.demo.library.repository.BookRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Combines concurrent borrows of the same book into one update of its row.
+ * <p>
+ * Each borrow joins the queue of its book, and whichever borrower finds nobody leading takes the
+ * lead. The leader takes up to {@code maxBatch} waiting borrows, reads the copies available and
+ * takes as many copies as it can for all of them with a single conditional update. The first
+ * borrows in the batch get the copies and the rest are told none were left. Borrows that arrive
+ * while an update runs wait for the next one, so the leader carries on until the queue is empty.
+ * <p>
+ * Callers must not be in a transaction, or every waiting borrow would hold a database connection
+ * that the leader may need.
+ */
+final class BorrowCoalescer {
+
+  private final BookRepository bookRepository;
+  private final int maxBatch;
+  private final Map<Long, Waiters> waiting = new ConcurrentHashMap<>();
+  private final Counter coalescedBorrows;
+  private final DistributionSummary batchSize;
+
+  BorrowCoalescer(BookRepository bookRepository, MeterRegistry meterRegistry, int maxBatch) {
+    this.bookRepository = bookRepository;
+    this.maxBatch = maxBatch;
+    this.coalescedBorrows = Counter.builder("library.coalescing.borrows")
+        .description("Borrows of hot books applied as part of a coalesced update")
+        .register(meterRegistry);
+    this.batchSize = DistributionSummary.builder("library.coalescing.batch-size")
+        .description("Borrows applied by each coalesced update")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Take a copy of a book along with any other borrows of it waiting at the same time
+   *
+   * @param isbn the isbn of the book
+   * @return true if a copy was taken, false if the book does not exist or no copies were left
+   */
+  boolean tryTakeCopy(String isbn) {
+    long key = Isbn.pack(isbn);
+    Waiters waiters = waiting.computeIfAbsent(key, k -> new Waiters());
+    CompletableFuture<Boolean> taken = new CompletableFuture<>();
+    waiters.queue.add(taken);
+    // A borrow queued while the leader was letting go is seen by the check after it lets go
+    while (waiters.leading.compareAndSet(false, true)) {
+      try {
+        drain(key, waiters);
+      } finally {
+        waiters.leading.set(false);
+      }
+      if (waiters.queue.isEmpty()) {
+        // A borrow that still finds these waiters leads them itself, so they can be dropped
+        waiting.remove(key, waiters);
+        break;
+      }
+    }
+    try {
+      return taken.join();
+    } catch (CompletionException ex) {
+      throw ex.getCause() instanceof RuntimeException cause ? cause : ex;
+    }
+  }
+
+  private void drain(long key, Waiters waiters) {
+    List<CompletableFuture<Boolean>> batch = new ArrayList<>();
+    while (true) {
+      batch.clear();
+      CompletableFuture<Boolean> next;
+      while (batch.size() < maxBatch && (next = waiters.queue.poll()) != null) {
+        batch.add(next);
+      }
+      if (batch.isEmpty()) {
+        return;
+      }
+      int granted;
+      try {
+        granted = takeCopies(key, batch.size());
+      } catch (RuntimeException ex) {
+        batch.forEach(borrow -> borrow.completeExceptionally(ex));
+        continue;
+      }
+      for (int i = 0; i < batch.size(); i++) {
+        batch.get(i).complete(i < granted);
+      }
+      coalescedBorrows.increment(batch.size());
+      batchSize.record(batch.size());
+    }
+  }
+
+  /**
+   * @return the number of copies taken, up to {@code wanted}
+   */
+  private int takeCopies(long key, int wanted) {
+    while (true) {
+      Optional<Integer> available = bookRepository.findCopiesAvailableByIsbn(Isbn.unpack(key));
+      if (available.isEmpty() || available.get() <= 0) {
+        return 0;
+      }
+      int copies = Math.min(wanted, available.get());
+      if (bookRepository.takeCopies(key, copies) > 0) {
+        return copies;
+      }
+      // A borrow that was not coalesced got in between the read and the update, read it again
+    }
+  }
+
+  private static final class Waiters {
+
+    final Queue<CompletableFuture<Boolean>> queue = new ConcurrentLinkedQueue<>();
+    final AtomicBoolean leading = new AtomicBoolean();
+  }
+}
@@ -0,0 +1,84 @@
+package com.techdelity.identitye2e.demo.library.service;
+
+import com.techdelity.identitye2e.demo.library.exception.InvalidRequestException;
+import com.techdelity.identitye2e.demo.library.model.Book;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Parses single line CSV book records. Columns are matched by the names in the header so they may
+ * appear in any order. Fields may be quoted, with doubled quotes as an escape.
+ */
+class CsvBookParser {
+
+  private final Map<String, Integer> columns = new HashMap<>();
+
+  CsvBookParser(String header) {
+    List<String> names = split(header);
+    for (int i = 0; i < names.size(); i++) {
+      columns.put(names.get(i).trim().toLowerCase(Locale.ROOT), i);
+    }
+    if (!columns.containsKey("isbn")) {
+      throw new InvalidRequestException("CSV header must contain an isbn column");
+    }
+  }
+
+  Book parse(String line) {
+    List<String> fields = split(line);
+    Book book = new Book();
+    book.setIsbn(field(fields, "isbn"));
+    book.setTitle(field(fields, "title"));
+    book.setAuthor(field(fields, "author"));
+    book.setPublicationYear(intField(fields, "publicationyear"));
+    book.setCopiesAvailable(intField(fields, "copiesavailable"));
+    return book;
+  }
+
+  private String field(List<String> fields, String column) {
+    Integer index = columns.get(column);
+    if (index == null || index >= fields.size()) {
+      return null;
+    }
+    String value = fields.get(index).trim();
+    return value.isEmpty() ? null : value;
+  }
+
+  private int intField(List<String> fields, String column) {
+    String value = field(fields, column);
+    return value == null ? 0 : Integer.parseInt(value);
+  }
+
+  static List<String> split(String line) {
+    List<String> fields = new ArrayList<>();
+    StringBuilder current = new StringBuilder();
+    boolean quoted = false;
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (quoted) {
+        if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+          current.append('"');
+          i++;
+        } else if (c == '"') {
+          quoted = false;
+        } else {
+          current.append(c);
+        }
+      } else if (c == '"') {
+        quoted = true;
+      } else if (c == ',') {
+        fields.add(current.toString());
+        current.setLength(0);
+      } else {
+        current.append(c);
+      }
+    }
+    if (quoted) {
+      throw new InvalidRequestException("Unterminated quoted field");
+    }
+    fields.add(current.toString());
+    return fields;
+  }
+}
@@ -0,0 +1,92 @@
+package com.techdelity.identitye2e.demo.library.service;
+
+import com.techdelity.identitye2e.demo.library.config.ConditionalOnJpaStore;
+import com.techdelity.identitye2e.demo.library.model.Book;
+import com.techdelity.identitye2e.demo.library.model.Isbn;
+import com.techdelity.identitye2e.demo.library.repository.BookRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.Cache;
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Stock engine that updates the book table directly with conditional updates. The database row
+ * lock is held only for the single update statement, rather than across a read, modify and save.
+ * <p>
+ * Borrows of a book the {@link HotKeyDetector} finds hot are handed to a {@link BorrowCoalescer},
+ * so a burst of borrows of one book queues in memory and is applied a batch at a time instead of
+ * every borrow waiting on the row lock.
+ * <p>
+ * The updates are native statements Hibernate doesn't track, so the book changed is dropped from
+ * the second-level cache here, and only that book. They bind the packed isbn the column holds, so
+ * an ISBN-10 or hyphenated isbn finds the same row as its ISBN-13.
+ */
+@Component
+@ConditionalOnJpaStore
+@ConditionalOnProperty(name = "library.stock.mode", havingValue = "database", matchIfMissing = true)
+public class DatabaseStockEngine implements StockEngine {
+
+  private final BookRepository bookRepository;
+  private final HotKeyDetector hotKeys;
+  private final BorrowCoalescer coalescer;
+  private final Cache entityCache;
+
+  @Autowired
+  public DatabaseStockEngine(BookRepository bookRepository, HotKeyDetector hotKeys,
+      EntityManagerFactory entityManagerFactory, MeterRegistry meterRegistry,
+      @Value("${library.coalescing.max-batch:1000}") int maxBatch) {
+    this.bookRepository = bookRepository;
+    this.hotKeys = hotKeys;
+    this.entityCache = entityManagerFactory.getCache();
+    this.coalescer = new BorrowCoalescer(bookRepository, meterRegistry, maxBatch);
+  }
+
+  /**
+   * Not transactional, so a coalesced borrow holds no connection while it waits. Each update runs
+   * in a transaction of its own.
+   */
+  @Override
+  public boolean tryTakeCopy(String isbn) {
+    long key = Isbn.pack(isbn);
+    boolean taken = hotKeys.record(isbn)
+        ? coalescer.tryTakeCopy(isbn)
+        : bookRepository.decrementCopiesAvailable(key) > 0;
+    return changed(key, taken);
+  }
+
+  @Override
+  @Transactional
+  public boolean putCopyBack(String isbn) {
+    long key = Isbn.pack(isbn);
+    return changed(key, bookRepository.incrementCopiesAvailable(key) > 0);
+  }
+
+  @Override
+  @Transactional
+  public boolean tryTakeCopy(String isbn, int expectedVersion) {
+    long key = Isbn.pack(isbn);
+    return changed(key, bookRepository.decrementCopiesAvailable(key, expectedVersion) > 0);
+  }
+
+  @Override
+  @Transactional
+  public boolean putCopyBack(String isbn, int expectedVersion) {
+    long key = Isbn.pack(isbn);
+    return changed(key, bookRepository.incrementCopiesAvailable(key, expectedVersion) > 0);
+  }
+
+  /**
+   * Drop the second-level copy of a book that has changed, before the caller reads it back. The
+   * copy is cached under the normalized isbn, whichever form the caller gave.
+   */
+  private boolean changed(long key, boolean updated) {
+    if (updated) {
+      entityCache.evict(Book.class, Isbn.unpack(key));
+    }
+    return updated;
+  }
+}
@@ -0,0 +1,118 @@
+package com.techdelity.identitye2e.demo.library.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.techdelity.identitye2e.demo.library.model.Isbn;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Spots books that are getting a burst of requests, so their borrows and loads can be coalesced.
+ * <p>
+ * Requests are counted per packed isbn with a sliding window, estimated from the count of the
+ * current window and the share of the previous window that still falls inside the last
+ * {@code library.coalescing.window}. A book is hot while the estimate is at least
+ * {@code library.coalescing.hot-threshold}. Counters are kept in a bounded cache and dropped once a
+ * book has been quiet for two windows.
+ */
+@Component
+public class HotKeyDetector {
+
+  private final boolean enabled;
+  private final long threshold;
+  private final long windowNanos;
+  private final Cache<Long, Window> windows;
+
+  @Autowired
+  public HotKeyDetector(MeterRegistry meterRegistry,
+      @Value("${library.coalescing.enabled:true}") boolean enabled,
+      @Value("${library.coalescing.hot-threshold:100}") long threshold,
+      @Value("${library.coalescing.window:1s}") Duration window,
+      @Value("${library.coalescing.max-tracked-keys:10000}") long maxTrackedKeys) {
+    this.enabled = enabled;
+    this.threshold = threshold;
+    this.windowNanos = window.toNanos();
+    this.windows = Caffeine.newBuilder()
+        .maximumSize(maxTrackedKeys)
+        .expireAfterAccess(window.multipliedBy(2))
+        .build();
+    Gauge.builder("library.coalescing.hot-keys", this, detector -> detector.hotKeys(System.nanoTime()))
+        .description("Books currently hot enough for their requests to be coalesced")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Count a request for a book
+   *
+   * @param isbn the isbn of the book
+   * @return true if the book is hot, counting this request
+   */
+  public boolean record(String isbn) {
+    return enabled && record(Isbn.pack(isbn), System.nanoTime());
+  }
+
+  boolean record(long isbn, long now) {
+    return windows.get(isbn, key -> new Window(now)).record(now, windowNanos) >= threshold;
+  }
+
+  long hotKeys(long now) {
+    return windows.asMap().values().stream()
+        .filter(window -> window.estimate(now, windowNanos) >= threshold)
+        .count();
+  }
+
+  /**
+   * The request counts of one book. Windows are moved on under the lock, counted without it, so a
+   * count racing with a move may land in either window.
+   */
+  private static final class Window {
+
+    private final LongAdder current = new LongAdder();
+    private volatile long start;
+    private volatile long previous;
+
+    Window(long start) {
+      this.start = start;
+    }
+
+    long record(long now, long windowNanos) {
+      advance(now, windowNanos);
+      current.increment();
+      return estimate(now, windowNanos);
+    }
+
+    long estimate(long now, long windowNanos) {
+      long elapsed = now - start;
+      long count = current.sum();
+      if (elapsed >= 2 * windowNanos) {
+        // Not moved on for a while, both windows are out of date
+        return 0;
+      }
+      if (elapsed >= windowNanos) {
+        // The current window has become the previous one, count the part still in the last window
+        return count * (2 * windowNanos - elapsed) / windowNanos;
+      }
+      return count + previous * (windowNanos - Math.max(0, elapsed)) / windowNanos;
+    }
+
+    private void advance(long now, long windowNanos) {
+      if (now - start < windowNanos) {
+        return;
+      }
+      synchronized (this) {
+        long elapsed = now - start;
+        if (elapsed < windowNanos) {
+          return;
+        }
+        long count = current.sumThenReset();
+        previous = elapsed < 2 * windowNanos ? count : 0;
+        start += elapsed / windowNanos * windowNanos;
+      }
+    }
+  }
+}
@@ -0,0 +1,41 @@
+package com.techdelity.identitye2e.demo.library.service;
+
+import com.techdelity.identitye2e.demo.library.exception.InvalidRequestException;
+import java.util.Arrays;
+import org.springframework.http.MediaType;
+
+/**
+ * The feed formats accepted by the bulk import and written by the export
+ */
+public enum ImportFormat {
+  NDJSON("application/x-ndjson"),
+  CSV("text/csv");
+
+  private final MediaType mediaType;
+
+  ImportFormat(String mediaType) {
+    this.mediaType = MediaType.parseMediaType(mediaType);
+  }
+
+  /**
+   * @return the media type of the format
+   */
+  public MediaType getMediaType() {
+    return mediaType;
+  }
+
+  /**
+   * Find the format for a request content type
+   *
+   * @param contentType the content type of the request
+   * @return the matching format
+   * @throws InvalidRequestException if no format matches the content type
+   */
+  public static ImportFormat fromContentType(String contentType) {
+    MediaType requested = MediaType.parseMediaType(contentType);
+    return Arrays.stream(values())
+        .filter(format -> format.mediaType.isCompatibleWith(requested))
+        .findFirst()
+        .orElseThrow(() -> new InvalidRequestException("Unsupported import format " + contentType));
+  }
+}
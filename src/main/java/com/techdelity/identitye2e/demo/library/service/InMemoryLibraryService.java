@@ -0,0 +1,221 @@
+package com.techdelity.identitye2e.demo.library.service;
+
+import com.techdelity.identitye2e.demo.library.exception.AlreadyExistsException;
+import com.techdelity.identitye2e.demo.library.exception.BookNotFoundException;
+import com.techdelity.identitye2e.demo.library.exception.BookVersionConflictException;
+import com.techdelity.identitye2e.demo.library.exception.InvalidRequestException;
+import com.techdelity.identitye2e.demo.library.exception.NoBookCopiesRemainingToBorrowException;
+import com.techdelity.identitye2e.demo.library.model.Book;
+import com.techdelity.identitye2e.demo.library.model.BookPage;
+import com.techdelity.identitye2e.demo.library.store.OffHeapBookStore;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalInt;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Library service that keeps books in an {@link OffHeapBookStore} instead of the database, used
+ * when {@code library.store=memory}.
+ * <p>
+ * Lookups and borrows never leave the process, so there is no book cache. If
+ * {@code library.store.memory.snapshot-file} is set the store is loaded from the file at startup
+ * and written back to it on shutdown.
+ */
+@Service
+@ConditionalOnProperty(name = "library.store", havingValue = "memory")
+@Timed(value = "library.service", histogram = true)
+public class InMemoryLibraryService implements LibraryService, DisposableBean {
+
+  private static final Logger LOG = LoggerFactory.getLogger(InMemoryLibraryService.class);
+
+  private final OffHeapBookStore store;
+  private final ApplicationEventPublisher eventPublisher;
+  private final Counter borrowRejections;
+  private final int maxSearchResults;
+  private final Path snapshotFile;
+
+  @Autowired
+  public InMemoryLibraryService(ApplicationEventPublisher eventPublisher,
+      MeterRegistry meterRegistry,
+      @Value("${library.store.memory.arena-chunk-size:1MB}") DataSize arenaChunkSize,
+      @Value("${library.store.memory.lock-stripes:64}") int lockStripes,
+      @Value("${library.store.memory.snapshot-file:}") String snapshotFile,
+      @Value("${library.search.max-results:100}") int maxSearchResults) {
+    this.store = new OffHeapBookStore((int) arenaChunkSize.toBytes(), lockStripes);
+    this.eventPublisher = eventPublisher;
+    this.borrowRejections = Counter.builder("library.borrow.rejected")
+        .description("Borrows rejected because no copies were remaining")
+        .register(meterRegistry);
+    Gauge.builder("library.store.books", store, OffHeapBookStore::size)
+        .description("Books in the in-memory store")
+        .register(meterRegistry);
+    Gauge.builder("library.store.off-heap", store, OffHeapBookStore::offHeapBytes)
+        .description("Off-heap memory used by the in-memory store")
+        .baseUnit("bytes")
+        .register(meterRegistry);
+    this.maxSearchResults = maxSearchResults;
+    this.snapshotFile = snapshotFile.isBlank() ? null : Path.of(snapshotFile);
+    loadSnapshot();
+  }
+
+  @Override
+  public Book addBook(Book book) {
+    if (book.getIsbn() == null || book.getIsbn().isBlank()) {
+      throw new InvalidRequestException("Missing isbn");
+    }
+    if (!store.insert(book)) {
+      throw new AlreadyExistsException("Book already exists");
+    }
+    eventPublisher.publishEvent(BookChangedEvent.added(book));
+    return book;
+  }
+
+  @Override
+  public void removeBook(String isbn) {
+    if (!store.remove(isbn)) {
+      throw new BookNotFoundException();
+    }
+    eventPublisher.publishEvent(BookChangedEvent.removed(isbn));
+  }
+
+  @Override
+  public void removeBook(String isbn, int expectedVersion) {
+    if (!store.remove(isbn, expectedVersion)) {
+      throw store.contains(isbn) ? new BookVersionConflictException()
+          : new BookNotFoundException();
+    }
+    eventPublisher.publishEvent(BookChangedEvent.removed(isbn));
+  }
+
+  @Override
+  public Optional<Book> findBookByISBN(String isbn) {
+    return store.find(isbn);
+  }
+
+  @Override
+  public Map<String, Book> findBooksByISBN(Collection<String> isbns) {
+    Map<String, Book> books = new HashMap<>();
+    isbns.forEach(isbn -> store.find(isbn).ifPresent(book -> books.put(isbn, book)));
+    return books;
+  }
+
+  @Override
+  public Optional<Integer> findBookVersion(String isbn) {
+    OptionalInt version = store.findVersion(isbn);
+    return version.isPresent() ? Optional.of(version.getAsInt()) : Optional.empty();
+  }
+
+  @Override
+  public List<Book> findBookByAuthor(String author) {
+    return store.findByAuthor(author);
+  }
+
+  @Override
+  public BookPage findBooksByAuthorPrefix(String prefix, String cursor, int limit) {
+    String normalizedPrefix = Book.normalizeAuthor(prefix);
+    if (normalizedPrefix == null || normalizedPrefix.isEmpty()) {
+      throw new InvalidRequestException("Author prefix must contain a letter or digit");
+    }
+    int pageSize = Math.max(1, Math.min(limit, maxSearchResults));
+    String[] after = AuthorCursor.decode(cursor);
+
+    // Fetch one extra book to know whether there is another page
+    List<Book> books = store.findByAuthorPrefix(normalizedPrefix, after[0], after[1],
+        pageSize + 1);
+    if (books.size() <= pageSize) {
+      return new BookPage(books, null);
+    }
+    List<Book> page = books.subList(0, pageSize);
+    Book last = page.get(pageSize - 1);
+    return new BookPage(List.copyOf(page),
+        AuthorCursor.encode(last.getAuthorNormalized(), last.getIsbn()));
+  }
+
+  @Override
+  public Optional<Book> borrowBook(String isbn) {
+    if (!store.tryTakeCopy(isbn)) {
+      if (!store.contains(isbn)) {
+        return Optional.empty();
+      }
+      borrowRejections.increment();
+      throw new NoBookCopiesRemainingToBorrowException();
+    }
+    Optional<Book> book = store.find(isbn);
+    eventPublisher.publishEvent(BookChangedEvent.borrowed(isbn, book.orElse(null)));
+    return book;
+  }
+
+  @Override
+  public Optional<Book> borrowBook(String isbn, int expectedVersion) {
+    if (!store.tryTakeCopy(isbn, expectedVersion)) {
+      OptionalInt version = store.findVersion(isbn);
+      if (version.isEmpty()) {
+        return Optional.empty();
+      }
+      if (version.getAsInt() != expectedVersion) {
+        throw new BookVersionConflictException();
+      }
+      borrowRejections.increment();
+      throw new NoBookCopiesRemainingToBorrowException();
+    }
+    Optional<Book> book = store.find(isbn);
+    eventPublisher.publishEvent(BookChangedEvent.borrowed(isbn, book.orElse(null)));
+    return book;
+  }
+
+  @Override
+  public void returnBook(String isbn) {
+    if (!store.putCopyBack(isbn)) {
+      throw new BookNotFoundException();
+    }
+    eventPublisher.publishEvent(BookChangedEvent.returned(isbn, store.find(isbn).orElse(null)));
+  }
+
+  @Override
+  public void returnBook(String isbn, int expectedVersion) {
+    if (!store.putCopyBack(isbn, expectedVersion)) {
+      throw store.contains(isbn) ? new BookVersionConflictException()
+          : new BookNotFoundException();
+    }
+    eventPublisher.publishEvent(BookChangedEvent.returned(isbn, store.find(isbn).orElse(null)));
+  }
+
+  @Override
+  public void destroy() throws IOException {
+    if (snapshotFile != null) {
+      store.writeSnapshot(snapshotFile);
+      LOG.info("Wrote {} books to snapshot {}", store.size(), snapshotFile);
+    }
+  }
+
+  private void loadSnapshot() {
+    if (snapshotFile == null || !Files.exists(snapshotFile)) {
+      return;
+    }
+    try {
+      int loaded = store.loadSnapshot(snapshotFile);
+      LOG.info("Loaded {} books from snapshot {}", loaded, snapshotFile);
+    } catch (IOException ex) {
+      throw new UncheckedIOException("Cannot load book snapshot " + snapshotFile, ex);
+    }
+  }
+}
@@ -1,8 +1,12 @@
 package com.techdelity.identitye2e.demo.library.service;
 
+import com.techdelity.identitye2e.demo.library.exception.BookVersionConflictException;
 import com.techdelity.identitye2e.demo.library.model.Book;
+import com.techdelity.identitye2e.demo.library.model.BookPage;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -25,6 +29,15 @@ public interface LibraryService {
    */
   void removeBook(String isbn);
 
+  /**
+   * Remove a book from the library if it has not changed since it was read
+   *
+   * @param isbn            the unique isbn identifier for the book
+   * @param expectedVersion the version of the book when it was read
+   * @throws BookVersionConflictException if the book is at another version
+   */
+  void removeBook(String isbn, int expectedVersion);
+
   /**
    * Find a book by the given isbn
    *
@@ -33,6 +46,22 @@ public interface LibraryService {
    */
   Optional<Book> findBookByISBN(String isbn);
 
+  /**
+   * Find several books by isbn at once, such as the books on a page of the catalogue
+   *
+   * @param isbns the isbns to find the books by
+   * @return the books that were found keyed by isbn, isbns that were not found are left out
+   */
+  Map<String, Book> findBooksByISBN(Collection<String> isbns);
+
+  /**
+   * Find the version of a book without loading the whole book, used to answer conditional requests
+   *
+   * @param isbn the isbn of the book
+   * @return the current version of the book, empty if it does not exist
+   */
+  Optional<Integer> findBookVersion(String isbn);
+
   /**
    * Find a books by a specific author
    *
@@ -41,6 +70,16 @@ public interface LibraryService {
    */
   List<Book> findBookByAuthor(String author);
 
+  /**
+   * Find books by author name prefix, ignoring case, accents and punctuation
+   *
+   * @param prefix the start of the author name
+   * @param cursor the next cursor from the previous page, null for the first page
+   * @param limit  the maximum number of books to return, capped by the library
+   * @return a page of books ordered by author then isbn
+   */
+  BookPage findBooksByAuthorPrefix(String prefix, String cursor, int limit);
+
   /**
    * Borrow a book from the library
    *
@@ -49,10 +88,29 @@ public interface LibraryService {
    */
   Optional<Book> borrowBook(String isbn);
 
+  /**
+   * Borrow a book from the library if it has not changed since it was read
+   *
+   * @param isbn            the identifier of the book to borrow
+   * @param expectedVersion the version of the book when it was read
+   * @return the book being borrowed
+   * @throws BookVersionConflictException if the book is at another version
+   */
+  Optional<Book> borrowBook(String isbn, int expectedVersion);
+
   /**
    * Return a borrowed by
    *
    * @param isbn the isbn of the book being returned
    */
   void returnBook(String isbn);
+
+  /**
+   * Return a borrowed book if it has not changed since it was read
+   *
+   * @param isbn            the isbn of the book being returned
+   * @param expectedVersion the version of the book when it was read
+   * @throws BookVersionConflictException if the book is at another version
+   */
+  void returnBook(String isbn, int expectedVersion);
 }
@@ -0,0 +1,176 @@
+package com.techdelity.identitye2e.demo.library.service;
+
+import com.techdelity.identitye2e.demo.library.exception.AlreadyExistsException;
+import com.techdelity.identitye2e.demo.library.exception.BookNotFoundException;
+import com.techdelity.identitye2e.demo.library.exception.NoBookCopiesRemainingToBorrowException;
+import com.techdelity.identitye2e.demo.library.model.Book;
+import com.techdelity.identitye2e.demo.library.model.Isbn;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.r2dbc.spi.Readable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.r2dbc.core.DatabaseClient.GenericExecuteSpec;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Reactive library service over R2DBC. Stock changes use the same conditional updates as the
+ * {@link DatabaseStockEngine}, so no statement needs a transaction around it, and the version and
+ * copies a borrow or return left the book at are read back to publish its
+ * {@link BookChangedEvent}. Events are published on the bounded elastic scheduler, as listeners
+ * such as the cache invalidator may block, sending the invalidation over JDBC. Isbns are bound in
+ * their packed form, as {@link com.techdelity.identitye2e.demo.library.model.IsbnType} stores
+ * them.
+ */
+@Service
+@Profile("reactive")
+public class R2dbcLibraryService implements ReactiveLibraryService {
+
+  private static final String SELECT_BOOK = "select isbn, title, author, publication_year, "
+      + "copies_available, version from book ";
+
+  private final DatabaseClient databaseClient;
+  private final ApplicationEventPublisher eventPublisher;
+  private final Counter borrowRejections;
+
+  @Autowired
+  public R2dbcLibraryService(DatabaseClient databaseClient,
+      ApplicationEventPublisher eventPublisher, MeterRegistry meterRegistry) {
+    this.databaseClient = databaseClient;
+    this.eventPublisher = eventPublisher;
+    this.borrowRejections = Counter.builder("library.borrow.rejected")
+        .description("Borrows rejected because no copies were remaining")
+        .register(meterRegistry);
+  }
+
+  @Override
+  public Mono<Book> addBook(Book book) {
+    GenericExecuteSpec insert = databaseClient.sql("""
+            insert into book (isbn, title, author, author_normalized, publication_year,
+              copies_available, version)
+            values (:isbn, :title, :author, :authorNormalized, :publicationYear,
+              :copiesAvailable, 0)
+            """)
+        .bind("isbn", Isbn.pack(book.getIsbn()))
+        .bind("publicationYear", book.getPublicationYear())
+        .bind("copiesAvailable", book.getCopiesAvailable());
+    insert = bindNullable(insert, "title", book.getTitle());
+    insert = bindNullable(insert, "author", book.getAuthor());
+    insert = bindNullable(insert, "authorNormalized", Book.normalizeAuthor(book.getAuthor()));
+    return insert.fetch().rowsUpdated()
+        .onErrorMap(DuplicateKeyException.class,
+            ex -> new AlreadyExistsException("Book already exists"))
+        .flatMap(inserted -> publish(BookChangedEvent.added(book)))
+        .thenReturn(book);
+  }
+
+  @Override
+  public Mono<Void> removeBook(String isbn) {
+    return databaseClient.sql("delete from book where isbn = :isbn")
+        .bind("isbn", Isbn.pack(isbn))
+        .fetch().rowsUpdated()
+        .flatMap(deleted -> deleted > 0 ? publish(BookChangedEvent.removed(isbn))
+            : Mono.error(new BookNotFoundException()));
+  }
+
+  @Override
+  public Mono<Book> findBookByISBN(String isbn) {
+    return databaseClient.sql(SELECT_BOOK + "where isbn = :isbn")
+        .bind("isbn", Isbn.pack(isbn))
+        .map(R2dbcLibraryService::toBook)
+        .one();
+  }
+
+  @Override
+  public Flux<Book> findBookByAuthor(String author) {
+    return databaseClient.sql(SELECT_BOOK + "where author = :author")
+        .bind("author", author)
+        .map(R2dbcLibraryService::toBook)
+        .all();
+  }
+
+  @Override
+  public Mono<Book> borrowBook(String isbn) {
+    return databaseClient.sql("""
+            update book set copies_available = copies_available - 1, version = version + 1
+            where isbn = :isbn and copies_available > 0
+            """)
+        .bind("isbn", Isbn.pack(isbn))
+        .fetch().rowsUpdated()
+        .flatMap(updated -> updated > 0
+            ? findBookByISBN(isbn).flatMap(book ->
+                publish(BookChangedEvent.borrowed(isbn, book)).thenReturn(book))
+            : rejectBorrow(isbn));
+  }
+
+  @Override
+  public Mono<Void> returnBook(String isbn) {
+    return databaseClient.sql("""
+            update book set copies_available = copies_available + 1, version = version + 1
+            where isbn = :isbn
+            """)
+        .bind("isbn", Isbn.pack(isbn))
+        .fetch().rowsUpdated()
+        .flatMap(updated -> updated > 0 ? findStock(isbn)
+            : Mono.error(new BookNotFoundException()))
+        .flatMap(this::publish);
+  }
+
+  /**
+   * @return the return of the book as its version and copies are now, unknown if it was removed
+   * since it was changed
+   */
+  private Mono<BookChangedEvent> findStock(String isbn) {
+    return databaseClient.sql("select version, copies_available from book where isbn = :isbn")
+        .bind("isbn", Isbn.pack(isbn))
+        .map(row -> BookChangedEvent.returned(isbn, row.get("version", Integer.class),
+            row.get("copies_available", Integer.class)))
+        .one()
+        .defaultIfEmpty(BookChangedEvent.returned(isbn, null));
+  }
+
+  /**
+   * A borrow that updated nothing is either for an unknown book, which is empty, or for a book
+   * with no copies remaining
+   */
+  private Mono<Book> rejectBorrow(String isbn) {
+    return databaseClient.sql("select count(*) from book where isbn = :isbn")
+        .bind("isbn", Isbn.pack(isbn))
+        .map(row -> row.get(0, Long.class))
+        .one()
+        .flatMap(count -> {
+          if (count == 0) {
+            return Mono.empty();
+          }
+          borrowRejections.increment();
+          return Mono.error(new NoBookCopiesRemainingToBorrowException());
+        });
+  }
+
+  /**
+   * Publish an event off the event loop, completing once the listeners have run
+   */
+  private Mono<Void> publish(BookChangedEvent event) {
+    return Mono.<Void>fromRunnable(() -> eventPublisher.publishEvent(event))
+        .subscribeOn(Schedulers.boundedElastic());
+  }
+
+  private static GenericExecuteSpec bindNullable(GenericExecuteSpec spec, String name,
+      String value) {
+    return value == null ? spec.bindNull(name, String.class) : spec.bind(name, value);
+  }
+
+  private static Book toBook(Readable row) {
+    Book book = new Book(Isbn.unpack(row.get("isbn", Long.class)), row.get("title", String.class),
+        row.get("author", String.class), row.get("publication_year", Integer.class),
+        row.get("copies_available", Integer.class));
+    book.setVersion(row.get("version", Integer.class));
+    return book;
+  }
+}
@@ -0,0 +1,60 @@
+package com.techdelity.identitye2e.demo.library.service;
+
+import com.techdelity.identitye2e.demo.library.model.Book;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking version of the {@link LibraryService}, with the same behaviour and errors
+ */
+public interface ReactiveLibraryService {
+
+  /**
+   * Add a new book to the library
+   *
+   * @param book the book to add
+   * @return The book that has been added, or an AlreadyExistsException
+   */
+  Mono<Book> addBook(Book book);
+
+  /**
+   * Remove a book from the library by the given isbn
+   *
+   * @param isbn the unique isbn identifier for the book
+   * @return completes when removed, or a BookNotFoundException
+   */
+  Mono<Void> removeBook(String isbn);
+
+  /**
+   * Find a book by the given isbn
+   *
+   * @param isbn the search isbn to find the book by
+   * @return the search result book, empty if not found
+   */
+  Mono<Book> findBookByISBN(String isbn);
+
+  /**
+   * Find books by a specific author, streamed as they are read
+   *
+   * @param author the author to search for books by
+   * @return the books by the given author
+   */
+  Flux<Book> findBookByAuthor(String author);
+
+  /**
+   * Borrow a book from the library
+   *
+   * @param isbn the identifier of the book to borrow
+   * @return the book being borrowed, empty if not found, or a
+   * NoBookCopiesRemainingToBorrowException
+   */
+  Mono<Book> borrowBook(String isbn);
+
+  /**
+   * Return a borrowed book
+   *
+   * @param isbn the isbn of the book being returned
+   * @return completes when returned, or a BookNotFoundException
+   */
+  Mono<Void> returnBook(String isbn);
+}
@@ -1,79 +1,293 @@
 package com.techdelity.identitye2e.demo.library.service;
 
+import static com.techdelity.identitye2e.demo.library.config.CacheConfig.BOOKS_CACHE;
+import static com.techdelity.identitye2e.demo.library.config.CacheConfig.BOOK_JSON_CACHE;
+import static com.techdelity.identitye2e.demo.library.config.CacheConfig.BOOK_ISBN_KEY;
+import static com.techdelity.identitye2e.demo.library.config.CacheConfig.BOOK_VERSIONS_CACHE;
+import static com.techdelity.identitye2e.demo.library.config.CacheConfig.ISBN_KEY;
+
+import com.techdelity.identitye2e.demo.library.config.ConditionalOnJpaStore;
 import com.techdelity.identitye2e.demo.library.exception.AlreadyExistsException;
 import com.techdelity.identitye2e.demo.library.exception.BookNotFoundException;
+import com.techdelity.identitye2e.demo.library.exception.BookVersionConflictException;
+import com.techdelity.identitye2e.demo.library.exception.InvalidRequestException;
 import com.techdelity.identitye2e.demo.library.exception.NoBookCopiesRemainingToBorrowException;
 import com.techdelity.identitye2e.demo.library.model.Book;
+import com.techdelity.identitye2e.demo.library.model.BookPage;
+import com.techdelity.identitye2e.demo.library.model.Isbn;
+import com.techdelity.identitye2e.demo.library.replica.ReplicaRead;
 import com.techdelity.identitye2e.demo.library.repository.BookRepository;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import org.springframework.transaction.annotation.Transactional;
 
 @Service
+@ConditionalOnJpaStore
+@Timed(value = "library.service", histogram = true)
 public class SimpleLibraryService implements LibraryService {
 
   private final BookRepository bookRepository;
+  private final StockEngine stockEngine;
+  private final HotKeyDetector hotKeys;
+  private final ApplicationEventPublisher eventPublisher;
+  private final Cache booksCache;
+  private final Counter borrowRejections;
+  private final Counter sharedLoads;
+  private final int maxSearchResults;
+  /**
+   * Loads of hot books in progress by packed isbn, so concurrent cache misses for one book share a
+   * load
+   */
+  private final Map<Long, CompletableFuture<Optional<Book>>> loads = new ConcurrentHashMap<>();
 
   @Autowired
-  public SimpleLibraryService(BookRepository bookRepository) {
+  public SimpleLibraryService(BookRepository bookRepository, StockEngine stockEngine,
+      HotKeyDetector hotKeys, ApplicationEventPublisher eventPublisher,
+      CacheManager cacheManager, MeterRegistry meterRegistry,
+      @Value("${library.search.max-results:100}") int maxSearchResults) {
     this.bookRepository = bookRepository;
+    this.stockEngine = stockEngine;
+    this.hotKeys = hotKeys;
+    this.eventPublisher = eventPublisher;
+    this.booksCache = cacheManager.getCache(BOOKS_CACHE);
+    this.borrowRejections = Counter.builder("library.borrow.rejected")
+        .description("Borrows rejected because no copies were remaining")
+        .register(meterRegistry);
+    this.sharedLoads = Counter.builder("library.coalescing.shared-loads")
+        .description("Lookups of hot books answered by a load already in progress")
+        .register(meterRegistry);
+    this.maxSearchResults = maxSearchResults;
   }
 
   @Override
+  @CacheEvict(cacheNames = {BOOKS_CACHE, BOOK_VERSIONS_CACHE, BOOK_JSON_CACHE},
+      key = BOOK_ISBN_KEY)
   public Book addBook(Book book) {
-    if (findBookByISBN(book.getIsbn()).isPresent()) {
+    if (loadBook(book.getIsbn()).isPresent()) {
       throw new AlreadyExistsException("Book already exists");
     }
-    return bookRepository.save(book);
+    Book saved = bookRepository.save(book);
+    eventPublisher.publishEvent(BookChangedEvent.added(book));
+    return saved;
   }
 
   @Override
   @Transactional
+  @CacheEvict(cacheNames = {BOOKS_CACHE, BOOK_VERSIONS_CACHE, BOOK_JSON_CACHE}, key = ISBN_KEY)
   public void removeBook(String isbn) {
-    if (findBookByISBN(isbn).isEmpty()) {
+    if (loadBook(isbn).isEmpty()) {
       throw new BookNotFoundException();
     }
+    stockEngine.removing(isbn);
     bookRepository.deleteById(isbn);
+    eventPublisher.publishEvent(BookChangedEvent.removed(isbn));
+  }
 
+  @Override
+  @Transactional
+  @CacheEvict(cacheNames = {BOOKS_CACHE, BOOK_VERSIONS_CACHE, BOOK_JSON_CACHE}, key = ISBN_KEY)
+  public void removeBook(String isbn, int expectedVersion) {
+    int stored = bookRepository.findVersionByIsbn(isbn).orElseThrow(BookNotFoundException::new);
+    stockEngine.removing(isbn);
+    if (stockEngine.withPendingVersion(isbn, stored) != expectedVersion
+        || bookRepository.deleteByIsbnAndVersion(Isbn.pack(isbn), stored) == 0) {
+      throw new BookVersionConflictException();
+    }
+    eventPublisher.publishEvent(BookChangedEvent.removed(isbn));
   }
 
   @Override
+  @ReplicaRead
+  @Cacheable(cacheNames = BOOKS_CACHE, key = ISBN_KEY, unless = "#result == null")
   public Optional<Book> findBookByISBN(String isbn) {
-    return bookRepository.findById(isbn);
+    if (!hotKeys.record(isbn)) {
+      return loadBook(isbn);
+    }
+    long key = Isbn.pack(isbn);
+    CompletableFuture<Optional<Book>> load = new CompletableFuture<>();
+    CompletableFuture<Optional<Book>> inProgress = loads.putIfAbsent(key, load);
+    if (inProgress != null) {
+      sharedLoads.increment();
+      try {
+        return inProgress.join();
+      } catch (CompletionException ex) {
+        throw ex.getCause() instanceof RuntimeException cause ? cause : ex;
+      }
+    }
+    try {
+      Optional<Book> book = loadBook(isbn);
+      load.complete(book);
+      return book;
+    } catch (RuntimeException ex) {
+      load.completeExceptionally(ex);
+      throw ex;
+    } finally {
+      loads.remove(key, load);
+    }
+  }
+
+  /**
+   * Books in the book cache are taken from it, the rest are read with one query and cached as
+   * {@link #findBookByISBN(String)} would
+   */
+  @Override
+  @ReplicaRead
+  public Map<String, Book> findBooksByISBN(Collection<String> isbns) {
+    Map<String, Book> books = new HashMap<>();
+    Set<String> misses = new LinkedHashSet<>();
+    for (String isbn : isbns) {
+      Book cached = booksCache.get(Isbn.pack(isbn), Book.class);
+      if (cached != null) {
+        books.put(isbn, cached);
+      } else {
+        misses.add(isbn);
+      }
+    }
+    if (!misses.isEmpty()) {
+      for (Book book : bookRepository.findAllById(misses)) {
+        Book current = stockEngine.withPendingChanges(book);
+        booksCache.put(Isbn.pack(current.getIsbn()), current);
+        books.put(current.getIsbn(), current);
+      }
+    }
+    return books;
+  }
+
+  @Override
+  @ReplicaRead
+  @Cacheable(cacheNames = BOOK_VERSIONS_CACHE, key = ISBN_KEY, unless = "#result == null")
+  public Optional<Integer> findBookVersion(String isbn) {
+    return bookRepository.findVersionByIsbn(isbn)
+        .map(version -> stockEngine.withPendingVersion(isbn, version));
   }
 
   @Override
+  @ReplicaRead
   public List<Book> findBookByAuthor(String author) {
-    return bookRepository.findByAuthor(author);
+    return bookRepository.findByAuthor(author).stream()
+        .map(stockEngine::withPendingChanges)
+        .toList();
   }
 
+  @Override
+  @ReplicaRead
+  public BookPage findBooksByAuthorPrefix(String prefix, String cursor, int limit) {
+    String normalizedPrefix = Book.normalizeAuthor(prefix);
+    if (normalizedPrefix == null || normalizedPrefix.isEmpty()) {
+      throw new InvalidRequestException("Author prefix must contain a letter or digit");
+    }
+    int pageSize = Math.max(1, Math.min(limit, maxSearchResults));
+    String[] after = AuthorCursor.decode(cursor);
+
+    // Fetch one extra book to know whether there is another page
+    List<Book> books = bookRepository.findByAuthorPrefix(normalizedPrefix, after[0], after[1],
+        Limit.of(pageSize + 1));
+    if (books.size() <= pageSize) {
+      return new BookPage(books, null);
+    }
+    List<Book> page = books.subList(0, pageSize);
+    Book last = page.get(pageSize - 1);
+    return new BookPage(List.copyOf(page),
+        AuthorCursor.encode(last.getAuthorNormalized(), last.getIsbn()));
+  }
 
+  /**
+   * Not transactional, as the stock engine may queue the borrow with others of the same book and
+   * it must not hold a connection while it waits
+   */
   @Override
-  @Transactional
+  @CacheEvict(cacheNames = {BOOKS_CACHE, BOOK_VERSIONS_CACHE, BOOK_JSON_CACHE}, key = ISBN_KEY)
   public Optional<Book> borrowBook(String isbn) {
-    Optional<Book> book = findBookByISBN(isbn);
-    book.ifPresent(b -> {
-      if (b.getCopiesAvailable() <= 0) {
-        throw new NoBookCopiesRemainingToBorrowException();
+    if (!stockEngine.tryTakeCopy(isbn)) {
+      if (!bookRepository.existsById(isbn)) {
+        return Optional.empty();
       }
-      b.setCopiesAvailable(b.getCopiesAvailable() - 1);
-      bookRepository.save(b);
-    });
+      borrowRejections.increment();
+      throw new NoBookCopiesRemainingToBorrowException();
+    }
+    Optional<Book> book = loadBook(isbn);
+    eventPublisher.publishEvent(BookChangedEvent.borrowed(isbn, book.orElse(null)));
     return book;
   }
 
   @Override
   @Transactional
-  public void returnBook(String isbn) {
-    Optional<Book> book = findBookByISBN(isbn);
+  @CacheEvict(cacheNames = {BOOKS_CACHE, BOOK_VERSIONS_CACHE, BOOK_JSON_CACHE}, key = ISBN_KEY)
+  public Optional<Book> borrowBook(String isbn, int expectedVersion) {
+    if (!stockEngine.tryTakeCopy(isbn, expectedVersion)) {
+      Optional<Integer> version = currentVersion(isbn);
+      if (version.isEmpty()) {
+        return Optional.empty();
+      }
+      if (version.get() != expectedVersion) {
+        throw new BookVersionConflictException();
+      }
+      borrowRejections.increment();
+      throw new NoBookCopiesRemainingToBorrowException();
+    }
+    // Still in the transaction of the update, so read past the second-level cache
+    Optional<Book> book = loadFreshBook(isbn);
+    eventPublisher.publishEvent(BookChangedEvent.borrowed(isbn, book.orElse(null)));
+    return book;
+  }
 
-    book.ifPresentOrElse(b -> {
-      b.setCopiesAvailable(b.getCopiesAvailable() + 1);;
-      bookRepository.save(b);
-    }, () -> {
+  @Override
+  @Transactional
+  @CacheEvict(cacheNames = {BOOKS_CACHE, BOOK_VERSIONS_CACHE, BOOK_JSON_CACHE}, key = ISBN_KEY)
+  public void returnBook(String isbn) {
+    if (!stockEngine.putCopyBack(isbn)) {
       throw new BookNotFoundException();
-    });
+    }
+    eventPublisher.publishEvent(BookChangedEvent.returned(isbn, loadFreshBook(isbn).orElse(null)));
+  }
+
+  @Override
+  @Transactional
+  @CacheEvict(cacheNames = {BOOKS_CACHE, BOOK_VERSIONS_CACHE, BOOK_JSON_CACHE}, key = ISBN_KEY)
+  public void returnBook(String isbn, int expectedVersion) {
+    if (!stockEngine.putCopyBack(isbn, expectedVersion)) {
+      currentVersion(isbn).orElseThrow(BookNotFoundException::new);
+      throw new BookVersionConflictException();
+    }
+    eventPublisher.publishEvent(BookChangedEvent.returned(isbn, loadFreshBook(isbn).orElse(null)));
+  }
+
+  /**
+   * Read a book, with any changes the stock engine holds, bypassing the cache and any shared load
+   */
+  private Optional<Book> loadBook(String isbn) {
+    return bookRepository.findById(isbn).map(stockEngine::withPendingChanges);
+  }
+
+  /**
+   * Read a book, with any changes the stock engine holds, in the transaction that changed it so
+   * past the second-level cache
+   */
+  private Optional<Book> loadFreshBook(String isbn) {
+    return bookRepository.findFreshByIsbn(isbn).map(stockEngine::withPendingChanges);
+  }
+
+  /**
+   * Read the version of a book, with any changes the stock engine holds, bypassing the cache. Used
+   * to tell why a conditional change was not made and to stamp the events of returns.
+   */
+  private Optional<Integer> currentVersion(String isbn) {
+    return bookRepository.findVersionByIsbn(isbn)
+        .map(version -> stockEngine.withPendingVersion(isbn, version));
   }
 }
@@ -0,0 +1,254 @@
+package com.techdelity.identitye2e.demo.library.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append only log of copy counts, written to memory-mapped segment files.
+ * <p>
+ * Each record holds the number of copies of a book available after a change and the version of the
+ * book it makes, or marks the book as removed, so replaying the log any number of times gives the
+ * same counts. Records are checksummed, and replay stops at the first record that doesn't check
+ * out, which can only be a write that was cut off by a crash and so was never acknowledged. A
+ * segment is preallocated and mapped when it is started, and a new one is started when it is full,
+ * so the unwritten end of a segment is zeros.
+ * <p>
+ * Writes to the mapped file are kept by the operating system if the process dies. They are only
+ * safe from a power failure once {@link #force()} has been called, or on every append if
+ * {@code syncOnAppend} is set.
+ * <p>
+ * Not thread safe, callers must synchronize.
+ */
+final class StockChangeLog implements Closeable {
+
+  /**
+   * crc, sequence, type, copies, version and isbn length
+   */
+  private static final int HEADER_SIZE = Integer.BYTES + Long.BYTES + 1 + Integer.BYTES
+      + Integer.BYTES + Short.BYTES;
+  private static final byte COPIES = 1;
+  private static final byte REMOVED = 2;
+
+  private final Path directory;
+  private final int segmentSize;
+  private final boolean syncOnAppend;
+  private final List<Segment> segments = new ArrayList<>();
+  private final CRC32 crc = new CRC32();
+  private MappedByteBuffer current;
+  private long lastSequence;
+
+  StockChangeLog(Path directory, int segmentSize, boolean syncOnAppend) throws IOException {
+    this.directory = Files.createDirectories(directory);
+    this.segmentSize = segmentSize;
+    this.syncOnAppend = syncOnAppend;
+    try (Stream<Path> files = Files.list(directory)) {
+      files.filter(file -> file.getFileName().toString().matches("stock-\\d{20}\\.log"))
+          .sorted()
+          .forEach(file -> segments.add(new Segment(file, firstSequence(file))));
+    }
+  }
+
+  /**
+   * Read every record in the log. Must be called before anything is appended. Replay stops at the
+   * first record that doesn't check out: it and everything after it, in its segment and in later
+   * ones, are discarded, so records appended from here on are replayed after those before it.
+   *
+   * @return the latest count of each book in the log, with removed books left out
+   * @throws IOException if a segment can't be read or discarded
+   */
+  Map<String, StockCount> replay() throws IOException {
+    Map<String, StockCount> counts = new LinkedHashMap<>();
+    for (int i = 0; i < segments.size(); i++) {
+      int torn = replay(segments.get(i), counts);
+      if (torn >= 0) {
+        discardFrom(i, torn);
+        break;
+      }
+    }
+    return counts;
+  }
+
+  /**
+   * Read the records of a segment, up to its unwritten end or a record that doesn't check out
+   *
+   * @param counts the counts to apply the records to
+   * @return the position of the record that doesn't check out, -1 if there is none
+   */
+  private int replay(Segment segment, Map<String, StockCount> counts) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(segment.file()));
+    while (buffer.remaining() >= HEADER_SIZE) {
+      int start = buffer.position();
+      int checksum = buffer.getInt();
+      long sequence = buffer.getLong();
+      byte type = buffer.get();
+      int copies = buffer.getInt();
+      int version = buffer.getInt();
+      int length = buffer.getShort();
+      if (sequence == 0) {
+        // The unwritten end of the segment
+        return -1;
+      }
+      if (length < 0 || buffer.remaining() < length) {
+        return start;
+      }
+      byte[] isbn = new byte[length];
+      buffer.get(isbn);
+      crc.reset();
+      crc.update(buffer.array(), start + Integer.BYTES, buffer.position() - start - Integer.BYTES);
+      if ((int) crc.getValue() != checksum) {
+        return start;
+      }
+      String key = new String(isbn, StandardCharsets.UTF_8);
+      if (type == REMOVED) {
+        counts.remove(key);
+      } else {
+        counts.put(key, new StockCount(copies, version));
+      }
+      lastSequence = Math.max(lastSequence, sequence);
+    }
+    return -1;
+  }
+
+  /**
+   * Cut a segment off at a record that doesn't check out and delete the segments after it
+   */
+  private void discardFrom(int segment, int position) throws IOException {
+    try (FileChannel channel = FileChannel.open(segments.get(segment).file(),
+        StandardOpenOption.WRITE)) {
+      channel.truncate(position);
+    }
+    while (segments.size() > segment + 1) {
+      Files.delete(segments.remove(segments.size() - 1).file());
+    }
+  }
+
+  /**
+   * Record the copies available of a book
+   *
+   * @param version the version of the book with this count
+   * @return the sequence number of the record
+   */
+  long appendCopies(String isbn, int copies, int version) {
+    return append(COPIES, isbn, copies, version);
+  }
+
+  /**
+   * Record that a book was removed, so earlier counts for it are not replayed
+   *
+   * @return the sequence number of the record
+   */
+  long appendRemoved(String isbn) {
+    return append(REMOVED, isbn, 0, 0);
+  }
+
+  /**
+   * @return the sequence number of the last record written or replayed, 0 if there are none
+   */
+  long lastSequence() {
+    return lastSequence;
+  }
+
+  /**
+   * Write the current segment through to disk
+   */
+  void force() {
+    if (current != null) {
+      current.force();
+    }
+  }
+
+  /**
+   * Delete the segments whose records have all been written to the database
+   *
+   * @param sequence the last sequence number written to the database
+   */
+  void deleteThrough(long sequence) throws IOException {
+    while (!segments.isEmpty()) {
+      Segment oldest = segments.get(0);
+      boolean isCurrent = current != null && segments.size() == 1;
+      long last = segments.size() > 1 ? segments.get(1).firstSequence() - 1 : lastSequence;
+      if (isCurrent || last > sequence) {
+        return;
+      }
+      Files.delete(oldest.file());
+      segments.remove(0);
+    }
+  }
+
+  @Override
+  public void close() {
+    force();
+    current = null;
+  }
+
+  private long append(byte type, String isbn, int copies, int version) {
+    byte[] key = isbn.getBytes(StandardCharsets.UTF_8);
+    int size = HEADER_SIZE + key.length;
+    if (current == null || current.remaining() < size) {
+      startSegment(Math.max(segmentSize, size));
+    }
+    long sequence = lastSequence + 1;
+    ByteBuffer record = ByteBuffer.allocate(size)
+        .putInt(0)
+        .putLong(sequence)
+        .put(type)
+        .putInt(copies)
+        .putInt(version)
+        .putShort((short) key.length)
+        .put(key);
+    crc.reset();
+    crc.update(record.array(), Integer.BYTES, size - Integer.BYTES);
+    record.putInt(0, (int) crc.getValue());
+    current.put(record.flip());
+    if (syncOnAppend) {
+      current.force();
+    }
+    lastSequence = sequence;
+    return sequence;
+  }
+
+  private void startSegment(int size) {
+    force();
+    long firstSequence = lastSequence + 1;
+    Path file = directory.resolve(String.format("stock-%020d.log", firstSequence));
+    try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw");
+        FileChannel channel = raf.getChannel()) {
+      current = channel.map(MapMode.READ_WRITE, 0, size);
+    } catch (IOException ex) {
+      throw new UncheckedIOException("Cannot start stock log segment " + file, ex);
+    }
+    segments.add(new Segment(file, firstSequence));
+  }
+
+  private static long firstSequence(Path file) {
+    String name = file.getFileName().toString();
+    return Long.parseLong(name.substring("stock-".length(), name.length() - ".log".length()));
+  }
+
+  /**
+   * The copies available of a book and its version after a change
+   */
+  record StockCount(int copies, int version) {
+
+  }
+
+  private record Segment(Path file, long firstSequence) {
+
+  }
+}
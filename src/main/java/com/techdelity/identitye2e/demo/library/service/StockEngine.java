@@ -0,0 +1,77 @@
+package com.techdelity.identitye2e.demo.library.service;
+
+import com.techdelity.identitye2e.demo.library.model.Book;
+
+/**
+ * Keeps track of the copies available of each book.
+ * <p>
+ * Implementations must update the count for an isbn atomically so that concurrent borrows of the
+ * same book can never take more copies than are available.
+ */
+public interface StockEngine {
+
+  /**
+   * Take a copy of a book
+   *
+   * @param isbn the isbn of the book to take a copy of
+   * @return true if a copy was taken, false if the book does not exist or has no copies remaining
+   */
+  boolean tryTakeCopy(String isbn);
+
+  /**
+   * Put a copy of a book back
+   *
+   * @param isbn the isbn of the book to put a copy of back
+   * @return true if the copy was put back, false if the book does not exist
+   */
+  boolean putCopyBack(String isbn);
+
+  /**
+   * Take a copy of a book if it is still at the expected version
+   *
+   * @param isbn            the isbn of the book to take a copy of
+   * @param expectedVersion the version the book must be at
+   * @return true if a copy was taken, false if the book does not exist, is at another version or
+   * has no copies remaining
+   */
+  boolean tryTakeCopy(String isbn, int expectedVersion);
+
+  /**
+   * Put a copy of a book back if it is still at the expected version
+   *
+   * @param isbn            the isbn of the book to put a copy of back
+   * @param expectedVersion the version the book must be at
+   * @return true if the copy was put back, false if the book does not exist or is at another
+   * version
+   */
+  boolean putCopyBack(String isbn, int expectedVersion);
+
+  /**
+   * Apply any copy count changes the engine holds that are not in the database yet
+   *
+   * @param book a book read from the database
+   * @return the book with its current copies available
+   */
+  default Book withPendingChanges(Book book) {
+    return book;
+  }
+
+  /**
+   * Apply any changes the engine holds that are not in the database yet to a book's version
+   *
+   * @param isbn    the isbn of the book
+   * @param version the version read from the database
+   * @return the current version of the book
+   */
+  default int withPendingVersion(String isbn, int version) {
+    return version;
+  }
+
+  /**
+   * Called in the transaction removing a book, before the book is deleted
+   *
+   * @param isbn the isbn of the book being removed
+   */
+  default void removing(String isbn) {
+  }
+}
@@ -0,0 +1,383 @@
+package com.techdelity.identitye2e.demo.library.service;
+
+import com.techdelity.identitye2e.demo.library.config.ConditionalOnJpaStore;
+import com.techdelity.identitye2e.demo.library.model.Book;
+import com.techdelity.identitye2e.demo.library.model.Isbn;
+import com.techdelity.identitye2e.demo.library.repository.BookRepository;
+import com.techdelity.identitye2e.demo.library.service.StockChangeLog.StockCount;
+import jakarta.persistence.Cache;
+import jakarta.persistence.EntityManagerFactory;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Stock engine that keeps copy counts in memory and writes them to the database behind the
+ * request, used when {@code library.stock.mode=write-behind}.
+ * <p>
+ * A book's count is read from the database the first time it is borrowed or returned. Each change
+ * is applied in memory and appended to a {@link StockChangeLog} before it is acknowledged. Every
+ * {@code flush-interval} the latest count of each changed book is written to the book table as one
+ * JDBC batch, however many times it changed, and log segments that are fully written are deleted.
+ * At startup any counts left in the log are written to the database before the engine is used, so
+ * a crash loses no acknowledged borrow or return.
+ * <p>
+ * Each change also moves the book on a version, kept with the count and written with it, so a
+ * book read with its pending changes has the version the database will have once they are flushed
+ * and a version seen by a client always stands for one count. Counts and versions are written as
+ * absolute values, so replaying records that were already flushed is harmless. This relies on the
+ * engine being the only writer of the copy counts, so batch borrow and return are not available in
+ * this mode. As the counts are written past JPA, the books written are evicted from the
+ * second-level cache.
+ * <p>
+ * A flush writes the counts it took after letting go of the lock, so removing a book waits for any
+ * write in flight and holds off the next until the removal has committed. Counts taken before a
+ * removal are then never written over a book added again with the same isbn.
+ */
+@Component
+@ConditionalOnJpaStore
+@ConditionalOnProperty(name = "library.stock.mode", havingValue = "write-behind")
+public class WriteBehindStockEngine implements StockEngine, DisposableBean {
+
+  private static final Logger LOG = LoggerFactory.getLogger(WriteBehindStockEngine.class);
+  private static final String UPDATE_COPIES =
+      "update book set copies_available = ?, version = ? where isbn = ?";
+  /**
+   * Versions are never negative, so this matches a book at any version
+   */
+  private static final int ANY_VERSION = -1;
+
+  private final BookRepository bookRepository;
+  private final JdbcTemplate jdbcTemplate;
+  private final Cache entityCache;
+  private final TransactionTemplate transactionTemplate;
+  private final StockChangeLog changeLog;
+  private final ScheduledExecutorService flusher;
+
+  /**
+   * The counts of books that have been borrowed or returned, by packed isbn
+   */
+  private final Map<Long, StockCell> cells = new ConcurrentHashMap<>();
+  /**
+   * Guards the counts, the dirty set and the change log
+   */
+  private final ReentrantLock lock = new ReentrantLock();
+  /**
+   * Held by a flush while it writes, and by a removal until its transaction completes
+   */
+  private final ReentrantLock writing = new ReentrantLock();
+  private Set<Long> dirty = new LinkedHashSet<>();
+
+  @Autowired
+  public WriteBehindStockEngine(BookRepository bookRepository, JdbcTemplate jdbcTemplate,
+      EntityManagerFactory entityManagerFactory, TransactionTemplate transactionTemplate,
+      @Value("${library.stock.write-behind.log-dir:stock-log}") Path logDir,
+      @Value("${library.stock.write-behind.segment-size:16MB}") DataSize segmentSize,
+      @Value("${library.stock.write-behind.sync-on-append:false}") boolean syncOnAppend,
+      @Value("${library.stock.write-behind.flush-interval:200ms}") Duration flushInterval)
+      throws IOException {
+    this.bookRepository = bookRepository;
+    this.jdbcTemplate = jdbcTemplate;
+    this.entityCache = entityManagerFactory.getCache();
+    this.transactionTemplate = transactionTemplate;
+    this.changeLog = new StockChangeLog(logDir, (int) segmentSize.toBytes(), syncOnAppend);
+    recover();
+    this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "stock-flush");
+      thread.setDaemon(true);
+      return thread;
+    });
+    flusher.scheduleWithFixedDelay(this::flushQuietly, flushInterval.toMillis(),
+        flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public boolean tryTakeCopy(String isbn) {
+    return changeCopies(isbn, -1, ANY_VERSION);
+  }
+
+  @Override
+  public boolean putCopyBack(String isbn) {
+    return changeCopies(isbn, 1, ANY_VERSION);
+  }
+
+  @Override
+  public boolean tryTakeCopy(String isbn, int expectedVersion) {
+    return changeCopies(isbn, -1, expectedVersion);
+  }
+
+  @Override
+  public boolean putCopyBack(String isbn, int expectedVersion) {
+    return changeCopies(isbn, 1, expectedVersion);
+  }
+
+  @Override
+  public Book withPendingChanges(Book book) {
+    StockCell cell = cells.get(Isbn.pack(book.getIsbn()));
+    if (cell == null) {
+      return book;
+    }
+    lock.lock();
+    try {
+      if (cell.removed || cell.version == book.getVersion()) {
+        return book;
+      }
+      // A copy, so a managed entity is never changed and written back by JPA
+      Book current = new Book(book.getIsbn(), book.getTitle(), book.getAuthor(),
+          book.getPublicationYear(), cell.available);
+      current.setVersion(cell.version);
+      current.setAuthorNormalized(book.getAuthorNormalized());
+      return current;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public int withPendingVersion(String isbn, int version) {
+    StockCell cell = cells.get(Isbn.pack(isbn));
+    if (cell == null) {
+      return version;
+    }
+    lock.lock();
+    try {
+      return cell.removed ? version : cell.version;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Wait for any flush in flight, then keep the next one from writing until the book has been
+   * removed. Once the removal commits the count of the book is forgotten, so a book added later
+   * with the same isbn starts afresh.
+   */
+  @Override
+  public void removing(String isbn) {
+    writing.lock();
+    try {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCompletion(int status) {
+          try {
+            if (status == STATUS_COMMITTED) {
+              forget(isbn);
+            }
+          } finally {
+            writing.unlock();
+          }
+        }
+      });
+    } catch (IllegalStateException ex) {
+      // Not in a transaction, so nothing would let go of the lock
+      writing.unlock();
+      throw ex;
+    }
+  }
+
+  /**
+   * Write the latest count of every changed book to the database
+   *
+   * @return the number of books written
+   */
+  public int flush() {
+    writing.lock();
+    try {
+      return flushCounts();
+    } finally {
+      writing.unlock();
+    }
+  }
+
+  private int flushCounts() {
+    Map<Long, StockCount> counts = new LinkedHashMap<>();
+    long sequence;
+    lock.lock();
+    try {
+      if (dirty.isEmpty()) {
+        return 0;
+      }
+      dirty.forEach(isbn -> {
+        StockCell cell = cells.get(isbn);
+        counts.put(isbn, new StockCount(cell.available, cell.version));
+      });
+      dirty = new LinkedHashSet<>();
+      sequence = changeLog.lastSequence();
+      changeLog.force();
+    } finally {
+      lock.unlock();
+    }
+
+    int[] updated;
+    try {
+      updated = write(counts);
+    } catch (RuntimeException ex) {
+      // The counts are still in the log, so try them again on the next flush
+      lock.lock();
+      try {
+        counts.keySet().stream().filter(cells::containsKey).forEach(dirty::add);
+      } finally {
+        lock.unlock();
+      }
+      throw ex;
+    }
+
+    lock.lock();
+    try {
+      forgetMissing(counts, updated);
+      changeLog.deleteThrough(sequence);
+    } catch (IOException ex) {
+      LOG.warn("Failed to delete flushed stock log segments", ex);
+    } finally {
+      lock.unlock();
+    }
+    return counts.size();
+  }
+
+  @Override
+  public void destroy() {
+    flusher.shutdown();
+    try {
+      flusher.awaitTermination(10, TimeUnit.SECONDS);
+      flush();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    } finally {
+      lock.lock();
+      try {
+        changeLog.close();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  private boolean changeCopies(String isbn, int change, int expectedVersion) {
+    long key = Isbn.pack(isbn);
+    StockCell cell = cell(isbn, key);
+    if (cell == null) {
+      return false;
+    }
+    lock.lock();
+    try {
+      int copies = cell.available + change;
+      if (cell.removed || copies < 0
+          || (expectedVersion != ANY_VERSION && cell.version != expectedVersion)) {
+        return false;
+      }
+      // Logged before it is applied, so an acknowledged change is never lost
+      changeLog.appendCopies(isbn, copies, cell.version + 1);
+      cell.available = copies;
+      cell.version++;
+      dirty.add(key);
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void forget(String isbn) {
+    long key = Isbn.pack(isbn);
+    lock.lock();
+    try {
+      StockCell cell = cells.remove(key);
+      if (cell != null) {
+        cell.removed = true;
+      }
+      dirty.remove(key);
+      changeLog.appendRemoved(isbn);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private StockCell cell(String isbn, long key) {
+    StockCell cell = cells.get(key);
+    if (cell != null) {
+      return cell;
+    }
+    return bookRepository.findById(isbn)
+        .map(book -> cells.computeIfAbsent(key,
+            k -> new StockCell(book.getCopiesAvailable(), book.getVersion())))
+        .orElse(null);
+  }
+
+  private void recover() throws IOException {
+    Map<Long, StockCount> counts = new LinkedHashMap<>();
+    changeLog.replay().forEach((isbn, count) -> counts.put(Isbn.pack(isbn), count));
+    if (!counts.isEmpty()) {
+      write(counts);
+      LOG.info("Recovered the copies available of {} books from the stock log", counts.size());
+    }
+    changeLog.deleteThrough(changeLog.lastSequence());
+  }
+
+  private int[] write(Map<Long, StockCount> counts) {
+    List<Object[]> rows = new ArrayList<>(counts.size());
+    counts.forEach((isbn, count) -> rows.add(new Object[]{count.copies(), count.version(), isbn}));
+    int[] updated = transactionTemplate.execute(
+        status -> jdbcTemplate.batchUpdate(UPDATE_COPIES, rows));
+    counts.keySet().forEach(isbn -> entityCache.evict(Book.class, Isbn.unpack(isbn)));
+    return updated;
+  }
+
+  /**
+   * Drop the counts of books that were no longer in the table, such as one removed while its count
+   * was being read. Called with the lock held.
+   */
+  private void forgetMissing(Map<Long, StockCount> counts, int[] updated) {
+    int i = 0;
+    for (long isbn : counts.keySet()) {
+      if (updated[i++] == 0) {
+        StockCell cell = cells.remove(isbn);
+        if (cell != null) {
+          cell.removed = true;
+        }
+        dirty.remove(isbn);
+      }
+    }
+  }
+
+  private void flushQuietly() {
+    try {
+      flush();
+    } catch (RuntimeException ex) {
+      LOG.warn("Failed to flush stock counts, will retry", ex);
+    }
+  }
+
+  private static final class StockCell {
+
+    int available;
+    int version;
+    boolean removed;
+
+    StockCell(int available, int version) {
+      this.available = available;
+      this.version = version;
+    }
+  }
+}
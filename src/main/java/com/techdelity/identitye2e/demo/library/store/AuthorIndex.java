@@ -0,0 +1,259 @@
+package com.techdelity.identitye2e.demo.library.store;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Off-heap index of the books of an {@link OffHeapBookStore} in order of normalized author then
+ * isbn, so an author lookup or a page of an author prefix search seeks to its first book rather
+ * than checking every book in the store.
+ * <p>
+ * An entry is the arena reference of the book's normalized author, the stamp of its slot and the
+ * slot, 20 bytes in a direct buffer. Most entries are in a sorted run, found by binary search.
+ * Books added since the run was built are appended to a small log, which searches check in full.
+ * When the log is full, or removed books make up a quarter of the run, the two are merged into a
+ * new run, leaving out the entries of books that are no longer in their slot.
+ * <p>
+ * Entries never change once published, so searches take no lock. An entry whose slot no longer
+ * has its stamp is of a removed book, and searches skip it. Changes are made under the structure
+ * lock of the store.
+ */
+final class AuthorIndex {
+
+  private static final int ENTRY_BYTES = 2 * Long.BYTES + Integer.BYTES;
+  private static final int STAMP = Long.BYTES;
+  private static final int SLOT = 2 * Long.BYTES;
+
+  private final StringArena arena;
+  private final int logCapacity;
+  private final LiveCheck live;
+  private volatile Runs runs;
+
+  // Guarded by the structure lock of the store
+  private int removedEntries;
+
+  /**
+   * @param arena       the arena holding the normalized authors
+   * @param logCapacity the number of books added before they are merged into the sorted run
+   * @param live        checks whether a slot still has a stamp
+   */
+  AuthorIndex(StringArena arena, int logCapacity, LiveCheck live) {
+    this.arena = arena;
+    this.logCapacity = logCapacity;
+    this.live = live;
+    this.runs = new Runs(ByteBuffer.allocateDirect(0), 0, newLog(), new AtomicInteger());
+  }
+
+  /**
+   * Index a book that was just published in its slot
+   *
+   * @param authorRef the arena reference of the normalized author
+   * @param stamp     the stamp of the slot
+   * @param slot      the slot of the book
+   */
+  void add(long authorRef, long stamp, int slot) {
+    Runs current = runs;
+    int logged = current.logCount().get();
+    write(current.log(), logged, authorRef, stamp, slot);
+    // Publishing the count makes the entry visible to searches
+    current.logCount().set(logged + 1);
+    if (logged + 1 == logCapacity) {
+      merge();
+    }
+  }
+
+  /**
+   * Note that a book was removed, leaving its entry to be dropped by a later merge
+   */
+  void removed() {
+    removedEntries++;
+    if (removedEntries >= Math.max(logCapacity, runs.sortedCount() / 4)) {
+      merge();
+    }
+  }
+
+  /**
+   * Replace every entry, after books were added without being indexed
+   *
+   * @param authorRefs the arena references of the normalized authors of every book in the store
+   * @param stamps     the stamps of their slots
+   * @param slots      their slots
+   * @param count      the number of books
+   */
+  void rebuild(long[] authorRefs, long[] stamps, int[] slots, int count) {
+    Integer[] order = new Integer[count];
+    Arrays.setAll(order, i -> i);
+    Arrays.sort(order, (a, b) -> {
+      int byAuthor = arena.compare(authorRefs[a], authorRefs[b]);
+      return byAuthor != 0 ? byAuthor : Long.compare(isbn(stamps[a]), isbn(stamps[b]));
+    });
+    ByteBuffer sorted = ByteBuffer.allocateDirect(count * ENTRY_BYTES);
+    for (int i = 0; i < count; i++) {
+      write(sorted, i, authorRefs[order[i]], stamps[order[i]], slots[order[i]]);
+    }
+    runs = new Runs(sorted, count, newLog(), new AtomicInteger());
+    removedEntries = 0;
+  }
+
+  /**
+   * Visit the entries whose author starts with a prefix and that come after a position, in order
+   * of normalized author then isbn. The position must not come before the prefix. Entries of
+   * removed books may be visited.
+   *
+   * @param prefix     the UTF-8 bytes of the normalized author prefix, null to visit books with no
+   *                   author
+   * @param fromAuthor the UTF-8 bytes of the normalized author of the position
+   * @param fromIsbn   the packed isbn of the position, -1 to include every book of the author
+   * @param visitor    called with each entry, returning false to stop
+   */
+  void scan(byte[] prefix, byte[] fromAuthor, long fromIsbn, EntryVisitor visitor) {
+    Runs current = runs;
+    ByteBuffer sorted = current.sorted();
+    ByteBuffer log = current.log();
+    int logged = current.logCount().get();
+    Integer[] fromLog = new Integer[logged];
+    int matched = 0;
+    for (int i = 0; i < logged; i++) {
+      if (startsWith(log, i, prefix) && compare(log, i, fromAuthor, fromIsbn) > 0) {
+        fromLog[matched++] = i;
+      }
+    }
+    Arrays.sort(fromLog, 0, matched, (a, b) -> compare(log, a, log, b));
+
+    int next = seek(sorted, current.sortedCount(), fromAuthor, fromIsbn);
+    int nextLogged = 0;
+    while (true) {
+      boolean inSorted = next < current.sortedCount() && startsWith(sorted, next, prefix);
+      boolean inLog = nextLogged < matched;
+      if (!inSorted && !inLog) {
+        return;
+      }
+      boolean fromSorted = inSorted
+          && (!inLog || compare(sorted, next, log, fromLog[nextLogged]) < 0);
+      ByteBuffer entries = fromSorted ? sorted : log;
+      int entry = fromSorted ? next++ : fromLog[nextLogged++];
+      if (!visitor.visit(authorRef(entries, entry), stamp(entries, entry), slot(entries, entry))) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * @return the off-heap memory used by the index, in bytes
+   */
+  long offHeapBytes() {
+    Runs current = runs;
+    return current.sorted().capacity() + current.log().capacity();
+  }
+
+  /**
+   * Merge the log into a new sorted run, leaving out the entries of removed books
+   */
+  private void merge() {
+    Runs current = runs;
+    ByteBuffer sorted = current.sorted();
+    ByteBuffer log = current.log();
+    int logged = current.logCount().get();
+    Integer[] fromLog = new Integer[logged];
+    Arrays.setAll(fromLog, i -> i);
+    Arrays.sort(fromLog, (a, b) -> compare(log, a, log, b));
+
+    ByteBuffer merged = ByteBuffer.allocateDirect((current.sortedCount() + logged) * ENTRY_BYTES);
+    int count = 0;
+    int next = 0;
+    int nextLogged = 0;
+    while (next < current.sortedCount() || nextLogged < logged) {
+      boolean fromSorted = next < current.sortedCount()
+          && (nextLogged == logged || compare(sorted, next, log, fromLog[nextLogged]) < 0);
+      ByteBuffer entries = fromSorted ? sorted : log;
+      int entry = fromSorted ? next++ : fromLog[nextLogged++];
+      if (live.hasStamp(slot(entries, entry), stamp(entries, entry))) {
+        write(merged, count++, authorRef(entries, entry), stamp(entries, entry),
+            slot(entries, entry));
+      }
+    }
+    runs = new Runs(merged, count, newLog(), new AtomicInteger());
+    removedEntries = 0;
+  }
+
+  /**
+   * @return the first entry after the position
+   */
+  private int seek(ByteBuffer entries, int count, byte[] fromAuthor, long fromIsbn) {
+    int low = 0;
+    int high = count;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (compare(entries, mid, fromAuthor, fromIsbn) <= 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  private boolean startsWith(ByteBuffer entries, int entry, byte[] prefix) {
+    long authorRef = authorRef(entries, entry);
+    return prefix == null ? authorRef == 0 : arena.startsWith(authorRef, prefix);
+  }
+
+  private int compare(ByteBuffer entries, int entry, byte[] author, long isbn) {
+    int byAuthor = arena.compare(authorRef(entries, entry), author);
+    return byAuthor != 0 ? byAuthor : Long.compare(isbn(stamp(entries, entry)), isbn);
+  }
+
+  private int compare(ByteBuffer entries, int entry, ByteBuffer others, int other) {
+    int byAuthor = arena.compare(authorRef(entries, entry), authorRef(others, other));
+    return byAuthor != 0 ? byAuthor
+        : Long.compare(isbn(stamp(entries, entry)), isbn(stamp(others, other)));
+  }
+
+  private ByteBuffer newLog() {
+    return ByteBuffer.allocateDirect(logCapacity * ENTRY_BYTES);
+  }
+
+  private static void write(ByteBuffer entries, int entry, long authorRef, long stamp, int slot) {
+    int offset = entry * ENTRY_BYTES;
+    entries.putLong(offset, authorRef);
+    entries.putLong(offset + STAMP, stamp);
+    entries.putInt(offset + SLOT, slot);
+  }
+
+  private static long authorRef(ByteBuffer entries, int entry) {
+    return entries.getLong(entry * ENTRY_BYTES);
+  }
+
+  private static long stamp(ByteBuffer entries, int entry) {
+    return entries.getLong(entry * ENTRY_BYTES + STAMP);
+  }
+
+  private static int slot(ByteBuffer entries, int entry) {
+    return entries.getInt(entry * ENTRY_BYTES + SLOT);
+  }
+
+  private static long isbn(long stamp) {
+    return stamp & OffHeapBookStore.ISBN_MASK;
+  }
+
+  @FunctionalInterface
+  interface LiveCheck {
+
+    boolean hasStamp(int slot, long stamp);
+  }
+
+  @FunctionalInterface
+  interface EntryVisitor {
+
+    boolean visit(long authorRef, long stamp, int slot);
+  }
+
+  /**
+   * The sorted run and the log appended to since it was built. The log's count is published after
+   * each entry is written.
+   */
+  private record Runs(ByteBuffer sorted, int sortedCount, ByteBuffer log, AtomicInteger logCount) {
+
+  }
+}
@@ -0,0 +1,669 @@
+package com.techdelity.identitye2e.demo.library.store;
+
+import com.techdelity.identitye2e.demo.library.model.Book;
+import com.techdelity.identitye2e.demo.library.model.Isbn;
+import com.techdelity.identitye2e.demo.library.service.StockEngine;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Compact in-memory book store for large catalogues.
+ * <p>
+ * Each book lives in a numbered slot. The slot fields are held in pages of primitive arrays, with
+ * the title and author in an off-heap {@link StringArena}, so a book costs around 60 bytes of heap
+ * however long its strings are and the garbage collector has very few objects to trace. Books are
+ * keyed on their packed isbn, see {@link Isbn#pack(CharSequence)}, and mapped to slots by an open
+ * addressing hash table of ints, so a lookup hashes and compares longs rather than strings.
+ * <p>
+ * Reads take no locks. A slot is published by writing its stamp last, the packed isbn with a count
+ * of the times the slot has been used in its top bits, and a reader checks the stamp again after
+ * reading the other fields so it never returns a book from a slot that was reused under it, even
+ * by the same isbn. Copy counts are changed under one of a set of striped locks chosen by slot,
+ * so borrows of different books don't contend. Adding and removing books change the hash table
+ * and take a single structural lock.
+ * <p>
+ * Author lookups and author prefix searches seek an off-heap {@link AuthorIndex} of the books in
+ * order of normalized author then isbn, so a page of results reads only the books on it.
+ * <p>
+ * The store can be written to and loaded from a snapshot file. Loading a snapshot also reclaims
+ * the arena space of removed books.
+ */
+public class OffHeapBookStore implements StockEngine {
+
+  private static final int PAGE_BITS = 12;
+  private static final int PAGE_SIZE = 1 << PAGE_BITS;
+  private static final int PAGE_MASK = PAGE_SIZE - 1;
+  private static final int EMPTY = 0;
+  private static final int REMOVED = -1;
+  private static final int SNAPSHOT_MAGIC = 0x4C425332;
+  /**
+   * Snapshots written before books were keyed on packed isbns, which hold the isbn as text
+   */
+  private static final int TEXT_ISBN_SNAPSHOT_MAGIC = 0x4C425331;
+  /**
+   * Packed isbns are below 10^13, so fit in the low bits of a stamp
+   */
+  private static final int ISBN_BITS = 44;
+  static final long ISBN_MASK = (1L << ISBN_BITS) - 1;
+  /**
+   * Versions are never negative, so this matches a book at any version
+   */
+  private static final int ANY_VERSION = -1;
+  /**
+   * Books added to the author index before they are merged into its sorted run
+   */
+  private static final int AUTHOR_LOG_CAPACITY = 4096;
+
+  private final StringArena arena;
+  private final ReentrantLock[] stripes;
+  private final ReentrantLock structureLock = new ReentrantLock();
+  private final AuthorIndex authorIndex;
+
+  private volatile Page[] pages = new Page[0];
+  /**
+   * Hash table of slot + 1, or {@link #EMPTY} or {@link #REMOVED}
+   */
+  private volatile AtomicIntegerArray table = new AtomicIntegerArray(1024);
+  private volatile int slotCount;
+  private volatile int size;
+
+  // Guarded by structureLock
+  private int usedEntries;
+  private final Deque<Integer> freeSlots = new ArrayDeque<>();
+  private boolean loading;
+
+  /**
+   * Create an empty store
+   *
+   * @param arenaChunkSize the size of each off-heap block of strings, in bytes
+   * @param lockStripes    the number of locks copy count changes are spread over
+   */
+  public OffHeapBookStore(int arenaChunkSize, int lockStripes) {
+    this(arenaChunkSize, lockStripes, AUTHOR_LOG_CAPACITY);
+  }
+
+  OffHeapBookStore(int arenaChunkSize, int lockStripes, int authorLogCapacity) {
+    this.arena = new StringArena(arenaChunkSize);
+    this.stripes = new ReentrantLock[Integer.highestOneBit(Math.max(1, lockStripes))];
+    Arrays.setAll(stripes, i -> new ReentrantLock());
+    this.authorIndex = new AuthorIndex(arena, authorLogCapacity, this::hasStamp);
+  }
+
+  /**
+   * Add a book
+   *
+   * @param book the book to add
+   * @return true if the book was added, false if a book with the same isbn already exists
+   * @throws IllegalArgumentException if the isbn of the book is not valid
+   */
+  public boolean insert(Book book) {
+    long isbn = Isbn.pack(book.getIsbn());
+    int hash = hash(isbn);
+    structureLock.lock();
+    try {
+      if (find(isbn, hash) >= 0) {
+        return false;
+      }
+      int slot = allocateSlot();
+      Page page = pages[slot >>> PAGE_BITS];
+      int offset = slot & PAGE_MASK;
+      page.uses[offset]++;
+      page.title[offset] = arena.put(book.getTitle());
+      page.author[offset] = arena.put(book.getAuthor());
+      page.authorHash[offset] = Objects.hashCode(book.getAuthor());
+      page.authorNormalized[offset] = arena.put(Book.normalizeAuthor(book.getAuthor()));
+      page.publicationYear[offset] = book.getPublicationYear();
+      page.copiesAvailable.set(offset, book.getCopiesAvailable());
+      page.version.set(offset, book.getVersion());
+      // Publishing the stamp makes the slot visible to readers
+      long stamp = ((long) page.uses[offset] << ISBN_BITS) | isbn;
+      page.stamp.set(offset, stamp);
+      addToTable(hash, slot);
+      if (!loading) {
+        authorIndex.add(page.authorNormalized[offset], stamp, slot);
+      }
+      size++;
+      return true;
+    } finally {
+      structureLock.unlock();
+    }
+  }
+
+  /**
+   * Remove a book
+   *
+   * @param isbn the isbn of the book to remove
+   * @return true if the book was removed, false if it does not exist
+   */
+  public boolean remove(String isbn) {
+    return remove(isbn, ANY_VERSION);
+  }
+
+  /**
+   * Remove a book if it is at the expected version
+   *
+   * @param isbn            the isbn of the book to remove
+   * @param expectedVersion the version the book must be at
+   * @return true if the book was removed, false if it does not exist or is at another version
+   */
+  public boolean remove(String isbn, int expectedVersion) {
+    return remove(Isbn.pack(isbn), expectedVersion);
+  }
+
+  private boolean remove(long isbn, int expectedVersion) {
+    int hash = hash(isbn);
+    structureLock.lock();
+    try {
+      AtomicIntegerArray entries = table;
+      int index = indexOf(entries, isbn, hash);
+      if (index < 0) {
+        return false;
+      }
+      int slot = entries.get(index) - 1;
+      ReentrantLock stripe = stripe(slot);
+      stripe.lock();
+      try {
+        Page page = pages[slot >>> PAGE_BITS];
+        int offset = slot & PAGE_MASK;
+        // Copy changes take the stripe lock, so the version can't move on while it is held
+        if (expectedVersion != ANY_VERSION && page.version.get(offset) != expectedVersion) {
+          return false;
+        }
+        entries.set(index, REMOVED);
+        page.stamp.set(offset, 0);
+      } finally {
+        stripe.unlock();
+      }
+      freeSlots.push(slot);
+      size--;
+      authorIndex.removed();
+      return true;
+    } finally {
+      structureLock.unlock();
+    }
+  }
+
+  /**
+   * Find a book by isbn
+   *
+   * @param isbn the isbn of the book
+   * @return the book, empty if it does not exist
+   */
+  public Optional<Book> find(String isbn) {
+    long key = Isbn.pack(isbn);
+    int hash = hash(key);
+    while (true) {
+      int slot = find(key, hash);
+      if (slot < 0) {
+        return Optional.empty();
+      }
+      Book book = read(slot, key);
+      if (book != null) {
+        return Optional.of(book);
+      }
+      // The slot was removed or reused while it was read, look the isbn up again
+    }
+  }
+
+  /**
+   * Find the version of a book, reading only the version and isbn of its slot
+   *
+   * @param isbn the isbn of the book
+   * @return the version, empty if the book does not exist
+   */
+  public OptionalInt findVersion(String isbn) {
+    long key = Isbn.pack(isbn);
+    int hash = hash(key);
+    while (true) {
+      int slot = find(key, hash);
+      if (slot < 0) {
+        return OptionalInt.empty();
+      }
+      Page page = pages[slot >>> PAGE_BITS];
+      int offset = slot & PAGE_MASK;
+      long stamp = page.stamp.get(offset);
+      int version = page.version.get(offset);
+      VarHandle.loadLoadFence();
+      if ((stamp & ISBN_MASK) == key && page.stamp.get(offset) == stamp) {
+        return OptionalInt.of(version);
+      }
+      // The slot was removed or reused while it was read, look the isbn up again
+    }
+  }
+
+  /**
+   * @param isbn the isbn of the book
+   * @return true if the book exists
+   */
+  public boolean contains(String isbn) {
+    long key = Isbn.pack(isbn);
+    return find(key, hash(key)) >= 0;
+  }
+
+  /**
+   * Find the books by an author, in isbn order
+   *
+   * @param author the exact author name
+   * @return the books by the author
+   */
+  public List<Book> findByAuthor(String author) {
+    int authorHash = Objects.hashCode(author);
+    byte[] normalized = utf8(Book.normalizeAuthor(author));
+    List<Book> books = new ArrayList<>();
+    authorIndex.scan(normalized, normalized, -1, (authorRef, stamp, slot) -> {
+      if (arena.compare(authorRef, normalized) != 0) {
+        // Past the books by the author, on to authors it is a prefix of
+        return false;
+      }
+      if (pages[slot >>> PAGE_BITS].authorHash[slot & PAGE_MASK] == authorHash) {
+        Book book = read(slot, stamp, -1L);
+        if (book != null && Objects.equals(author, book.getAuthor())) {
+          books.add(book);
+        }
+      }
+      return true;
+    });
+    return books;
+  }
+
+  /**
+   * Find books whose normalized author starts with a prefix, ordered by the UTF-8 bytes of the
+   * normalized author then isbn, starting after the given position. The author index is sought to
+   * the first book of the page, so only the books returned are read.
+   *
+   * @param prefix      the normalized author prefix
+   * @param afterAuthor the normalized author of the last book already seen, empty for the first page
+   * @param afterIsbn   the isbn of the last book already seen, empty for the first page
+   * @param limit       the maximum number of books to return
+   * @return the matching books
+   */
+  public List<Book> findByAuthorPrefix(String prefix, String afterAuthor, String afterIsbn,
+      int limit) {
+    if (limit <= 0) {
+      return List.of();
+    }
+    byte[] prefixBytes = utf8(prefix);
+    byte[] afterBytes = utf8(afterAuthor);
+    // Start after the last book seen, or at the prefix if that comes later
+    boolean fromPrefix = Arrays.compareUnsigned(afterBytes, prefixBytes) < 0;
+    long afterKey = fromPrefix || afterIsbn.isEmpty() ? -1 : Isbn.pack(afterIsbn);
+    List<Book> books = new ArrayList<>(limit);
+    authorIndex.scan(prefixBytes, fromPrefix ? prefixBytes : afterBytes, afterKey,
+        (authorRef, stamp, slot) -> {
+          Book book = read(slot, stamp, -1L);
+          if (book != null) {
+            books.add(book);
+          }
+          return books.size() < limit;
+        });
+    return books;
+  }
+
+  @Override
+  public boolean tryTakeCopy(String isbn) {
+    return changeCopies(isbn, -1, ANY_VERSION);
+  }
+
+  @Override
+  public boolean putCopyBack(String isbn) {
+    return changeCopies(isbn, 1, ANY_VERSION);
+  }
+
+  @Override
+  public boolean tryTakeCopy(String isbn, int expectedVersion) {
+    return changeCopies(isbn, -1, expectedVersion);
+  }
+
+  @Override
+  public boolean putCopyBack(String isbn, int expectedVersion) {
+    return changeCopies(isbn, 1, expectedVersion);
+  }
+
+  /**
+   * @return the number of books in the store
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return the off-heap memory used by the strings of the store, in bytes
+   */
+  public long offHeapBytes() {
+    return arena.allocatedBytes() + authorIndex.offHeapBytes();
+  }
+
+  /**
+   * Write every book to a snapshot file. The file is written beside the target and then moved into
+   * place, so a failed write never leaves a partial snapshot. Books changed while the snapshot is
+   * written may or may not be included.
+   *
+   * @param file the snapshot file
+   * @throws IOException if the file can't be written
+   */
+  public void writeSnapshot(Path file) throws IOException {
+    Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(Files.newOutputStream(temp)))) {
+      out.writeInt(SNAPSHOT_MAGIC);
+      IOException[] failure = new IOException[1];
+      forEachLiveSlot((page, offset, slot) -> {
+        Book book = read(slot, 0);
+        if (book == null || failure[0] != null) {
+          return;
+        }
+        try {
+          out.writeBoolean(true);
+          out.writeLong(Isbn.pack(book.getIsbn()));
+          writeNullable(out, book.getTitle());
+          writeNullable(out, book.getAuthor());
+          out.writeInt(book.getPublicationYear());
+          out.writeInt(book.getCopiesAvailable());
+          out.writeInt(book.getVersion());
+        } catch (IOException ex) {
+          failure[0] = ex;
+        }
+      });
+      if (failure[0] != null) {
+        throw failure[0];
+      }
+      out.writeBoolean(false);
+    }
+    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Add every book in a snapshot file to the store. Snapshots written before books were keyed on
+   * packed isbns can still be loaded, skipping any books whose isbn is not valid. The author index
+   * is rebuilt once every book is added, so author searches only find the loaded books when the
+   * load completes, and other changes to the store wait for it.
+   *
+   * @param file the snapshot file
+   * @return the number of books added
+   * @throws IOException if the file can't be read or is not a snapshot
+   */
+  public int loadSnapshot(Path file) throws IOException {
+    int loaded = 0;
+    structureLock.lock();
+    loading = true;
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(file)))) {
+      int magic = in.readInt();
+      if (magic != SNAPSHOT_MAGIC && magic != TEXT_ISBN_SNAPSHOT_MAGIC) {
+        throw new IOException("Not a book store snapshot: " + file);
+      }
+      while (in.readBoolean()) {
+        String isbn = magic == SNAPSHOT_MAGIC ? Isbn.unpack(in.readLong()) : in.readUTF();
+        Book book = new Book(isbn, readNullable(in), readNullable(in), in.readInt(),
+            in.readInt());
+        book.setVersion(in.readInt());
+        try {
+          if (insert(book)) {
+            loaded++;
+          }
+        } catch (IllegalArgumentException ex) {
+          // An isbn of an older snapshot that was never valid
+        }
+      }
+    } finally {
+      loading = false;
+      rebuildAuthorIndex();
+      structureLock.unlock();
+    }
+    return loaded;
+  }
+
+  private boolean changeCopies(String isbn, int change, int expectedVersion) {
+    long key = Isbn.pack(isbn);
+    int hash = hash(key);
+    int slot = find(key, hash);
+    if (slot < 0) {
+      return false;
+    }
+    ReentrantLock stripe = stripe(slot);
+    stripe.lock();
+    try {
+      // Removal takes the stripe lock, so the slot can't change while it is held
+      if (!matches(slot, key)) {
+        return false;
+      }
+      Page page = pages[slot >>> PAGE_BITS];
+      int offset = slot & PAGE_MASK;
+      int copies = page.copiesAvailable.get(offset);
+      int version = page.version.get(offset);
+      if (copies + change < 0 || (expectedVersion != ANY_VERSION && version != expectedVersion)) {
+        return false;
+      }
+      page.copiesAvailable.set(offset, copies + change);
+      page.version.set(offset, version + 1);
+      return true;
+    } finally {
+      stripe.unlock();
+    }
+  }
+
+  /**
+   * Read the book in a slot
+   *
+   * @param isbn the packed isbn the slot must hold, 0 for any
+   * @return the book, null if the slot is empty, holds another book or was reused while it was
+   * read
+   */
+  private Book read(int slot, long isbn) {
+    return read(slot, isbn, ISBN_MASK);
+  }
+
+  /**
+   * Read the book in a slot
+   *
+   * @param expected the stamp bits the slot must hold, 0 for any
+   * @param mask     the bits of the stamp to compare
+   * @return the book, null if the slot is empty, doesn't hold the expected stamp or was reused
+   * while it was read
+   */
+  private Book read(int slot, long expected, long mask) {
+    Page page = pages[slot >>> PAGE_BITS];
+    int offset = slot & PAGE_MASK;
+    long stamp = page.stamp.get(offset);
+    if (stamp == 0 || (expected != 0 && (stamp & mask) != expected)) {
+      return null;
+    }
+    long titleRef = page.title[offset];
+    long authorRef = page.author[offset];
+    long authorNormalizedRef = page.authorNormalized[offset];
+    int publicationYear = page.publicationYear[offset];
+    int copiesAvailable = page.copiesAvailable.get(offset);
+    int version = page.version.get(offset);
+    VarHandle.loadLoadFence();
+    if (page.stamp.get(offset) != stamp) {
+      return null;
+    }
+    // Arena strings never change once written, so they can be decoded after the check
+    Book book = new Book(Isbn.unpack(stamp & ISBN_MASK), arena.get(titleRef), arena.get(authorRef),
+        publicationYear, copiesAvailable);
+    book.setVersion(version);
+    book.setAuthorNormalized(arena.get(authorNormalizedRef));
+    return book;
+  }
+
+  private int find(long isbn, int hash) {
+    AtomicIntegerArray entries = table;
+    int index = indexOf(entries, isbn, hash);
+    return index < 0 ? -1 : entries.get(index) - 1;
+  }
+
+  private int indexOf(AtomicIntegerArray entries, long isbn, int hash) {
+    int mask = entries.length() - 1;
+    for (int i = hash & mask, probes = 0; probes < entries.length(); i = (i + 1) & mask, probes++) {
+      int entry = entries.get(i);
+      if (entry == EMPTY) {
+        return -1;
+      }
+      if (entry != REMOVED && matches(entry - 1, isbn)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private boolean hasStamp(int slot, long stamp) {
+    return pages[slot >>> PAGE_BITS].stamp.get(slot & PAGE_MASK) == stamp;
+  }
+
+  private boolean matches(int slot, long isbn) {
+    return (pages[slot >>> PAGE_BITS].stamp.get(slot & PAGE_MASK) & ISBN_MASK) == isbn;
+  }
+
+  private int allocateSlot() {
+    if (!freeSlots.isEmpty()) {
+      return freeSlots.pop();
+    }
+    int slot = slotCount;
+    if ((slot >>> PAGE_BITS) == pages.length) {
+      Page[] grown = Arrays.copyOf(pages, pages.length + 1);
+      grown[grown.length - 1] = new Page();
+      pages = grown;
+    }
+    slotCount = slot + 1;
+    return slot;
+  }
+
+  private void addToTable(int hash, int slot) {
+    if ((usedEntries + 1) * 2 > table.length()) {
+      rehash();
+    }
+    AtomicIntegerArray entries = table;
+    int mask = entries.length() - 1;
+    int i = hash & mask;
+    while (entries.get(i) != EMPTY && entries.get(i) != REMOVED) {
+      i = (i + 1) & mask;
+    }
+    if (entries.get(i) == EMPTY) {
+      usedEntries++;
+    }
+    entries.set(i, slot + 1);
+  }
+
+  /**
+   * Copy the live entries into a new table, sized for the current books, dropping removed entries.
+   * Readers keep using the old table until the new one is published.
+   */
+  private void rehash() {
+    AtomicIntegerArray entries = table;
+    int capacity = Integer.highestOneBit(Math.max(1024, (size + 1) * 4) - 1) << 1;
+    AtomicIntegerArray rehashed = new AtomicIntegerArray(capacity);
+    int mask = capacity - 1;
+    for (int i = 0; i < entries.length(); i++) {
+      int entry = entries.get(i);
+      if (entry != EMPTY && entry != REMOVED) {
+        int slot = entry - 1;
+        int j = hash(pages[slot >>> PAGE_BITS].stamp.get(slot & PAGE_MASK) & ISBN_MASK) & mask;
+        while (rehashed.get(j) != EMPTY) {
+          j = (j + 1) & mask;
+        }
+        rehashed.set(j, entry);
+      }
+    }
+    usedEntries = size;
+    table = rehashed;
+  }
+
+  private void forEachLiveSlot(SlotVisitor visitor) {
+    Page[] snapshot = pages;
+    int count = slotCount;
+    for (int slot = 0; slot < count; slot++) {
+      Page page = snapshot[slot >>> PAGE_BITS];
+      int offset = slot & PAGE_MASK;
+      if (page.stamp.get(offset) != 0) {
+        visitor.visit(page, offset, slot);
+      }
+    }
+  }
+
+  /**
+   * Index every book by author afresh. Called under the structure lock.
+   */
+  private void rebuildAuthorIndex() {
+    long[] authorRefs = new long[size];
+    long[] stamps = new long[size];
+    int[] slots = new int[size];
+    int[] count = new int[1];
+    forEachLiveSlot((page, offset, slot) -> {
+      authorRefs[count[0]] = page.authorNormalized[offset];
+      stamps[count[0]] = page.stamp.get(offset);
+      slots[count[0]++] = slot;
+    });
+    authorIndex.rebuild(authorRefs, stamps, slots, count[0]);
+  }
+
+  private ReentrantLock stripe(int slot) {
+    return stripes[slot & (stripes.length - 1)];
+  }
+
+  private static int hash(long isbn) {
+    // Spreads runs of consecutive isbns across the table
+    long h = isbn * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+
+  private static byte[] utf8(String value) {
+    return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static void writeNullable(DataOutputStream out, String value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      out.writeUTF(value);
+    }
+  }
+
+  private static String readNullable(DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  @FunctionalInterface
+  private interface SlotVisitor {
+
+    void visit(Page page, int offset, int slot);
+  }
+
+  /**
+   * The fields of {@link #PAGE_SIZE} slots. Fields other than the stamp are written before the
+   * stamp is published and only read after it.
+   */
+  private static final class Page {
+
+    final AtomicLongArray stamp = new AtomicLongArray(PAGE_SIZE);
+    /**
+     * The times each slot has been used, wrapping within the bits of a stamp above the isbn.
+     * Guarded by the structure lock.
+     */
+    final int[] uses = new int[PAGE_SIZE];
+    final long[] title = new long[PAGE_SIZE];
+    final long[] author = new long[PAGE_SIZE];
+    final int[] authorHash = new int[PAGE_SIZE];
+    final long[] authorNormalized = new long[PAGE_SIZE];
+    final int[] publicationYear = new int[PAGE_SIZE];
+    final AtomicIntegerArray copiesAvailable = new AtomicIntegerArray(PAGE_SIZE);
+    final AtomicIntegerArray version = new AtomicIntegerArray(PAGE_SIZE);
+  }
+}
@@ -0,0 +1,158 @@
+package com.techdelity.identitye2e.demo.library.store;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Append only store of strings in off-heap memory.
+ * <p>
+ * Strings are written as a length followed by their UTF-8 bytes into direct buffers allocated a
+ * chunk at a time, and are referred to by a long holding the chunk and offset. A reference of 0 is
+ * null. Space is never reused, strings that are no longer referenced are only dropped when the
+ * store is rebuilt from a snapshot.
+ * <p>
+ * Appends are synchronized. Reads take no lock, a string is visible to any thread that read its
+ * reference from a field written after the append.
+ */
+final class StringArena {
+
+  private final int chunkSize;
+  private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+  private ByteBuffer current;
+  private long allocatedBytes;
+
+  StringArena(int chunkSize) {
+    this.chunkSize = chunkSize;
+  }
+
+  /**
+   * Append a string
+   *
+   * @param value the string to append
+   * @return a reference to the string, 0 if it is null
+   */
+  synchronized long put(String value) {
+    if (value == null) {
+      return 0;
+    }
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    int needed = Integer.BYTES + bytes.length;
+    if (current == null || current.remaining() < needed) {
+      current = ByteBuffer.allocateDirect(Math.max(chunkSize, needed));
+      allocatedBytes += current.capacity();
+      ByteBuffer[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+      grown[grown.length - 1] = current;
+      chunks = grown;
+    }
+    int offset = current.position();
+    current.putInt(bytes.length).put(bytes);
+    return ((long) chunks.length << 32) | offset;
+  }
+
+  /**
+   * Read a string
+   *
+   * @param ref a reference returned by {@link #put(String)}
+   * @return the string, null if the reference is 0
+   */
+  String get(long ref) {
+    if (ref == 0) {
+      return null;
+    }
+    ByteBuffer chunk = chunk(ref);
+    int offset = (int) ref;
+    byte[] bytes = new byte[chunk.getInt(offset)];
+    chunk.get(offset + Integer.BYTES, bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Check whether a string starts with a prefix, without copying it onto the heap
+   *
+   * @param ref    a reference returned by {@link #put(String)}
+   * @param prefix the UTF-8 bytes of the prefix
+   * @return true if the string starts with the prefix, false if it doesn't or is null
+   */
+  boolean startsWith(long ref, byte[] prefix) {
+    if (ref == 0) {
+      return false;
+    }
+    ByteBuffer chunk = chunk(ref);
+    int offset = (int) ref;
+    if (chunk.getInt(offset) < prefix.length) {
+      return false;
+    }
+    int start = offset + Integer.BYTES;
+    for (int i = 0; i < prefix.length; i++) {
+      if (chunk.get(start + i) != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Compare two strings by their UTF-8 bytes, which orders them by code point, without copying
+   * them onto the heap. Null sorts before every string.
+   *
+   * @param ref      a reference returned by {@link #put(String)}
+   * @param otherRef another reference returned by {@link #put(String)}
+   * @return a negative number, zero or a positive number as the first string is less than, equal
+   * to or greater than the second
+   */
+  int compare(long ref, long otherRef) {
+    if (ref == 0 || otherRef == 0) {
+      return Boolean.compare(ref != 0, otherRef != 0);
+    }
+    ByteBuffer chunk = chunk(ref);
+    ByteBuffer otherChunk = chunk(otherRef);
+    int offset = (int) ref;
+    int otherOffset = (int) otherRef;
+    int length = chunk.getInt(offset);
+    int otherLength = otherChunk.getInt(otherOffset);
+    for (int i = 0; i < Math.min(length, otherLength); i++) {
+      int compared = Byte.compareUnsigned(chunk.get(offset + Integer.BYTES + i),
+          otherChunk.get(otherOffset + Integer.BYTES + i));
+      if (compared != 0) {
+        return compared;
+      }
+    }
+    return Integer.compare(length, otherLength);
+  }
+
+  /**
+   * Compare a string with the UTF-8 bytes of another, as {@link #compare(long, long)} does
+   *
+   * @param ref   a reference returned by {@link #put(String)}
+   * @param value the UTF-8 bytes of the other string, null for null
+   * @return a negative number, zero or a positive number as the string is less than, equal to or
+   * greater than the other
+   */
+  int compare(long ref, byte[] value) {
+    if (ref == 0 || value == null) {
+      return Boolean.compare(ref != 0, value != null);
+    }
+    ByteBuffer chunk = chunk(ref);
+    int offset = (int) ref;
+    int length = chunk.getInt(offset);
+    for (int i = 0; i < Math.min(length, value.length); i++) {
+      int compared = Byte.compareUnsigned(chunk.get(offset + Integer.BYTES + i), value[i]);
+      if (compared != 0) {
+        return compared;
+      }
+    }
+    return Integer.compare(length, value.length);
+  }
+
+  /**
+   * @return the off-heap memory allocated so far, in bytes
+   */
+  synchronized long allocatedBytes() {
+    return allocatedBytes;
+  }
+
+  private ByteBuffer chunk(long ref) {
+    return chunks[(int) (ref >>> 32) - 1];
+  }
+}
@@ -0,0 +1,132 @@
+package com.techdelity.identitye2e.demo.library.cache;
+
+import static com.techdelity.identitye2e.demo.library.config.CacheConfig.BOOKS_CACHE;
+import static com.techdelity.identitye2e.demo.library.config.CacheConfig.BOOK_VERSIONS_CACHE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.techdelity.identitye2e.demo.library.config.CacheConfig;
+import com.techdelity.identitye2e.demo.library.model.Book;
+import com.techdelity.identitye2e.demo.library.model.Isbn;
+import com.techdelity.identitye2e.demo.library.repository.BookRepository;
+import com.techdelity.identitye2e.demo.library.service.BookChangedEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import java.time.Duration;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+/**
+ * Two nodes, each with its own caches, sharing a local transport in place of the network
+ */
+class BookCacheInvalidatorTest {
+
+  private static final String ISBN = "9780027000016";
+  private static final long KEY = Isbn.pack(ISBN);
+
+  private final LocalInvalidationTransport transport = new LocalInvalidationTransport();
+  private final CacheManager nodeA = cacheManager();
+  private final CacheManager nodeB = cacheManager();
+  private final BookCacheInvalidator invalidatorA = invalidator(nodeA);
+  private final BookCacheInvalidator invalidatorB = invalidator(nodeB);
+
+  @Test
+  void changeOnOneNode_dropsOlderCopiesOnEveryNode() {
+    nodeA.getCache(BOOKS_CACHE).put(KEY, book(3));
+    nodeB.getCache(BOOKS_CACHE).put(KEY, book(3));
+    nodeB.getCache(BOOK_VERSIONS_CACHE).put(KEY, 3);
+
+    invalidatorA.onBookChanged(BookChangedEvent.borrowed(ISBN, 4, 1));
+
+    assertNull(nodeA.getCache(BOOKS_CACHE).get(KEY));
+    assertNull(nodeB.getCache(BOOKS_CACHE).get(KEY));
+    assertNull(nodeB.getCache(BOOK_VERSIONS_CACHE).get(KEY));
+  }
+
+  @Test
+  void loadFromBeforeChange_isNotCachedAfterIt() {
+    Cache books = nodeB.getCache(BOOKS_CACHE);
+
+    invalidatorA.onBookChanged(BookChangedEvent.returned(ISBN, 4, 1));
+    books.put(KEY, book(3));
+    assertNull(books.get(KEY));
+
+    books.put(KEY, book(4));
+    assertEquals(4, ((Book) books.get(KEY).get()).getVersion());
+  }
+
+  @Test
+  void invalidations_areIdempotentAndOrderFree() {
+    Cache books = nodeB.getCache(BOOKS_CACHE);
+    books.put(KEY, book(5));
+
+    invalidatorB.apply(new BookInvalidation(ISBN, 5));
+    invalidatorB.apply(new BookInvalidation(ISBN, 4));
+    invalidatorB.apply(new BookInvalidation(ISBN, 5));
+
+    assertEquals(5, ((Book) books.get(KEY).get()).getVersion());
+  }
+
+  @Test
+  void removal_dropsEveryVersion() {
+    nodeB.getCache(BOOKS_CACHE).put(KEY, book(9));
+
+    invalidatorA.onBookChanged(BookChangedEvent.removed(ISBN));
+
+    assertNull(nodeB.getCache(BOOKS_CACHE).get(KEY));
+    nodeB.getCache(BOOKS_CACHE).put(KEY, book(9));
+    assertNull(nodeB.getCache(BOOKS_CACHE).get(KEY));
+  }
+
+  @Test
+  void add_dropsAuthorLookupsOnEveryNode_withoutFencingTheBook() {
+    org.hibernate.Cache secondLevelB = mock(org.hibernate.Cache.class);
+    invalidator(nodeB, secondLevelB);
+
+    invalidatorA.onBookChanged(BookChangedEvent.added(book(0)));
+
+    verify(secondLevelB).evictQueryRegion(BookRepository.BY_AUTHOR_CACHE_REGION);
+    verify(secondLevelB, never()).evict(Book.class, ISBN);
+    // The new book can be cached as soon as it is read
+    nodeB.getCache(BOOKS_CACHE).put(KEY, book(0));
+    assertEquals(0, ((Book) nodeB.getCache(BOOKS_CACHE).get(KEY).get()).getVersion());
+  }
+
+  private BookCacheInvalidator invalidator(CacheManager cacheManager) {
+    return new BookCacheInvalidator(cacheManager, transport, new StaticListableBeanFactory()
+        .getBeanProvider(EntityManagerFactory.class), new SimpleMeterRegistry());
+  }
+
+  /**
+   * A node whose Hibernate second-level cache is a mock
+   */
+  private BookCacheInvalidator invalidator(CacheManager cacheManager,
+      org.hibernate.Cache secondLevel) {
+    EntityManagerFactory entityManagerFactory = mock(EntityManagerFactory.class);
+    SessionFactory sessionFactory = mock(SessionFactory.class);
+    when(entityManagerFactory.getCache()).thenReturn(secondLevel);
+    when(entityManagerFactory.unwrap(SessionFactory.class)).thenReturn(sessionFactory);
+    when(sessionFactory.getCache()).thenReturn(secondLevel);
+    StaticListableBeanFactory beans = new StaticListableBeanFactory();
+    beans.addBean("entityManagerFactory", entityManagerFactory);
+    return new BookCacheInvalidator(cacheManager, transport,
+        beans.getBeanProvider(EntityManagerFactory.class), new SimpleMeterRegistry());
+  }
+
+  private static CacheManager cacheManager() {
+    return new CacheConfig().cacheManager(100, Duration.ofMinutes(10), Duration.ofMinutes(1));
+  }
+
+  private static Book book(int version) {
+    Book book = new Book(ISBN, "Title", "Author", 2001, 1);
+    book.setVersion(version);
+    return book;
+  }
+}
@@ -0,0 +1,80 @@
+package com.techdelity.identitye2e.demo.library.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import com.techdelity.identitye2e.demo.library.model.Book;
+import com.techdelity.identitye2e.demo.library.repository.BookRepository;
+import com.techdelity.identitye2e.demo.library.service.LibraryService;
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+@SpringBootTest(properties = {
+    "library.cache.invalidation.transport=jdbc",
+    "library.cache.invalidation.poll-interval=20ms"})
+class JdbcInvalidationTransportTest {
+
+  @Autowired
+  private LibraryService libraryService;
+
+  @Autowired
+  private BookRepository bookRepository;
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @Test
+  void borrowOnThisNode_reachesAnotherNode() throws InterruptedException {
+    bookRepository.save(new Book("9780001400016", "Title", "Author", 2001, 2));
+    JdbcInvalidationTransport otherNode =
+        new JdbcInvalidationTransport(jdbcTemplate, Duration.ofMillis(20), Duration.ofMinutes(1));
+    BlockingQueue<BookInvalidation> received = new LinkedBlockingQueue<>();
+    otherNode.subscribe(received(received, "9780001400016"));
+    try {
+      int version = libraryService.borrowBook("9780001400016").orElseThrow().getVersion();
+
+      BookInvalidation invalidation = received.poll(10, TimeUnit.SECONDS);
+      assertEquals(new BookInvalidation("9780001400016", version), invalidation);
+
+      // Rows read again to catch late commits are not delivered twice
+      Thread.sleep(100);
+      assertNull(received.poll());
+    } finally {
+      otherNode.destroy();
+    }
+  }
+
+  @Test
+  void addOnThisNode_reachesAnotherNodeAsAuthorResults() throws InterruptedException {
+    JdbcInvalidationTransport otherNode =
+        new JdbcInvalidationTransport(jdbcTemplate, Duration.ofMillis(20), Duration.ofMinutes(1));
+    BlockingQueue<BookInvalidation> received = new LinkedBlockingQueue<>();
+    otherNode.subscribe(received(received, "9780001400023"));
+    try {
+      libraryService.addBook(new Book("9780001400023", "Title", "Author", 2001, 2));
+
+      assertEquals(BookInvalidation.added("9780001400023"), received.poll(10, TimeUnit.SECONDS));
+    } finally {
+      otherNode.destroy();
+    }
+  }
+
+  /**
+   * A new node reads back the recent rows of other tests too, so only the book under test is kept
+   */
+  private static Consumer<BookInvalidation> received(BlockingQueue<BookInvalidation> received,
+      String isbn) {
+    return invalidation -> {
+      if (invalidation.isbn().equals(isbn)) {
+        received.add(invalidation);
+      }
+    };
+  }
+}
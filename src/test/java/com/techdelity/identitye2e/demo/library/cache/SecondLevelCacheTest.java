@@ -0,0 +1,79 @@
+package com.techdelity.identitye2e.demo.library.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.techdelity.identitye2e.demo.library.model.Book;
+import com.techdelity.identitye2e.demo.library.repository.BookRepository;
+import com.techdelity.identitye2e.demo.library.service.LibraryService;
+import jakarta.persistence.EntityManagerFactory;
+import java.util.List;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+@SpringBootTest
+@ActiveProfiles("prod")
+class SecondLevelCacheTest {
+
+  @Autowired
+  private LibraryService libraryService;
+
+  @Autowired
+  private BookRepository bookRepository;
+
+  @Autowired
+  private BookCacheInvalidator invalidator;
+
+  @Autowired
+  private EntityManagerFactory entityManagerFactory;
+
+  @Test
+  void findByAuthor_isServedFromQueryCacheWithFreshCounts() {
+    bookRepository.save(new Book("9780001500013", "Title", "L2 Author", 2001, 2));
+    Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+    libraryService.findBookByAuthor("L2 Author");
+    long hits = statistics.getQueryCacheHitCount();
+    libraryService.findBookByAuthor("L2 Author");
+    assertEquals(hits + 1, statistics.getQueryCacheHitCount());
+
+    // A borrow drops the book but not the author's results, which are read with the new count
+    libraryService.borrowBook("9780001500013");
+    hits = statistics.getQueryCacheHitCount();
+    List<Book> books = libraryService.findBookByAuthor("L2 Author");
+    assertEquals(1, books.get(0).getCopiesAvailable());
+    assertEquals(hits + 1, statistics.getQueryCacheHitCount());
+  }
+
+  @Test
+  void invalidationFromAnotherNode_dropsSecondLevelCopy() {
+    bookRepository.save(new Book("9780001500020", "Title", "Author", 2001, 2));
+    bookRepository.findById("9780001500020");
+    assertTrue(entityManagerFactory.getCache().contains(Book.class, "9780001500020"));
+
+    invalidator.apply(new BookInvalidation("9780001500020", 5));
+
+    assertFalse(entityManagerFactory.getCache().contains(Book.class, "9780001500020"));
+  }
+
+  @Test
+  void borrowOfOneBook_leavesOtherBooksCached() {
+    bookRepository.save(new Book("9780001500037", "Title", "Author", 2001, 2));
+    bookRepository.save(new Book("9780001500044", "Title", "Author", 2001, 2));
+    bookRepository.findById("9780001500037");
+    bookRepository.findById("9780001500044");
+
+    assertEquals(1, libraryService.borrowBook("9780001500037").orElseThrow().getCopiesAvailable());
+    libraryService.returnBook("9780001500037");
+    assertEquals(1, libraryService.borrowBook("9780001500037", 2).orElseThrow()
+        .getCopiesAvailable());
+
+    assertTrue(entityManagerFactory.getCache().contains(Book.class, "9780001500044"));
+    assertEquals(2, bookRepository.findById("9780001500044").orElseThrow().getCopiesAvailable());
+  }
+}
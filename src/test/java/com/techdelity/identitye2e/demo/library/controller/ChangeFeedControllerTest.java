@@ -0,0 +1,60 @@
+package com.techdelity.identitye2e.demo.library.controller;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.techdelity.identitye2e.demo.library.feed.ChangeFeed;
+import com.techdelity.identitye2e.demo.library.model.Book;
+import com.techdelity.identitye2e.demo.library.repository.BookRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class ChangeFeedControllerTest {
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @Autowired
+  private ChangeFeed changeFeed;
+
+  @Autowired
+  private BookRepository bookRepository;
+
+  @Test
+  void readChanges_waitsForBorrowAndReturn() throws Exception {
+    bookRepository.save(new Book("9780001300019", "Title", "Author", 2001, 2));
+    long after = changeFeed.lastOffset();
+
+    MvcResult poll = mockMvc.perform(get("/api/book/changes")
+            .param("after", Long.toString(after)).param("wait", "10"))
+        .andExpect(request().asyncStarted())
+        .andReturn();
+    mockMvc.perform(post("/api/book/borrow/9780001300019")).andExpect(status().isOk());
+    mockMvc.perform(post("/api/book/return/9780001300019")).andExpect(status().isOk());
+
+    mockMvc.perform(asyncDispatch(poll))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.changes[0].type").value("BORROWED"))
+        .andExpect(jsonPath("$.changes[0].isbn").value("9780001300019"))
+        .andExpect(jsonPath("$.changes[0].offset").value(after + 1))
+        .andExpect(jsonPath("$.truncated").value(false));
+
+    MvcResult read = mockMvc.perform(get("/api/book/changes")
+            .param("after", Long.toString(after + 1)).param("wait", "0"))
+        .andReturn();
+    mockMvc.perform(asyncDispatch(read))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.changes[0].type").value("RETURNED"))
+        .andExpect(jsonPath("$.nextOffset").value(after + 2));
+  }
+}
@@ -3,10 +3,20 @@ package com.techdelity.identitye2e.demo.library.controller;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.techdelity.identitye2e.demo.library.exception.AlreadyExistsException;
 import com.techdelity.identitye2e.demo.library.exception.BookNotFoundException;
+import com.techdelity.identitye2e.demo.library.exception.BookVersionConflictException;
+import com.techdelity.identitye2e.demo.library.exception.InvalidRequestException;
+import com.techdelity.identitye2e.demo.library.exception.NoBookCopiesRemainingToBorrowException;
 import com.techdelity.identitye2e.demo.library.model.Book;
+import com.techdelity.identitye2e.demo.library.model.BookPage;
+import com.techdelity.identitye2e.demo.library.reservation.ReservationQueue;
+import com.techdelity.identitye2e.demo.library.reservation.ReservationQueue.Reservation;
 import com.techdelity.identitye2e.demo.library.service.LibraryService;
+import jakarta.servlet.ServletException;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -15,18 +25,33 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.cache.CacheManager;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 import java.util.Optional;
 
+import static com.techdelity.identitye2e.demo.library.config.CacheConfig.BOOK_JSON_CACHE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 
@@ -43,49 +68,69 @@ class LibraryControllerTest {
 
   private static final ObjectMapper mapper = new ObjectMapper();
 
+  @Autowired
+  private CacheManager cacheManager;
+
+  @Autowired
+  private ReservationQueue reservationQueue;
+
   @BeforeEach
   void setUp() {
     reset();
+    // The service is a mock, so nothing evicts the JSON cached by earlier tests
+    cacheManager.getCache(BOOK_JSON_CACHE).clear();
   }
 
   @Test
   void addNewBook_isCreated() throws Exception {
     this.mockMvc.perform(post("/api/book").contentType(MediaType.APPLICATION_JSON)
-        .content(mapper.writeValueAsString(generateBook("12")))).andExpect(status().isCreated());
+        .content(mapper.writeValueAsString(generateBook("9780000000125"))))
+        .andExpect(status().isCreated());
+  }
+
+  @Test
+  void addNewBook_withHyphenatedIsbn_addsTheNormalizedIsbn() throws Exception {
+    Book book = generateBook("978-0-00-000012-5");
+    this.mockMvc.perform(post("/api/book").contentType(MediaType.APPLICATION_JSON)
+        .content(mapper.writeValueAsString(book))).andExpect(status().isCreated());
+    verify(libraryService).addBook(generateBook("9780000000125"));
   }
 
   @Test
   void addDuplicateBook_isBadRequest() throws Exception {
-    doThrow(new AlreadyExistsException("")).when(libraryService).addBook(generateBook("12"));
+    doThrow(new AlreadyExistsException("")).when(libraryService)
+        .addBook(generateBook("9780000000125"));
     this.mockMvc.perform(post("/api/book").contentType(MediaType.APPLICATION_JSON)
-        .content(mapper.writeValueAsString(generateBook("12")))).andExpect(status().isBadRequest());
+        .content(mapper.writeValueAsString(generateBook("9780000000125"))))
+        .andExpect(status().isBadRequest());
   }
 
   @Test
   void removeNonExistingBook_IsNotFound() throws Exception {
-    doThrow(new BookNotFoundException()).when(libraryService).removeBook("12");
-    this.mockMvc.perform(delete("/api/book/12").contentType(MediaType.APPLICATION_JSON))
+    doThrow(new BookNotFoundException()).when(libraryService).removeBook("9780000000125");
+    this.mockMvc.perform(delete("/api/book/9780000000125").contentType(MediaType.APPLICATION_JSON))
         .andExpect(status().isNotFound());
   }
 
   @Test
   void removeExistingBook_IsOk() throws Exception {
-    this.mockMvc.perform(delete("/api/book/12").contentType(MediaType.APPLICATION_JSON))
+    this.mockMvc.perform(delete("/api/book/9780000000125").contentType(MediaType.APPLICATION_JSON))
         .andExpect(status().isOk());
   }
 
   @Test
   void getBook_forExistingBook_isOk() throws Exception {
-    when(libraryService.findBookByISBN("12")).thenReturn(Optional.of(generateBook("12")));
-    this.mockMvc.perform(get("/api/book/findByISBN/12")).andExpect(status().isOk());
+    when(libraryService.findBookByISBN("9780000000125"))
+        .thenReturn(Optional.of(generateBook("9780000000125")));
+    this.mockMvc.perform(get("/api/book/findByISBN/9780000000125")).andExpect(status().isOk());
   }
 
   @Test
   void getBook_forExistingBook_getsBook() throws Exception {
-    Book mockBook = generateBook("100");
+    Book mockBook = generateBook("9780000001009");
     when(libraryService.findBookByISBN(mockBook.getIsbn())).thenReturn(
         Optional.of(generateBook(mockBook.getIsbn())));
-    this.mockMvc.perform(get("/api/book/findByISBN/100"))
+    this.mockMvc.perform(get("/api/book/findByISBN/9780000001009"))
         .andExpect(jsonPath("isbn").value(mockBook.getIsbn()))
         .andExpect(jsonPath("author").value(mockBook.getAuthor()))
         .andExpect(jsonPath("title").value(mockBook.getTitle()))
@@ -93,10 +138,81 @@ class LibraryControllerTest {
         .andExpect(jsonPath("copiesAvailable").value(mockBook.getCopiesAvailable()));
   }
 
+  @Test
+  void getBook_forExistingBook_hasVersionETag() throws Exception {
+    Book mockBook = generateBook("9780000001009");
+    mockBook.setVersion(3);
+    when(libraryService.findBookByISBN("9780000001009")).thenReturn(Optional.of(mockBook));
+    this.mockMvc.perform(get("/api/book/findByISBN/9780000001009"))
+        .andExpect(status().isOk())
+        .andExpect(header().string(HttpHeaders.ETAG, "\"9780000001009:3\""))
+        .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=0, must-revalidate"));
+  }
+
+  @Test
+  void getBook_withCurrentETag_isNotModifiedWithoutLoadingBook() throws Exception {
+    when(libraryService.findBookVersion("9780000001009")).thenReturn(Optional.of(3));
+    this.mockMvc.perform(get("/api/book/findByISBN/9780000001009")
+            .header(HttpHeaders.IF_NONE_MATCH, "\"9780000001009:3\""))
+        .andExpect(status().isNotModified())
+        .andExpect(header().string(HttpHeaders.ETAG, "\"9780000001009:3\""))
+        .andExpect(content().string(""));
+    verify(libraryService, never()).findBookByISBN("9780000001009");
+  }
+
+  @Test
+  void getBook_withStaleETag_getsBook() throws Exception {
+    Book mockBook = generateBook("9780000001009");
+    mockBook.setVersion(4);
+    when(libraryService.findBookVersion("9780000001009")).thenReturn(Optional.of(4));
+    when(libraryService.findBookByISBN("9780000001009")).thenReturn(Optional.of(mockBook));
+    this.mockMvc.perform(get("/api/book/findByISBN/9780000001009")
+            .header(HttpHeaders.IF_NONE_MATCH, "\"9780000001009:3\""))
+        .andExpect(status().isOk())
+        .andExpect(header().string(HttpHeaders.ETAG, "\"9780000001009:4\""))
+        .andExpect(jsonPath("isbn").value("9780000001009"));
+  }
+
+  @Test
+  void getBook_repeatedLookups_loadAndSerializeOnce() throws Exception {
+    Book mockBook = generateBook("9780000001009");
+    mockBook.setVersion(2);
+    when(libraryService.findBookByISBN("9780000001009")).thenReturn(Optional.of(mockBook));
+    String first = this.mockMvc.perform(get("/api/book/findByISBN/9780000001009"))
+        .andExpect(status().isOk())
+        .andReturn().getResponse().getContentAsString();
+
+    this.mockMvc.perform(get("/api/book/findByISBN/9780000001009"))
+        .andExpect(status().isOk())
+        .andExpect(header().string(HttpHeaders.ETAG, "\"9780000001009:2\""))
+        .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+        .andExpect(content().string(first));
+    verify(libraryService, times(1)).findBookByISBN("9780000001009");
+    assertEquals(mapper.readTree(mapper.writeValueAsString(mockBook)), mapper.readTree(first));
+  }
+
+  @Test
+  void getBook_byAnyFormOfTheIsbn_findsTheNormalizedIsbn() throws Exception {
+    when(libraryService.findBookByISBN("9780000001009"))
+        .thenReturn(Optional.of(generateBook("9780000001009")));
+    this.mockMvc.perform(get("/api/book/findByISBN/978-0-00-000100-9"))
+        .andExpect(status().isOk());
+    this.mockMvc.perform(get("/api/book/findByISBN/0000001007"))
+        .andExpect(jsonPath("isbn").value("9780000001009"));
+  }
+
+  @Test
+  void getBook_withInvalidIsbn_isBadRequest() throws Exception {
+    this.mockMvc.perform(get("/api/book/findByISBN/9780000001000"))
+        .andExpect(status().isBadRequest());
+    verify(libraryService, never()).findBookByISBN(any());
+  }
+
   @Test
   void getBook_forNonExistingBook_isNotFoundStatus() throws Exception {
-    when(libraryService.findBookByISBN("123")).thenReturn(Optional.empty());
-    this.mockMvc.perform(get("/api/book/findByISBN/123")).andExpect(status().isNotFound());
+    when(libraryService.findBookByISBN("9780000001238")).thenReturn(Optional.empty());
+    this.mockMvc.perform(get("/api/book/findByISBN/9780000001238"))
+        .andExpect(status().isNotFound());
   }
 
   @Test
@@ -108,13 +224,34 @@ class LibraryControllerTest {
 
   @Test
   void getBookByAuthor_oneFound_isOk() throws Exception {
-    when(libraryService.findBookByAuthor("AuthorName")).thenReturn(List.of(generateBook("12")));
+    when(libraryService.findBookByAuthor("AuthorName"))
+        .thenReturn(List.of(generateBook("9780000000125")));
     this.mockMvc.perform(get("/api/book/findByAuthor/AuthorName")).andExpect(status().isOk());
   }
 
+  @Test
+  void getBookByAuthor_withCurrentETag_isNotModified() throws Exception {
+    when(libraryService.findBookByAuthor("AuthorName"))
+        .thenReturn(List.of(generateBook("9780000000125")));
+    String eTag = this.mockMvc.perform(get("/api/book/findByAuthor/AuthorName"))
+        .andExpect(status().isOk())
+        .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+    this.mockMvc.perform(get("/api/book/findByAuthor/AuthorName")
+            .header(HttpHeaders.IF_NONE_MATCH, eTag))
+        .andExpect(status().isNotModified());
+
+    Book changed = generateBook("9780000000125");
+    changed.setVersion(1);
+    when(libraryService.findBookByAuthor("AuthorName")).thenReturn(List.of(changed));
+    this.mockMvc.perform(get("/api/book/findByAuthor/AuthorName")
+            .header(HttpHeaders.IF_NONE_MATCH, eTag))
+        .andExpect(status().isOk());
+  }
+
   @Test
   void getBookByAuthor_oneFound_isCorrectBook() throws Exception {
-    Book mockBook = generateBook("100");
+    Book mockBook = generateBook("9780000001009");
     when(libraryService.findBookByAuthor(mockBook.getAuthor())).thenReturn(List.of(mockBook));
     this.mockMvc.perform(get("/api/book/findByAuthor/" + mockBook.getAuthor()))
         .andExpect(jsonPath("$.[0].isbn").value(mockBook.getIsbn()))
@@ -127,10 +264,10 @@ class LibraryControllerTest {
 
   @Test
   void getBookByAuthor_manyFound_areCorrectBooks() throws Exception {
-    Book mockBook1 = generateBookWithSameAuthor("100");
-    Book mockBook2 = generateBookWithSameAuthor("101");
-    Book mockBook3 = generateBookWithSameAuthor("102");
-    Book mockBook4 = generateBookWithSameAuthor("103");
+    Book mockBook1 = generateBookWithSameAuthor("9780000001009");
+    Book mockBook2 = generateBookWithSameAuthor("9780000001016");
+    Book mockBook3 = generateBookWithSameAuthor("9780000001023");
+    Book mockBook4 = generateBookWithSameAuthor("9780000001030");
     when(libraryService.findBookByAuthor(mockBook1.getAuthor())).thenReturn(
         List.of(mockBook1, mockBook2, mockBook3, mockBook4));
     this.mockMvc.perform(get("/api/book/findByAuthor/" + mockBook1.getAuthor()))
@@ -163,24 +300,95 @@ class LibraryControllerTest {
             jsonPath("$.[0].copiesAvailable").value(mockBook4.getCopiesAvailable()));
   }
 
+  @Test
+  void searchByAuthor_pageFound_returnsBooksAndCursor() throws Exception {
+    Book mockBook = generateBookWithSameAuthor("9780000001009");
+    when(libraryService.findBooksByAuthorPrefix("miss", null, 20)).thenReturn(
+        new BookPage(List.of(mockBook), "next"));
+    this.mockMvc.perform(get("/api/book/searchByAuthor").param("prefix", "miss"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("books[0].isbn").value(mockBook.getIsbn()))
+        .andExpect(jsonPath("nextCursor").value("next"));
+  }
+
+  @Test
+  void searchByAuthor_noneFound_isNoContent() throws Exception {
+    when(libraryService.findBooksByAuthorPrefix("nobody", "abc", 5)).thenReturn(
+        new BookPage(List.of(), null));
+    this.mockMvc.perform(get("/api/book/searchByAuthor").param("prefix", "nobody")
+        .param("cursor", "abc").param("limit", "5")).andExpect(status().isNoContent());
+  }
+
+  @Test
+  void searchByAuthor_invalidCursor_isBadRequest() throws Exception {
+    when(libraryService.findBooksByAuthorPrefix("miss", "bad", 20)).thenThrow(
+        new InvalidRequestException("Invalid cursor"));
+    this.mockMvc.perform(get("/api/book/searchByAuthor").param("prefix", "miss")
+        .param("cursor", "bad")).andExpect(status().isBadRequest());
+  }
+
+  @Test
+  void searchByAuthor_internalIllegalArgument_isNotBadRequest() {
+    when(libraryService.findBooksByAuthorPrefix("miss", null, 20)).thenThrow(
+        new IllegalArgumentException("Not a packed isbn: 1"));
+    assertThrows(ServletException.class, () -> this.mockMvc.perform(
+        get("/api/book/searchByAuthor").param("prefix", "miss")));
+  }
+
   @Test
   void borrowBook_notFound_isNotFoundStatus() throws Exception {
-    Book mockBook = generateBook("123");
-    when(libraryService.borrowBook("123")).thenReturn(Optional.empty());
+    Book mockBook = generateBook("9780000001238");
+    when(libraryService.borrowBook("9780000001238")).thenReturn(Optional.empty());
     this.mockMvc.perform(post("/api/book/borrow/" + mockBook.getIsbn()))
         .andExpect(status().isNotFound());
   }
 
+  @Test
+  void borrowBook_noCopiesLeft_isConflict() throws Exception {
+    when(libraryService.borrowBook("9780000001238"))
+        .thenThrow(new NoBookCopiesRemainingToBorrowException());
+    this.mockMvc.perform(post("/api/book/borrow/9780000001238")).andExpect(status().isConflict());
+  }
+
+  @Test
+  void borrowBook_whileReservationsWait_isConflict() throws Exception {
+    when(libraryService.borrowBook("9780000001252"))
+        .thenThrow(new NoBookCopiesRemainingToBorrowException());
+    Reservation reservation = reservationQueue.reserve("9780000001252");
+    try {
+      this.mockMvc.perform(post("/api/book/borrow/9780000001252"))
+          .andExpect(status().isConflict());
+      // Only the reservation tried to borrow
+      verify(libraryService, times(1)).borrowBook("9780000001252");
+    } finally {
+      reservationQueue.cancel(reservation);
+    }
+  }
+
+  @Test
+  void reserveBook_withACopyFree_returnsTheBorrowedBook() throws Exception {
+    Book borrowed = generateBook("9780000001245");
+    borrowed.setVersion(2);
+    when(libraryService.borrowBook("9780000001245")).thenReturn(Optional.of(borrowed));
+    MvcResult result = this.mockMvc.perform(post("/api/book/reserve/9780000001245"))
+        .andExpect(request().asyncStarted())
+        .andReturn();
+    this.mockMvc.perform(asyncDispatch(result))
+        .andExpect(status().isOk())
+        .andExpect(header().string(HttpHeaders.ETAG, "\"9780000001245:2\""))
+        .andExpect(jsonPath("isbn").value("9780000001245"));
+  }
+
   @Test
   void borrowBook_found_isOk() throws Exception {
-    Book mockBook = generateBook("123");
+    Book mockBook = generateBook("9780000001238");
     when(libraryService.borrowBook(mockBook.getIsbn())).thenReturn(Optional.of(mockBook));
     this.mockMvc.perform(post("/api/book/borrow/" + mockBook.getIsbn())).andExpect(status().isOk());
   }
 
   @Test
   void borrowBook_found_returnsBook() throws Exception {
-    Book mockBook = generateBook("100");
+    Book mockBook = generateBook("9780000001009");
 
     when(libraryService.borrowBook(mockBook.getIsbn())).thenReturn(Optional.of(mockBook));
     this.mockMvc.perform(post("/api/book/borrow/" + mockBook.getIsbn()))
@@ -192,9 +400,60 @@ class LibraryControllerTest {
 
   }
 
+  @Test
+  void borrowBook_withIfMatch_borrowsAtThatVersion() throws Exception {
+    Book borrowed = generateBook("9780000001009");
+    borrowed.setVersion(4);
+    when(libraryService.borrowBook("9780000001009", 3)).thenReturn(Optional.of(borrowed));
+    this.mockMvc.perform(post("/api/book/borrow/9780000001009")
+            .header(HttpHeaders.IF_MATCH, "\"9780000001009:3\""))
+        .andExpect(status().isOk())
+        .andExpect(header().string(HttpHeaders.ETAG, "\"9780000001009:4\""));
+  }
+
+  @Test
+  void borrowBook_withStaleIfMatch_isPreconditionFailed() throws Exception {
+    when(libraryService.borrowBook("9780000001009", 3))
+        .thenThrow(new BookVersionConflictException());
+    this.mockMvc.perform(post("/api/book/borrow/9780000001009")
+            .header(HttpHeaders.IF_MATCH, "\"9780000001009:3\""))
+        .andExpect(status().isPreconditionFailed());
+  }
+
+  @Test
+  void borrowBook_withIfMatchOfAnotherBook_isPreconditionFailed() throws Exception {
+    this.mockMvc.perform(post("/api/book/borrow/9780000001009")
+            .header(HttpHeaders.IF_MATCH, "\"9780000001016:3\""))
+        .andExpect(status().isPreconditionFailed());
+    verify(libraryService, never()).borrowBook("9780000001009");
+  }
+
+  @Test
+  void removeBook_withIfMatch_removesAtThatVersion() throws Exception {
+    this.mockMvc.perform(delete("/api/book/9780000001009")
+            .header(HttpHeaders.IF_MATCH, "\"9780000001009:2\""))
+        .andExpect(status().isOk());
+    verify(libraryService).removeBook("9780000001009", 2);
+  }
+
+  @Test
+  void returnBook_withStaleIfMatch_isPreconditionFailed() throws Exception {
+    doThrow(new BookVersionConflictException()).when(libraryService).returnBook("9780000001009", 1);
+    this.mockMvc.perform(post("/api/book/return/9780000001009")
+            .header(HttpHeaders.IF_MATCH, "\"9780000001009:1\""))
+        .andExpect(status().isPreconditionFailed());
+  }
+
+  @Test
+  void concurrentUpdate_isConflict() throws Exception {
+    when(libraryService.borrowBook("9780000001009")).thenThrow(
+        new ObjectOptimisticLockingFailureException(Book.class, "9780000001009"));
+    this.mockMvc.perform(post("/api/book/borrow/9780000001009")).andExpect(status().isConflict());
+  }
+
   @Test
   void returnBook_notFound_isNotFoundStatus() throws Exception {
-    Book mockBook = generateBook("100");
+    Book mockBook = generateBook("9780000001009");
     doThrow(new BookNotFoundException()).when(libraryService).returnBook(mockBook.getIsbn());
 
     this.mockMvc.perform(post("/api/book/return/" + mockBook.getIsbn()))
@@ -214,8 +473,36 @@ class LibraryControllerTest {
 
   @Test
   void returnExistingBook_isOk() throws Exception {
-    this.mockMvc.perform(post("/api/book/return/1")).andExpect(status().isOk());
+    this.mockMvc.perform(post("/api/book/return/9780000000019")).andExpect(status().isOk());
+
+  }
 
+  @Test
+  void getBooksByIsbn_returnsEveryIsbnInRequestOrder() throws Exception {
+    Book book = generateBook("9780000000217");
+    when(libraryService.findBooksByISBN(
+        new LinkedHashSet<>(List.of("9780000000224", "9780000000217"))))
+        .thenReturn(Map.of("9780000000217", book));
+    this.mockMvc.perform(get("/api/book/findByISBNs")
+            .param("isbn", "9780000000224", "978-0-00-000021-7", "9780000000224", "bad"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.found").value(1))
+        .andExpect(jsonPath("$.missing").value(3))
+        .andExpect(jsonPath("$.results[0].isbn").value("9780000000224"))
+        .andExpect(jsonPath("$.results[0].status").value("NOT_FOUND"))
+        .andExpect(jsonPath("$.results[1].isbn").value("978-0-00-000021-7"))
+        .andExpect(jsonPath("$.results[1].status").value("FOUND"))
+        .andExpect(jsonPath("$.results[1].book.title").value(book.getTitle()))
+        .andExpect(jsonPath("$.results[2].isbn").value("9780000000224"))
+        .andExpect(jsonPath("$.results[3].status").value("NOT_FOUND"));
+  }
+
+  @Test
+  void getBooksByIsbn_tooManyIsbns_isBadRequest() throws Exception {
+    String[] isbns = IntStream.range(0, 201).mapToObj(String::valueOf).toArray(String[]::new);
+    this.mockMvc.perform(get("/api/book/findByISBNs").param("isbn", isbns))
+        .andExpect(status().isBadRequest());
+    verify(libraryService, never()).findBooksByISBN(any());
   }
 
   static Book generateBook(String id) {
@@ -0,0 +1,39 @@
+package com.techdelity.identitye2e.demo.library.controller;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@AutoConfigureObservability
+class MetricsEndpointTest {
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @Test
+  void prometheusEndpoint_exposesServiceTimersAndCacheMetrics() throws Exception {
+    this.mockMvc.perform(get("/api/book/findByISBN/9780001100992"))
+        .andExpect(status().isNotFound());
+
+    this.mockMvc.perform(get("/actuator/prometheus"))
+        .andExpect(status().isOk())
+        .andExpect(content().string(containsString(
+            "library_service_seconds_bucket{application=\"library\",class=\"com.techdelity.identitye2e.demo.library.service.SimpleLibraryService\"")))
+        .andExpect(content().string(containsString("method=\"findBookByISBN\"")))
+        .andExpect(content().string(containsString("library_borrow_rejected_total")))
+        .andExpect(content().string(containsString("cache_gets_total{application=\"library\",cache=\"books\"")))
+        .andExpect(content().string(containsString("hikaricp_connections")))
+        .andExpect(content().string(containsString("hibernate_statements_total")))
+        .andExpect(content().string(containsString("http_server_requests_seconds_bucket")));
+  }
+}
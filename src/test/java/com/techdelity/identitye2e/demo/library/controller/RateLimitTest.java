@@ -0,0 +1,54 @@
+package com.techdelity.identitye2e.demo.library.controller;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+/**
+ * Clients are told apart by X-Client-Id, as behind a proxy that sets it
+ */
+@SpringBootTest(properties = {
+    "library.rate-limit.client-header=X-Client-Id",
+    "library.rate-limit.endpoints.find-by-author.requests-per-second=0.01",
+    "library.rate-limit.endpoints.find-by-author.burst=2",
+    "library.rate-limit.clients.trusted.requests-per-second=0.01",
+    "library.rate-limit.clients.trusted.burst=4"})
+@AutoConfigureMockMvc
+class RateLimitTest {
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @Test
+  void clientOverItsLimit_isTooManyRequestsWithRetryAfter() throws Exception {
+    for (int i = 0; i < 2; i++) {
+      mockMvc.perform(get("/api/book/findByAuthor/Someone").header("X-Client-Id", "client-a"))
+          .andExpect(status().isNoContent());
+    }
+    mockMvc.perform(get("/api/book/findByAuthor/Someone").header("X-Client-Id", "client-a"))
+        .andExpect(status().isTooManyRequests())
+        .andExpect(header().string("Retry-After", "100"));
+
+    // Other clients and endpoints have their own buckets
+    mockMvc.perform(get("/api/book/findByAuthor/Someone").header("X-Client-Id", "client-b"))
+        .andExpect(status().isNoContent());
+    mockMvc.perform(get("/api/book/findByISBN/9780001200999").header("X-Client-Id", "client-a"))
+        .andExpect(status().isNotFound());
+  }
+
+  @Test
+  void clientLimit_overridesTheEndpointLimit() throws Exception {
+    for (int i = 0; i < 4; i++) {
+      mockMvc.perform(get("/api/book/findByAuthor/Someone").header("X-Client-Id", "trusted"))
+          .andExpect(status().isNoContent());
+    }
+    mockMvc.perform(get("/api/book/findByAuthor/Someone").header("X-Client-Id", "trusted"))
+        .andExpect(status().isTooManyRequests());
+  }
+}
@@ -0,0 +1,174 @@
+package com.techdelity.identitye2e.demo.library.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.techdelity.identitye2e.demo.library.model.Book;
+import com.techdelity.identitye2e.demo.library.service.BookChangedEvent;
+import com.techdelity.identitye2e.demo.library.service.BookChangedEvent.Type;
+import com.techdelity.identitye2e.demo.library.service.ReactiveLibraryService;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.scheduler.Schedulers;
+
+@SpringBootTest
+@AutoConfigureWebTestClient
+@ActiveProfiles("reactive")
+class ReactiveLibraryControllerTest {
+
+  @Autowired
+  private WebTestClient webTestClient;
+
+  @Autowired
+  private ChangedBooks changedBooks;
+
+  @Autowired
+  private ReactiveLibraryService libraryService;
+
+  @Test
+  void addNewBook_isCreated_andCanBeFound() {
+    addBook(new Book("9780001000018", "Title", "Reactive Author", 2001, 1))
+        .expectStatus().isCreated();
+
+    webTestClient.get().uri("/api/book/findByISBN/9780001000018").exchange()
+        .expectStatus().isOk()
+        .expectBody()
+        .jsonPath("isbn").isEqualTo("9780001000018")
+        .jsonPath("title").isEqualTo("Title")
+        .jsonPath("copiesAvailable").isEqualTo(1);
+  }
+
+  @Test
+  void addDuplicateBook_isBadRequest() {
+    addBook(new Book("9780001000025", "Title", "Author", 2001, 1)).expectStatus().isCreated();
+    addBook(new Book("9780001000025", "Title", "Author", 2001, 1)).expectStatus().isBadRequest();
+  }
+
+  @Test
+  void getBook_forNonExistingBook_isNotFound() {
+    webTestClient.get().uri("/api/book/findByISBN/9780001000995").exchange()
+        .expectStatus().isNotFound();
+  }
+
+  @Test
+  void getBookByAuthor_streamsAllBooks() {
+    addBook(new Book("9780001000032", "Title 3", "Streamed Author", 2001, 1));
+    addBook(new Book("9780001000049", "Title 4", "Streamed Author", 2001, 1));
+
+    webTestClient.get().uri("/api/book/findByAuthor/Streamed Author").exchange()
+        .expectStatus().isOk()
+        .expectBodyList(Book.class).hasSize(2);
+  }
+
+  @Test
+  void getBookByAuthor_withNoBooks_isNoContent() {
+    webTestClient.get().uri("/api/book/findByAuthor/Unknown Author").exchange()
+        .expectStatus().isNoContent();
+  }
+
+  @Test
+  void borrowBook_decrementsCopies_untilNoneRemain() {
+    addBook(new Book("9780001000056", "Title", "Author", 2001, 1));
+
+    webTestClient.post().uri("/api/book/borrow/9780001000056").exchange()
+        .expectStatus().isOk()
+        .expectBody().jsonPath("copiesAvailable").isEqualTo(0);
+    webTestClient.post().uri("/api/book/borrow/9780001000056").exchange()
+        .expectStatus().isEqualTo(HttpStatus.CONFLICT);
+  }
+
+  @Test
+  void borrowBook_notFound_isNotFound() {
+    webTestClient.post().uri("/api/book/borrow/9780001000995").exchange()
+        .expectStatus().isNotFound();
+  }
+
+  @Test
+  void returnBook_incrementsCopies() {
+    addBook(new Book("9780001000063", "Title", "Author", 2001, 0));
+
+    webTestClient.post().uri("/api/book/return/9780001000063").exchange().expectStatus().isOk();
+    webTestClient.get().uri("/api/book/findByISBN/9780001000063").exchange()
+        .expectBody().jsonPath("copiesAvailable").isEqualTo(1);
+  }
+
+  @Test
+  void borrowAndReturn_publishTheVersionTheyLeftTheBookAt() {
+    addBook(new Book("9780001000087", "Title", "Author", 2001, 1));
+
+    webTestClient.post().uri("/api/book/borrow/9780001000087").exchange().expectStatus().isOk();
+    webTestClient.post().uri("/api/book/return/9780001000087").exchange().expectStatus().isOk();
+
+    assertEquals(List.of(Type.ADDED + " 0", Type.BORROWED + " 1", Type.RETURNED + " 2"),
+        changedBooks.events.stream()
+            .filter(event -> event.isbn().equals("9780001000087"))
+            .map(event -> event.type() + " " + event.version())
+            .toList());
+  }
+
+  @Test
+  void changes_publishTheirEventsOffTheEventLoop() {
+    Book book = new Book("9780001000094", "Title", "Author", 2001, 1);
+
+    // Subscribed on a non-blocking thread, as a server event loop would
+    libraryService.addBook(book).subscribeOn(Schedulers.parallel()).block();
+    libraryService.borrowBook("9780001000094").subscribeOn(Schedulers.parallel()).block();
+    libraryService.returnBook("9780001000094").subscribeOn(Schedulers.parallel()).block();
+    libraryService.removeBook("9780001000094").subscribeOn(Schedulers.parallel()).block();
+
+    assertEquals(List.of(false, false, false, false),
+        changedBooks.onEventLoop.stream()
+            .filter(published -> published.event().isbn().equals("9780001000094"))
+            .map(Published::onEventLoop)
+            .toList());
+  }
+
+  @Test
+  void returnBook_notFound_isNotFound() {
+    webTestClient.post().uri("/api/book/return/9780001000995").exchange()
+        .expectStatus().isNotFound();
+  }
+
+  @Test
+  void removeBook_existing_isOk_missing_isNotFound() {
+    addBook(new Book("9780001000070", "Title", "Author", 2001, 1));
+
+    webTestClient.delete().uri("/api/book/9780001000070").exchange().expectStatus().isOk();
+    webTestClient.delete().uri("/api/book/9780001000070").exchange().expectStatus().isNotFound();
+  }
+
+  private WebTestClient.ResponseSpec addBook(Book book) {
+    return webTestClient.post().uri("/api/book").contentType(MediaType.APPLICATION_JSON)
+        .bodyValue(book).exchange();
+  }
+
+  /**
+   * Collects the change events, which are published on other threads than the test's, and whether
+   * each was published on a thread that must not block
+   */
+  @TestConfiguration
+  static class ChangedBooks {
+
+    final List<BookChangedEvent> events = new CopyOnWriteArrayList<>();
+    final List<Published> onEventLoop = new CopyOnWriteArrayList<>();
+
+    @EventListener
+    void onBookChanged(BookChangedEvent event) {
+      events.add(event);
+      onEventLoop.add(new Published(event, Schedulers.isInNonBlockingThread()));
+    }
+  }
+
+  record Published(BookChangedEvent event, boolean onEventLoop) {
+
+  }
+}
@@ -0,0 +1,104 @@
+package com.techdelity.identitye2e.demo.library.feed;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.techdelity.identitye2e.demo.library.model.ChangeBatch;
+import com.techdelity.identitye2e.demo.library.model.ChangeBatch.Change;
+import com.techdelity.identitye2e.demo.library.service.BookChangedEvent;
+import com.techdelity.identitye2e.demo.library.service.BookChangedEvent.Type;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.Test;
+
+class ChangeFeedTest {
+
+  private final ChangeFeed changeFeed = new ChangeFeed(new SimpleMeterRegistry(), Runnable::run, 4);
+
+  @Test
+  void read_returnsChangesAfterOffsetInOrder() {
+    long start = changeFeed.lastOffset();
+    changeFeed.onBookChanged(BookChangedEvent.borrowed("isbn-1", 1, 2));
+    changeFeed.onBookChanged(BookChangedEvent.returned("isbn-2", 1, 3));
+    changeFeed.onBookChanged(BookChangedEvent.removed("isbn-3"));
+
+    ChangeBatch first = changeFeed.read(start, 2);
+    assertEquals(List.of(Type.BORROWED, Type.RETURNED),
+        first.changes().stream().map(Change::type).toList());
+    assertEquals(List.of(2, 3), first.changes().stream().map(Change::copiesAvailable).toList());
+    assertEquals(1, first.changes().get(0).version());
+    assertEquals(start + 2, first.nextOffset());
+    assertFalse(first.truncated());
+
+    ChangeBatch rest = changeFeed.read(first.nextOffset(), 10);
+    assertEquals(List.of("isbn-3"), rest.changes().stream().map(Change::isbn).toList());
+    assertNull(rest.changes().get(0).version());
+
+    ChangeBatch none = changeFeed.read(rest.nextOffset(), 10);
+    assertTrue(none.changes().isEmpty());
+    assertEquals(rest.nextOffset(), none.nextOffset());
+  }
+
+  @Test
+  void read_reportsOverwrittenChanges() {
+    long start = changeFeed.lastOffset();
+    for (int i = 1; i <= 6; i++) {
+      changeFeed.onBookChanged(BookChangedEvent.borrowed("isbn-" + i, 1, 0));
+    }
+
+    ChangeBatch batch = changeFeed.read(start, 10);
+
+    assertTrue(batch.truncated());
+    assertEquals(List.of("isbn-3", "isbn-4", "isbn-5", "isbn-6"),
+        batch.changes().stream().map(Change::isbn).toList());
+    assertFalse(changeFeed.read(batch.nextOffset(), 10).truncated());
+  }
+
+  @Test
+  void read_reportsOffsetFromBeforeRestart() {
+    ChangeBatch batch = changeFeed.read(changeFeed.lastOffset() + 100, 10);
+
+    assertTrue(batch.truncated());
+    assertEquals(changeFeed.lastOffset(), batch.nextOffset());
+  }
+
+  @Test
+  void read_fromOldestIsNeverTruncated() {
+    changeFeed.onBookChanged(BookChangedEvent.borrowed("isbn-1", 1, 2));
+
+    ChangeBatch batch = changeFeed.read(ChangeFeed.OLDEST, 10);
+
+    assertFalse(batch.truncated());
+    assertEquals(1, batch.changes().size());
+  }
+
+  @Test
+  void poll_waitsForNextChange() {
+    long start = changeFeed.lastOffset();
+    CompletableFuture<ChangeBatch> poll = changeFeed.poll(start, 10);
+    assertFalse(poll.isDone());
+
+    changeFeed.onBookChanged(BookChangedEvent.borrowed("isbn-1", 1, 2));
+
+    ChangeBatch batch = poll.join();
+    assertEquals(List.of("isbn-1"), batch.changes().stream().map(Change::isbn).toList());
+    assertEquals(start + 1, batch.nextOffset());
+  }
+
+  @Test
+  void poll_cancelledWhileWaiting_isForgotten() {
+    CompletableFuture<ChangeBatch> first = changeFeed.poll(changeFeed.lastOffset(), 10);
+    CompletableFuture<ChangeBatch> second = changeFeed.poll(changeFeed.lastOffset(), 10);
+    assertEquals(2, changeFeed.waiting());
+
+    first.cancel(false);
+    assertEquals(1, changeFeed.waiting());
+
+    changeFeed.onBookChanged(BookChangedEvent.removed("isbn-1"));
+    assertEquals(0, changeFeed.waiting());
+    assertEquals(1, second.join().changes().size());
+  }
+}
@@ -0,0 +1,44 @@
+package com.techdelity.identitye2e.demo.library.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class IsbnTest {
+
+  @Test
+  void everyFormOfAnIsbn_normalizesToTheSameIsbn13() {
+    assertEquals("9780321545732", Isbn.normalize("9780321545732"));
+    assertEquals("9780321545732", Isbn.normalize("978-0-321-54573-2"));
+    assertEquals("9780321545732", Isbn.normalize("978 0 321 54573 2"));
+    assertEquals("9780321545732", Isbn.normalize("0321545737"));
+    assertEquals("9780321545732", Isbn.normalize("0-321-54573-7"));
+  }
+
+  @Test
+  void isbn10_mayEndInX() {
+    assertEquals("9780804429573", Isbn.normalize("080442957X"));
+    assertEquals("9780804429573", Isbn.normalize("0-8044-2957-x"));
+  }
+
+  @Test
+  void packedIsbns_roundTrip_andSortAsTheirDigits() {
+    long packed = Isbn.pack("978-0-321-54573-2");
+
+    assertEquals(9780321545732L, packed);
+    assertEquals("9780321545732", Isbn.unpack(packed));
+    assertTrue(Isbn.pack("9780321545732") < Isbn.pack("9791032305690"));
+  }
+
+  @Test
+  void invalidIsbns_areRejected() {
+    for (String invalid : new String[]{"", "978-0-321-54573-0", "0321545730", "97803215457321",
+        "978032154573", "-9780321545732", "978--0321545732", "9780321545732-", "0321545X37",
+        "9770321545733", "isbn-1"}) {
+      assertThrows(IllegalArgumentException.class, () -> Isbn.pack(invalid), invalid);
+    }
+    assertThrows(IllegalArgumentException.class, () -> Isbn.pack(null));
+  }
+}
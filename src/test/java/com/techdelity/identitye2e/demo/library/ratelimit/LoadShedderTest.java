@@ -0,0 +1,73 @@
+package com.techdelity.identitye2e.demo.library.ratelimit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+class LoadShedderTest {
+
+  private static final long INTERVAL = Duration.ofMillis(100).toNanos();
+  private static final int MIN_SAMPLES = 3;
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final LoadShedder loadShedder = new LoadShedder(meterRegistry, true,
+      Duration.ofMillis(500), Duration.ofMillis(50), Duration.ofMillis(100), MIN_SAMPLES);
+  private long now = System.nanoTime();
+
+  @Test
+  void slowRequests_increaseTheShedFractionUntilTheyRecover() {
+    for (int i = 0; i < 3; i++) {
+      record(MIN_SAMPLES, Duration.ofSeconds(2));
+      nextInterval();
+    }
+    assertEquals(0.3, loadShedder.shedFraction(), 1e-9);
+
+    record(MIN_SAMPLES, Duration.ofMillis(10));
+    nextInterval();
+    assertEquals(0.25, loadShedder.shedFraction(), 1e-9);
+  }
+
+  @Test
+  void slowConnectionPool_shedsRequests() {
+    Timer acquire = meterRegistry.timer("hikaricp.connections.acquire", "pool", "test");
+    acquire.record(Duration.ofMillis(300));
+    acquire.record(Duration.ofMillis(100));
+    acquire.record(Duration.ofMillis(100));
+    nextInterval();
+
+    assertEquals(0.1, loadShedder.shedFraction(), 1e-9);
+  }
+
+  @Test
+  void fastRequests_areNeverShed() {
+    for (int i = 0; i < 10; i++) {
+      record(MIN_SAMPLES, Duration.ofMillis(20));
+      assertFalse(nextInterval());
+    }
+    assertEquals(0, loadShedder.shedFraction());
+  }
+
+  @Test
+  void fewSlowRequests_areNotEnoughToShed() {
+    for (int i = 0; i < 10; i++) {
+      record(MIN_SAMPLES - 1, Duration.ofSeconds(5));
+      assertFalse(nextInterval());
+    }
+    assertEquals(0, loadShedder.shedFraction());
+  }
+
+  private void record(int requests, Duration latency) {
+    for (int i = 0; i < requests; i++) {
+      loadShedder.recordLatency(latency.toNanos());
+    }
+  }
+
+  private boolean nextInterval() {
+    now += INTERVAL;
+    return loadShedder.shouldShed(now);
+  }
+}
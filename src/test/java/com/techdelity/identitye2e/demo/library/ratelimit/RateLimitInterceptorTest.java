@@ -0,0 +1,92 @@
+package com.techdelity.identitye2e.demo.library.ratelimit;
+
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.techdelity.identitye2e.demo.library.config.RateLimitProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.method.HandlerMethod;
+
+class RateLimitInterceptorTest {
+
+  private final RateLimiter rateLimiter = mock(RateLimiter.class);
+  private final LoadShedder loadShedder = mock(LoadShedder.class);
+  private final RateLimitInterceptor interceptor = interceptor(null);
+
+  @Test
+  void lookup_isRecordedAsLatency() throws Exception {
+    handle("lookup");
+
+    verify(loadShedder).recordLatency(anyLong());
+  }
+
+  @Test
+  void bulkImport_isLeftOutOfTheLatency() throws Exception {
+    handle("bulkImport");
+
+    verify(loadShedder, never()).recordLatency(anyLong());
+  }
+
+  @Test
+  void clientHeader_isIgnoredUnlessConfigured() throws Exception {
+    // A client making up a new key for each request still shares the bucket of its address
+    handle(interceptor, "lookup", "made-up-1");
+    handle(interceptor, "lookup", "made-up-2");
+
+    verify(rateLimiter, times(2)).tryAcquire("lookup", "10.0.0.1");
+  }
+
+  @Test
+  void clientHeader_setByATrustedProxy_isTheClientKey() throws Exception {
+    handle(interceptor("X-Client-Id"), "lookup", "client-a");
+
+    verify(rateLimiter).tryAcquire("lookup", "client-a");
+  }
+
+  private void handle(String method) throws Exception {
+    handle(interceptor, method, null);
+  }
+
+  private void handle(RateLimitInterceptor interceptor, String method, String clientId)
+      throws Exception {
+    when(rateLimiter.tryAcquire(anyString(), anyString())).thenReturn(Duration.ZERO);
+    HandlerMethod handler = new HandlerMethod(new Endpoints(),
+        Endpoints.class.getMethod(method));
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    request.setRemoteAddr("10.0.0.1");
+    if (clientId != null) {
+      request.addHeader("X-Client-Id", clientId);
+    }
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    interceptor.preHandle(request, response, handler);
+    interceptor.afterCompletion(request, response, handler, null);
+  }
+
+  private RateLimitInterceptor interceptor(String clientHeader) {
+    return new RateLimitInterceptor(rateLimiter, loadShedder, new RateLimitProperties(true,
+        clientHeader, 10, new RateLimitProperties.Limit(100, 200), Map.of(), Map.of()),
+        new SimpleMeterRegistry());
+  }
+
+  static class Endpoints {
+
+    @RateLimited("lookup")
+    public void lookup() {
+    }
+
+    @RateLimited(value = "import", latencySignal = false)
+    public void bulkImport() {
+    }
+  }
+}
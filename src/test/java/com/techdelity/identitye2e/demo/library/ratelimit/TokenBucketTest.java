@@ -0,0 +1,65 @@
+package com.techdelity.identitye2e.demo.library.ratelimit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class TokenBucketTest {
+
+  private static final long SECOND = 1_000_000_000L;
+
+  @Test
+  void allowsTheBurstThenTheRate() {
+    TokenBucket bucket = new TokenBucket(2, 3);
+    long now = 10 * SECOND;
+
+    for (int i = 0; i < 3; i++) {
+      assertEquals(0, bucket.tryAcquire(now));
+    }
+    assertEquals(SECOND / 2, bucket.tryAcquire(now));
+    assertEquals(0, bucket.tryAcquire(now + SECOND / 2));
+    assertTrue(bucket.tryAcquire(now + SECOND / 2) > 0);
+  }
+
+  @Test
+  void refillsToTheBurstAfterAQuietPeriod() {
+    TokenBucket bucket = new TokenBucket(10, 5);
+    long now = 10 * SECOND;
+    for (int i = 0; i < 5; i++) {
+      bucket.tryAcquire(now);
+    }
+
+    long later = now + 60 * SECOND;
+    for (int i = 0; i < 5; i++) {
+      assertEquals(0, bucket.tryAcquire(later));
+    }
+    assertTrue(bucket.tryAcquire(later) > 0);
+  }
+
+  @Test
+  void concurrentRequests_neverExceedTheBurst() throws Exception {
+    TokenBucket bucket = new TokenBucket(0.001, 100);
+    long now = System.nanoTime();
+    AtomicInteger allowed = new AtomicInteger();
+
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    for (int t = 0; t < 8; t++) {
+      executor.submit(() -> {
+        for (int i = 0; i < 100; i++) {
+          if (bucket.tryAcquire(now) == 0) {
+            allowed.incrementAndGet();
+          }
+        }
+      });
+    }
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+    assertEquals(100, allowed.get());
+  }
+}
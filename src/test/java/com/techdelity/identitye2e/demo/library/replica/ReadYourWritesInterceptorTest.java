@@ -0,0 +1,76 @@
+package com.techdelity.identitye2e.demo.library.replica;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import jakarta.servlet.http.Cookie;
+import java.io.IOException;
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/**
+ * Two nodes reading from one replica, with a client whose borrow went to the first node
+ */
+class ReadYourWritesInterceptorTest {
+
+  private final ReplicaLagMonitor lagMonitor = mock(ReplicaLagMonitor.class);
+  private final ReadYourWritesInterceptor first = node();
+  private final ReadYourWritesInterceptor second = node();
+
+  @Test
+  void readOnAnotherNode_readsThePrimaryUntilTheReplicaHasTheWrite() throws IOException {
+    Cookie lastWrite = write(first);
+
+    when(lagMonitor.hasReplicated(anyLong())).thenReturn(false);
+    assertTrue(readIsPinned(second, lastWrite));
+
+    when(lagMonitor.hasReplicated(anyLong())).thenReturn(true);
+    assertFalse(readIsPinned(second, lastWrite));
+  }
+
+  @Test
+  void readWithoutAWrite_mayReadTheReplica() {
+    when(lagMonitor.hasReplicated(anyLong())).thenReturn(false);
+
+    assertFalse(readIsPinned(second, null));
+  }
+
+  private ReadYourWritesInterceptor node() {
+    return new ReadYourWritesInterceptor(lagMonitor, Duration.ofSeconds(1),
+        Duration.ofMillis(100));
+  }
+
+  private static Cookie write(ReadYourWritesInterceptor node) throws IOException {
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    ServletServerHttpResponse serverResponse = new ServletServerHttpResponse(response);
+    node.beforeBodyWrite("Book borrowed", null, null, null,
+        new ServletServerHttpRequest(new MockHttpServletRequest("POST", "/api/book/borrow/1")),
+        serverResponse);
+    serverResponse.flush();
+    assertNotNull(response.getHeader(HttpHeaders.SET_COOKIE));
+    return response.getCookie(ReadYourWritesInterceptor.LAST_WRITE_COOKIE);
+  }
+
+  private static boolean readIsPinned(ReadYourWritesInterceptor node, Cookie lastWrite) {
+    MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/book/findByISBN/1");
+    if (lastWrite != null) {
+      request.setCookies(lastWrite);
+    }
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    node.preHandle(request, response, null);
+    try {
+      return ReplicaReads.isPinnedToPrimary();
+    } finally {
+      node.afterCompletion(request, response, null, null);
+    }
+  }
+}
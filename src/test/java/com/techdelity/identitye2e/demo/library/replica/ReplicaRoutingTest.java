@@ -0,0 +1,105 @@
+package com.techdelity.identitye2e.demo.library.replica;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.techdelity.identitye2e.demo.library.model.Book;
+import com.techdelity.identitye2e.demo.library.service.LibraryService;
+import jakarta.servlet.http.Cookie;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+/**
+ * Runs against two H2 databases, replicated only when a test catches the replica up
+ */
+@SpringBootTest(properties = {
+    "spring.jpa.open-in-view=false",
+    "library.datasource.replica.url=jdbc:h2:mem:replica-routing-test;DB_CLOSE_DELAY=-1",
+    "library.datasource.replica.simulated-lag=1h",
+    "library.datasource.replica.heartbeat-interval=1h",
+    "library.datasource.replica.max-lag=1s"})
+@AutoConfigureMockMvc
+class ReplicaRoutingTest {
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @Autowired
+  private LibraryService libraryService;
+
+  @Autowired
+  private ReplicaLagMonitor lagMonitor;
+
+  @Autowired
+  private SimulatedReplication replication;
+
+  /**
+   * Replicate everything, then a heartbeat, so the replica is up to date and known to be
+   */
+  @BeforeEach
+  void catchUp() {
+    replication.replicate();
+    lagMonitor.beat();
+    replication.replicate();
+    lagMonitor.beat();
+  }
+
+  @Test
+  void findBook_replicaWithinLag_readsReplica() {
+    libraryService.addBook(new Book("9780025000018", "Title", "Author", 2001, 1));
+
+    assertTrue(lagMonitor.isWithinMaxLag());
+    assertFalse(libraryService.findBookByISBN("9780025000018").isPresent());
+
+    catchUp();
+    assertTrue(libraryService.findBookByISBN("9780025000018").isPresent());
+  }
+
+  @Test
+  void findBook_replicaLagging_readsPrimary() throws InterruptedException {
+    libraryService.addBook(new Book("9780025000025", "Title", "Author", 2001, 1));
+
+    // Heartbeats have stopped reaching the replica
+    Thread.sleep(1100);
+    lagMonitor.beat();
+
+    assertFalse(lagMonitor.isWithinMaxLag());
+    assertTrue(libraryService.findBookByISBN("9780025000025").isPresent());
+  }
+
+  @Test
+  void findBook_afterBorrow_clientReadsItsOwnWrite() throws Exception {
+    libraryService.addBook(new Book("9780025000032", "Title", "Author", 2001, 2));
+    catchUp();
+
+    Cookie lastWrite = mockMvc.perform(post("/api/book/borrow/9780025000032"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.copiesAvailable").value(1))
+        .andReturn().getResponse().getCookie(ReadYourWritesInterceptor.LAST_WRITE_COOKIE);
+
+    // Another client may read the replica, which hasn't seen the borrow yet
+    mockMvc.perform(get("/api/book/findByISBN/9780025000032"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.copiesAvailable").value(2));
+    mockMvc.perform(get("/api/book/findByISBN/9780025000032").cookie(lastWrite))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.copiesAvailable").value(1));
+
+    // Once the replica has the borrow, everyone sees it
+    catchUp();
+    mockMvc.perform(get("/api/book/findByISBN/9780025000032"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.copiesAvailable").value(1));
+    assertEquals(1, libraryService.findBookByISBN("9780025000032").orElseThrow()
+        .getCopiesAvailable());
+  }
+}
@@ -0,0 +1,121 @@
+package com.techdelity.identitye2e.demo.library.reservation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.when;
+
+import com.techdelity.identitye2e.demo.library.cache.BookInvalidation;
+import com.techdelity.identitye2e.demo.library.cache.LocalInvalidationTransport;
+import com.techdelity.identitye2e.demo.library.exception.NoBookCopiesRemainingToBorrowException;
+import com.techdelity.identitye2e.demo.library.model.Book;
+import com.techdelity.identitye2e.demo.library.reservation.ReservationQueue.Reservation;
+import com.techdelity.identitye2e.demo.library.service.BookChangedEvent;
+import com.techdelity.identitye2e.demo.library.service.LibraryService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.Optional;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class ReservationQueueTest {
+
+  private static final String ISBN = "9780028000015";
+  private static final Book BOOK = new Book(ISBN, "Title", "Author", 2000, 1);
+
+  @Mock
+  private LibraryService libraryService;
+
+  private LocalInvalidationTransport transport;
+
+  private ReservationQueue reservationQueue;
+
+  @BeforeEach
+  void setUp() {
+    transport = new LocalInvalidationTransport();
+    reservationQueue = new ReservationQueue(libraryService, Runnable::run, transport,
+        new SimpleMeterRegistry(), 2);
+  }
+
+  @Test
+  void reserve_withACopyFree_isGrantedAtOnce() {
+    when(libraryService.borrowBook(ISBN)).thenReturn(Optional.of(BOOK));
+
+    Reservation reservation = reservationQueue.reserve(ISBN);
+
+    assertEquals(Optional.of(BOOK), reservation.outcome().join());
+    assertEquals(0, reservationQueue.waiting());
+  }
+
+  @Test
+  void returnedCopies_areHandedToReservationsInTheOrderTheyWereMade() {
+    when(libraryService.borrowBook(ISBN)).thenThrow(new NoBookCopiesRemainingToBorrowException());
+    Reservation first = reservationQueue.reserve(ISBN);
+    Reservation second = reservationQueue.reserve(ISBN);
+    assertEquals(2, reservationQueue.waiting());
+
+    // One copy comes back, then there are none left again
+    doReturn(Optional.of(BOOK)).doThrow(new NoBookCopiesRemainingToBorrowException())
+        .when(libraryService).borrowBook(ISBN);
+    reservationQueue.onBookChanged(BookChangedEvent.returned(ISBN, 2, 1));
+
+    assertEquals(Optional.of(BOOK), first.outcome().join());
+    assertFalse(second.outcome().isDone());
+    assertEquals(1, reservationQueue.waiting());
+  }
+
+  @Test
+  void reserve_withTheQueueFull_isRejected() {
+    when(libraryService.borrowBook(ISBN)).thenThrow(new NoBookCopiesRemainingToBorrowException());
+    reservationQueue.reserve(ISBN);
+    reservationQueue.reserve(ISBN);
+
+    assertThrows(NoBookCopiesRemainingToBorrowException.class,
+        () -> reservationQueue.reserve(ISBN));
+  }
+
+  @Test
+  void cancelledReservations_areNotGranted_andRemovedBooksLetTheRestGo() {
+    when(libraryService.borrowBook(ISBN)).thenThrow(new NoBookCopiesRemainingToBorrowException());
+    Reservation cancelled = reservationQueue.reserve(ISBN);
+    Reservation waiting = reservationQueue.reserve(ISBN);
+
+    assertTrue(reservationQueue.cancel(cancelled));
+    assertFalse(reservationQueue.cancel(cancelled));
+
+    doReturn(Optional.empty()).when(libraryService).borrowBook(ISBN);
+    reservationQueue.onBookChanged(BookChangedEvent.removed(ISBN));
+
+    assertFalse(cancelled.outcome().isDone());
+    assertEquals(Optional.empty(), waiting.outcome().join());
+    assertEquals(0, reservationQueue.waiting());
+  }
+
+  @Test
+  void copies_areHeldOnlyWhileReservationsWait() {
+    when(libraryService.borrowBook(ISBN)).thenThrow(new NoBookCopiesRemainingToBorrowException());
+    assertFalse(reservationQueue.isHeld(ISBN));
+    Reservation reservation = reservationQueue.reserve(ISBN);
+    assertTrue(reservationQueue.isHeld(ISBN));
+
+    reservationQueue.cancel(reservation);
+    assertFalse(reservationQueue.isHeld(ISBN));
+  }
+
+  @Test
+  void returnOnAnotherNode_handsTheCopyOver() {
+    when(libraryService.borrowBook(ISBN)).thenThrow(new NoBookCopiesRemainingToBorrowException());
+    Reservation reservation = reservationQueue.reserve(ISBN);
+
+    doReturn(Optional.of(BOOK)).when(libraryService).borrowBook(ISBN);
+    transport.publish(new BookInvalidation(ISBN, 3));
+
+    assertEquals(Optional.of(BOOK), reservation.outcome().join());
+    assertFalse(reservationQueue.isHeld(ISBN));
+  }
+}
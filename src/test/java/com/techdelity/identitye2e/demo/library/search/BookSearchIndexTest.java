@@ -0,0 +1,99 @@
+package com.techdelity.identitye2e.demo.library.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+import com.techdelity.identitye2e.demo.library.model.Book;
+import com.techdelity.identitye2e.demo.library.repository.BookRepository;
+import com.techdelity.identitye2e.demo.library.service.BookChangedEvent;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class BookSearchIndexTest {
+
+  private BookSearchIndex index;
+
+  @Mock
+  private BookRepository bookRepository;
+
+  @BeforeEach
+  void setUp() {
+    index = new BookSearchIndex(bookRepository, 2);
+    index.index(new Book("1", "Cracking the Coding Interview", "Gayle Laakmann McDowell", 2021, 5));
+    index.index(new Book("2", "Elements of Programming Interviews", "Adnan Aziz", 2012, 3));
+    index.index(new Book("3", "System Design Interview", "Alex Xu", 2020, 4));
+    index.index(new Book("4", "Designing Data-Intensive Applications", "Martin Kleppmann", 2017, 2));
+  }
+
+  @Test
+  void search_matchesTitleAndAuthorWords_ignoringCaseAndPunctuation() {
+    assertEquals(List.of("1"), index.search("CODING", 10));
+    assertEquals(List.of("4"), index.search("data intensive", 10));
+    assertEquals(List.of("2"), index.search("aziz", 10));
+  }
+
+  @Test
+  void search_ranksBooksMatchingMoreAndRarerWordsFirst() {
+    assertEquals(List.of("3", "1"), index.search("system design interview", 2));
+  }
+
+  @Test
+  void search_matchesWordsInAnyScript() {
+    index.index(new Book("5", "Преступление и наказание", "Фёдор Достоевский", 1866, 1));
+    index.index(new Book("6", "Straße der Ölsardinen", "Ægir Søndergaard", 2001, 1));
+
+    assertEquals(List.of("5"), index.search("наказание", 10));
+    assertEquals(List.of("6"), index.search("straße", 10));
+    assertEquals(List.of("6"), index.search("søndergaard", 10));
+  }
+
+  @Test
+  void search_noMatches_returnsEmpty() {
+    assertEquals(List.of(), index.search("cookery", 10));
+  }
+
+  @Test
+  void reindexingBook_replacesOldWords() {
+    index.index(new Book("1", "Cooking for Coders", "Gayle Laakmann McDowell", 2021, 5));
+
+    assertEquals(List.of(), index.search("cracking", 10));
+    assertEquals(List.of("1"), index.search("cooking", 10));
+    assertEquals(4, index.size());
+  }
+
+  @Test
+  void removedEvent_removesBook() {
+    index.onBookChanged(BookChangedEvent.removed("3"));
+
+    assertEquals(List.of(), index.search("xu", 10));
+    assertEquals(3, index.size());
+  }
+
+  @Test
+  void addedEvent_indexesBook() {
+    index.onBookChanged(BookChangedEvent.added(new Book("5", "Refactoring", "Martin Fowler", 2018, 1)));
+
+    assertEquals(List.of("5", "4"), index.search("martin refactoring", 10));
+  }
+
+  @Test
+  void rebuild_indexesEveryBookInBatches() {
+    BookSearchIndex rebuilt = new BookSearchIndex(bookRepository, 2);
+    when(bookRepository.findByIsbnGreaterThanOrderByIsbn(eq(""), any())).thenReturn(List.of(
+        new Book("a", "First", "Author", 2001, 1), new Book("b", "Second", "Author", 2001, 1)));
+    when(bookRepository.findByIsbnGreaterThanOrderByIsbn(eq("b"), any())).thenReturn(List.of(
+        new Book("c", "Third", "Author", 2001, 1)));
+
+    rebuilt.rebuild();
+
+    assertEquals(3, rebuilt.size());
+    assertEquals(List.of("c"), rebuilt.search("third", 10));
+  }
+}
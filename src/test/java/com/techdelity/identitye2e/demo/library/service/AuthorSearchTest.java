@@ -0,0 +1,93 @@
+package com.techdelity.identitye2e.demo.library.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.techdelity.identitye2e.demo.library.model.Book;
+import com.techdelity.identitye2e.demo.library.model.BookPage;
+import com.techdelity.identitye2e.demo.library.repository.BookRepository;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest(properties = "library.search.max-results=3")
+class AuthorSearchTest {
+
+  @Autowired
+  private LibraryService libraryService;
+
+  @Autowired
+  private BookRepository bookRepository;
+
+  @BeforeEach
+  void setUp() {
+    bookRepository.deleteAll();
+    bookRepository.saveAll(List.of(
+        new Book("9780001600010", "Title 1", "Gayle Laakmann McDowell", 2001, 1),
+        new Book("9780001600027", "Title 2", "gayle laakmann-mcdowell", 2002, 1),
+        new Book("9780001600034", "Title 3", "Gaël Durand", 2003, 1),
+        new Book("9780001600041", "Title 4", "Gayle Forman", 2004, 1),
+        new Book("9780001600058", "Title 5", "Adnan Aziz", 2005, 1)));
+  }
+
+  @Test
+  void searchByPrefix_ignoresCaseAccentsAndPunctuation() {
+    BookPage page = libraryService.findBooksByAuthorPrefix("GAYLE LAAKMANN", null, 10);
+
+    assertEquals(List.of("9780001600010", "9780001600027"), isbns(page));
+    assertNull(page.nextCursor());
+    assertEquals(List.of("9780001600034"),
+        isbns(libraryService.findBooksByAuthorPrefix("gael", null, 10)));
+  }
+
+  @Test
+  void searchByPrefix_matchesAuthorsInAnyScript() {
+    bookRepository.saveAll(List.of(
+        new Book("9780001600065", "Kordian", "Juliusz Słowacki", 1834, 1),
+        new Book("9780001600072", "Идиот", "Фёдор Достоевский", 1869, 1),
+        new Book("9780001600089", "ノルウェイの森", "村上春樹", 1987, 1),
+        new Book("9780001600096", "Sult", "Knut Hamsun Østergaard", 1890, 1)));
+
+    assertEquals(List.of("9780001600065"),
+        isbns(libraryService.findBooksByAuthorPrefix("JULIUSZ SŁOW", null, 10)));
+    assertEquals(List.of("9780001600072"),
+        isbns(libraryService.findBooksByAuthorPrefix("федор", null, 10)));
+    assertEquals(List.of("9780001600089"),
+        isbns(libraryService.findBooksByAuthorPrefix("村上", null, 10)));
+    assertEquals(List.of("9780001600096"),
+        isbns(libraryService.findBooksByAuthorPrefix("knut hamsun øster", null, 10)));
+  }
+
+  @Test
+  void searchByPrefix_pagesThroughAllResults() {
+    List<String> seen = new ArrayList<>();
+    BookPage page = libraryService.findBooksByAuthorPrefix("ga", null, 2);
+    seen.addAll(isbns(page));
+    while (page.nextCursor() != null) {
+      page = libraryService.findBooksByAuthorPrefix("ga", page.nextCursor(), 2);
+      seen.addAll(isbns(page));
+    }
+
+    // ordered by normalized author, "gael durand" < "gayle forman" < "gayle laakmann mcdowell"
+    assertEquals(List.of("9780001600034", "9780001600041", "9780001600010", "9780001600027"), seen);
+  }
+
+  @Test
+  void searchByPrefix_limitIsCapped() {
+    assertEquals(3, libraryService.findBooksByAuthorPrefix("g", null, 1000).books().size());
+  }
+
+  @Test
+  void searchByPrefix_invalidCursor_throwsException() {
+    assertThrows(IllegalArgumentException.class,
+        () -> libraryService.findBooksByAuthorPrefix("g", "not a cursor", 10));
+  }
+
+  private static List<String> isbns(BookPage page) {
+    return page.books().stream().map(Book::getIsbn).toList();
+  }
+}
@@ -0,0 +1,128 @@
+package com.techdelity.identitye2e.demo.library.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.techdelity.identitye2e.demo.library.model.Book;
+import com.techdelity.identitye2e.demo.library.model.StockBatch;
+import com.techdelity.identitye2e.demo.library.model.StockBatch.Item;
+import com.techdelity.identitye2e.demo.library.model.StockBatch.Mode;
+import com.techdelity.identitye2e.demo.library.model.StockBatchReport;
+import com.techdelity.identitye2e.demo.library.model.StockBatchReport.ItemResult;
+import com.techdelity.identitye2e.demo.library.model.StockBatchReport.Status;
+import com.techdelity.identitye2e.demo.library.repository.BookRepository;
+import com.techdelity.identitye2e.demo.library.reservation.ReservationQueue;
+import com.techdelity.identitye2e.demo.library.reservation.ReservationQueue.Reservation;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest(properties = "library.batch.max-items=3")
+class BatchStockServiceTest {
+
+  @Autowired
+  private BatchStockService batchStockService;
+
+  @Autowired
+  private LibraryService libraryService;
+
+  @Autowired
+  private BookRepository bookRepository;
+
+  @Autowired
+  private ReservationQueue reservationQueue;
+
+  @Test
+  void borrowAllOrNothing_appliesEveryItem() {
+    bookRepository.saveAll(List.of(new Book("9780001800014", "One", "Author", 2000, 3),
+        new Book("9780001800021", "Two", "Author", 2000, 1)));
+
+    StockBatchReport report = batchStockService.borrowBooks(new StockBatch(null,
+        List.of(new Item("9780001800014", 2), new Item("978-0-00-180002-1", null))));
+
+    assertEquals(2, report.applied());
+    assertEquals(0, report.rejected());
+    assertEquals(1, copiesOf("9780001800014"));
+    assertEquals(0, copiesOf("9780001800021"));
+  }
+
+  @Test
+  void borrowAllOrNothing_appliesNothingIfAnyItemIsRejected() {
+    bookRepository.saveAll(List.of(new Book("9780001800038", "Three", "Author", 2000, 3),
+        new Book("9780001800045", "Four", "Author", 2000, 1)));
+
+    StockBatchReport report = batchStockService.borrowBooks(new StockBatch(Mode.ALL_OR_NOTHING,
+        List.of(new Item("9780001800038", 1), new Item("9780001800045", 2),
+            new Item("9780001800991", 1))));
+
+    assertEquals(0, report.applied());
+    assertEquals(List.of(
+        new ItemResult("9780001800038", 1, Status.SKIPPED,
+            "Another item in the batch was rejected"),
+        new ItemResult("9780001800045", 2, Status.REJECTED, "Not enough copies remaining"),
+        new ItemResult("9780001800991", 1, Status.REJECTED, "Cannot find book")), report.items());
+    assertEquals(3, copiesOf("9780001800038"));
+    assertEquals(1, copiesOf("9780001800045"));
+  }
+
+  @Test
+  void borrowBestEffort_appliesTheItemsThatCanBeBorrowed() {
+    bookRepository.save(new Book("9780001800052", "Five", "Author", 2000, 3));
+
+    StockBatchReport report = batchStockService.borrowBooks(new StockBatch(Mode.BEST_EFFORT,
+        List.of(new Item("9780001800052", 2), new Item("9780001800052", 2),
+            new Item("9780001800052", 1))));
+
+    assertEquals(List.of(
+        new ItemResult("9780001800052", 2, Status.APPLIED, null),
+        new ItemResult("9780001800052", 2, Status.REJECTED, "Not enough copies remaining"),
+        new ItemResult("9780001800052", 1, Status.APPLIED, null)), report.items());
+    assertEquals(0, copiesOf("9780001800052"));
+  }
+
+  @Test
+  void borrow_ofABookWithReservationsWaiting_isRejected() {
+    bookRepository.save(new Book("9780001800083", "Eight", "Author", 2000, 0));
+    Reservation reservation = reservationQueue.reserve("9780001800083");
+    try {
+      StockBatchReport report = batchStockService.borrowBooks(new StockBatch(Mode.BEST_EFFORT,
+          List.of(new Item("9780001800083", 1))));
+
+      assertEquals(List.of(new ItemResult("9780001800083", 1, Status.REJECTED,
+          "Copies are held for reservations")), report.items());
+    } finally {
+      reservationQueue.cancel(reservation);
+    }
+  }
+
+  @Test
+  void returnBooks_evictsCachedBooks() {
+    bookRepository.save(new Book("9780001800069", "Six", "Author", 2000, 0));
+    assertEquals(0,
+        libraryService.findBookByISBN("9780001800069").orElseThrow().getCopiesAvailable());
+
+    StockBatchReport report = batchStockService.returnBooks(new StockBatch(Mode.BEST_EFFORT,
+        List.of(new Item("9780001800069", 2), new Item("9780001800069", 0),
+            new Item("not-an-isbn", 1))));
+
+    assertEquals(1, report.applied());
+    assertEquals("Quantity must be at least 1", report.items().get(1).reason());
+    assertEquals("Invalid isbn", report.items().get(2).reason());
+    assertEquals(2,
+        libraryService.findBookByISBN("9780001800069").orElseThrow().getCopiesAvailable());
+  }
+
+  @Test
+  void emptyOrOversizedBatch_isRejected() {
+    assertThrows(IllegalArgumentException.class,
+        () -> batchStockService.borrowBooks(new StockBatch(Mode.BEST_EFFORT, List.of())));
+    assertThrows(IllegalArgumentException.class,
+        () -> batchStockService.borrowBooks(new StockBatch(Mode.BEST_EFFORT,
+            List.of(new Item("a", 1), new Item("b", 1), new Item("c", 1), new Item("d", 1)))));
+  }
+
+  private int copiesOf(String isbn) {
+    return bookRepository.findById(isbn).orElseThrow().getCopiesAvailable();
+  }
+}
@@ -0,0 +1,109 @@
+package com.techdelity.identitye2e.demo.library.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.techdelity.identitye2e.demo.library.model.Book;
+import com.techdelity.identitye2e.demo.library.repository.BookRepository;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class BookExportServiceTest {
+
+  @Autowired
+  private BookExportService bookExportService;
+
+  @Autowired
+  private BookRepository bookRepository;
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @BeforeEach
+  void setUp() {
+    if (bookRepository.existsById("9780001700017")) {
+      return;
+    }
+    bookRepository.saveAll(List.of(
+        new Book("9780001700017", "Title One", "Author One", 2001, 1),
+        new Book("9780001700024", "Title, \"Two\"", "Author Two", 2002, 2),
+        new Book("9780001700031", "Title Three", "Author Three", 2003, 3)));
+  }
+
+  @Test
+  void exportCsv_writesHeaderAndQuotedFields() throws IOException {
+    String csv = export(ImportFormat.CSV, "9780001700000", 3);
+
+    assertEquals("""
+        isbn,title,author,publicationYear,copiesAvailable
+        9780001700017,Title One,Author One,2001,1
+        9780001700024,"Title, ""Two\""\",Author Two,2002,2
+        9780001700031,Title Three,Author Three,2003,3
+        """, csv);
+  }
+
+  @Test
+  void exportNdjson_resumesAfterIsbn() throws IOException {
+    String ndjson = export(ImportFormat.NDJSON, "9780001700017", 1);
+
+    String[] lines = ndjson.split("\n");
+    assertEquals(1, lines.length);
+    assertEquals("9780001700024", new ObjectMapper()
+        .readTree(lines[0]).get("isbn").asText());
+  }
+
+  @Test
+  void exportEndpoint_gzipsWhenAccepted() throws Exception {
+    MvcResult started = mockMvc.perform(get("/api/book/export")
+            .param("format", "csv").param("after", "9780001700000").param("limit", "2")
+            .header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate"))
+        .andExpect(request().asyncStarted())
+        .andReturn();
+
+    MvcResult result = mockMvc.perform(asyncDispatch(started))
+        .andExpect(status().isOk())
+        .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+        .andExpect(header().string(HttpHeaders.CONTENT_TYPE, "text/csv"))
+        .andReturn();
+
+    byte[] body = result.getResponse().getContentAsByteArray();
+    try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+      assertEquals("""
+          isbn,title,author,publicationYear,copiesAvailable
+          9780001700017,Title One,Author One,2001,1
+          9780001700024,"Title, ""Two\""\",Author Two,2002,2
+          """, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+    }
+  }
+
+  @Test
+  void exportEndpoint_rejectsUnknownFormat() throws Exception {
+    mockMvc.perform(get("/api/book/export").param("format", "xml"))
+        .andExpect(status().isBadRequest());
+  }
+
+  private String export(ImportFormat format, String after, int limit) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    bookExportService.exportBooks(out, format, after, limit);
+    return out.toString(StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,107 @@
+package com.techdelity.identitye2e.demo.library.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.techdelity.identitye2e.demo.library.model.Book;
+import com.techdelity.identitye2e.demo.library.model.ImportReport;
+import com.techdelity.identitye2e.demo.library.model.ImportReport.RowResult;
+import com.techdelity.identitye2e.demo.library.model.ImportReport.Status;
+import com.techdelity.identitye2e.demo.library.repository.BookRepository;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest(properties = "library.import.batch-size=2")
+class BookImportServiceTest {
+
+  @Autowired
+  private BookImportService bookImportService;
+
+  @Autowired
+  private BookRepository bookRepository;
+
+  @Test
+  void importCsv_savesValidRowsAndReportsRejected() throws IOException {
+    bookRepository.save(new Book("9780001900998", "Existing", "Author", 2000, 1));
+    String feed = """
+        isbn,title,author,publicationYear,copiesAvailable
+        9780001900011,"Title, with comma",Author One,2001,3
+        9780001900028,Title Two,Author Two,2002,4
+        978-0-00-190001-1,Title One Again,Author One,2001,3
+        9780001900998,Existing,Author,2000,1
+        9780001900035,,Author Three,2003,1
+        9780001900042,Title Four,Author Four,not-a-year,1
+        9780001900059,Title Five,Author Five,2005,5
+        9780001900050,Title Six,Author Six,2006,6
+        """;
+
+    ImportReport report = importFeed(feed, ImportFormat.CSV);
+
+    assertEquals(3, report.accepted());
+    assertEquals(5, report.rejected());
+    assertEquals(List.of(
+        new RowResult(1, "9780001900011", Status.ACCEPTED, null),
+        new RowResult(2, "9780001900028", Status.ACCEPTED, null),
+        new RowResult(3, "9780001900011", Status.REJECTED, "Duplicate isbn in feed"),
+        new RowResult(4, "9780001900998", Status.REJECTED, "Book already exists"),
+        new RowResult(5, "9780001900035", Status.REJECTED, "Missing title"),
+        new RowResult(6, null, Status.REJECTED, "Malformed row"),
+        new RowResult(7, "9780001900059", Status.ACCEPTED, null),
+        new RowResult(8, "9780001900050", Status.REJECTED, "Invalid isbn")), report.rows());
+    assertEquals("Title, with comma",
+        bookRepository.findById("9780001900011").orElseThrow().getTitle());
+    assertEquals(5, bookRepository.findById("9780001900059").orElseThrow().getCopiesAvailable());
+  }
+
+  @Test
+  void importNdjson_savesBooks() throws IOException {
+    String feed = """
+        {"isbn":"9780001910010","title":"Title One","author":"Author","publicationYear":2001,"copiesAvailable":2}
+        {"isbn":"9780001910027","title":"Title Two","author":"Author","publicationYear":2002,"copiesAvailable":1}
+        {"isbn":"9780001910034",
+        """;
+
+    ImportReport report = importFeed(feed, ImportFormat.NDJSON);
+
+    assertEquals(2, report.accepted());
+    assertEquals(1, report.rejected());
+    assertTrue(bookRepository.existsById("9780001910010"));
+    assertTrue(bookRepository.existsById("9780001910027"));
+  }
+
+  @Test
+  void failedBatch_onlyRejectsTheRowsThatFail() throws IOException {
+    String feed = """
+        isbn,title,author,publicationYear,copiesAvailable
+        9780001920019,Title One,Author,2001,1
+        9780001920026,%s,Author,2002,1
+        9780001920033,Title Three,Author,2003,1
+        """.formatted("T".repeat(300));
+
+    ImportReport report = importFeed(feed, ImportFormat.CSV);
+
+    assertEquals(List.of(
+        new RowResult(1, "9780001920019", Status.ACCEPTED, null),
+        new RowResult(2, "9780001920026", Status.REJECTED, "Failed to save"),
+        new RowResult(3, "9780001920033", Status.ACCEPTED, null)), report.rows());
+    assertTrue(bookRepository.existsById("9780001920019"));
+    assertFalse(bookRepository.existsById("9780001920026"));
+  }
+
+  @Test
+  void formatFromContentType_matchesCharsetVariants() {
+    assertEquals(ImportFormat.CSV, ImportFormat.fromContentType("text/csv;charset=UTF-8"));
+    assertEquals(ImportFormat.NDJSON, ImportFormat.fromContentType("application/x-ndjson"));
+  }
+
+  private ImportReport importFeed(String feed, ImportFormat format) throws IOException {
+    return bookImportService.importBooks(
+        new ByteArrayInputStream(feed.getBytes(StandardCharsets.UTF_8)), format);
+  }
+}
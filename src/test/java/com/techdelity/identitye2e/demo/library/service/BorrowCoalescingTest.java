@@ -0,0 +1,77 @@
+package com.techdelity.identitye2e.demo.library.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.techdelity.identitye2e.demo.library.exception.NoBookCopiesRemainingToBorrowException;
+import com.techdelity.identitye2e.demo.library.model.Book;
+import com.techdelity.identitye2e.demo.library.repository.BookRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest(properties = "library.coalescing.hot-threshold=1")
+class BorrowCoalescingTest {
+
+  @Autowired
+  private LibraryService libraryService;
+
+  @Autowired
+  private BookRepository bookRepository;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Test
+  void hotBorrows_areCoalescedAndNeverTakeMoreCopiesThanAvailable() throws Exception {
+    int copies = 50;
+    int borrowers = 200;
+    libraryService.addBook(new Book("9780024000019", "Launch Title", "Author", 2024, copies));
+    double coalescedBefore = meterRegistry.get("library.coalescing.borrows").counter().count();
+
+    ExecutorService executor = Executors.newFixedThreadPool(32);
+    List<Future<Boolean>> results = new ArrayList<>();
+    try {
+      for (int i = 0; i < borrowers; i++) {
+        results.add(executor.submit(() -> {
+          try {
+            libraryService.borrowBook("9780024000019");
+            return true;
+          } catch (NoBookCopiesRemainingToBorrowException ex) {
+            return false;
+          }
+        }));
+      }
+      int borrowed = 0;
+      for (Future<Boolean> result : results) {
+        borrowed += result.get() ? 1 : 0;
+      }
+
+      assertEquals(copies, borrowed);
+    } finally {
+      executor.shutdown();
+    }
+    Book book = bookRepository.findById("9780024000019").orElseThrow();
+    assertEquals(0, book.getCopiesAvailable());
+    assertEquals(copies, book.getVersion());
+    assertEquals(borrowers,
+        meterRegistry.get("library.coalescing.borrows").counter().count() - coalescedBefore, 0.0);
+    assertTrue(meterRegistry.get("library.coalescing.batch-size").summary().count() <= borrowers);
+  }
+
+  @Test
+  void hotLookups_stillSeeTheirOwnBorrows() {
+    libraryService.addBook(new Book("9780024000026", "Launch Title", "Author", 2024, 3));
+
+    assertEquals(2, libraryService.borrowBook("9780024000026").orElseThrow().getCopiesAvailable());
+    assertEquals(2,
+        libraryService.findBookByISBN("9780024000026").orElseThrow().getCopiesAvailable());
+    assertTrue(libraryService.findBookByISBN("9780024009999").isEmpty());
+  }
+}
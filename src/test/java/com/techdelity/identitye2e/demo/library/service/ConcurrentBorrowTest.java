@@ -0,0 +1,83 @@
+package com.techdelity.identitye2e.demo.library.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.techdelity.identitye2e.demo.library.exception.NoBookCopiesRemainingToBorrowException;
+import com.techdelity.identitye2e.demo.library.model.Book;
+import com.techdelity.identitye2e.demo.library.repository.BookRepository;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest
+class ConcurrentBorrowTest {
+
+  private static final int THREADS = 16;
+  private static final int ATTEMPTS_PER_THREAD = 25;
+
+  @Autowired
+  private LibraryService libraryService;
+
+  @Autowired
+  private BookRepository bookRepository;
+
+  @Test
+  void concurrentBorrows_neverTakeMoreCopiesThanAvailable() throws Exception {
+    int copies = 100;
+    libraryService.addBook(new Book("9780023000010", "Hot Title", "Author", 2024, copies));
+
+    List<Integer> borrowed = runConcurrently(() -> {
+      int count = 0;
+      for (int i = 0; i < ATTEMPTS_PER_THREAD; i++) {
+        try {
+          libraryService.borrowBook("9780023000010");
+          count++;
+        } catch (NoBookCopiesRemainingToBorrowException ex) {
+          // expected once the stock is exhausted
+        }
+      }
+      return count;
+    });
+
+    assertEquals(copies, borrowed.stream().mapToInt(Integer::intValue).sum());
+    assertEquals(0, bookRepository.findById("9780023000010").orElseThrow().getCopiesAvailable());
+  }
+
+  @Test
+  void concurrentReturns_areAllCounted() throws Exception {
+    libraryService.addBook(new Book("9780023000027", "Hot Title", "Author", 2024, 0));
+
+    runConcurrently(() -> {
+      for (int i = 0; i < ATTEMPTS_PER_THREAD; i++) {
+        libraryService.returnBook("9780023000027");
+      }
+      return ATTEMPTS_PER_THREAD;
+    });
+
+    assertEquals(THREADS * ATTEMPTS_PER_THREAD,
+        bookRepository.findById("9780023000027").orElseThrow().getCopiesAvailable());
+  }
+
+  private List<Integer> runConcurrently(Callable<Integer> task) throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      List<Future<Integer>> futures = new ArrayList<>();
+      for (int i = 0; i < THREADS; i++) {
+        futures.add(executor.submit(task));
+      }
+      List<Integer> results = new ArrayList<>();
+      for (Future<Integer> future : futures) {
+        results.add(future.get());
+      }
+      return results;
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
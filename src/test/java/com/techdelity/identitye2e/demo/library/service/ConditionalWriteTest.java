@@ -0,0 +1,84 @@
+package com.techdelity.identitye2e.demo.library.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.techdelity.identitye2e.demo.library.exception.BookNotFoundException;
+import com.techdelity.identitye2e.demo.library.exception.BookVersionConflictException;
+import com.techdelity.identitye2e.demo.library.exception.NoBookCopiesRemainingToBorrowException;
+import com.techdelity.identitye2e.demo.library.model.Book;
+import com.techdelity.identitye2e.demo.library.repository.BookRepository;
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+
+@SpringBootTest
+class ConditionalWriteTest {
+
+  @Autowired
+  private LibraryService libraryService;
+
+  @Autowired
+  private BookRepository bookRepository;
+
+  @Test
+  void borrowAndReturn_onlyApplyAtTheExpectedVersion() {
+    libraryService.addBook(new Book("9780021000012", "Title", "Author", 2000, 1));
+
+    assertEquals(1, libraryService.borrowBook("9780021000012", 0).orElseThrow().getVersion());
+    assertThrows(BookVersionConflictException.class,
+        () -> libraryService.borrowBook("9780021000012", 0));
+    assertThrows(NoBookCopiesRemainingToBorrowException.class,
+        () -> libraryService.borrowBook("9780021000012", 1));
+    assertThrows(BookVersionConflictException.class,
+        () -> libraryService.returnBook("9780021000012", 0));
+    libraryService.returnBook("9780021000012", 1);
+
+    assertEquals(Optional.of(2), bookRepository.findVersionByIsbn("9780021000012"));
+    assertTrue(libraryService.borrowBook("9780021009992", 0).isEmpty());
+    assertThrows(BookNotFoundException.class, () -> libraryService.returnBook("9780021009992", 0));
+  }
+
+  @Test
+  void removeBook_onlyAppliesAtTheExpectedVersion() {
+    libraryService.addBook(new Book("9780021000029", "Title", "Author", 2000, 1));
+    libraryService.borrowBook("9780021000029");
+
+    assertThrows(BookVersionConflictException.class,
+        () -> libraryService.removeBook("9780021000029", 0));
+    libraryService.removeBook("9780021000029", 1);
+
+    assertTrue(bookRepository.findById("9780021000029").isEmpty());
+    assertThrows(BookNotFoundException.class, () -> libraryService.removeBook("9780021000029", 1));
+  }
+
+  @Test
+  void stockChanges_findTheBookByItsIsbn10() {
+    libraryService.addBook(new Book("9780031000019", "Title", "Author", 2000, 2));
+
+    assertEquals(1, libraryService.borrowBook("0031000010").orElseThrow().getCopiesAvailable());
+    assertEquals(0, libraryService.borrowBook("0-03-100001-0", 1).orElseThrow()
+        .getCopiesAvailable());
+    libraryService.returnBook("0031000010");
+    libraryService.returnBook("0-03-100001-0", 3);
+    assertEquals(2, bookRepository.findById("9780031000019").orElseThrow().getCopiesAvailable());
+
+    libraryService.removeBook("0031000010", 4);
+    assertTrue(bookRepository.findById("9780031000019").isEmpty());
+  }
+
+  @Test
+  void staleEntity_isNotWrittenOver() {
+    libraryService.addBook(new Book("9780021000036", "Title", "Author", 2000, 3));
+    Book stale = bookRepository.findById("9780021000036").orElseThrow();
+    libraryService.borrowBook("9780021000036");
+
+    stale.setCopiesAvailable(10);
+
+    assertThrows(ObjectOptimisticLockingFailureException.class, () -> bookRepository.save(stale));
+    assertEquals(2, bookRepository.findById("9780021000036").orElseThrow().getCopiesAvailable());
+  }
+}
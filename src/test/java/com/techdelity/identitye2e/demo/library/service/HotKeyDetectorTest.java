@@ -0,0 +1,52 @@
+package com.techdelity.identitye2e.demo.library.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+class HotKeyDetectorTest {
+
+  private static final long SECOND = Duration.ofSeconds(1).toNanos();
+  private static final long HOT = 9780029000014L;
+  private static final long COLD = 9780029000021L;
+
+  private final HotKeyDetector detector = new HotKeyDetector(new SimpleMeterRegistry(), true, 10,
+      Duration.ofSeconds(1), 100);
+
+  @Test
+  void record_becomesHotAtTheThreshold() {
+    for (int i = 0; i < 9; i++) {
+      assertFalse(detector.record(HOT, i));
+    }
+    assertTrue(detector.record(HOT, 9));
+    assertFalse(detector.record(COLD, 9));
+    assertEquals(1, detector.hotKeys(10));
+  }
+
+  @Test
+  void record_slidesThePreviousWindowOut() {
+    for (int i = 0; i < 10; i++) {
+      detector.record(HOT, 0);
+    }
+
+    // Half of the previous window is still in the last second, so it counts as 5
+    for (int i = 0; i < 4; i++) {
+      assertFalse(detector.record(HOT, SECOND + SECOND / 2));
+    }
+    assertTrue(detector.record(HOT, SECOND + SECOND / 2));
+    assertEquals(0, detector.hotKeys(4 * SECOND));
+  }
+
+  @Test
+  void record_disabled_isNeverHot() {
+    HotKeyDetector disabled = new HotKeyDetector(new SimpleMeterRegistry(), false, 1,
+        Duration.ofSeconds(1), 100);
+
+    assertFalse(disabled.record("9780029000014"));
+    assertFalse(disabled.record("9780029000014"));
+  }
+}
@@ -0,0 +1,62 @@
+package com.techdelity.identitye2e.demo.library.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.techdelity.identitye2e.demo.library.exception.AlreadyExistsException;
+import com.techdelity.identitye2e.demo.library.exception.BookNotFoundException;
+import com.techdelity.identitye2e.demo.library.exception.NoBookCopiesRemainingToBorrowException;
+import com.techdelity.identitye2e.demo.library.model.Book;
+import com.techdelity.identitye2e.demo.library.model.BookPage;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+
+@SpringBootTest(properties = "library.store=memory")
+class InMemoryLibraryServiceTest {
+
+  @Autowired
+  private LibraryService libraryService;
+
+  @Autowired
+  private ApplicationContext context;
+
+  @Test
+  void memoryStore_replacesTheJpaService() {
+    assertInstanceOf(InMemoryLibraryService.class, libraryService);
+    assertTrue(context.getBeansOfType(BookImportService.class).isEmpty());
+  }
+
+  @Test
+  void borrowAndReturn_updateTheCopiesAvailable() {
+    libraryService.addBook(new Book("9780020000013", "Title", "Author", 2000, 1));
+
+    assertEquals(0, libraryService.borrowBook("9780020000013").orElseThrow().getCopiesAvailable());
+    assertThrows(NoBookCopiesRemainingToBorrowException.class,
+        () -> libraryService.borrowBook("9780020000013"));
+    libraryService.returnBook("9780020000013");
+
+    assertEquals(1,
+        libraryService.findBookByISBN("9780020000013").orElseThrow().getCopiesAvailable());
+    assertTrue(libraryService.borrowBook("9780020009993").isEmpty());
+    assertThrows(BookNotFoundException.class, () -> libraryService.returnBook("9780020009993"));
+  }
+
+  @Test
+  void addAndRemove_followTheLibraryRules() {
+    libraryService.addBook(new Book("9780020000020", "Title", "Mem Author", 2000, 1));
+
+    assertThrows(AlreadyExistsException.class,
+        () -> libraryService.addBook(new Book("9780020000020", "Title", "Mem Author", 2000, 1)));
+    assertEquals(1, libraryService.findBookByAuthor("Mem Author").size());
+    BookPage page = libraryService.findBooksByAuthorPrefix("mem", null, 10);
+    assertEquals("9780020000020", page.books().get(0).getIsbn());
+
+    libraryService.removeBook("9780020000020");
+    assertTrue(libraryService.findBookByISBN("9780020000020").isEmpty());
+    assertThrows(BookNotFoundException.class, () -> libraryService.removeBook("9780020000020"));
+  }
+}
@@ -0,0 +1,155 @@
+package com.techdelity.identitye2e.demo.library.service;
+
+import static com.techdelity.identitye2e.demo.library.config.CacheConfig.BOOKS_CACHE;
+import static com.techdelity.identitye2e.demo.library.config.CacheConfig.BOOK_JSON_CACHE;
+import static com.techdelity.identitye2e.demo.library.config.CacheConfig.BOOK_VERSIONS_CACHE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.techdelity.identitye2e.demo.library.cache.BookJson;
+import com.techdelity.identitye2e.demo.library.model.Book;
+import com.techdelity.identitye2e.demo.library.model.Isbn;
+import com.techdelity.identitye2e.demo.library.repository.BookRepository;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.cache.CacheManager;
+
+@SpringBootTest
+class LibraryServiceCachingTest {
+
+  @Autowired
+  private LibraryService libraryService;
+
+  @Autowired
+  private CacheManager cacheManager;
+
+  @MockBean
+  private BookRepository bookRepository;
+
+  @BeforeEach
+  void setUp() {
+    cacheManager.getCache(BOOKS_CACHE).clear();
+    cacheManager.getCache(BOOK_VERSIONS_CACHE).clear();
+    cacheManager.getCache(BOOK_JSON_CACHE).clear();
+  }
+
+  @Test
+  void findBookByIsbn_repeatedLookups_loadOnce() {
+    Book book = generateBook("9780026000017");
+    when(bookRepository.findById("9780026000017")).thenReturn(Optional.of(book));
+
+    assertEquals(Optional.of(book), libraryService.findBookByISBN("9780026000017"));
+    assertEquals(Optional.of(book), libraryService.findBookByISBN("9780026000017"));
+
+    verify(bookRepository, times(1)).findById("9780026000017");
+    // Cached by the packed isbn
+    assertEquals(book, cacheManager.getCache(BOOKS_CACHE).get(Isbn.pack("9780026000017")).get());
+  }
+
+  @Test
+  void findBookByIsbn_missingBook_isNotCached() {
+    when(bookRepository.findById("9780026000024")).thenReturn(Optional.empty());
+
+    assertEquals(Optional.empty(), libraryService.findBookByISBN("9780026000024"));
+    assertEquals(Optional.empty(), libraryService.findBookByISBN("9780026000024"));
+
+    verify(bookRepository, times(2)).findById("9780026000024");
+  }
+
+  @Test
+  void borrowBook_evictsCachedBook() {
+    Book book = generateBook("9780026000031");
+    when(bookRepository.findById("9780026000031")).thenReturn(Optional.of(book));
+    when(bookRepository.decrementCopiesAvailable(9780026000031L)).thenReturn(1);
+
+    libraryService.findBookByISBN("9780026000031");
+    libraryService.borrowBook("9780026000031");
+
+    assertNull(cacheManager.getCache(BOOKS_CACHE).get(Isbn.pack("9780026000031")));
+  }
+
+  @Test
+  void returnBook_evictsCachedBook() {
+    Book book = generateBook("9780026000048");
+    when(bookRepository.findById("9780026000048")).thenReturn(Optional.of(book));
+    when(bookRepository.incrementCopiesAvailable(9780026000048L)).thenReturn(1);
+
+    libraryService.findBookByISBN("9780026000048");
+    libraryService.returnBook("9780026000048");
+
+    assertNull(cacheManager.getCache(BOOKS_CACHE).get(Isbn.pack("9780026000048")));
+  }
+
+  @Test
+  void borrowBook_evictsCachedJson() {
+    Book book = generateBook("9780026000109");
+    when(bookRepository.findById("9780026000109")).thenReturn(Optional.of(book));
+    when(bookRepository.decrementCopiesAvailable(9780026000109L)).thenReturn(1);
+    cacheManager.getCache(BOOK_JSON_CACHE)
+        .put(Isbn.pack("9780026000109"), new BookJson(0, new SerializedString("{}")));
+
+    libraryService.borrowBook("9780026000109");
+
+    assertNull(cacheManager.getCache(BOOK_JSON_CACHE).get(Isbn.pack("9780026000109")));
+  }
+
+  @Test
+  void removeBook_evictsCachedBook() {
+    Book book = generateBook("9780026000055");
+    when(bookRepository.findById("9780026000055")).thenReturn(Optional.of(book));
+
+    libraryService.findBookByISBN("9780026000055");
+    libraryService.removeBook("9780026000055");
+
+    assertNull(cacheManager.getCache(BOOKS_CACHE).get(Isbn.pack("9780026000055")));
+  }
+
+  @Test
+  void findBookVersion_repeatedLookups_loadOnceAndEvictedByBorrow() {
+    when(bookRepository.findVersionByIsbn("9780026000062")).thenReturn(Optional.of(2));
+    when(bookRepository.decrementCopiesAvailable(9780026000062L)).thenReturn(1);
+
+    assertEquals(Optional.of(2), libraryService.findBookVersion("9780026000062"));
+    assertEquals(Optional.of(2), libraryService.findBookVersion("9780026000062"));
+    verify(bookRepository, times(1)).findVersionByIsbn("9780026000062");
+
+    libraryService.borrowBook("9780026000062");
+
+    assertNull(cacheManager.getCache(BOOK_VERSIONS_CACHE).get(Isbn.pack("9780026000062")));
+  }
+
+  @Test
+  void findBooksByIsbn_takesCachedBooksAndLoadsTheRestWithOneQuery() {
+    Book cached = generateBook("9780026000079");
+    Book uncached = generateBook("9780026000086");
+    when(bookRepository.findById("9780026000079")).thenReturn(Optional.of(cached));
+    when(bookRepository.findAllById(Set.of("9780026000086", "9780026000093")))
+        .thenReturn(List.of(uncached));
+    libraryService.findBookByISBN("9780026000079");
+
+    Map<String, Book> books = libraryService.findBooksByISBN(
+        List.of("9780026000079", "9780026000086", "9780026000093"));
+
+    assertEquals(Map.of("9780026000079", cached, "9780026000086", uncached), books);
+    verify(bookRepository, times(1)).findAllById(Set.of("9780026000086", "9780026000093"));
+    // The loaded book is cached for single lookups too
+    assertEquals(Optional.of(uncached), libraryService.findBookByISBN("9780026000086"));
+    verify(bookRepository, never()).findById("9780026000086");
+  }
+
+  static Book generateBook(String id) {
+    return new Book(id, "Title:" + id, "Author:" + id, 2001, 1);
+  }
+}
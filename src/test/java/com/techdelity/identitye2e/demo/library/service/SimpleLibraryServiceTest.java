@@ -4,7 +4,12 @@ import com.techdelity.identitye2e.demo.library.exception.AlreadyExistsException;
 import com.techdelity.identitye2e.demo.library.exception.BookNotFoundException;
 import com.techdelity.identitye2e.demo.library.exception.NoBookCopiesRemainingToBorrowException;
 import com.techdelity.identitye2e.demo.library.model.Book;
+import com.techdelity.identitye2e.demo.library.model.Isbn;
 import com.techdelity.identitye2e.demo.library.repository.BookRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.Cache;
+import jakarta.persistence.EntityManagerFactory;
+import java.time.Duration;
 import java.util.Collections;
 import java.util.List;
 import org.junit.jupiter.api.Assertions;
@@ -15,9 +20,12 @@ import java.util.Optional;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
 
+import static com.techdelity.identitye2e.demo.library.config.CacheConfig.BOOKS_CACHE;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -25,12 +33,27 @@ class SimpleLibraryServiceTest {
 
   private LibraryService libraryService;
 
+  private SimpleMeterRegistry meterRegistry;
+
   @Mock
   private BookRepository bookRepository;
 
+  @Mock
+  private EntityManagerFactory entityManagerFactory;
+
+  @Mock
+  private Cache entityCache;
+
   @BeforeEach
   void setUp() {
-    libraryService = new SimpleLibraryService(bookRepository);
+    meterRegistry = new SimpleMeterRegistry();
+    HotKeyDetector hotKeys = new HotKeyDetector(meterRegistry, false, 100, Duration.ofSeconds(1),
+        100);
+    when(entityManagerFactory.getCache()).thenReturn(entityCache);
+    libraryService = new SimpleLibraryService(bookRepository,
+        new DatabaseStockEngine(bookRepository, hotKeys, entityManagerFactory, meterRegistry, 1000),
+        hotKeys, event -> {
+        }, new ConcurrentMapCacheManager(BOOKS_CACHE), meterRegistry, 100);
 
   }
 
@@ -128,21 +151,21 @@ class SimpleLibraryServiceTest {
   @Test
   void borrowUnknownBook_ThrowsException() {
     Book book = generateBook(10);
-    when(bookRepository.findById(book.getIsbn())).thenReturn(Optional.empty());
+    when(bookRepository.existsById(book.getIsbn())).thenReturn(false);
     assertEquals(Optional.empty(), libraryService.borrowBook(book.getIsbn()));
   }
 
   @Test
   void borrowBook_returnsCorrectBook() {
     Book book = generateBook(10);
-    when(bookRepository.findById(book.getIsbn())).thenReturn(Optional.of(book));
+    stubStock(book);
     assertEquals(Optional.of(book), libraryService.borrowBook(book.getIsbn()));
   }
 
   @Test
   void borrowBook_updatesCopiesRemaining() {
     Book book = generateBook(10);
-    when(bookRepository.findById(book.getIsbn())).thenReturn(Optional.of(book));
+    stubStock(book);
     assertEquals(Optional.of(book), libraryService.borrowBook(book.getIsbn()));
     libraryService.findBookByISBN(book.getIsbn()).map(Book::getCopiesAvailable)
         .ifPresentOrElse(copiesRemaining -> assertEquals(9, copiesRemaining.intValue()), Assertions::fail);
@@ -152,7 +175,7 @@ class SimpleLibraryServiceTest {
   void borrowAllCopiesBook_updatesCopiesRemainingToZero() {
     int totalCopies = 5;
     Book book = generateBook(totalCopies);
-    when(bookRepository.findById(book.getIsbn())).thenReturn(Optional.of(book));
+    stubStock(book);
 
     for (int i = 0; i < totalCopies; i++) {
       assertEquals(Optional.of(book), libraryService.borrowBook(book.getIsbn()));
@@ -164,16 +187,26 @@ class SimpleLibraryServiceTest {
   @Test
   void borrowMoreCopiesBookThanAvailable_ThrowsException() {
     Book book = generateBook(0);
-    when(bookRepository.findById(book.getIsbn())).thenReturn(Optional.of(book));
+    stubStock(book);
+    String isbn = book.getIsbn();
+    assertThrows(NoBookCopiesRemainingToBorrowException.class,
+        () -> libraryService.borrowBook(isbn));
+  }
+
+  @Test
+  void borrowMoreCopiesBookThanAvailable_countsRejection() {
+    Book book = generateBook(0);
+    stubStock(book);
     String isbn = book.getIsbn();
     assertThrows(NoBookCopiesRemainingToBorrowException.class,
         () -> libraryService.borrowBook(isbn));
+    assertEquals(1, meterRegistry.counter("library.borrow.rejected").count());
   }
 
   @Test
   void returningUnknownBook_ThrowsException() {
     Book book = generateBook(1);
-    when(bookRepository.findById(book.getIsbn())).thenReturn(Optional.empty());
+    when(bookRepository.incrementCopiesAvailable(Isbn.pack(book.getIsbn()))).thenReturn(0);
     String isbn = book.getIsbn();
     assertThrows(BookNotFoundException.class, ()-> libraryService.returnBook(isbn));
   }
@@ -181,12 +214,32 @@ class SimpleLibraryServiceTest {
   @Test
   void returningBook_UpdatesCopiesAvailable() {
     Book book = generateBook(1);
-    when(bookRepository.findById(book.getIsbn())).thenReturn(Optional.of(book));
+    stubStock(book);
     libraryService.returnBook(book.getIsbn());
     libraryService.findBookByISBN(book.getIsbn()).map(Book::getCopiesAvailable)
         .ifPresentOrElse(copiesRemaining -> assertEquals(2, copiesRemaining.intValue()), Assertions::fail);
   }
 
+  /**
+   * Back the repository's conditional stock updates with the given book
+   */
+  private void stubStock(Book book) {
+    String isbn = book.getIsbn();
+    lenient().when(bookRepository.findById(isbn)).thenReturn(Optional.of(book));
+    lenient().when(bookRepository.existsById(isbn)).thenReturn(true);
+    lenient().when(bookRepository.decrementCopiesAvailable(Isbn.pack(isbn))).thenAnswer(invocation -> {
+      if (book.getCopiesAvailable() <= 0) {
+        return 0;
+      }
+      book.setCopiesAvailable(book.getCopiesAvailable() - 1);
+      return 1;
+    });
+    lenient().when(bookRepository.incrementCopiesAvailable(Isbn.pack(isbn))).thenAnswer(invocation -> {
+      book.setCopiesAvailable(book.getCopiesAvailable() + 1);
+      return 1;
+    });
+  }
+
   static Book generateBook(String id) {
     return new Book(id, "Title:" + id, "Author:" + id, 2001, 1);
   }
@@ -196,7 +249,7 @@ class SimpleLibraryServiceTest {
   }
 
   static Book generateBook(int copies) {
-    return new Book("123", "Title", "Author", 2001, copies);
+    return new Book("9780030000010", "Title", "Author", 2001, copies);
   }
 
 }
\ No newline at end of file
@@ -0,0 +1,104 @@
+package com.techdelity.identitye2e.demo.library.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.techdelity.identitye2e.demo.library.service.StockChangeLog.StockCount;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class StockChangeLogTest {
+
+  @TempDir
+  Path dir;
+
+  @Test
+  void replay_returnsTheLatestCountOfEachBook() throws Exception {
+    try (StockChangeLog log = new StockChangeLog(dir, 64, false)) {
+      log.appendCopies("isbn-1", 4, 1);
+      log.appendCopies("isbn-2", 1, 7);
+      log.appendCopies("isbn-1", 3, 2);
+      log.appendRemoved("isbn-2");
+      log.appendCopies("isbn-3", 0, 5);
+    }
+
+    StockChangeLog replayed = new StockChangeLog(dir, 64, false);
+
+    assertEquals(Map.of("isbn-1", new StockCount(3, 2), "isbn-3", new StockCount(0, 5)),
+        replayed.replay());
+    assertEquals(5, replayed.lastSequence());
+    assertEquals(6, replayed.appendCopies("isbn-1", 2, 3));
+  }
+
+  @Test
+  void replay_stopsAtATornRecord() throws Exception {
+    try (StockChangeLog log = new StockChangeLog(dir, 1024, false)) {
+      log.appendCopies("isbn-1", 4, 1);
+      log.appendCopies("isbn-1", 3, 2);
+    }
+    Path segment = segments().get(0);
+    try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+      // Corrupt the copies of the second record, as if the write was cut off
+      int firstRecord = 4 + 8 + 1 + 4 + 4 + 2 + "isbn-1".length();
+      file.seek(firstRecord + 4 + 8 + 1);
+      file.writeInt(99);
+    }
+
+    assertEquals(Map.of("isbn-1", new StockCount(4, 1)),
+        new StockChangeLog(dir, 1024, false).replay());
+  }
+
+  @Test
+  void replay_stopsAtATornRecord_withoutReadingLaterSegments() throws Exception {
+    try (StockChangeLog log = new StockChangeLog(dir, 64, false)) {
+      log.appendCopies("isbn-1", 4, 1);
+      log.appendCopies("isbn-1", 3, 2);
+      log.appendCopies("isbn-2", 1, 1);
+    }
+    try (RandomAccessFile file = new RandomAccessFile(segments().get(0).toFile(), "rw")) {
+      // Corrupt the copies of the second record, the last of the first segment
+      int firstRecord = 4 + 8 + 1 + 4 + 4 + 2 + "isbn-1".length();
+      file.seek(firstRecord + 4 + 8 + 1);
+      file.writeInt(99);
+    }
+
+    StockChangeLog replayed = new StockChangeLog(dir, 64, false);
+
+    assertEquals(Map.of("isbn-1", new StockCount(4, 1)), replayed.replay());
+    assertEquals(1, replayed.lastSequence());
+
+    // What is appended after the torn record is replayed next time
+    replayed.appendCopies("isbn-3", 2, 1);
+    replayed.close();
+    assertEquals(Map.of("isbn-1", new StockCount(4, 1), "isbn-3", new StockCount(2, 1)),
+        new StockChangeLog(dir, 64, false).replay());
+  }
+
+  @Test
+  void deleteThrough_removesOnlyFullyFlushedSegments() throws Exception {
+    StockChangeLog log = new StockChangeLog(dir, 64, false);
+    for (int i = 0; i < 6; i++) {
+      log.appendCopies("isbn-" + i, i, 1);
+    }
+    int written = segments().size();
+
+    log.deleteThrough(3);
+
+    List<Path> remaining = segments();
+    assertEquals(written - 1, remaining.size());
+    log.deleteThrough(log.lastSequence());
+    assertEquals(1, segments().size());
+    log.close();
+  }
+
+  private List<Path> segments() throws Exception {
+    try (Stream<Path> files = Files.list(dir)) {
+      return files.sorted().toList();
+    }
+  }
+}
@@ -0,0 +1,194 @@
+package com.techdelity.identitye2e.demo.library.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.techdelity.identitye2e.demo.library.exception.BookVersionConflictException;
+import com.techdelity.identitye2e.demo.library.exception.NoBookCopiesRemainingToBorrowException;
+import com.techdelity.identitye2e.demo.library.model.Book;
+import com.techdelity.identitye2e.demo.library.repository.BookRepository;
+import jakarta.persistence.EntityManagerFactory;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+@SpringBootTest(properties = {"library.stock.mode=write-behind",
+    "library.stock.write-behind.flush-interval=1h"})
+class WriteBehindStockEngineTest {
+
+  private static final Path LOG_DIR = createTempDir();
+
+  @DynamicPropertySource
+  static void logDir(DynamicPropertyRegistry registry) {
+    registry.add("library.stock.write-behind.log-dir", LOG_DIR::toString);
+  }
+
+  @Autowired
+  private LibraryService libraryService;
+
+  @Autowired
+  private StockEngine stockEngine;
+
+  @Autowired
+  private BookRepository bookRepository;
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @Autowired
+  private EntityManagerFactory entityManagerFactory;
+
+  @Autowired
+  private TransactionTemplate transactionTemplate;
+
+  @Test
+  void borrowAndReturn_areVisibleStraightAwayAndFlushedAsOneUpdate() {
+    assertInstanceOf(WriteBehindStockEngine.class, stockEngine);
+    libraryService.addBook(new Book("9780022000011", "Title", "Author", 2000, 2));
+
+    assertEquals(1, libraryService.borrowBook("9780022000011").orElseThrow().getCopiesAvailable());
+    assertEquals(0, libraryService.borrowBook("9780022000011").orElseThrow().getCopiesAvailable());
+    assertThrows(NoBookCopiesRemainingToBorrowException.class,
+        () -> libraryService.borrowBook("9780022000011"));
+    libraryService.returnBook("9780022000011");
+
+    Book pending = libraryService.findBookByISBN("9780022000011").orElseThrow();
+    assertEquals(1, pending.getCopiesAvailable());
+    assertEquals(3, pending.getVersion());
+    assertEquals(Optional.of(3), libraryService.findBookVersion("9780022000011"));
+    assertEquals(2, bookRepository.findById("9780022000011").orElseThrow().getCopiesAvailable());
+
+    ((WriteBehindStockEngine) stockEngine).flush();
+
+    Book flushed = bookRepository.findById("9780022000011").orElseThrow();
+    assertEquals(1, flushed.getCopiesAvailable());
+    assertEquals(3, flushed.getVersion());
+  }
+
+  @Test
+  void removedBook_isForgotten() {
+    libraryService.addBook(new Book("9780022000028", "Title", "Author", 2000, 1));
+    libraryService.borrowBook("9780022000028");
+    libraryService.removeBook("9780022000028");
+
+    assertTrue(libraryService.borrowBook("9780022000028").isEmpty());
+    libraryService.addBook(new Book("9780022000028", "Title", "Author", 2000, 5));
+    assertEquals(4, libraryService.borrowBook("9780022000028").orElseThrow().getCopiesAvailable());
+  }
+
+  @Test
+  void conditionalBorrow_checksThePendingVersion() {
+    libraryService.addBook(new Book("9780022000042", "Title", "Author", 2000, 3));
+
+    libraryService.borrowBook("9780022000042", 0);
+
+    assertThrows(BookVersionConflictException.class,
+        () -> libraryService.borrowBook("9780022000042", 0));
+    assertThrows(BookVersionConflictException.class,
+        () -> libraryService.removeBook("9780022000042", 0));
+    libraryService.borrowBook("9780022000042", 1);
+    libraryService.removeBook("9780022000042", 2);
+    assertTrue(libraryService.findBookByISBN("9780022000042").isEmpty());
+  }
+
+  @Test
+  void unflushedChanges_areRecoveredFromTheLogAfterACrash() throws IOException {
+    bookRepository.save(new Book("9780022000035", "Title", "Author", 2000, 10));
+    Path crashedLogDir = Files.createTempDirectory("stock-log");
+    WriteBehindStockEngine crashed = newEngine(crashedLogDir);
+    for (int i = 0; i < 3; i++) {
+      crashed.tryTakeCopy("9780022000035");
+    }
+    crashed.putCopyBack("9780022000035");
+    // The process dies before the flush, the database still has the old count
+    assertEquals(10, bookRepository.findById("9780022000035").orElseThrow().getCopiesAvailable());
+
+    WriteBehindStockEngine restarted = newEngine(crashedLogDir);
+    try {
+      Book recovered = bookRepository.findById("9780022000035").orElseThrow();
+      assertEquals(8, recovered.getCopiesAvailable());
+      assertEquals(4, recovered.getVersion());
+    } finally {
+      restarted.destroy();
+    }
+  }
+
+  @Test
+  void removeAndAddAgain_duringAFlush_isNotWrittenOver() throws Exception {
+    bookRepository.save(new Book("9780022000059", "Title", "Author", 2000, 3));
+    CountDownLatch writing = new CountDownLatch(1);
+    CountDownLatch written = new CountDownLatch(1);
+    JdbcTemplate blocking = new JdbcTemplate(jdbcTemplate.getDataSource()) {
+      @Override
+      public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+        writing.countDown();
+        try {
+          written.await();
+        } catch (InterruptedException ex) {
+          throw new IllegalStateException(ex);
+        }
+        return super.batchUpdate(sql, batchArgs);
+      }
+    };
+    WriteBehindStockEngine engine = new WriteBehindStockEngine(bookRepository, blocking,
+        entityManagerFactory, transactionTemplate, Files.createTempDirectory("stock-log"),
+        DataSize.ofKilobytes(64), false, Duration.ofHours(1));
+    try {
+      engine.tryTakeCopy("9780022000059");
+      CompletableFuture<Integer> flushed = CompletableFuture.supplyAsync(engine::flush);
+      writing.await();
+
+      CompletableFuture<Void> readded = CompletableFuture.runAsync(() -> {
+        transactionTemplate.executeWithoutResult(status -> {
+          engine.removing("9780022000059");
+          bookRepository.deleteById("9780022000059");
+        });
+        bookRepository.save(new Book("9780022000059", "Title", "Author", 2000, 5));
+      });
+      // The removal waits for the counts already taken to be written
+      assertThrows(TimeoutException.class, () -> readded.get(200, TimeUnit.MILLISECONDS));
+      written.countDown();
+      assertEquals(1, flushed.get());
+      readded.get();
+
+      Book added = bookRepository.findById("9780022000059").orElseThrow();
+      assertEquals(5, added.getCopiesAvailable());
+      assertEquals(0, added.getVersion());
+      assertTrue(engine.tryTakeCopy("9780022000059"));
+      assertEquals(4, engine.withPendingChanges(added).getCopiesAvailable());
+    } finally {
+      written.countDown();
+      engine.destroy();
+    }
+  }
+
+  private WriteBehindStockEngine newEngine(Path logDir) throws IOException {
+    return new WriteBehindStockEngine(bookRepository, jdbcTemplate, entityManagerFactory,
+        transactionTemplate, logDir, DataSize.ofKilobytes(64), false, Duration.ofHours(1));
+  }
+
+  private static Path createTempDir() {
+    try {
+      return Files.createTempDirectory("stock-log");
+    } catch (IOException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+}
@@ -0,0 +1,198 @@
+package com.techdelity.identitye2e.demo.library.store;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.techdelity.identitye2e.demo.library.model.Book;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalInt;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class OffHeapBookStoreTest {
+
+  private final OffHeapBookStore store = new OffHeapBookStore(256, 8);
+
+  @Test
+  void insertAndFind_roundTripsEveryField() {
+    Book book = new Book(isbn(1), "Tïtle", "Émile Zola", 1885, 3);
+    book.setVersion(7);
+
+    assertTrue(store.insert(book));
+    assertFalse(store.insert(new Book(isbn(1), "Other", "Other", 2000, 1)));
+
+    Book found = store.find(isbn(1)).orElseThrow();
+    assertEquals("Tïtle", found.getTitle());
+    assertEquals("Émile Zola", found.getAuthor());
+    assertEquals("emile zola", found.getAuthorNormalized());
+    assertEquals(1885, found.getPublicationYear());
+    assertEquals(3, found.getCopiesAvailable());
+    assertEquals(7, found.getVersion());
+    assertTrue(store.find(isbn(2)).isEmpty());
+    assertEquals(found, store.find("0-00-000001-9").orElse(null));
+  }
+
+  @Test
+  void findVersion_followsEveryCopyChange() {
+    store.insert(new Book(isbn(1), "Title", "Author", 2000, 2));
+
+    assertEquals(OptionalInt.of(0), store.findVersion(isbn(1)));
+    store.tryTakeCopy(isbn(1));
+    store.putCopyBack(isbn(1));
+    assertEquals(OptionalInt.of(2), store.findVersion(isbn(1)));
+    store.remove(isbn(1));
+    assertTrue(store.findVersion(isbn(1)).isEmpty());
+  }
+
+  @Test
+  void conditionalChanges_onlyApplyAtTheExpectedVersion() {
+    store.insert(new Book(isbn(1), "Title", "Author", 2000, 2));
+
+    assertTrue(store.tryTakeCopy(isbn(1), 0));
+    assertFalse(store.tryTakeCopy(isbn(1), 0));
+    assertFalse(store.putCopyBack(isbn(1), 0));
+    assertTrue(store.putCopyBack(isbn(1), 1));
+    assertFalse(store.remove(isbn(1), 1));
+    assertTrue(store.remove(isbn(1), 2));
+    assertFalse(store.contains(isbn(1)));
+  }
+
+  @Test
+  void manyBooks_growPagesAndTableAndReuseRemovedSlots() {
+    int books = 20_000;
+    for (int i = 0; i < books; i++) {
+      assertTrue(store.insert(new Book(isbn(i), "Title " + i, "Author " + (i % 100), 2000, 1)));
+    }
+    for (int i = 0; i < books; i += 2) {
+      assertTrue(store.remove(isbn(i)));
+    }
+    assertFalse(store.remove(isbn(0)));
+    for (int i = 0; i < books / 2; i++) {
+      assertTrue(store.insert(new Book(isbn(100_000 + i), "New " + i, "Author", 2000, 1)));
+    }
+
+    assertEquals(books, store.size());
+    assertTrue(store.find(isbn(0)).isEmpty());
+    assertEquals("Title 1", store.find(isbn(1)).orElseThrow().getTitle());
+    assertEquals("New 9999", store.find(isbn(109_999)).orElseThrow().getTitle());
+    assertEquals(200, store.findByAuthor("Author 1").size());
+    assertTrue(store.findByAuthor("Author 2").isEmpty());
+  }
+
+  @Test
+  void findByAuthorPrefix_pagesInAuthorThenIsbnOrder() {
+    store.insert(new Book(isbn(3), "T", "Adnan Aziz", 2012, 1));
+    store.insert(new Book(isbn(1), "T", "Alex Xu", 2020, 1));
+    store.insert(new Book(isbn(2), "T", "Adnan Aziz", 2012, 1));
+    store.insert(new Book(isbn(4), "T", "Bob", 2012, 1));
+
+    List<Book> first = store.findByAuthorPrefix("a", "", "", 2);
+    assertEquals(List.of(isbn(2), isbn(3)), first.stream().map(Book::getIsbn).toList());
+
+    List<Book> second = store.findByAuthorPrefix("a", "adnan aziz", isbn(3), 2);
+    assertEquals(List.of(isbn(1)), second.stream().map(Book::getIsbn).toList());
+  }
+
+  @Test
+  void findByAuthorPrefix_seeksAcrossMergedAndNewBooks() {
+    OffHeapBookStore small = new OffHeapBookStore(256, 8, 4);
+    for (int i = 0; i < 30; i++) {
+      small.insert(new Book(isbn(i), "T", "Author " + (char) ('a' + i % 3), 2000, 1));
+    }
+    // Removed and added again, which must not be found twice
+    small.remove(isbn(4));
+    small.insert(new Book(isbn(4), "T", "Author b", 2000, 1));
+    small.insert(new Book(isbn(30), "T", "Someone else", 2000, 1));
+    small.insert(new Book(isbn(31), "T", null, 2000, 1));
+
+    List<String> found = new ArrayList<>();
+    String afterAuthor = "";
+    String afterIsbn = "";
+    List<Book> page;
+    while (!(page = small.findByAuthorPrefix("author", afterAuthor, afterIsbn, 7)).isEmpty()) {
+      page.forEach(book -> found.add(book.getIsbn()));
+      afterAuthor = page.get(page.size() - 1).getAuthorNormalized();
+      afterIsbn = page.get(page.size() - 1).getIsbn();
+    }
+
+    List<String> expected = new ArrayList<>();
+    for (int author = 0; author < 3; author++) {
+      for (int i = author; i < 30; i += 3) {
+        expected.add(isbn(i));
+      }
+    }
+    assertEquals(expected, found);
+    assertEquals(10, small.findByAuthor("Author b").size());
+    assertEquals(List.of(isbn(31)), small.findByAuthor(null).stream().map(Book::getIsbn).toList());
+  }
+
+  @Test
+  void concurrentBorrows_neverTakeMoreCopiesThanAvailable() throws Exception {
+    store.insert(new Book(isbn(42), "Hot", "Author", 2024, 100));
+    AtomicInteger taken = new AtomicInteger();
+
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 8; t++) {
+        futures.add(executor.submit(() -> {
+          for (int i = 0; i < 50; i++) {
+            if (store.tryTakeCopy(isbn(42))) {
+              taken.incrementAndGet();
+            }
+            store.find(isbn(42)).orElseThrow();
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    assertEquals(100, taken.get());
+    Book hot = store.find(isbn(42)).orElseThrow();
+    assertEquals(0, hot.getCopiesAvailable());
+    assertEquals(100, hot.getVersion());
+    assertTrue(store.putCopyBack(isbn(42)));
+    assertFalse(store.putCopyBack(isbn(43)));
+  }
+
+  @Test
+  void snapshot_restoresEveryBook(@TempDir Path dir) throws Exception {
+    store.insert(new Book(isbn(1), "Title", "Author", 2000, 2));
+    store.insert(new Book(isbn(2), null, null, 2001, 0));
+    store.insert(new Book(isbn(3), "Removed", "Author", 2002, 1));
+    store.remove(isbn(3));
+    store.tryTakeCopy(isbn(1));
+    Path file = dir.resolve("books.snapshot");
+
+    store.writeSnapshot(file);
+    OffHeapBookStore restored = new OffHeapBookStore(256, 8);
+
+    assertEquals(2, restored.loadSnapshot(file));
+    assertEquals(store.find(isbn(1)), restored.find(isbn(1)));
+    assertEquals(1, restored.find(isbn(1)).orElseThrow().getCopiesAvailable());
+    assertEquals(null, restored.find(isbn(2)).orElseThrow().getTitle());
+    assertTrue(restored.find(isbn(3)).isEmpty());
+    assertEquals(List.of(isbn(1)),
+        restored.findByAuthorPrefix("auth", "", "", 10).stream().map(Book::getIsbn).toList());
+  }
+
+  private static String isbn(int number) {
+    String body = String.format("978%09d", number);
+    int sum = 0;
+    for (int i = 0; i < body.length(); i++) {
+      sum += (body.charAt(i) - '0') * (i % 2 == 0 ? 1 : 3);
+    }
+    return body + (10 - sum % 10) % 10;
+  }
+}